@@ -0,0 +1,11 @@
+#!/bin/sh
+
+# Runs hello.pins24 100 times with the given command (./pins24 by default)
+# and prints the mean wall time of one run.
+[ $# -eq 0 ] && set -- ./pins24
+runs=100
+start=$(date +%s%N)
+for i in $(seq $runs); do
+    "$@" examples/hello.pins24 > /dev/null
+done
+echo "$(( ($(date +%s%N) - start) / runs / 1000000 )) ms per run"
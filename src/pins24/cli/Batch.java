@@ -0,0 +1,182 @@
+package pins24.cli;
+
+import pins24.common.Obj;
+import pins24.common.Report;
+import pins24.phase.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many programs in one JVM, each source file a program of its own, and with `--run` runs them.
+ * Programs are compiled on a pool of threads; each has its own diagnostics, output and settings,
+ * so nothing that one program does shows in another.
+ * <p>
+ * Usage: `--batch [--run] [--jobs N] [--memo] [--stack-new] [--cache DIR] PATH...`, where a `PATH` is a source file
+ * or a directory whose `*.pins24` files are taken in the order of their names.
+ * The output of every program that printed something is written under its name, in the order of the
+ * command line, followed by a table of results and times. Programs read an empty standard input.
+ */
+public class Batch {
+    /**
+     * The outcome of one program.
+     *
+     * @param srcFilePath The source file.
+     * @param ok          Whether the program compiled and, if run, ran without errors.
+     * @param output      Everything the program and the compiler printed for it.
+     * @param compileTime Nanoseconds spent compiling and linking.
+     * @param runTime     Nanoseconds spent running, or -1 if the program was not run.
+     */
+    private record Result(String srcFilePath, boolean ok, String output, long compileTime, long runTime) {
+    }
+
+    public static void main(final String[] cmdLineArgs) {
+        try {
+            boolean run = false;
+            boolean memoize = false;
+            boolean stackNew = false;
+            int jobs = Runtime.getRuntime().availableProcessors();
+            Cache cache = null;
+            final List<String> srcFilePaths = new ArrayList<>();
+            // The first argument is '--batch' itself.
+            for (int arg = 1; arg < cmdLineArgs.length; arg++) {
+                final String cmdLineArg = cmdLineArgs[arg];
+                if (cmdLineArg.equals("--run")) {
+                    run = true;
+                } else if (cmdLineArg.equals("--memo")) {
+                    memoize = true;
+                } else if (cmdLineArg.equals("--stack-new")) {
+                    stackNew = true;
+                } else if (cmdLineArg.equals("--jobs")) {
+                    if (arg + 1 == cmdLineArgs.length)
+                        throw new Report.Error("No number of jobs specified after '--jobs'.");
+                    try {
+                        jobs = Integer.parseInt(cmdLineArgs[++arg]);
+                    } catch (NumberFormatException __) {
+                        jobs = 0;
+                    }
+                    if (jobs < 1)
+                        throw new Report.Error("Illegal number of jobs '" + cmdLineArgs[arg] + "'.");
+                } else if (cmdLineArg.equals("--cache")) {
+                    if (arg + 1 == cmdLineArgs.length)
+                        throw new Report.Error("No cache directory specified after '--cache'.");
+                    cache = new Cache(Path.of(cmdLineArgs[++arg]));
+                } else {
+                    srcFilePaths.addAll(srcFiles(cmdLineArg));
+                }
+            }
+            if (srcFilePaths.isEmpty())
+                throw new Report.Error("No source file specified in the command line.");
+
+            final int failed = batch(srcFilePaths, Lib.load("./src/pins24/stdlib.pins24"), cache, memoize, stackNew,
+                    run, jobs);
+            if (failed > 0)
+                System.exit(1);
+
+        } catch (Report.Error error) {
+            System.err.println(error.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the source file, or the source files in the directory in the order of their names.
+     */
+    private static List<String> srcFiles(final String path) {
+        if (!Files.isDirectory(Path.of(path)))
+            return List.of(path);
+        try (Stream<Path> files = Files.list(Path.of(path))) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".pins24") && Files.isRegularFile(file))
+                    .map(Path::toString).sorted().toList();
+        } catch (IOException __) {
+            throw new Report.Error("Cannot read directory '" + path + "'.");
+        }
+    }
+
+    /**
+     * Compiles (and runs) all programs and prints their outputs and the table of results.
+     *
+     * @return The number of programs that failed.
+     */
+    private static int batch(final List<String> srcFilePaths, final Lib stdlib, final Cache cache,
+                             final boolean memoize, final boolean stackNew, final boolean run, final int jobs) {
+        final long start = System.nanoTime();
+        final ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        final List<Future<Result>> futures = new ArrayList<>();
+        for (final String srcFilePath : srcFilePaths)
+            futures.add(pool.submit(() -> execute(srcFilePath, stdlib, cache, memoize, stackNew, run)));
+        pool.shutdown();
+
+        // Outputs are printed in the order of the command line as soon as they are known.
+        final List<Result> results = new ArrayList<>();
+        for (final Future<Result> future : futures) {
+            final Result result;
+            try {
+                result = future.get();
+            } catch (InterruptedException | ExecutionException error) {
+                throw new Report.InternalError();
+            }
+            if (!result.output().isEmpty()) {
+                System.out.println("\033[1m" + result.srcFilePath() + "\033[0m");
+                System.out.print(result.output());
+                System.out.println();
+            }
+            results.add(result);
+        }
+        final long wallTime = System.nanoTime() - start;
+
+        int failed = 0;
+        long compileTime = 0;
+        long runTime = 0;
+        for (final Result result : results) {
+            System.out.printf("%-6s %10s %10s  %s%n", result.ok() ? "ok" : "FAILED", millis(result.compileTime()),
+                    result.runTime() < 0 ? "" : millis(result.runTime()), result.srcFilePath());
+            failed += result.ok() ? 0 : 1;
+            compileTime += result.compileTime();
+            runTime += Math.max(result.runTime(), 0);
+        }
+        System.out.printf("%d programs, %d failed, %s in %d threads: compile %s%s%n", results.size(), failed,
+                millis(wallTime), jobs, millis(compileTime), run ? ", run " + millis(runTime) : "");
+        return failed;
+    }
+
+    /**
+     * Compiles and links one program, and runs it if asked to, in the current thread.
+     */
+    private static Result execute(final String srcFilePath, final Lib stdlib, final Cache cache,
+                                  final boolean memoize, final boolean stackNew, final boolean run) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(output);
+        Report.setOutput(out);
+        final long start = System.nanoTime();
+        long compiled = -1;
+        boolean ok = false;
+        try {
+            final Obj obj = Pins24.compile(srcFilePath, stdlib, cache, memoize, stackNew, null);
+            final Linker.Program program = Linker.link(List.of(obj));
+            final Exe exe = Exe.of(program.codeSegment(), program.dataSegment());
+            compiled = System.nanoTime();
+            if (run)
+                new Machine.Executor(exe, InputStream.nullInputStream(), out, Machine.Settings.DEFAULT);
+            ok = true;
+        } catch (Report.Error error) {
+            out.println(error.getMessage());
+        } catch (Throwable error) {
+            // Whatever would have killed the compiler only fails this program.
+            error.printStackTrace(out);
+        }
+        final long end = System.nanoTime();
+        out.flush();
+        return new Result(srcFilePath, ok, output.toString(), (compiled < 0 ? end : compiled) - start,
+                run && compiled >= 0 ? end - compiled : -1);
+    }
+
+    private static String millis(final long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,85 @@
+package pins24.cli;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Sends a command to a running `Server` and behaves as if the command ran here:
+ * the standard input is forwarded, the program's output is printed and the
+ * client exits with the program's exit code. The client loads none of the
+ * compiler, so it starts much faster than the compiler itself.
+ * <p>
+ * Usage: `Client SOCKET ARGS...`, where `ARGS` are the arguments of `Pins24`.
+ */
+public class Client {
+    public static void main(final String[] cmdLineArgs) {
+        if (cmdLineArgs.length == 0) {
+            System.err.println("No socket file specified in the command line.");
+            System.exit(1);
+        }
+        final SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(cmdLineArgs[0]));
+        } catch (IOException __) {
+            System.err.println("Cannot connect to the server '" + cmdLineArgs[0] + "'.");
+            System.exit(1);
+            return;
+        }
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeUTF(Path.of("").toAbsolutePath().toString());
+            out.writeInt(cmdLineArgs.length - 1);
+            for (int arg = 1; arg < cmdLineArgs.length; arg++)
+                out.writeUTF(cmdLineArgs[arg]);
+            out.flush();
+
+            // The standard input is forwarded until it ends or the command does.
+            final Thread stdin = new Thread(() -> {
+                try {
+                    final byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = System.in.read(buffer)) > 0) {
+                        out.writeInt(read);
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                    out.writeInt(0);
+                    out.flush();
+                } catch (IOException __) {
+                    // The command has ended and does not read any more.
+                }
+            });
+            stdin.setDaemon(true);
+            stdin.start();
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            final byte[] buffer = new byte[8192];
+            while (true) {
+                final int kind = in.readUnsignedByte();
+                if (kind == Server.EXIT) {
+                    final int exitCode = in.readInt();
+                    System.out.flush();
+                    System.exit(exitCode);
+                }
+                final PrintStream stream = kind == Server.STDOUT ? System.out : System.err;
+                for (int left = in.readInt(); left > 0; ) {
+                    final int read = in.read(buffer, 0, Math.min(left, buffer.length));
+                    if (read < 0)
+                        throw new EOFException();
+                    stream.write(buffer, 0, read);
+                    left -= read;
+                }
+                stream.flush();
+            }
+        } catch (IOException __) {
+            System.err.println("Connection to the server '" + cmdLineArgs[0] + "' was lost.");
+            System.exit(1);
+        }
+    }
+}
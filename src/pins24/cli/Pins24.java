@@ -1,98 +1,198 @@
 package pins24.cli;
 
-import pins24.common.PDM;
+import pins24.common.AST;
+import pins24.common.Obj;
 import pins24.common.Report;
 import pins24.phase.*;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class Pins24 {
+    /**
+     * Object files are named after their source files (`prog.pins24` → `prog.pins24o`).
+     */
+    private static final String OBJ_SUFFIX = ".pins24o";
+
+    /**
+     * Executable images are run straight from the mapped file, see `Exe`.
+     */
+    private static final String EXE_SUFFIX = ".pins24x";
+
     public static void main(final String[] cmdLineArgs) {
+        if (cmdLineArgs.length > 0 && cmdLineArgs[0].equals("--server")) {
+            Server.main(cmdLineArgs);
+            return;
+        }
+        if (cmdLineArgs.length > 0 && cmdLineArgs[0].equals("--batch")) {
+            Batch.main(cmdLineArgs);
+            return;
+        }
+        final int exitCode = run(cmdLineArgs, null, null, System.in, System.out, System.err);
+        if (exitCode != 0)
+            System.exit(exitCode);
+    }
+
+    /**
+     * Compiles and runs the program given by the command line.
+     * Relative file paths are resolved against `dir` (as usual if `null`).
+     * Within a server, the server's stdlib, cache, `--memo` and `--stack-new` are used, and
+     * the cache, which is shared by all requests, cannot be changed.
+     *
+     * @return The exit code of the command.
+     */
+    static int run(final String[] cmdLineArgs, final Path dir, final Server server,
+                   final InputStream in, final PrintStream out, final PrintStream err) {
         try {
-            if (cmdLineArgs.length == 0)
+            boolean compileOnly = false;
+            boolean debugTable = false;
+            boolean memoize = server != null && server.memoize;
+            boolean stackNew = server != null && server.stackNew;
+            String exeFilePath = null;
+            Cache cache = server == null ? null : server.cache;
+            final List<String> filePaths = new ArrayList<>();
+            for (int arg = 0; arg < cmdLineArgs.length; arg++) {
+                final String cmdLineArg = cmdLineArgs[arg];
+                if (cmdLineArg.equals("--memo")) {
+                    memoize = true;
+                } else if (cmdLineArg.equals("--stack-new")) {
+                    stackNew = true;
+                } else if (cmdLineArg.equals("-c")) {
+                    compileOnly = true;
+                } else if (cmdLineArg.equals("-g")) {
+                    debugTable = true;
+                } else if (cmdLineArg.equals("-o")) {
+                    if (arg + 1 == cmdLineArgs.length)
+                        throw new Report.Error("No executable file specified after '-o'.");
+                    exeFilePath = resolve(dir, cmdLineArgs[++arg]);
+                } else if (cmdLineArg.equals("--cache")) {
+                    if (server != null)
+                        throw new Report.Error("Option '--cache' can only be given to the server.");
+                    if (arg + 1 == cmdLineArgs.length)
+                        throw new Report.Error("No cache directory specified after '--cache'.");
+                    cache = new Cache(Path.of(cmdLineArgs[++arg]));
+                } else {
+                    filePaths.add(resolve(dir, cmdLineArg));
+                }
+            }
+            if (filePaths.isEmpty())
                 throw new Report.Error("No source file specified in the command line.");
-            if (cmdLineArgs.length > 1)
-                Report.warning("Unused arguments in the command line.");
-
-            try (SynAn synAn = new SynAn(readLinkedSourceFile(cmdLineArgs[0]))) {
-                final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
-                final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
-                final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
-                final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
 
-                final List<PDM.CodeInstr> codeSegment = (new CodeGen.CodeSegmentGenerator(codegenAttrAST))
-                        .codeSegment();
-                final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST))
-                        .dataSegment();
+            // An executable image is already linked, so it is run on its own.
+            if (filePaths.get(0).endsWith(EXE_SUFFIX)) {
+                if (filePaths.size() > 1)
+                    Report.warning("Unused arguments in the command line.");
+                new Machine.Executor(mapExe(filePaths.get(0)), in, out);
+                return 0;
+            }
 
-                new Machine.Executor(codeSegment, dataSegment);
+            // The stdlib is compiled once and its functions are declared
+            // before the user's definitions, see `Lib`.
+            Lib stdlib = server == null ? null : server.stdlib;
+            final List<Obj> objs = new ArrayList<>();
+            for (String filePath : filePaths) {
+                if (filePath.endsWith(OBJ_SUFFIX)) {
+                    objs.add(readObj(filePath));
+                    continue;
+                }
+                if (stdlib == null)
+                    stdlib = Lib.load("./src/pins24/stdlib.pins24");
+                final Obj obj = compile(filePath, stdlib, cache, memoize, stackNew, server);
+                if (compileOnly)
+                    writeObj(obj, filePath + "o");
+                objs.add(obj);
+            }
+            if (compileOnly)
+                return 0;
+
+            final Linker.Program program = Linker.link(objs);
+            final Exe exe = Exe.of(program.codeSegment(), program.dataSegment());
+            if (exeFilePath != null) {
+                writeExe(exe, exeFilePath, debugTable);
+                return 0;
             }
+            new Machine.Executor(exe, in, out);
+            return 0;
 
         } catch (Report.Error error) {
             // Izpis opisa napake.
-            System.err.println(error.getMessage());
-            System.exit(1);
+            out.flush();
+            err.println(error.getMessage());
+            return 1;
         }
     }
 
+    private static String resolve(final Path dir, final String filePath) {
+        return dir == null ? filePath : dir.resolve(filePath).toString();
+    }
+
     /**
-     * Combines both the user source file and the standard library source file.
+     * Compiles one source file into a unit that still has to be linked.
+     * With a cache, functions whose code is in the cache are only declared
+     * and their cached code is spliced in, see `Cache`.
+     * Within a server, the source file is parsed incrementally,
+     * and the cache hashes only the definitions that changed.
      */
-    private static Reader readLinkedSourceFile(String srcFilePath) {
-        List<Reader> readers = new ArrayList<>();
-        readers.add(getFileReader(srcFilePath));
-        // Append stdlib to the end of the source file,
-        // so that user source file position info doesn't change.
-        readers.add(getFileReader("./src/pins24/stdlib.pins24"));
-        return new CombinedReader(readers);
+    static Obj compile(final String srcFilePath, final Lib stdlib, final Cache cache, final boolean memoize,
+                       final boolean stackNew, final Server server) {
+        final Abstr.AttrAST abstrAttrAST;
+        Set<AST.MainDef> changed = null;
+        if (server != null) {
+            final IncrSynAn.Result result = server.parse(srcFilePath);
+            abstrAttrAST = result.attrAST();
+            changed = result.changed();
+        } else {
+            try (SynAn synAn = new SynAn(srcFilePath)) {
+                abstrAttrAST = Abstr.constructAST(synAn, stdlib);
+            }
+        }
+        final Cache.Unit unit = cache == null ? null : cache.lookup(abstrAttrAST, changed, memoize, stackNew,
+                srcFilePath);
+        final SemAn.AttrAST semanAttrAST = SemAn.analyze(unit == null ? abstrAttrAST : unit.attrAST);
+        final Optim.AttrAST optimAttrAST = Optim.optimize(semanAttrAST, memoize, stackNew);
+        final Memory.AttrAST memoryAttrAST = Memory.organize(optimAttrAST);
+        final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST,
+                unit == null ? Map.of() : unit.hits);
+        if (unit != null)
+            unit.store(codegenAttrAST);
+        return CodeGen.object(srcFilePath, codegenAttrAST);
     }
 
-    private static Reader getFileReader(String filePath) {
-        BufferedReader srcFileReader;
+    private static Obj readObj(final String objFilePath) {
         try {
-            srcFileReader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath)));
-        } catch (FileNotFoundException __) {
-            throw new Report.Error("File '" + filePath + "' not found.");
+            return Obj.read(Path.of(objFilePath));
+        } catch (IOException __) {
+            throw new Report.Error("Cannot read object file '" + objFilePath + "'.");
         }
-        return srcFileReader;
     }
 
-    private static class CombinedReader extends Reader {
-
-        private final List<Reader> readers;
-        private int activeReaderIndex;
-
-        public CombinedReader(List<Reader> readers) {
-            this.readers = readers;
-            this.activeReaderIndex = 0;
+    private static void writeObj(final Obj obj, final String objFilePath) {
+        try {
+            obj.write(Path.of(objFilePath));
+        } catch (IOException __) {
+            throw new Report.Error("Cannot write object file '" + objFilePath + "'.");
         }
+    }
 
-        @Override
-        public int read(char[] charBuff, int off, int len) throws IOException {
-            Reader activeReader = this.readers.get(this.activeReaderIndex);
-            int charsRead = activeReader.read(charBuff);
-
-            boolean activeReaderIsAtEnd = charsRead == -1;
-            if (!activeReaderIsAtEnd) {
-                return charsRead;
-            }
-
-            boolean hasRemainingReaders = readers.size() > activeReaderIndex + 1;
-            if (hasRemainingReaders) {
-                activeReaderIndex++;
-                return this.read(charBuff, off, len);
-            } else {
-                return -1;
-            }
+    private static Exe mapExe(final String exeFilePath) {
+        try {
+            return Exe.map(Path.of(exeFilePath));
+        } catch (IOException __) {
+            throw new Report.Error("Cannot read executable file '" + exeFilePath + "'.");
         }
+    }
 
-        @Override
-        public void close() throws IOException {
-            for (Reader reader : readers) {
-                reader.close();
-            }
+    private static void writeExe(final Exe exe, final String exeFilePath, final boolean debugTable) {
+        try {
+            exe.write(Path.of(exeFilePath), debugTable);
+        } catch (IOException __) {
+            throw new Report.Error("Cannot write executable file '" + exeFilePath + "'.");
         }
     }
 }
@@ -0,0 +1,275 @@
+package pins24.cli;
+
+import pins24.common.Report;
+import pins24.phase.*;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiler that keeps running and serves commands sent by `Client` over a Unix domain socket.
+ * The JVM is started, the stdlib is loaded and the compiler's code is warmed up only once,
+ * so a command costs no more than compiling and running its program.
+ * <p>
+ * The client sends its current directory, the command line and then its standard input in frames
+ * (length, bytes; length 0 ends the input). The server answers with frames of the program's
+ * standard output and standard error (kind, length, bytes) and finally the exit code (kind, code).
+ * Each connection is served by its own thread.
+ */
+public class Server {
+    // Kinds of frames sent to the client.
+    static final int EXIT = 0;
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+
+    /**
+     * The stdlib shared by all commands.
+     */
+    final Lib stdlib;
+
+    /**
+     * The compilation cache shared by all commands, or `null`.
+     */
+    final Cache cache;
+
+    /**
+     * Whether all commands memoize calls, see `Optim`.
+     */
+    final boolean memoize;
+
+    /**
+     * Whether all commands may place `new` buffers in frames, see `Optim`.
+     */
+    final boolean stackNew;
+
+    /**
+     * Incremental parsers of the source files compiled so far, see `IncrSynAn`.
+     */
+    private final Map<Path, IncrSynAn> parsers = new ConcurrentHashMap<>();
+
+    private Server(final Lib stdlib, final Cache cache, final boolean memoize, final boolean stackNew) {
+        this.stdlib = stdlib;
+        this.cache = cache;
+        this.memoize = memoize;
+        this.stackNew = stackNew;
+    }
+
+    public static void main(final String[] cmdLineArgs) {
+        try {
+            String socketFilePath = null;
+            Cache cache = null;
+            boolean memoize = false;
+            boolean stackNew = false;
+            // The first argument is '--server' itself.
+            for (int arg = 1; arg < cmdLineArgs.length; arg++) {
+                final String cmdLineArg = cmdLineArgs[arg];
+                if (cmdLineArg.equals("--memo")) {
+                    memoize = true;
+                } else if (cmdLineArg.equals("--stack-new")) {
+                    stackNew = true;
+                } else if (cmdLineArg.equals("--cache")) {
+                    if (arg + 1 == cmdLineArgs.length)
+                        throw new Report.Error("No cache directory specified after '--cache'.");
+                    cache = new Cache(Path.of(cmdLineArgs[++arg]));
+                } else if (socketFilePath == null) {
+                    socketFilePath = cmdLineArg;
+                } else {
+                    Report.warning("Unused arguments in the command line.");
+                }
+            }
+            if (socketFilePath == null)
+                throw new Report.Error("No socket file specified after '--server'.");
+
+            final Server server = new Server(Lib.load("./src/pins24/stdlib.pins24"), cache, memoize,
+                    stackNew);
+            server.serve(Path.of(socketFilePath));
+
+        } catch (Report.Error error) {
+            System.err.println(error.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void serve(final Path socketFile) {
+        final ServerSocketChannel listener;
+        try {
+            listener = listen(socketFile);
+        } catch (IOException __) {
+            throw new Report.Error("Cannot listen on socket '" + socketFile + "'.");
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(socketFile);
+            } catch (IOException __) {
+                // Nothing left to do on the way out.
+            }
+        }));
+        Report.info("Listening on '" + socketFile + "'.");
+        while (true) {
+            final SocketChannel channel;
+            try {
+                channel = listener.accept();
+            } catch (IOException __) {
+                throw new Report.Error("Cannot accept a connection on socket '" + socketFile + "'.");
+            }
+            Thread.ofPlatform().name("pins24-" + channel.hashCode()).start(() -> execute(channel));
+        }
+    }
+
+    private static ServerSocketChannel listen(final Path socketFile) throws IOException {
+        final UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socketFile);
+        if (Files.isRegularFile(socketFile) || Files.isDirectory(socketFile))
+            throw new Report.Error("File '" + socketFile + "' is not a socket.");
+        if (Files.exists(socketFile)) {
+            // A socket file that nobody listens on is left over by a server that was killed.
+            SocketChannel probe = null;
+            try {
+                probe = SocketChannel.open(address);
+            } catch (IOException __) {
+            }
+            if (probe != null) {
+                probe.close();
+                throw new Report.Error("A server is already listening on socket '" + socketFile + "'.");
+            }
+            Files.delete(socketFile);
+        }
+        final ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        listener.bind(address);
+        return listener;
+    }
+
+    /**
+     * Parses a source file again, reusing the definitions that did not change
+     * since it was last compiled. Only commands compiling the same file wait for each other.
+     */
+    IncrSynAn.Result parse(final String srcFilePath) {
+        final IncrSynAn synAn = parsers.computeIfAbsent(Path.of(srcFilePath).toAbsolutePath().normalize(),
+                __ -> new IncrSynAn(stdlib));
+        synchronized (synAn) {
+            return synAn.update(srcFilePath);
+        }
+    }
+
+    /**
+     * Executes one command.
+     */
+    private void execute(final SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            final Path dir = Path.of(in.readUTF());
+            final String[] cmdLineArgs = new String[in.readInt()];
+            for (int arg = 0; arg < cmdLineArgs.length; arg++)
+                cmdLineArgs[arg] = in.readUTF();
+
+            final PrintStream stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDOUT)));
+            final PrintStream stderr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDERR)));
+            Report.setOutput(stdout);
+            int exitCode;
+            try {
+                exitCode = Pins24.run(cmdLineArgs, dir, this, new FrameInputStream(in), stdout, stderr);
+            } catch (UncheckedIOException error) {
+                // The client is gone.
+                throw error;
+            } catch (Throwable error) {
+                // Whatever would have killed the compiler only ends this command.
+                stdout.flush();
+                error.printStackTrace(stderr);
+                exitCode = 1;
+            }
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(exitCode);
+                out.flush();
+            }
+        } catch (IOException | UncheckedIOException __) {
+            // The client is gone, there is no one to tell.
+        }
+    }
+
+    /**
+     * Standard input of a command: the frames that the client sends.
+     */
+    private static class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+
+        /**
+         * The number of bytes left in the current frame, or -1 after the last frame.
+         */
+        private int left = 0;
+
+        FrameInputStream(final DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (left == 0) {
+                left = in.readInt();
+                if (left == 0)
+                    left = -1;
+            }
+            if (left < 0)
+                return -1;
+            final int read = in.read(b, off, Math.min(len, left));
+            if (read < 0)
+                throw new EOFException();
+            left -= read;
+            return read;
+        }
+    }
+
+    /**
+     * Standard output or error of a command: every write is sent to the client as one frame.
+     * Both share the connection, so frames are written under its lock.
+     * A failed write is not swallowed by `PrintStream` and ends the command.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int kind;
+
+        FrameOutputStream(final DataOutputStream out, final int kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(final int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            if (len == 0)
+                return;
+            try {
+                synchronized (out) {
+                    out.writeByte(kind);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                    out.flush();
+                }
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+    }
+}
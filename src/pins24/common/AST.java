@@ -32,12 +32,38 @@ public class AST {
 	 */
 	public static abstract class Node implements AnyNode {
 
+		/**
+		 * Stevilka vozlisca, enolicna v drevesu ({@code -1}, dokler je sintaksni
+		 * analizator ne doloci). Stevilke vozlisc drevesa so zaporedne od 0 naprej.
+		 */
+		private int id = -1;
+
 		/**
 		 * Ustvari novo vozlisce abstraktega sintaksnega drevesa.
 		 */
 		public Node() {
 		}
 
+		/**
+		 * Vrne stevilko vozlisca.
+		 * 
+		 * @return Stevilka vozlisca ali {@code -1}, ce se ni dolocena.
+		 */
+		public final int id() {
+			return id;
+		}
+
+		/**
+		 * Doloci stevilko vozlisca; stevilka se lahko doloci samo enkrat.
+		 * 
+		 * @param id Stevilka vozlisca.
+		 */
+		public final void setId(final int id) {
+			if (this.id >= 0 || id < 0)
+				throw new Report.InternalError();
+			this.id = id;
+		}
+
 		/**
 		 * Sprejem obiskovalca.
 		 * 
@@ -189,6 +215,9 @@ public class AST {
 		/** Definirano ime. */
 		public final String name;
 
+		/** Stevilka definiranega imena. */
+		private int symbol = -1;
+
 		/**
 		 * Ustvari novo definicijo.
 		 * 
@@ -199,6 +228,26 @@ public class AST {
 			this.name = name;
 		}
 
+		/**
+		 * Vrne stevilko imena (glej {@link pins24.phase.LexAn#identifier}).
+		 * 
+		 * @return Stevilka imena ali {@code -1}, ce se ni dolocena.
+		 */
+		public final int symbol() {
+			return symbol;
+		}
+
+		/**
+		 * Doloci stevilko imena; stevilka se lahko doloci samo enkrat.
+		 * 
+		 * @param symbol Stevilka imena.
+		 */
+		public final void setSymbol(final int symbol) {
+			if (this.symbol >= 0 || symbol < 0)
+				throw new Report.InternalError();
+			this.symbol = symbol;
+		}
+
 	}
 
 	/**
@@ -666,6 +715,9 @@ public class AST {
 		/** Ime. */
 		public final String name;
 
+		/** Stevilka imena. */
+		private int symbol = -1;
+
 		/**
 		 * Ustvari novo ime v izrazu.
 		 * 
@@ -676,6 +728,26 @@ public class AST {
 			this.name = name;
 		}
 
+		/**
+		 * Vrne stevilko imena (glej {@link pins24.phase.LexAn#identifier}).
+		 * 
+		 * @return Stevilka imena ali {@code -1}, ce se ni dolocena.
+		 */
+		public final int symbol() {
+			return symbol;
+		}
+
+		/**
+		 * Doloci stevilko imena; stevilka se lahko doloci samo enkrat.
+		 * 
+		 * @param symbol Stevilka imena.
+		 */
+		public final void setSymbol(final int symbol) {
+			if (this.symbol >= 0 || symbol < 0)
+				throw new Report.InternalError();
+			this.symbol = symbol;
+		}
+
 	}
 
 	/**
@@ -771,6 +843,221 @@ public class AST {
 
 	}
 
+	/**
+	 * Atribut vozlisc abstraktnega sintaksnega drevesa.
+	 * 
+	 * Vrednosti so shranjene v tabelah, indeksiranih s stevilko vozlisca (glej
+	 * {@link Node#id}), zato iskanje ne potrebuje zgoscevanja. Tabele so
+	 * razdeljene na strani, ki se ustvarijo sele ob prvem vpisu, tako da redek
+	 * atribut (npr. samo na definicijah funkcij) ne zaseda prostora za vsa
+	 * vozlisca. Zaporedje vpisov je urejeno po stevilkah vozlisc.
+	 * 
+	 * @param <ANode> Tip vozlisc abstraktnega sintaksnega drevesa.
+	 * @param <Value> Tip vrednosti atributa.
+	 */
+	public static class NodeMap<ANode extends Node, Value> extends AbstractMap<ANode, Value> {
+
+		/** Dvojiski logaritem stevila vozlisc na strani. */
+		private static final int PAGE_BITS = 8;
+
+		/** Stevilo vozlisc na strani. */
+		private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+		/** Oznaka vrednosti {@code null}. */
+		private static final Object NULL = new Object();
+
+		/**
+		 * Strani: na mestu {@code 2 * i} je vozlisce, na mestu {@code 2 * i + 1} pa
+		 * vrednost atributa ({@code null}, ce je vozlisce nima).
+		 */
+		private Object[][] pages = new Object[0][];
+
+		/** Stevilo vozlisc z vrednostjo atributa. */
+		private int size = 0;
+
+		/**
+		 * Ali si stran deli s kopijo atributa; taka stran se pred prvim vpisom
+		 * prepise.
+		 */
+		private boolean[] shared = new boolean[0];
+
+		/**
+		 * Ustvari nov prazen atribut.
+		 */
+		public NodeMap() {
+		}
+
+		/**
+		 * Ustvari kopijo atributa; kasnejse spremembe kopije ne vplivajo na izvirnik
+		 * in obratno. Kopija si strani deli z izvirnikom, dokler ena od njiju vanje
+		 * ne pise, zato je kopiranje poceni, tudi ce se spremeni le malo vrednosti.
+		 * 
+		 * @param nodeMap Atribut.
+		 */
+		public NodeMap(final NodeMap<ANode, Value> nodeMap) {
+			pages = nodeMap.pages.clone();
+			size = nodeMap.size;
+			shared = new boolean[pages.length];
+			Arrays.fill(shared, true);
+			nodeMap.shared = shared.clone();
+		}
+
+		/**
+		 * Vrne stran, ki vsebuje vozlisce.
+		 * 
+		 * @param key    Vozlisce.
+		 * @param create Ali naj se manjkajoca stran ustvari.
+		 * @return Stran ali {@code null}, ce je ni.
+		 */
+		private Object[] page(final Object key, final boolean create) {
+			if (!(key instanceof Node node) || node.id < 0) {
+				if (create)
+					throw new Report.InternalError();
+				return null;
+			}
+			final int index = node.id >>> PAGE_BITS;
+			if (index >= pages.length) {
+				if (!create)
+					return null;
+				pages = Arrays.copyOf(pages, Math.max(index + 1, 2 * pages.length));
+			}
+			if (pages[index] == null && create)
+				pages[index] = new Object[2 * PAGE_SIZE];
+			return create ? own(index) : pages[index];
+		}
+
+		/**
+		 * Vrne stran, v katero sme pisati le ta atribut.
+		 * 
+		 * @param index Indeks strani.
+		 * @return Stran.
+		 */
+		private Object[] own(final int index) {
+			if (index < shared.length && shared[index]) {
+				if (pages[index] != null)
+					pages[index] = pages[index].clone();
+				shared[index] = false;
+			}
+			return pages[index];
+		}
+
+		@Override
+		public Value get(final Object key) {
+			final Object[] page = page(key, false);
+			if (page == null)
+				return null;
+			final Object value = page[2 * (((Node) key).id & (PAGE_SIZE - 1)) + 1];
+			return value == NULL ? null : unmask(value);
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			final Object[] page = page(key, false);
+			return page != null && page[2 * (((Node) key).id & (PAGE_SIZE - 1)) + 1] != null;
+		}
+
+		@Override
+		public Value put(final ANode key, final Value value) {
+			final Object[] page = page(key, true);
+			final int slot = 2 * (key.id() & (PAGE_SIZE - 1));
+			final Object old = page[slot + 1];
+			if (old == null)
+				size++;
+			page[slot] = key;
+			page[slot + 1] = value == null ? NULL : value;
+			return old == null || old == NULL ? null : unmask(old);
+		}
+
+		@Override
+		public Value remove(final Object key) {
+			final Object[] page = page(key, false);
+			if (page == null)
+				return null;
+			final int slot = 2 * (((Node) key).id & (PAGE_SIZE - 1));
+			final Object old = page[slot + 1];
+			if (old == null)
+				return null;
+			size--;
+			final Object[] ownPage = own(((Node) key).id >>> PAGE_BITS);
+			ownPage[slot] = null;
+			ownPage[slot + 1] = null;
+			return old == NULL ? null : unmask(old);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			pages = new Object[0][];
+			size = 0;
+			shared = new boolean[0];
+		}
+
+		@Override
+		public Set<Map.Entry<ANode, Value>> entrySet() {
+			return new AbstractSet<Map.Entry<ANode, Value>>() {
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public Iterator<Map.Entry<ANode, Value>> iterator() {
+					return new Iterator<Map.Entry<ANode, Value>>() {
+
+						/** Indeks naslednjega vozlisca, ki ga je treba pregledati. */
+						private int next = advance(0);
+
+						/** Poisce prvo vozlisce z vrednostjo atributa od danega indeksa naprej. */
+						private int advance(int id) {
+							while ((id >>> PAGE_BITS) < pages.length) {
+								final Object[] page = pages[id >>> PAGE_BITS];
+								if (page == null) {
+									id = ((id >>> PAGE_BITS) + 1) << PAGE_BITS;
+									continue;
+								}
+								if (page[2 * (id & (PAGE_SIZE - 1)) + 1] != null)
+									return id;
+								id++;
+							}
+							return -1;
+						}
+
+						@Override
+						public boolean hasNext() {
+							return next >= 0;
+						}
+
+						@Override
+						@SuppressWarnings("unchecked")
+						public Map.Entry<ANode, Value> next() {
+							if (next < 0)
+								throw new NoSuchElementException();
+							final Object[] page = pages[next >>> PAGE_BITS];
+							final int slot = 2 * (next & (PAGE_SIZE - 1));
+							final Object value = page[slot + 1];
+							next = advance(next + 1);
+							return new AbstractMap.SimpleImmutableEntry<ANode, Value>((ANode) page[slot],
+									value == NULL ? null : unmask(value));
+						}
+
+					};
+				}
+
+			};
+		}
+
+		@SuppressWarnings("unchecked")
+		private Value unmask(final Object value) {
+			return (Value) value;
+		}
+
+	}
+
 	// --- OBISKOVALCI ---
 
 	/**
@@ -0,0 +1,285 @@
+package pins24.common;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Objektna datoteka: prevedena enota programa.
+ *
+ * Vse oznake enote so lokalne, razen izvoznih in uvoznih oznak. Izvozne oznake
+ * so oznake funkcij, ki jih enota definira za druge enote, uvozne oznake pa
+ * oznake funkcij, ki jih enota le deklarira in jih definira druga enota ali
+ * stroj. Oboje je podano s preslikavo imena funkcije v ime oznake znotraj
+ * enote, saj ima lahko funkcija v enoti drugacno ime oznake kot v programu.
+ * Povezovalnik enot (glej {@code pins24.phase.Linker}) oznake vseh enot
+ * preimenuje tako, da se oznake razlicnih enot ne prekrivajo.
+ *
+ * Razhroscevalni klicni zapisi ukazov {@link PDM.CALL} in {@link PDM.RETN} se v
+ * datoteko ne zapisejo, lokacije ukazov pa se.
+ */
+public class Obj {
+
+	/** Oznaka na zacetku objektne datoteke ("PINO"). */
+	private static final int MAGIC = 0x50494e4f;
+
+	/** Razlicica zapisa objektne datoteke. */
+	private static final int VERSION = 1;
+
+	/** Ime enote (ime izvorne datoteke). */
+	public final String name;
+
+	/** Ukazi za inicializacijo staticnih spremenljivk enote. */
+	public final List<PDM.CodeInstr> initCode;
+
+	/** Ukazi funkcij enote. */
+	public final List<PDM.CodeInstr> funsCode;
+
+	/** Ukazi, ki predstavljajo podatke enote. */
+	public final List<PDM.DataInstr> data;
+
+	/** Izvozne oznake: preslikava imena funkcije v ime oznake v enoti. */
+	public final Map<String, String> exports;
+
+	/** Uvozne oznake: preslikava imena funkcije v ime oznake v enoti. */
+	public final Map<String, String> imports;
+
+	/**
+	 * Ustvari novo objektno datoteko.
+	 *
+	 * @param name     Ime enote.
+	 * @param initCode Ukazi za inicializacijo staticnih spremenljivk enote.
+	 * @param funsCode Ukazi funkcij enote.
+	 * @param data     Ukazi, ki predstavljajo podatke enote.
+	 * @param exports  Izvozne oznake.
+	 * @param imports  Uvozne oznake.
+	 */
+	public Obj(final String name, final List<PDM.CodeInstr> initCode, final List<PDM.CodeInstr> funsCode,
+			final List<PDM.DataInstr> data, final Map<String, String> exports, final Map<String, String> imports) {
+		this.name = name;
+		this.initCode = Collections.unmodifiableList(initCode);
+		this.funsCode = Collections.unmodifiableList(funsCode);
+		this.data = Collections.unmodifiableList(data);
+		this.exports = Collections.unmodifiableMap(exports);
+		this.imports = Collections.unmodifiableMap(imports);
+	}
+
+	// --- ZAPIS ---
+
+	private static final int LABEL = 1;
+	private static final int SIZE = 2;
+	private static final int DATA = 3;
+	private static final int INIT = 4;
+	private static final int LOAD = 5;
+	private static final int SAVE = 6;
+	private static final int POPN = 7;
+	private static final int PUSH = 8;
+	private static final int NAME = 9;
+	private static final int REGN = 10;
+	private static final int OPER = 11;
+	private static final int UJMP = 12;
+	private static final int CJMP = 13;
+	private static final int CALL = 14;
+	private static final int RETN = 15;
+
+	// The upper bits of an instruction's tag tell where its location is:
+	// most instructions share the location of the previous one.
+	private static final int NO_LOC = 0x00;
+	private static final int SAME_LOC = 0x10;
+	private static final int NEW_LOC = 0x20;
+	private static final int LOC_MASK = 0x30;
+
+	/**
+	 * Prebere objektno datoteko.
+	 *
+	 * @param objFile Objektna datoteka.
+	 * @return Prevedena enota.
+	 * @throws IOException Ce datoteke ni mogoce prebrati ali ni pravega zapisa.
+	 */
+	public static Obj read(final Path objFile) throws IOException {
+		return read(objFile, 0);
+	}
+
+	/**
+	 * Prebere objektno datoteko in premakne lokacije vseh ukazov za podano
+	 * stevilo vrstic.
+	 *
+	 * @param objFile Objektna datoteka.
+	 * @param lines   Stevilo vrstic.
+	 * @return Prevedena enota.
+	 * @throws IOException Ce datoteke ni mogoce prebrati ali ni pravega zapisa.
+	 */
+	public static Obj read(final Path objFile, final int lines) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(objFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not an object file: " + objFile);
+			final String name = in.readUTF();
+			final Map<String, String> exports = readLabels(in);
+			final Map<String, String> imports = readLabels(in);
+			final List<PDM.CodeInstr> initCode = readInstrs(in, PDM.CodeInstr.class, lines);
+			final List<PDM.CodeInstr> funsCode = readInstrs(in, PDM.CodeInstr.class, lines);
+			final List<PDM.DataInstr> data = readInstrs(in, PDM.DataInstr.class, lines);
+			return new Obj(name, initCode, funsCode, data, exports, imports);
+		}
+	}
+
+	/**
+	 * Zapise objektno datoteko. Datoteka se zamenja v celoti, zato hkratni
+	 * prevajalniki nikoli ne preberejo napol zapisane datoteke.
+	 *
+	 * @param objFile Objektna datoteka.
+	 * @throws IOException Ce datoteke ni mogoce zapisati.
+	 */
+	public void write(final Path objFile) throws IOException {
+		write(objFile, 0);
+	}
+
+	/**
+	 * Zapise objektno datoteko, v kateri so lokacije vseh ukazov premaknjene za
+	 * podano stevilo vrstic.
+	 *
+	 * @param objFile Objektna datoteka.
+	 * @param lines   Stevilo vrstic.
+	 * @throws IOException Ce datoteke ni mogoce zapisati.
+	 */
+	public void write(final Path objFile, final int lines) throws IOException {
+		final Path tmpFile = objFile.resolveSibling(objFile.getFileName() + "." + ProcessHandle.current().pid() + "."
+				+ Thread.currentThread().threadId() + ".tmp");
+		try {
+			try (final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(name);
+				writeLabels(out, exports);
+				writeLabels(out, imports);
+				writeInstrs(out, initCode, lines);
+				writeInstrs(out, funsCode, lines);
+				writeInstrs(out, data, lines);
+			}
+			Files.move(tmpFile, objFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	private static Map<String, String> readLabels(final DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		final Map<String, String> labels = new LinkedHashMap<String, String>();
+		for (int label = 0; label < count; label++)
+			labels.put(in.readUTF(), in.readUTF());
+		return labels;
+	}
+
+	private static void writeLabels(final DataOutputStream out, final Map<String, String> labels)
+			throws IOException {
+		out.writeInt(labels.size());
+		for (final Map.Entry<String, String> label : labels.entrySet()) {
+			out.writeUTF(label.getKey());
+			out.writeUTF(label.getValue());
+		}
+	}
+
+	private static <Instr extends PDM.Instruction> List<Instr> readInstrs(final DataInputStream in,
+			final Class<Instr> kind, final int lines) throws IOException {
+		final int count = in.readInt();
+		final List<Instr> instrs = new ArrayList<Instr>(count);
+		Report.Location loc = null;
+		for (int instr = 0; instr < count; instr++) {
+			final int tag = in.readUnsignedByte();
+			switch (tag & LOC_MASK) {
+			case NO_LOC -> loc = null;
+			case SAME_LOC -> {
+			}
+			case NEW_LOC -> loc = new Report.Location(in.readInt() + lines, in.readInt(), in.readInt() + lines,
+					in.readInt());
+			default -> throw new IOException("Unknown location " + tag + ".");
+			}
+			final PDM.INSTR read = readInstr(in, tag & ~LOC_MASK, loc);
+			if (!kind.isInstance(read))
+				throw new IOException("Misplaced instruction " + read + ".");
+			instrs.add(kind.cast(read));
+		}
+		return instrs;
+	}
+
+	private static void writeInstrs(final DataOutputStream out, final List<? extends PDM.Instruction> instrs,
+			final int lines) throws IOException {
+		out.writeInt(instrs.size());
+		Report.Location prevLoc = null;
+		for (final PDM.Instruction instr : instrs) {
+			final Report.Location loc = ((PDM.INSTR) instr).debugLocation;
+			if (loc == null)
+				out.writeByte(kind((PDM.INSTR) instr) | NO_LOC);
+			else if (loc.equals(prevLoc))
+				out.writeByte(kind((PDM.INSTR) instr) | SAME_LOC);
+			else {
+				out.writeByte(kind((PDM.INSTR) instr) | NEW_LOC);
+				out.writeInt(loc.begLine() + lines);
+				out.writeInt(loc.begColumn());
+				out.writeInt(loc.endLine() + lines);
+				out.writeInt(loc.endColumn());
+			}
+			writeOperand(out, (PDM.INSTR) instr);
+			prevLoc = loc;
+		}
+	}
+
+	private static PDM.INSTR readInstr(final DataInputStream in, final int kind, final Report.Location loc)
+			throws IOException {
+		return switch (kind) {
+		case LABEL -> new PDM.LABEL(in.readUTF(), loc);
+		case SIZE -> new PDM.SIZE(in.readInt(), loc);
+		case DATA -> new PDM.DATA(in.readInt(), loc);
+		case INIT -> new PDM.INIT(loc);
+		case LOAD -> new PDM.LOAD(loc);
+		case SAVE -> new PDM.SAVE(loc);
+		case POPN -> new PDM.POPN(loc);
+		case PUSH -> new PDM.PUSH(in.readInt(), loc);
+		case NAME -> new PDM.NAME(in.readUTF(), loc);
+		case REGN -> new PDM.REGN(PDM.REGN.Reg.values()[in.readUnsignedByte()], loc);
+		case OPER -> new PDM.OPER(PDM.OPER.Oper.values()[in.readUnsignedByte()], loc);
+		case UJMP -> new PDM.UJMP(loc);
+		case CJMP -> new PDM.CJMP(loc);
+		case CALL -> new PDM.CALL(null, loc);
+		case RETN -> new PDM.RETN(null, loc);
+		default -> throw new IOException("Unknown instruction " + kind + ".");
+		};
+	}
+
+	private static int kind(final PDM.INSTR instr) {
+		return switch (instr) {
+		case PDM.LABEL __ -> LABEL;
+		case PDM.SIZE __ -> SIZE;
+		case PDM.DATA __ -> DATA;
+		case PDM.INIT __ -> INIT;
+		case PDM.LOAD __ -> LOAD;
+		case PDM.SAVE __ -> SAVE;
+		case PDM.POPN __ -> POPN;
+		case PDM.PUSH __ -> PUSH;
+		case PDM.NAME __ -> NAME;
+		case PDM.REGN __ -> REGN;
+		case PDM.OPER __ -> OPER;
+		case PDM.UJMP __ -> UJMP;
+		case PDM.CJMP __ -> CJMP;
+		case PDM.CALL __ -> CALL;
+		case PDM.RETN __ -> RETN;
+		default -> throw new Report.InternalError();
+		};
+	}
+
+	private static void writeOperand(final DataOutputStream out, final PDM.INSTR instr) throws IOException {
+		switch (instr) {
+		case PDM.LABEL i -> out.writeUTF(i.name);
+		case PDM.SIZE i -> out.writeInt(i.size);
+		case PDM.DATA i -> out.writeInt(i.intc);
+		case PDM.PUSH i -> out.writeInt(i.intc);
+		case PDM.NAME i -> out.writeUTF(i.name);
+		case PDM.REGN i -> out.writeByte(i.regn.ordinal());
+		case PDM.OPER i -> out.writeByte(i.oper.ordinal());
+		default -> {
+		}
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package pins24.common;
 
+import java.io.PrintStream;
+
 /**
  * Izpis obvestil, opozoril in napak.
  */
@@ -57,13 +59,33 @@ public class Report {
 
 	}
 
+	/**
+	 * Izhod za obvestila in opozorila. Vsaka nit (in niti, ki jih ustvari) ima
+	 * svojega, da streznik obvestila vsake zahteve poslje njenemu odjemalcu.
+	 */
+	private static final InheritableThreadLocal<PrintStream> output = new InheritableThreadLocal<PrintStream>() {
+		@Override
+		protected PrintStream initialValue() {
+			return System.out;
+		}
+	};
+
+	/**
+	 * Nastavi izhod za obvestila in opozorila trenutne niti.
+	 * 
+	 * @param stream Izhod za obvestila in opozorila.
+	 */
+	public static void setOutput(final PrintStream stream) {
+		output.set(stream);
+	}
+
 	/**
 	 * Izpis splosnega obvestila.
 	 * 
 	 * @param message Obvestilo.
 	 */
 	public static void info(final String message) {
-		System.out.println(":-) " + message);
+		output.get().println(":-) " + message);
 	}
 
 	/**
@@ -73,7 +95,7 @@ public class Report {
 	 * @param message  Obvestilo.
 	 */
 	public static void info(final Locatable location, final String message) {
-		System.out.println(":-) " + location + " " + message);
+		output.get().println(":-) " + location + " " + message);
 	}
 
 	/**
@@ -82,7 +104,7 @@ public class Report {
 	 * @param message Opozorilo.
 	 */
 	public static void warning(final String message) {
-		System.out.println(":-o " + message);
+		output.get().println(":-o " + message);
 	}
 
 	/**
@@ -92,7 +114,7 @@ public class Report {
 	 * @param message  Opozorilo.
 	 */
 	public static void warning(final Locatable location, final String message) {
-		System.out.println(":-o " + location + " " + message);
+		output.get().println(":-o " + location + " " + message);
 	}
 
 	/**
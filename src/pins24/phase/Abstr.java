@@ -70,8 +70,20 @@ public class Abstr {
 	 * @return Abstraktno sintaksno drevo z dodanimi atributi abstraktne sintakse.
 	 */
 	public static AttrAST constructAST(SynAn synAn) {
-		final HashMap<AST.Node, Report.Locatable> attrLoc = new HashMap<AST.Node, Report.Locatable>();
-		final AST.Node ast = synAn.parse(attrLoc);
+		return constructAST(synAn, null);
+	}
+
+	/**
+	 * S klicem sintaksnega analizatorja zgradi abstraktno sintaksno drevo, ki
+	 * vsebuje tudi funkcije prevedene knjiznice.
+	 * 
+	 * @param synAn Sintaksni analizator.
+	 * @param lib   Prevedena knjiznica ali {@code null}.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi abstraktne sintakse.
+	 */
+	public static AttrAST constructAST(SynAn synAn, Lib lib) {
+		final AST.NodeMap<AST.Node, Report.Locatable> attrLoc = new AST.NodeMap<AST.Node, Report.Locatable>();
+		final AST.Node ast = synAn.parse(attrLoc, lib);
 		return new AttrAST(new AST.AttrAST(ast), Collections.unmodifiableMap(attrLoc));
 	}
 
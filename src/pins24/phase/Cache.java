@@ -0,0 +1,462 @@
+package pins24.phase;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Predpomnilnik prevedenih funkcij.
+ *
+ * Vsaka funkcija najvisjega nivoja s telesom ima kljuc, ki je zgostitev vrstic
+ * izvorne kode, v katerih je funkcija, stolpca, v katerem se zacne (v vrstici
+ * je lahko vec definicij), in vrstic vseh definicij najvisjega nivoja, ki jih
+ * funkcija neposredno ali posredno uporablja. Glave uporabljenih
+ * definicij ne zadoscajo, saj je optimizacija (glej {@link Optim})
+ * medproceduralna: koda funkcije je odvisna tudi od teles funkcij, ki jih klice.
+ * Uporabljene definicije se dolocijo po imenih, ki se pojavijo v funkciji, zato
+ * jih je lahko vec, kot jih funkcija zares uporablja. Ker vrstice dolocajo tudi
+ * lokacije v funkciji (razen prve vrstice), kljuc ostane enak, ce se funkcija
+ * le premakne.
+ *
+ * Prevedena koda funkcije se shrani v imenik predpomnilnika kot objektna
+ * datoteka, ki izvaza le to funkcijo (glej {@link CodeGen#objects(CodeGen.AttrAST,
+ * Collection)}), vrstice lokacij pa so v njej stete od prve vrstice funkcije. Funkcija, katere kljuc je v predpomnilniku in je ne
+ * uporablja nobena funkcija, ki jo je treba prevesti, se pred semanticno
+ * analizo nadomesti z deklaracijo brez telesa, generiranje kode (glej
+ * {@link CodeGen#generate(Memory.AttrAST, Map)}) pa namesto nje vstavi kodo iz
+ * predpomnilnika.
+ */
+public class Cache {
+
+	/**
+	 * Razlicica kljucev; poveca se ob vsaki spremembi prevajalnika, ki spremeni
+	 * generirano kodo.
+	 */
+	private static final int VERSION = 3;
+
+	/** Imenik predpomnilnika. */
+	public final Path dir;
+
+	/**
+	 * Zgostitev vrstic definicije in imena, ki se v njej pojavijo.
+	 *
+	 * @param own       Zgostitev vrstic definicije.
+	 * @param firstLine Prva vrstica definicije.
+	 * @param lastLine  Zadnja vrstica definicije.
+	 * @param names     Imena, ki se pojavijo v definiciji.
+	 */
+	private record Hashed(byte[] own, byte[] firstLine, byte[] lastLine, String[] names) {
+	}
+
+	/**
+	 * Zgostitve definicij iz iskanj, ki so podala spremenjene definicije (glej
+	 * {@link #lookup(Abstr.AttrAST, Set, boolean, boolean, String...)}).
+	 */
+	private final Map<AST.MainDef, Hashed> hashed = Collections
+			.synchronizedMap(new WeakHashMap<AST.MainDef, Hashed>());
+
+	/**
+	 * Ustvari nov predpomnilnik.
+	 *
+	 * @param dir Imenik predpomnilnika (ustvari se ob prvem shranjevanju).
+	 */
+	public Cache(final Path dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Prevajana enota, v kateri so funkcije iz predpomnilnika le deklarirane.
+	 */
+	public class Unit {
+
+		/**
+		 * Abstraktno sintaksno drevo enote, v katerem so funkcije iz predpomnilnika
+		 * nadomescene z deklaracijami.
+		 */
+		public final Abstr.AttrAST attrAST;
+
+		/** Prevedena koda funkcij iz predpomnilnika (po deklaracijah). */
+		public final Map<AST.FunDef, Obj> hits;
+
+		/** Kljuci funkcij, ki se prevedejo. */
+		private final Map<AST.FunDef, String> keys;
+
+		private Unit(final Abstr.AttrAST attrAST, final Map<AST.FunDef, Obj> hits, final Map<AST.FunDef, String> keys) {
+			this.attrAST = attrAST;
+			this.hits = Collections.unmodifiableMap(hits);
+			this.keys = keys;
+		}
+
+		/**
+		 * Shrani prevedeno kodo funkcij, ki jih se ni v predpomnilniku.
+		 *
+		 * @param codegenAttrAST Abstraktno sintaksno drevo enote z dodanimi atributi
+		 *                       generiranja kode.
+		 */
+		public void store(final CodeGen.AttrAST codegenAttrAST) {
+			final List<AST.FunDef> funDefs = new ArrayList<AST.FunDef>();
+			for (final Map.Entry<AST.FunDef, String> entry : keys.entrySet())
+				if (!Files.exists(entryFile(entry.getValue())))
+					funDefs.add(entry.getKey());
+			for (final Map.Entry<AST.FunDef, Obj> obj : CodeGen.objects(codegenAttrAST, funDefs).entrySet()) {
+				final Path entryFile = entryFile(keys.get(obj.getKey()));
+				try {
+					Files.createDirectories(entryFile.getParent());
+					obj.getValue().write(entryFile, -firstLine(attrAST, obj.getKey()));
+				} catch (final IOException __) {
+					Report.warning("Cannot write to the compilation cache '" + dir + "'.");
+					return;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Poisce funkcije enote v predpomnilniku.
+	 *
+	 * @param attrAST      Abstraktno sintaksno drevo enote.
+	 * @param memoize      Ali se enota prevede s tabelo rezultatov klicev (glej
+	 *                     {@link Optim#optimize(SemAn.AttrAST, boolean, boolean)}).
+	 * @param stackNew     Ali se enota prevede z obmocji klicev funkcije
+	 *                     {@code new} v klicnem zapisu.
+	 * @param srcFileNames Imena izvornih datotek enote.
+	 * @return Enota, v kateri so funkcije iz predpomnilnika le deklarirane.
+	 */
+	public Unit lookup(final Abstr.AttrAST attrAST, final boolean memoize, final boolean stackNew,
+			final String... srcFileNames) {
+		return lookup(attrAST, null, memoize, stackNew, srcFileNames);
+	}
+
+	/**
+	 * Poisce funkcije enote v predpomnilniku, pri cemer ponovno zgosti le
+	 * spremenjene definicije (glej {@link IncrSynAn.Result}).
+	 *
+	 * Definicija, ki ni spremenjena, je enaka kot ob prejsnjem iskanju, zato ima
+	 * enake vrstice, razen morda prve in zadnje, ki si ju lahko deli s sosednjima
+	 * definicijama. Ce sta tudi ti enaki, se uporabita zgostitev njenih vrstic in
+	 * seznam imen iz prejsnjega iskanja. Kljuci se nato izracunajo iz zgostitev
+	 * definicij, kar je precej ceneje od zgoscevanja izvorne kode.
+	 *
+	 * @param attrAST      Abstraktno sintaksno drevo enote.
+	 * @param changed      Definicije, ki so se spremenile od prejsnjega iskanja, ali
+	 *                     {@code null}, ce naj se zgostijo vse definicije.
+	 * @param memoize      Ali se enota prevede s tabelo rezultatov klicev (glej
+	 *                     {@link Optim#optimize(SemAn.AttrAST, boolean, boolean)}).
+	 * @param stackNew     Ali se enota prevede z obmocji klicev funkcije
+	 *                     {@code new} v klicnem zapisu.
+	 * @param srcFileNames Imena izvornih datotek enote.
+	 * @return Enota, v kateri so funkcije iz predpomnilnika le deklarirane.
+	 */
+	@SuppressWarnings("unchecked")
+	public Unit lookup(final Abstr.AttrAST attrAST, final Set<AST.MainDef> changed, final boolean memoize,
+			final boolean stackNew, final String... srcFileNames) {
+		final List<AST.MainDef> defs = new ArrayList<AST.MainDef>(((AST.Nodes<AST.MainDef>) attrAST.ast).getAll());
+		final int count = defs.size();
+		final Map<String, Integer> indices = new HashMap<String, Integer>();
+		for (int def = 0; def < count; def++)
+			indices.putIfAbsent(defs.get(def).name, def);
+
+		// Source lines of every definition and the definitions it names.
+		final byte[] src = read(srcFileNames);
+		final int[] lineStarts = lineStarts(src);
+		final MessageDigest digest = newDigest();
+		final byte[][] own = new byte[count][];
+		final int[][] refs = new int[count][];
+		final Set<String> names = new HashSet<String>();
+		final AST.FullVisitor<Object, Object> namesCollector = new AST.FullVisitor<Object, Object>() {
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final Object arg) {
+				names.add(varExpr.name);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Object arg) {
+				names.add(callExpr.name);
+				return AST.FullVisitor.super.visit(callExpr, arg);
+			}
+
+		};
+		for (int def = 0; def < count; def++) {
+			final AST.MainDef mainDef = defs.get(def);
+			final Report.Location loc = attrAST.attrLoc.get(mainDef).location();
+			final int begLine = Math.min(loc.begLine(), lineStarts.length - 1);
+			final int endLine = Math.min(loc.endLine() + 1, lineStarts.length - 1);
+			final int lastLine = Math.max(begLine, endLine - 1);
+			Hashed hashed = changed == null || changed.contains(mainDef) ? null : this.hashed.get(mainDef);
+			if (hashed == null || !sameLine(hashed.firstLine(), src, lineStarts, begLine)
+					|| !sameLine(hashed.lastLine(), src, lineStarts, lastLine)) {
+				digest.update(src, lineStarts[begLine], lineStarts[endLine] - lineStarts[begLine]);
+				digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(loc.begColumn()).array());
+				mainDef.accept(namesCollector, null);
+				hashed = new Hashed(digest.digest(), line(src, lineStarts, begLine), line(src, lineStarts, lastLine),
+						names.toArray(new String[names.size()]));
+				names.clear();
+				if (changed != null)
+					this.hashed.put(mainDef, hashed);
+			}
+			own[def] = hashed.own();
+			refs[def] = Arrays.stream(hashed.names()).map(indices::get).filter(Objects::nonNull).mapToInt(i -> i)
+					.toArray();
+		}
+		final byte[][] deep = deepHashes(own, refs);
+
+		final Map<AST.FunDef, String> keys = new HashMap<AST.FunDef, String>();
+		final Obj[] entries = new Obj[count];
+		final boolean[] missed = new boolean[count];
+		for (int def = 0; def < count; def++) {
+			if (!(defs.get(def) instanceof AST.FunDef funDef) || funDef.stmts.size() == 0)
+				continue;
+			digest.update((byte) VERSION);
+			digest.update((byte) ((memoize ? 1 : 0) | (stackNew ? 2 : 0)));
+			digest.update(deep[def]);
+			final String key = HexFormat.of().formatHex(digest.digest());
+			keys.put(funDef, key);
+			try {
+				entries[def] = Obj.read(entryFile(key), firstLine(attrAST, funDef));
+			} catch (final IOException __) {
+				missed[def] = true;
+			}
+		}
+
+		// Functions used by compiled functions are compiled as well, as their
+		// bodies are needed to optimize the callers.
+		final boolean[] compiled = reach(missed, refs);
+		final Map<AST.FunDef, Obj> hits = new HashMap<AST.FunDef, Obj>();
+		for (int def = 0; def < count; def++)
+			if (entries[def] != null && !compiled[def])
+				hits.put((AST.FunDef) defs.get(def), entries[def]);
+		if (hits.isEmpty())
+			return new Unit(attrAST, hits, keys);
+
+		final List<AST.MainDef> prunedDefs = new ArrayList<AST.MainDef>(count);
+		final Map<AST.FunDef, Obj> stubs = new HashMap<AST.FunDef, Obj>();
+		for (final AST.MainDef def : defs) {
+			final Obj obj = hits.get(def);
+			if (obj == null) {
+				prunedDefs.add(def);
+				continue;
+			}
+			final AST.FunDef funDef = (AST.FunDef) def;
+			keys.remove(funDef);
+			// The declaration takes over the numbers of the definition and thus its
+			// attributes.
+			final AST.FunDef stub = new AST.FunDef(funDef.name, funDef.pars.getAll(), List.of());
+			stub.setId(funDef.id());
+			stub.setSymbol(funDef.symbol());
+			stub.pars.setId(funDef.pars.id());
+			stub.stmts.setId(funDef.stmts.id());
+			prunedDefs.add(stub);
+			stubs.put(stub, obj);
+		}
+		final AST.Nodes<AST.MainDef> pruned = new AST.Nodes<AST.MainDef>(prunedDefs);
+		pruned.setId(attrAST.ast.id());
+		return new Unit(new Abstr.AttrAST(new AST.AttrAST(pruned), attrAST.attrLoc), stubs, keys);
+	}
+
+	/**
+	 * Vrne datoteko s prevedeno kodo funkcije.
+	 *
+	 * @param key Kljuc funkcije.
+	 * @return Datoteka s prevedeno kodo funkcije.
+	 */
+	private Path entryFile(final String key) {
+		return dir.resolve(key.substring(0, 2)).resolve(key.substring(2) + ".pins24o");
+	}
+
+	private static int firstLine(final Abstr.AttrAST attrAST, final AST.FunDef funDef) {
+		return attrAST.attrLoc.get(funDef).location().begLine();
+	}
+
+	/**
+	 * Prebere izvorne datoteke enote (zaporedoma, tako kot jih prebere
+	 * leksikalni analizator).
+	 *
+	 * @param srcFileNames Imena izvornih datotek.
+	 * @return Izvorna koda enote.
+	 */
+	private static byte[] read(final String... srcFileNames) {
+		final ByteArrayOutputStream src = new ByteArrayOutputStream();
+		for (final String srcFileName : srcFileNames) {
+			try {
+				src.write(Files.readAllBytes(Path.of(srcFileName)));
+			} catch (final IOException __) {
+				throw new Report.Error("Cannot read source file '" + srcFileName + "'.");
+			}
+		}
+		return src.toByteArray();
+	}
+
+	/**
+	 * Doloci zacetke vrstic izvorne kode.
+	 *
+	 * @param src Izvorna koda.
+	 * @return Odmiki zacetkov vrstic (po stevilkah vrstic, od 1 dalje) in odmik
+	 *         konca izvorne kode.
+	 */
+	private static int[] lineStarts(final byte[] src) {
+		int lines = 1;
+		for (final byte b : src)
+			if (b == '\n')
+				lines++;
+		final int[] lineStarts = new int[lines + 2];
+		int line = 1;
+		for (int pos = 0; pos < src.length; pos++)
+			if (src[pos] == '\n')
+				lineStarts[++line] = pos + 1;
+		lineStarts[lines + 1] = src.length;
+		return lineStarts;
+	}
+
+	/**
+	 * Vrne vrstico izvorne kode.
+	 *
+	 * @param src        Izvorna koda.
+	 * @param lineStarts Zacetki vrstic izvorne kode.
+	 * @param line       Stevilka vrstice.
+	 * @return Vrstica izvorne kode (prazna, ce je za koncem izvorne kode).
+	 */
+	private static byte[] line(final byte[] src, final int[] lineStarts, final int line) {
+		final int end = Math.min(line + 1, lineStarts.length - 1);
+		return Arrays.copyOfRange(src, lineStarts[line], lineStarts[end]);
+	}
+
+	/**
+	 * Preveri, ali je vrstica izvorne kode enaka podani.
+	 *
+	 * @param text       Podana vrstica.
+	 * @param src        Izvorna koda.
+	 * @param lineStarts Zacetki vrstic izvorne kode.
+	 * @param line       Stevilka vrstice.
+	 * @return Ali je vrstica izvorne kode enaka podani.
+	 */
+	private static boolean sameLine(final byte[] text, final byte[] src, final int[] lineStarts, final int line) {
+		final int end = Math.min(line + 1, lineStarts.length - 1);
+		return Arrays.equals(text, 0, text.length, src, lineStarts[line], lineStarts[end]);
+	}
+
+	/**
+	 * Doloci definicije, ki so dosegljive iz podanih definicij.
+	 *
+	 * @param roots Zacetne definicije.
+	 * @param refs  Definicije, ki jih posamezna definicija uporablja.
+	 * @return Dosegljive definicije (vkljucno z zacetnimi).
+	 */
+	private static boolean[] reach(final boolean[] roots, final int[][] refs) {
+		final boolean[] reached = roots.clone();
+		final ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+		for (int def = 0; def < roots.length; def++)
+			if (roots[def])
+				work.add(def);
+		while (!work.isEmpty())
+			for (final int ref : refs[work.poll()])
+				if (!reached[ref]) {
+					reached[ref] = true;
+					work.add(ref);
+				}
+		return reached;
+	}
+
+	/**
+	 * Izracuna zgostitve definicij skupaj z vsemi definicijami, ki jih uporabljajo.
+	 *
+	 * Definicije, ki se uporabljajo med seboj (krepko povezane komponente), dobijo
+	 * skupno zgostitev, ki ji vsaka doda se zgostitev svojih vrstic. Komponente se
+	 * obdelajo v vrstnem redu, v katerem jih najde Tarjanov algoritem, tj. za
+	 * vsemi komponentami, ki jih uporabljajo.
+	 *
+	 * @param own  Zgostitve vrstic definicij.
+	 * @param refs Definicije, ki jih posamezna definicija uporablja.
+	 * @return Zgostitve definicij.
+	 */
+	private static byte[][] deepHashes(final byte[][] own, final int[][] refs) {
+		final int count = own.length;
+		final byte[][] deep = new byte[count][];
+		final int[] index = new int[count];
+		final int[] low = new int[count];
+		final boolean[] onStack = new boolean[count];
+		final int[] stack = new int[count];
+		final int[] path = new int[count];
+		final int[] nextRef = new int[count];
+		Arrays.fill(index, -1);
+		int counter = 0;
+		int stackSize = 0;
+		for (int root = 0; root < count; root++) {
+			if (index[root] >= 0)
+				continue;
+			int pathSize = 0;
+			index[root] = low[root] = counter++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			path[pathSize++] = root;
+			nextRef[root] = 0;
+			while (pathSize > 0) {
+				final int def = path[pathSize - 1];
+				if (nextRef[def] < refs[def].length) {
+					final int ref = refs[def][nextRef[def]++];
+					if (index[ref] < 0) {
+						index[ref] = low[ref] = counter++;
+						stack[stackSize++] = ref;
+						onStack[ref] = true;
+						path[pathSize++] = ref;
+						nextRef[ref] = 0;
+					} else if (onStack[ref])
+						low[def] = Math.min(low[def], index[ref]);
+					continue;
+				}
+				pathSize--;
+				if (pathSize > 0)
+					low[path[pathSize - 1]] = Math.min(low[path[pathSize - 1]], low[def]);
+				if (low[def] != index[def])
+					continue;
+
+				int first = stackSize;
+				do {
+					first--;
+					onStack[stack[first]] = false;
+				} while (stack[first] != def);
+				final Set<Integer> members = new HashSet<Integer>();
+				for (int member = first; member < stackSize; member++)
+					members.add(stack[member]);
+				final List<byte[]> parts = new ArrayList<byte[]>();
+				final List<byte[]> used = new ArrayList<byte[]>();
+				for (final int member : members) {
+					parts.add(own[member]);
+					for (final int ref : refs[member])
+						if (!members.contains(ref))
+							used.add(deep[ref]);
+				}
+				parts.sort(Arrays::compare);
+				used.sort(Arrays::compare);
+				final MessageDigest digest = newDigest();
+				for (final byte[] part : parts)
+					digest.update(part);
+				digest.update((byte) 0);
+				for (final byte[] part : used)
+					digest.update(part);
+				final byte[] component = digest.digest();
+				for (final int member : members) {
+					digest.update(own[member]);
+					digest.update(component);
+					deep[member] = digest.digest();
+				}
+				stackSize = first;
+			}
+		}
+		return deep;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException __) {
+			throw new Report.InternalError();
+		}
+	}
+
+}
@@ -22,17 +22,32 @@ public class CodeGen {
 	 * <li>({@link Abstr}) lokacija kode, ki pripada posameznemu vozliscu;</li>
 	 * <li>({@link SemAn}) definicija uporabljenega imena;</li>
 	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
+	 * <li>({@link Optim}) vrednost izraza, izracunana med prevajanjem;</li>
+	 * <li>({@link Optim}) velikost zacasne spremenljivke, ki hrani vrednost
+	 * izraza;</li>
+	 * <li>({@link Optim}) izraz, katerega zacasna spremenljivka ze hrani vrednost
+	 * danega izraza;</li>
+	 * <li>({@link Optim}) izrazi, ki se izracunajo pred zanko;</li>
+	 * <li>({@link Optim}) stevilka tabele, v kateri se hranijo rezultati klicev
+	 * funkcije;</li>
+	 * <li>({@link Optim}) velikost obmocja v klicnem zapisu, ki nadomesti klic
+	 * funkcije {@code new};</li>
+	 * <li>({@link Optim}) zanka, ki jo nadomesti klic funkcije {@code memcpy} ali
+	 * {@code memset};</li>
 	 * <li>({@link Memory}) klicni zapis funkcije;</li>
 	 * <li>({@link Memory}) dostop do parametra;</li>
 	 * <li>({@link Memory}) dostop do spremenljivke;</li>
-	 * <li>({@link CodeGen}) seznam ukazov, ki predstavljajo kodo programa;</li>
+	 * <li>({@link Memory}) dostop do zacasne spremenljivke;</li>
+	 * <li>({@link Memory}) dostop do obmocja v klicnem zapisu, ki nadomesti klic
+	 * funkcije {@code new};</li>
+	 * <li>({@link CodeGen}) obmocje ukazov, ki predstavljajo kodo programa;</li>
 	 * <li>({@link CodeGen}) seznam ukazov, ki predstavljajo podatke programa.</li>
 	 * </ol>
 	 */
 	public static class AttrAST extends Memory.AttrAST {
 
-		/** Atribut: seznam ukazov, ki predstavljajo kodo programa. */
-		public final Map<AST.Node, List<PDM.CodeInstr>> attrCode;
+		/** Atribut: obmocje ukazov, ki predstavljajo kodo programa. */
+		public final Map<AST.Node, Code> attrCode;
 
 		/** Atribut: seznam ukazov, ki predstavljajo podatke programa. */
 		public final Map<AST.Node, List<PDM.DataInstr>> attrData;
@@ -42,10 +57,10 @@ public class CodeGen {
 		 *
 		 * @param attrAST  Abstraktno sintaksno drevo z dodanimi atributi pomnilniske
 		 *                 predstavitve.
-		 * @param attrCode Attribut: seznam ukazov, ki predstavljajo kodo programa.
+		 * @param attrCode Attribut: obmocje ukazov, ki predstavljajo kodo programa.
 		 * @param attrData Attribut: seznam ukazov, ki predstavljajo podatke programa.
 		 */
-		public AttrAST(final Memory.AttrAST attrAST, final Map<AST.Node, List<PDM.CodeInstr>> attrCode,
+		public AttrAST(final Memory.AttrAST attrAST, final Map<AST.Node, Code> attrCode,
 				final Map<AST.Node, List<PDM.DataInstr>> attrData) {
 			super(attrAST);
 			this.attrCode = attrCode;
@@ -76,7 +91,7 @@ public class CodeGen {
 			super.desc(indent, node, false);
 			System.out.print(highlighted ? "\033[31m" : "");
 			if (attrCode.get(node) != null) {
-				List<PDM.CodeInstr> instrs = attrCode.get(node);
+				List<PDM.CodeInstr> instrs = attrCode.get(node).instrs();
 				if (instrs != null) {
 					if (indent > 0)
 						System.out.printf("%" + indent + "c", ' ');
@@ -107,6 +122,27 @@ public class CodeGen {
 
 	}
 
+	/**
+	 * Obmocje ukazov v seznamu ukazov funkcije.
+	 *
+	 * @param buffer Seznam ukazov funkcije (ali seznam ukazov za inicializacijo
+	 *               staticnih spremenljivk).
+	 * @param start  Indeks prvega ukaza v obmocju.
+	 * @param end    Indeks prvega ukaza za obmocjem.
+	 */
+	public record Code(List<PDM.CodeInstr> buffer, int start, int end) {
+
+		/**
+		 * Vrne ukaze v obmocju.
+		 *
+		 * @return Seznam ukazov v obmocju.
+		 */
+		public List<PDM.CodeInstr> instrs() {
+			return Collections.unmodifiableList(buffer.subList(start, end));
+		}
+
+	}
+
 	/**
 	 * Izracuna kodo programa
 	 *
@@ -116,14 +152,123 @@ public class CodeGen {
 	 *         predstavitve.
 	 */
 	public static AttrAST generate(final Memory.AttrAST memoryAttrAST) {
-		AttrAST attrAST = new AttrAST(memoryAttrAST, new HashMap<AST.Node, List<PDM.CodeInstr>>(),
-				new HashMap<AST.Node, List<PDM.DataInstr>>());
-		(new CodeGenerator(attrAST)).generate();
+		return generate(memoryAttrAST, Map.of());
+	}
+
+	/**
+	 * Izracuna kodo programa, pri cemer je koda nekaterih funkcij ze prevedena.
+	 *
+	 * Funkcija s prevedeno kodo je v drevesu le deklarirana (nima telesa), njena
+	 * koda in podatki pa so podani z objektno datoteko, ki izvaza le to funkcijo
+	 * (glej {@link Cache}). Oznake v kodi in podatkih se preimenujejo enako kot
+	 * oznake kode, ki se generira: oznaka funkcije in oznake gnezdenih funkcij po
+	 * {@code funDefNameOverrides}, anonimne oznake pa s stevcem anonimnih oznak.
+	 * Kodo in podatke take funkcije hranita atributa funkcije.
+	 *
+	 * @param memoryAttrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+	 *                      pomnilniske predstavitve.
+	 * @param splices       Prevedena koda deklariranih funkcij.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
+	 *         predstavitve.
+	 */
+	public static AttrAST generate(final Memory.AttrAST memoryAttrAST, final Map<AST.FunDef, Obj> splices) {
+		AttrAST attrAST = new AttrAST(memoryAttrAST, new AST.NodeMap<AST.Node, Code>(),
+				new AST.NodeMap<AST.Node, List<PDM.DataInstr>>());
+		(new CodeGenerator(attrAST, splices)).generate();
 		return attrAST;
 	}
 
+	/**
+	 * Sestavi objektno datoteko prevedene enote.
+	 *
+	 * Enota izvaza funkcije s telesom, ki so definirane na najvisjem nivoju, in
+	 * uvaza funkcije brez telesa (funkcije standardne knjiznice in funkcije drugih
+	 * enot). Klic funkcije {@code main} doda sele povezovalnik (glej
+	 * {@link Linker}).
+	 *
+	 * @param name    Ime enote.
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi generiranja
+	 *                kode.
+	 * @return Objektna datoteka.
+	 */
+	public static Obj object(final String name, final AttrAST attrAST) {
+		final CodeSegmentGenerator codeGenerator = new CodeSegmentGenerator(attrAST);
+		codeGenerator.generate();
+		final List<PDM.DataInstr> data = (new DataSegmentGenerator(attrAST)).dataSegment();
+		final Map<String, String> exports = new LinkedHashMap<String, String>();
+		final Map<String, String> imports = new LinkedHashMap<String, String>();
+		for (final AST.Node node : (AST.Nodes<?>) attrAST.ast) {
+			if (!(node instanceof AST.FunDef funDef))
+				continue;
+			(isDefined(attrAST, funDef) ? exports : imports).put(funDef.name, label(attrAST, funDef));
+		}
+		return new Obj(name, codeGenerator.codeInitSegment, codeGenerator.codeFunsSegment, data, exports, imports);
+	}
+
+	/**
+	 * Sestavi objektne datoteke posameznih funkcij najvisjega nivoja.
+	 *
+	 * Objektna datoteka funkcije vsebuje kodo funkcije in njenih gnezdenih funkcij
+	 * ter njihove podatke. Izvaza le to funkcijo, uvaza pa funkcije najvisjega
+	 * nivoja, ki jih klice; oznake staticnih spremenljivk in sistemskih funkcij
+	 * ostanejo nerazresene.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi generiranja
+	 *                kode.
+	 * @param funDefs Funkcije najvisjega nivoja s telesom.
+	 * @return Objektne datoteke funkcij (imena enot so imena funkcij).
+	 */
+	public static Map<AST.FunDef, Obj> objects(final AttrAST attrAST, final Collection<AST.FunDef> funDefs) {
+		final Map<String, AST.FunDef> funLabels = new HashMap<String, AST.FunDef>();
+		for (final AST.Node node : (AST.Nodes<?>) attrAST.ast)
+			if (node instanceof AST.FunDef funDef)
+				funLabels.put(label(attrAST, funDef), funDef);
+		final Map<AST.FunDef, Obj> objs = new LinkedHashMap<AST.FunDef, Obj>();
+		for (final AST.FunDef funDef : funDefs) {
+			final CodeSegmentGenerator codeGenerator = new CodeSegmentGenerator(attrAST);
+			codeGenerator.generate(funDef);
+			final List<PDM.DataInstr> data = (new DataSegmentGenerator(attrAST)).dataSegment(funDef);
+			final Set<String> labels = new HashSet<String>();
+			for (final List<? extends PDM.Instruction> instrs : List.of(codeGenerator.codeFunsSegment, data))
+				for (final PDM.Instruction instr : instrs)
+					if (instr instanceof PDM.LABEL label)
+						labels.add(label.name);
+			final Map<String, String> imports = new LinkedHashMap<String, String>();
+			for (final PDM.CodeInstr instr : codeGenerator.codeFunsSegment)
+				if (instr instanceof PDM.NAME ref && !labels.contains(ref.name) && funLabels.containsKey(ref.name))
+					imports.put(funLabels.get(ref.name).name, ref.name);
+			objs.put(funDef, new Obj(funDef.name, List.of(), codeGenerator.codeFunsSegment, data,
+					Map.of(funDef.name, label(attrAST, funDef)), imports));
+		}
+		return objs;
+	}
+
+	/**
+	 * Ali je koda funkcije v programu: funkcija ima telo ali pa je njena koda
+	 * vzeta iz ze prevedene enote.
+	 */
+	private static boolean isDefined(final AttrAST attrAST, final AST.FunDef funDef) {
+		return funDef.stmts.size() != 0 || attrAST.attrData.get(funDef) != null;
+	}
+
+	/**
+	 * Vrne oznako funkcije: prvi ukaz njene kode.
+	 */
+	private static String label(final AttrAST attrAST, final AST.FunDef funDef) {
+		return ((PDM.LABEL) attrAST.attrCode.get(funDef).instrs().getFirst()).name;
+	}
+
 	/**
 	 * Generiranje kode v abstraktnem sintaksnem drevesu.
+	 *
+	 * Koda vsake funkcije se zapisuje v en sam seznam ukazov, vozlisca pa si
+	 * zapomnijo le obmocje ukazov v njem (glej {@link Code}).
+	 *
+	 * Oznake funkcij se dolocijo v vrstnem redu programa, se preden se generira
+	 * koda, nato pa se koda definicij na vrhnjem nivoju generira vzporedno po
+	 * kosih (glej {@link Parallel}). Vsak kos steje anonimne oznake od 0, na koncu
+	 * pa se jim stevilke premaknejo, kot da bi se kosi generirali eden za drugim,
+	 * zato je koda enaka ne glede na stevilo kosov.
 	 */
 	private static class CodeGenerator {
 
@@ -133,22 +278,31 @@ public class CodeGen {
 		 */
 		private final AttrAST attrAST;
 
-		/** Stevec anonimnih label. */
-		private int labelCounter = 0;
-
 		public final Map<String, AST.FunDef> funDefClashingNames;
 		public final Map<AST.FunDef, String> funDefNameOverrides;
 
+		/** Prevedena koda deklariranih funkcij. */
+		private final Map<AST.FunDef, Obj> splices;
+
+		/**
+		 * Nova imena oznake deklarirane funkcije in oznak njenih gnezdenih funkcij v
+		 * prevedeni kodi.
+		 */
+		private final Map<AST.FunDef, Map<String, String>> spliceRenames;
+
 		/**
 		 * Ustvari nov generator kode v abstraktnem sintaksnem drevesu.
 		 *
 		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
 		 *                pomnilniske predstavitve.
+		 * @param splices Prevedena koda deklariranih funkcij.
 		 */
-		public CodeGenerator(final AttrAST attrAST) {
+		public CodeGenerator(final AttrAST attrAST, final Map<AST.FunDef, Obj> splices) {
 			this.attrAST = attrAST;
+			this.splices = splices;
             funDefClashingNames = new HashMap<>();
             funDefNameOverrides = new HashMap<>();
+            spliceRenames = new HashMap<>();
         }
 
 		/**
@@ -158,28 +312,304 @@ public class CodeGen {
 		 *         predstavitve.
 		 */
 		public AttrAST generate() {
-			attrAST.ast.accept(new Generator(), null);
+			// Every function has its label before any code is generated,
+			// so a call can use the label of a function that is defined later on.
+			attrAST.ast.accept(new Namer(), null);
+
+			// A single chunk is generated straight into the attributes.
+			final List<List<AST.Node>> chunks = Parallel
+					.chunks(new ArrayList<AST.Node>(((AST.Nodes<?>) attrAST.ast).getAll()));
+			final List<Generator> generators = Parallel.map(chunks, chunk -> {
+				final Generator generator = chunks.size() == 1 ? new Generator(attrAST.attrCode, attrAST.attrData)
+						: new Generator(new AST.NodeMap<AST.Node, Code>(), new AST.NodeMap<AST.Node, List<PDM.DataInstr>>());
+				for (final AST.Node node : chunk) {
+					node.accept(generator, null);
+				}
+				return generator;
+			});
+
+			// Anonymous labels are numbered as if the chunks were generated one after another.
+			final List<List<Generator>> renumbered = new ArrayList<>();
+			int labelCounter = 0;
+			for (final Generator generator : generators) {
+				generator.base = labelCounter;
+				labelCounter += generator.labelCounter;
+				renumbered.add(List.of(generator));
+			}
+			Parallel.map(renumbered, chunk -> {
+				chunk.getFirst().renumber();
+				return chunk;
+			});
+			for (final Generator generator : generators) {
+				if (generator.attrCode != attrAST.attrCode) {
+					attrAST.attrCode.putAll(generator.attrCode);
+					attrAST.attrData.putAll(generator.attrData);
+				}
+			}
+
 			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrCode),
 					Collections.unmodifiableMap(attrAST.attrData));
 		}
 
-		/** Obiskovalec, ki generira kodo v abstraktnem sintaksnem drevesu. */
-		private class Generator implements AST.FullVisitor<List<PDM.CodeInstr>, Mem.Frame> {
+		/**
+		 * Doloci oznako funkcije: njeno ime, ce ga ne uporablja ze kaksna druga
+		 * funkcija, sicer pa ime s prvo prosto stevilko.
+		 *
+		 * @param funDef Definicija funkcije.
+		 */
+		private void updateFunDefNameOverrides(AST.FunDef funDef) {
+			String nameOverride = funDef.name;
+			int count = 1;
+			while (funDefClashingNames.containsKey(nameOverride)) {
+				nameOverride = funDef.name + count;
+				count++;
+			}
+			funDefNameOverrides.put(funDef, nameOverride);
+			funDefClashingNames.put(nameOverride, funDef);
+		}
+
+		/**
+		 * Doloci oznako deklarirane funkcije s prevedeno kodo in oznake njenih
+		 * gnezdenih funkcij, kot da bi se koda generirala tu.
+		 *
+		 * @param funDef Deklaracija funkcije.
+		 * @param obj    Objektna datoteka funkcije.
+		 */
+		private void updateSpliceRenames(AST.FunDef funDef, Obj obj) {
+			updateFunDefNameOverrides(funDef);
+			Map<String, String> renames = new HashMap<>();
+			for (String label : obj.exports.values()) {
+				renames.put(label, funDefNameOverrides.get(funDef));
+			}
+			// Nested functions have labels without a colon, anonymous labels and `f:body` with one.
+			for (List<? extends PDM.Instruction> instrs : List.of(obj.funsCode, obj.data)) {
+				for (PDM.Instruction instr : instrs) {
+					if (instr instanceof PDM.LABEL label && label.name.indexOf(':') < 0
+							&& !renames.containsKey(label.name) && !obj.imports.containsValue(label.name)) {
+						String nameOverride = label.name;
+						int count = 1;
+						while (funDefClashingNames.containsKey(nameOverride)) {
+							nameOverride = label.name + count;
+							count++;
+						}
+						funDefClashingNames.put(nameOverride, funDef);
+						renames.put(label.name, nameOverride);
+					}
+				}
+			}
+			spliceRenames.put(funDef, renames);
+		}
+
+		/**
+		 * Obiskovalec, ki doloci oznake funkcij v vrstnem redu, v katerem jih obisce
+		 * generiranje kode.
+		 */
+		private class Namer implements AST.FullVisitor<Object, Object> {
 
 			@SuppressWarnings({ "doclint:missing" })
-			public Generator() {
+			public Namer() {
+			}
+
+			@Override
+			public Object visit(AST.FunDef funDef, Object arg) {
+				Obj splice = splices.get(funDef);
+				if (splice != null) {
+					updateSpliceRenames(funDef, splice);
+					return null;
+				}
+				updateFunDefNameOverrides(funDef);
+				return funDef.stmts.accept(this, arg);
+			}
+
+			// Functions are defined only in statements, so expressions are skipped.
+
+			@Override
+			public Object visit(AST.VarDef varDef, Object arg) {
+				return null;
+			}
+
+			@Override
+			public Object visit(AST.ExprStmt exprStmt, Object arg) {
+				return null;
+			}
+
+			@Override
+			public Object visit(AST.AssignStmt assignStmt, Object arg) {
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.FunDef funDef, Mem.Frame parentFrame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.IfStmt ifStmt, Object arg) {
+				ifStmt.thenStmts.accept(this, arg);
+				return ifStmt.elseStmts.accept(this, arg);
+			}
+
+			@Override
+			public Object visit(AST.WhileStmt whileStmt, Object arg) {
+				// The body of a loop replaced by `memcpy` or `memset` is not generated.
+				if (attrAST.attrBulk.get(whileStmt) != null) {
+					return null;
+				}
+				return whileStmt.stmts.accept(this, arg);
+			}
+
+		}
+
+		/** Obiskovalec, ki generira kodo v abstraktnem sintaksnem drevesu. */
+		private class Generator implements AST.FullVisitor<Object, Mem.Frame> {
+
+			/** Atribut: obmocje ukazov, ki predstavljajo kodo programa. */
+			private final Map<AST.Node, Code> attrCode;
+
+			/** Atribut: seznam ukazov, ki predstavljajo podatke programa. */
+			private final Map<AST.Node, List<PDM.DataInstr>> attrData;
+
+			/** Stevec anonimnih label. */
+			private int labelCounter = 0;
+
+			/** Stevilo anonimnih label, ki jih pred tem kosom porabijo prejsnji kosi. */
+			private int base = 0;
+
+			/** Izraz, ki se trenutno izracunava pred zanko (glej {@link Optim}). */
+			private AST.Expr hoistedExpr = null;
+
+			/**
+			 * Seznam ukazov trenutne funkcije; izven funkcij seznam ukazov za
+			 * inicializacijo staticnih spremenljivk.
+			 */
+			private ArrayList<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>();
+
+			/** Ali naslednji obiskani izraz izracuna svoj naslov namesto vrednosti. */
+			private boolean lvalue = false;
+
+			/** Seznami ukazov kode, ki lahko vsebujejo anonimne oznake. */
+			private final List<List<PDM.CodeInstr>> codeBuffers = new ArrayList<>();
+
+			/** Seznami ukazov podatkov, ki lahko vsebujejo anonimne oznake. */
+			private final List<List<PDM.DataInstr>> dataBuffers = new ArrayList<>();
+
+			/**
+			 * Ustvari nov obiskovalec.
+			 *
+			 * @param attrCode Atribut: obmocje ukazov, ki predstavljajo kodo programa.
+			 * @param attrData Atribut: seznam ukazov, ki predstavljajo podatke programa.
+			 */
+			public Generator(final Map<AST.Node, Code> attrCode, final Map<AST.Node, List<PDM.DataInstr>> attrData) {
+				this.attrCode = attrCode;
+				this.attrData = attrData;
+				codeBuffers.add(code);
+			}
+
+			/**
+			 * Adds the number of labels used by the preceding chunks to the numbers
+			 * of this chunk's anonymous labels.
+			 */
+			private void renumber() {
+				if (base == 0) {
+					return;
+				}
+				for (List<PDM.CodeInstr> instrs : codeBuffers) {
+					instrs.replaceAll(this::renumbered);
+				}
+				for (List<PDM.DataInstr> instrs : dataBuffers) {
+					instrs.replaceAll(this::renumbered);
+				}
+			}
+
+			@SuppressWarnings("unchecked")
+			private <Instr extends PDM.Instruction> Instr renumbered(Instr instr) {
+				if (instr instanceof PDM.LABEL label && isAnonymous(label.name)) {
+					return (Instr) new PDM.LABEL(renumbered(label.name), label.debugLocation);
+				}
+				if (instr instanceof PDM.NAME ref && isAnonymous(ref.name)) {
+					return (Instr) new PDM.NAME(renumbered(ref.name), ref.debugLocation);
+				}
+				return instr;
+			}
+
+			private String renumbered(String label) {
+				int colon = label.lastIndexOf(':');
+				return label.substring(0, colon + 1) + (Integer.parseInt(label.substring(colon + 1)) + base);
+			}
+
+			/**
+			 * Whether the label is an anonymous one, numbered by `labelCounter`.
+			 */
+			private static boolean isAnonymous(String label) {
+				int colon = label.lastIndexOf(':');
+				return colon >= 0 && colon < label.length() - 1
+						&& label.chars().skip(colon + 1).allMatch(Character::isDigit);
+			}
+
+			private void emit(PDM.CodeInstr instr) {
+				code.add(instr);
+			}
+
+			/**
+			 * Records the instructions emitted since `start` as the code of the node.
+			 */
+			private void saveCode(AST.Node node, int start) {
+				attrCode.put(node, new Code(code, start, code.size()));
+			}
+
+			/**
+			 * Emits the code that computes the value of an expression.
+			 */
+			private void value(AST.Expr expr, Mem.Frame frame) {
+				lvalue = false;
+				expr.accept(this, frame);
+			}
+
+			/**
+			 * Emits the code that computes the address of an lvalue (a variable or `e^`)
+			 * instead of its value.
+			 */
+			private void address(AST.Expr expr, Mem.Frame frame) {
+				if (!(expr instanceof AST.VarExpr)
+						&& !(expr instanceof AST.UnExpr unExpr && unExpr.oper == AST.UnExpr.Oper.VALUEAT)) {
+					throw new Report.InternalError("Expected an lvalue");
+				}
+				lvalue = true;
+				expr.accept(this, frame);
+			}
+
+			/**
+			 * Returns whether the expression being visited computes its address
+			 * and switches back to computing values for its subexpressions.
+			 */
+			private boolean takeLvalue() {
+				boolean address = lvalue;
+				lvalue = false;
+				return address;
+			}
+
+			@Override
+			public Object visit(AST.FunDef funDef, Mem.Frame parentFrame) {
+				// A nested function has its own code, separate from the enclosing one.
+				ArrayList<PDM.CodeInstr> parentCode = code;
+				code = new ArrayList<>();
+				codeBuffers.add(code);
+
+				Obj splice = splices.get(funDef);
+				if (splice != null) {
+					splice(funDef, splice);
+					code = parentCode;
+					return null;
+				}
+
 				Mem.Frame frame = attrAST.attrFrame.get(funDef);
 				Report.Locatable loc = attrAST.attrLoc.get(funDef);
 
-				updateFunDefNameOverrides(funDef);
 				String labelName = funDefNameOverrides.get(funDef);
 
-				instrs.add(new PDM.LABEL(labelName, loc));
+				if (attrAST.attrMemo.get(funDef) != null) {
+					// Callers enter the wrapper, which runs the body only for unseen arguments.
+					String bodyLabelName = labelName + ":body";
+					instructionsToMemoize(funDef, bodyLabelName, frame, loc);
+					labelName = bodyLabelName;
+				}
+
+				emit(new PDM.LABEL(labelName, loc));
 
 				// Size of FP + RA
 				int omittedPointerSizes = 8;
@@ -189,54 +619,233 @@ public class CodeGen {
 
 				// Initialize the memory space for all the local variables (accepts a negative operand).
 				// Note that `varsSize` includes the size of FP and RA.
-				instrs.add(new PDM.PUSH(-(frame.varsSize - omittedPointerSizes), loc));
-				instrs.add(new PDM.POPN(loc));
+				emit(new PDM.PUSH(-(frame.varsSize - omittedPointerSizes), loc));
+				emit(new PDM.POPN(loc));
 
 
-				instrs.addAll(funDef.stmts.accept(this, frame));
+				funDef.stmts.accept(this, frame);
 
 				// Note tat `parsSize` includes the size of SL
-				instrs.add(new PDM.PUSH(frame.parsSize - 4, loc));
-				instrs.add(new PDM.RETN(frame, loc));
+				emit(new PDM.PUSH(frame.parsSize - 4, loc));
+				emit(new PDM.RETN(frame, loc));
 
-				attrAST.attrCode.put(funDef, instrs);
+				code.trimToSize();
+				saveCode(funDef, 0);
 
-				// Don't return this function's code instructions to parent,
-				// as that may duplicate function definition instructions in case of nested functions.
+				// This function's code is not a part of the parent's code,
+				// as that would duplicate function definition instructions in case of nested functions.
 				// See `CodeSegmentGenerator.Generator.visit(AST.FunDef)`.
-				return new ArrayList<>();
+				code = parentCode;
+				return null;
+			}
+
+			/**
+			 * Generates a wrapper around the body of a function whose results are kept
+			 * in the machine's memo table (see `Optim.optimize` and `Machine`).
+			 * The wrapper has the same frame layout as the function itself:
+			 * the result is kept in its only local variable.
+			 * Results are keyed by the wrapper's address, which stays unique when units are linked.
+			 */
+			private void instructionsToMemoize(AST.FunDef funDef, String bodyLabelName,
+					Mem.Frame frame, Report.Locatable loc) {
+				String labelName = funDefNameOverrides.get(funDef);
+				String hitLabel = "memo-hit:" + labelCounter;
+				String missLabel = "memo-miss:" + labelCounter;
+				labelCounter++;
+
+				// Result of the call, just below FP and RA.
+				int resultOffset = -12;
+				// Parameters are consecutive, the first one is right above SL.
+				int parsOffset = 4;
+
+				emit(new PDM.LABEL(labelName, loc));
+				emit(new PDM.PUSH(-4, loc));
+				emit(new PDM.POPN(loc));
+
+				// memo:get(funaddr, paraddr, numpars, resaddr)
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(resultOffset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.PUSH(funDef.pars.size(), loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(parsOffset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.NAME(labelName, loc));
+				emit(new PDM.PUSH(0, loc));
+				emit(new PDM.NAME("memo:get", loc));
+				emit(new PDM.CALL(frame, loc));
+				emit(new PDM.NAME(hitLabel, loc));
+				emit(new PDM.NAME(missLabel, loc));
+				emit(new PDM.CJMP(loc));
+
+				// Call the body with the same arguments and static link.
+				emit(new PDM.LABEL(missLabel, loc));
+				for (int i = funDef.pars.size() - 1; i >= 0; i--) {
+					emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+					emit(new PDM.PUSH(attrAST.attrParAccess.get(funDef.pars.get(i)).offset, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.LOAD(loc));
+				}
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.LOAD(loc));
+				emit(new PDM.NAME(bodyLabelName, loc));
+				emit(new PDM.CALL(frame, loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(resultOffset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.SAVE(loc));
+
+				// memo:put(funaddr, paraddr, numpars, result)
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(resultOffset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.LOAD(loc));
+				emit(new PDM.PUSH(funDef.pars.size(), loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(parsOffset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.NAME(labelName, loc));
+				emit(new PDM.PUSH(0, loc));
+				emit(new PDM.NAME("memo:put", loc));
+				emit(new PDM.CALL(frame, loc));
+
+				// Return the result (values left below it are dropped by RETN).
+				emit(new PDM.LABEL(hitLabel, loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(resultOffset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.LOAD(loc));
+				emit(new PDM.PUSH(frame.parsSize - 4, loc));
+				emit(new PDM.RETN(frame, loc));
+			}
+
+			/**
+			 * Takes the code and data of a declared function from its compiled unit
+			 * and renames its labels as if the code was generated here.
+			 */
+			private void splice(AST.FunDef funDef, Obj obj) {
+				// The labels of the function and of its nested functions are already chosen.
+				Map<String, String> renames = new HashMap<>(spliceRenames.get(funDef));
+				obj.imports.forEach((fun, label) -> {
+					AST.FunDef callee = topLevelFunDefs().get(fun);
+					renames.put(label, callee == null ? fun : funDefNameOverrides.getOrDefault(callee, fun));
+				});
+
+				List<String> labels = new ArrayList<>();
+				for (List<? extends PDM.Instruction> instrs : List.of(obj.funsCode, obj.data)) {
+					for (PDM.Instruction instr : instrs) {
+						if (instr instanceof PDM.LABEL label && !renames.containsKey(label.name)) {
+							labels.add(label.name);
+						}
+					}
+				}
+				// Anonymous labels of one statement share their number, and numbers
+				// are given out in the order the labels were created in.
+				TreeMap<Integer, Integer> numbers = new TreeMap<>();
+				for (String label : labels) {
+					if (isAnonymous(label)) {
+						numbers.put(Integer.parseInt(label.substring(label.lastIndexOf(':') + 1)), 0);
+					}
+				}
+				for (Map.Entry<Integer, Integer> number : numbers.entrySet()) {
+					number.setValue(labelCounter++);
+				}
+				for (String label : labels) {
+					int colon = label.lastIndexOf(':');
+					if (colon < 0) {
+						continue;
+					}
+					String prefix = label.substring(0, colon);
+					String suffix = label.substring(colon + 1);
+					if (isAnonymous(label)) {
+						renames.put(label, prefix + ":" + numbers.get(Integer.parseInt(suffix)));
+					} else {
+						renames.put(label, renames.getOrDefault(prefix, prefix) + ":" + suffix);
+					}
+				}
+
+				code.ensureCapacity(obj.funsCode.size());
+				for (PDM.CodeInstr instr : obj.funsCode) {
+					emit(renamed(instr, renames));
+				}
+				saveCode(funDef, 0);
+				List<PDM.DataInstr> data = new ArrayList<>(obj.data.size());
+				for (PDM.DataInstr instr : obj.data) {
+					data.add(renamed(instr, renames));
+				}
+				attrData.put(funDef, data);
+				dataBuffers.add(data);
 			}
 
-			private void updateFunDefNameOverrides(AST.FunDef funDef) {
-				String nameOverride = funDef.name;
-				int count = 1;
-				while (funDefClashingNames.containsKey(nameOverride)) {
-					nameOverride = funDef.name + count;
-					count++;
+			@SuppressWarnings("unchecked")
+			private <Instr extends PDM.Instruction> Instr renamed(Instr instr, Map<String, String> renames) {
+				if (instr instanceof PDM.LABEL label && renames.containsKey(label.name)) {
+					return (Instr) new PDM.LABEL(renames.get(label.name), label.debugLocation);
 				}
-				funDefNameOverrides.put(funDef, nameOverride);
-				funDefClashingNames.put(nameOverride, funDef);
+				if (instr instanceof PDM.NAME ref && renames.containsKey(ref.name)) {
+					return (Instr) new PDM.NAME(renames.get(ref.name), ref.debugLocation);
+				}
+				return instr;
+			}
+
+			private Map<String, AST.FunDef> topLevelFunDefs;
+
+			private Map<String, AST.FunDef> topLevelFunDefs() {
+				if (topLevelFunDefs == null) {
+					topLevelFunDefs = new HashMap<>();
+					for (AST.Node node : (AST.Nodes<?>) attrAST.ast) {
+						if (node instanceof AST.FunDef funDef) {
+							topLevelFunDefs.putIfAbsent(funDef.name, funDef);
+						}
+					}
+				}
+				return topLevelFunDefs;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.Nodes<? extends AST.Node> nodes, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.Nodes<? extends AST.Node> nodes, Mem.Frame frame) {
 				for (final AST.Node node : nodes) {
-					instrs.addAll(node.accept(this, frame));
+					node.accept(this, frame);
 				}
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.ExprStmt exprStmt, Mem.Frame frame) {
-				return exprStmt.expr.accept(this, frame);
+			public Object visit(AST.ExprStmt exprStmt, Mem.Frame frame) {
+				value(exprStmt.expr, frame);
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.CallExpr callExpr, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.CallExpr callExpr, Mem.Frame frame) {
+				takeLvalue();
+				int start = code.size();
 				Report.Locatable loc = attrAST.attrLoc.get(callExpr);
 				AST.Def def = attrAST.attrDef.get(callExpr);
+
+				// The call was evaluated at compile time (see `Optim`).
+				Integer value = attrAST.attrConst.get(callExpr);
+				if (value != null) {
+					emit(new PDM.PUSH(value, loc));
+					saveCode(callExpr, start);
+					return null;
+				}
+
+				// The pointer returned by `new` does not escape the function,
+				// so the memory is a region of the current frame (see `Optim`).
+				Mem.RelAccess stackAccess = attrAST.attrStackAccess.get(callExpr);
+				if (stackAccess != null) {
+					emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+					emit(new PDM.PUSH(stackAccess.offset, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					saveCode(callExpr, start);
+					return null;
+				}
+
+				if (isReused(callExpr)) {
+					instructionsToLoadTmp(callExpr, loc);
+					return null;
+				}
 				if (!(def instanceof AST.FunDef)) {
 					throw new Report.InternalError("Unreachable");
 				}
@@ -245,23 +854,23 @@ public class CodeGen {
 				// According to semantic rules,
 				// function arguments are evaluated from right to left.
 				for (int i = callExpr.args.size() - 1; i >= 0; i--) {
-					instrs.addAll(callExpr.args.get(i).accept(this, frame));
+					value(callExpr.args.get(i), frame);
 				}
 
 				// Calling function is declared in the same or outer scopes of the caller function
 				if (callingFunFrame.depth - 1 <= frame.depth) {
 					int depthDiff = frame.depth - callingFunFrame.depth;
 
-					instrs.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+					emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
 					// Calling function is at the same depth as the current function
 					if (depthDiff == 0) {
-						instrs.add(new PDM.LOAD(loc));
+						emit(new PDM.LOAD(loc));
 					}
 					else for (int i = 0; i < depthDiff; i++) {
 						// Get the FP of the caller
-						instrs.add(new PDM.PUSH(-4, loc));
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
-						instrs.add(new PDM.LOAD(loc));
+						emit(new PDM.PUSH(-4, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						emit(new PDM.LOAD(loc));
 					}
 				}
 				// Calling function is declared in inner scopes of the caller function - not visible.
@@ -270,17 +879,19 @@ public class CodeGen {
 				}
 
 				String labelName = funDefNameOverrides.getOrDefault(def, def.name);
-				instrs.add(new PDM.NAME(labelName, loc));
-				instrs.add(new PDM.CALL(frame, loc));
+				emit(new PDM.NAME(labelName, loc));
+				emit(new PDM.CALL(frame, loc));
+				instructionsToSaveTmp(callExpr, loc);
 
-				attrAST.attrCode.put(callExpr, instrs);
+				saveCode(callExpr, start);
 
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.AtomExpr atomExpr, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.AtomExpr atomExpr, Mem.Frame frame) {
+				takeLvalue();
+				int start = code.size();
 				List<PDM.DataInstr> dataInstrs = new ArrayList<>();
 				Report.Locatable loc = attrAST.attrLoc.get(atomExpr);
 
@@ -288,35 +899,33 @@ public class CodeGen {
 				if (atomExpr.type == AST.AtomExpr.Type.STRCONST) {
 					String strConstDataLabel = ":" + labelCounter;
 					labelCounter++;
-					instrs.add(new PDM.NAME(strConstDataLabel, loc));
+					emit(new PDM.NAME(strConstDataLabel, loc));
 					dataInstrs.add(new PDM.LABEL(strConstDataLabel, loc));
 					for (Integer value : values) {
 						dataInstrs.add(new PDM.DATA(value, loc));
 					}
+					dataBuffers.add(dataInstrs);
 				} else {
 					// There will only ever be 1 value
-					instrs.add(new PDM.PUSH(values.getFirst(), loc));
+					emit(new PDM.PUSH(values.getFirst(), loc));
 				}
 
-				attrAST.attrCode.put(atomExpr, instrs);
-				attrAST.attrData.put(atomExpr, dataInstrs);
+				saveCode(atomExpr, start);
+				attrData.put(atomExpr, dataInstrs);
 
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.LetStmt letStmt, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
-
-				instrs.addAll(letStmt.defs.accept(this, frame));
-				instrs.addAll(letStmt.stmts.accept(this, frame));
-
-				return instrs;
+			public Object visit(AST.LetStmt letStmt, Mem.Frame frame) {
+				letStmt.defs.accept(this, frame);
+				letStmt.stmts.accept(this, frame);
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.VarDef varDef, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.VarDef varDef, Mem.Frame frame) {
+				int start = code.size();
 				Report.Locatable loc = attrAST.attrLoc.get(varDef);
 				Mem.Access access = attrAST.attrVarAccess.get(varDef);
 
@@ -333,20 +942,20 @@ public class CodeGen {
 
 				switch (access) {
 					case final Mem.RelAccess relAccess: {
-						instrs.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
-						instrs.add(new PDM.PUSH(relAccess.offset, loc));
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
-						instrs.add(new PDM.NAME(dataLabelName, loc));
-						instrs.add(new PDM.INIT(loc));
+						emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+						emit(new PDM.PUSH(relAccess.offset, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						emit(new PDM.NAME(dataLabelName, loc));
+						emit(new PDM.INIT(loc));
 						break;
 					}
 					case final Mem.AbsAccess absAccess: {
 						dataInstrs.add(new PDM.LABEL(absAccess.name, loc));
 						dataInstrs.add(new PDM.SIZE(absAccess.size, loc));
 
-						instrs.add(new PDM.NAME(absAccess.name, loc));
-						instrs.add(new PDM.NAME(dataLabelName, loc));
-						instrs.add(new PDM.INIT(loc));
+						emit(new PDM.NAME(absAccess.name, loc));
+						emit(new PDM.NAME(dataLabelName, loc));
+						emit(new PDM.INIT(loc));
 						break;
 					}
 					default:
@@ -354,33 +963,31 @@ public class CodeGen {
 				}
 
 
-				attrAST.attrData.put(varDef, dataInstrs);
-				attrAST.attrCode.put(varDef, instrs);
+				attrData.put(varDef, dataInstrs);
+				dataBuffers.add(dataInstrs);
+				saveCode(varDef, start);
 
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.AssignStmt assignStmt, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.AssignStmt assignStmt, Mem.Frame frame) {
+				int start = code.size();
 				Report.Locatable loc = attrAST.attrLoc.get(assignStmt);
 
-				instrs.addAll(assignStmt.srcExpr.accept(this, frame));
-
-				List<PDM.CodeInstr> dstInstrs = assignStmt.dstExpr.accept(this, frame);
-				temporarilyRemoveLastLoad(dstInstrs);
-				instrs.addAll(dstInstrs);
+				value(assignStmt.srcExpr, frame);
+				address(assignStmt.dstExpr, frame);
+				emit(new PDM.SAVE(loc));
 
-				instrs.add(new PDM.SAVE(loc));
+				saveCode(assignStmt, start);
 
-				attrAST.attrCode.put(assignStmt, instrs);
-
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.VarExpr varExpr, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.VarExpr varExpr, Mem.Frame frame) {
+				boolean address = takeLvalue();
+				int start = code.size();
 				Report.Locatable loc = attrAST.attrLoc.get(varExpr);
 				AST.Def def = attrAST.attrDef.get(varExpr);
 
@@ -403,40 +1010,40 @@ public class CodeGen {
 
 						if (relAccess.depth < frame.depth) {
 							int depthDiff = frame.depth - relAccess.depth;
-							instrs.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+							emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
 							for (int i = 0; i < depthDiff; i++) {
 								// Get the SL (FP of the outer function)
-								instrs.add(new PDM.LOAD(loc));
+								emit(new PDM.LOAD(loc));
 							}
 						} else {
 							// Variable is in the current scope, use current function FP.
-							instrs.add(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+							emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
 						}
 
-						instrs.add(new PDM.PUSH(relAccess.offset, loc));
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						emit(new PDM.PUSH(relAccess.offset, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 						break;
 					}
 					case final Mem.AbsAccess absAccess: {
-						instrs.add(new PDM.NAME(absAccess.name, loc));
+						emit(new PDM.NAME(absAccess.name, loc));
 						break;
 					}
 					default:
 						throw new Report.InternalError("Unreachable");
 				}
 
-				// TODO: Decide if we should load the value or not
-				// See: https://discord.com/channels/370216420199628800/483365879082385428/1244290276294656072
-				instrs.add(new PDM.LOAD(loc));
+				// An lvalue leaves the address of the variable on the stack.
+				if (!address) {
+					emit(new PDM.LOAD(loc));
+				}
 
-				attrAST.attrCode.put(varExpr, instrs);
+				saveCode(varExpr, start);
 
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.IfStmt ifStmt, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.IfStmt ifStmt, Mem.Frame frame) {
 				Report.Locatable loc = attrAST.attrLoc.get(ifStmt);
 
 				String thenLabel = "then:" + labelCounter;
@@ -446,148 +1053,205 @@ public class CodeGen {
 				labelCounter++;
 
 				// Jump to the condition evaluation code
-				instrs.add(new PDM.NAME(condLAbel, loc));
-				instrs.add(new PDM.UJMP(loc));
+				emit(new PDM.NAME(condLAbel, loc));
+				emit(new PDM.UJMP(loc));
 
 				// Then statements code
-				instrs.add(new PDM.LABEL(thenLabel, loc));
-				instrs.addAll(ifStmt.thenStmts.accept(this, frame));
+				emit(new PDM.LABEL(thenLabel, loc));
+				ifStmt.thenStmts.accept(this, frame);
 				// Jump out of the whole if statement
-				instrs.add(new PDM.NAME(endLabel, loc));
-				instrs.add(new PDM.UJMP(loc));
+				emit(new PDM.NAME(endLabel, loc));
+				emit(new PDM.UJMP(loc));
 
 				// Else statements code
-				instrs.add(new PDM.LABEL(elseLabel, loc));
-				instrs.addAll(ifStmt.elseStmts.accept(this, frame));
+				emit(new PDM.LABEL(elseLabel, loc));
+				ifStmt.elseStmts.accept(this, frame);
 				// Jump out of the whole if statement
-				instrs.add(new PDM.NAME(endLabel, loc));
-				instrs.add(new PDM.UJMP(loc));
+				emit(new PDM.NAME(endLabel, loc));
+				emit(new PDM.UJMP(loc));
 
 				// Condition evaluation code
-				instrs.add(new PDM.LABEL(condLAbel, loc));
-				instrs.addAll(ifStmt.cond.accept(this, frame));
-				instrs.add(new PDM.NAME(thenLabel, loc));
-				instrs.add(new PDM.NAME(elseLabel, loc));
-				instrs.add(new PDM.CJMP(loc));
+				emit(new PDM.LABEL(condLAbel, loc));
+				value(ifStmt.cond, frame);
+				emit(new PDM.NAME(thenLabel, loc));
+				emit(new PDM.NAME(elseLabel, loc));
+				emit(new PDM.CJMP(loc));
 
 				// We jump here when exiting the whole if statement
-				instrs.add(new PDM.LABEL(endLabel, loc));
+				emit(new PDM.LABEL(endLabel, loc));
 
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.UnExpr unExpr, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.UnExpr unExpr, Mem.Frame frame) {
+				boolean address = takeLvalue();
+				int start = code.size();
 				Report.Locatable loc = attrAST.attrLoc.get(unExpr);
 
-				List<PDM.CodeInstr> nestedInstrs = unExpr.expr.accept(this, frame);
+				if (!address && isReused(unExpr)) {
+					instructionsToLoadTmp(unExpr, loc);
+					return null;
+				}
 
 				if (unExpr.oper == AST.UnExpr.Oper.MEMADDR) {
-					temporarilyRemoveLastLoad(nestedInstrs);
+					address(unExpr.expr, frame);
+				} else {
+					value(unExpr.expr, frame);
 				}
 
-				instrs.addAll(nestedInstrs);
-
 				switch (unExpr.oper) {
 					case VALUEAT -> {
-						// TODO: Check if the last instruction is already LOAD?
-						instrs.add(new PDM.LOAD(loc));
+						// As an lvalue, the address is the value of the operand.
+						if (!address) {
+							emit(new PDM.LOAD(loc));
+						}
 					}
 					case NOT -> {
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.NOT, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.NOT, loc));
 					}
 					case SUB -> {
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.NEG, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.NEG, loc));
 					}
 					case MEMADDR, ADD -> {
 						// NOOP
 					}
                 }
+				if (!address) {
+					instructionsToSaveTmp(unExpr, loc);
+				}
 
-				attrAST.attrCode.put(unExpr, instrs);
+				saveCode(unExpr, start);
 
-				return instrs;
+				return null;
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.BinExpr binExpr, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.BinExpr binExpr, Mem.Frame frame) {
+				takeLvalue();
 				Report.Locatable loc = attrAST.attrLoc.get(binExpr);
 
+				if (isReused(binExpr)) {
+					instructionsToLoadTmp(binExpr, loc);
+					return null;
+				}
+
 				// Semantic rule says to first calculate the right and then left operand
-				instrs.addAll(binExpr.sndExpr.accept(this, frame));
-				instrs.addAll(binExpr.fstExpr.accept(this, frame));
+				value(binExpr.sndExpr, frame);
+				value(binExpr.fstExpr, frame);
 
 				switch (binExpr.oper) {
-					case OR -> instrs.add(new PDM.OPER(PDM.OPER.Oper.OR, loc));
-					case AND -> instrs.add(new PDM.OPER(PDM.OPER.Oper.AND, loc));
-					case EQU -> instrs.add(new PDM.OPER(PDM.OPER.Oper.EQU, loc));
-					case GEQ -> instrs.add(new PDM.OPER(PDM.OPER.Oper.LEQ, loc));
-					case LEQ -> instrs.add(new PDM.OPER(PDM.OPER.Oper.GEQ, loc));
-					case GTH -> instrs.add(new PDM.OPER(PDM.OPER.Oper.LTH, loc));
-					case LTH -> instrs.add(new PDM.OPER(PDM.OPER.Oper.GTH, loc));
-					case ADD -> instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
-					case MUL -> instrs.add(new PDM.OPER(PDM.OPER.Oper.MUL, loc));
-					case NEQ -> instrs.add(new PDM.OPER(PDM.OPER.Oper.NEQ, loc));
+					case OR -> emit(new PDM.OPER(PDM.OPER.Oper.OR, loc));
+					case AND -> emit(new PDM.OPER(PDM.OPER.Oper.AND, loc));
+					case EQU -> emit(new PDM.OPER(PDM.OPER.Oper.EQU, loc));
+					case GEQ -> emit(new PDM.OPER(PDM.OPER.Oper.LEQ, loc));
+					case LEQ -> emit(new PDM.OPER(PDM.OPER.Oper.GEQ, loc));
+					case GTH -> emit(new PDM.OPER(PDM.OPER.Oper.LTH, loc));
+					case LTH -> emit(new PDM.OPER(PDM.OPER.Oper.GTH, loc));
+					case ADD -> emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					case MUL -> emit(new PDM.OPER(PDM.OPER.Oper.MUL, loc));
+					case NEQ -> emit(new PDM.OPER(PDM.OPER.Oper.NEQ, loc));
 					case DIV -> {
-						instrs.addAll(instructionsToSwitchBinaryOperandOrder(loc));
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.DIV, loc));
+						instructionsToSwitchBinaryOperandOrder(loc);
+						emit(new PDM.OPER(PDM.OPER.Oper.DIV, loc));
 					}
 					case SUB -> {
-						instrs.addAll(instructionsToSwitchBinaryOperandOrder(loc));
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.SUB, loc));
+						instructionsToSwitchBinaryOperandOrder(loc);
+						emit(new PDM.OPER(PDM.OPER.Oper.SUB, loc));
 					}
 					case MOD -> {
-						instrs.addAll(instructionsToSwitchBinaryOperandOrder(loc));
-						instrs.add(new PDM.OPER(PDM.OPER.Oper.MOD, loc));
+						instructionsToSwitchBinaryOperandOrder(loc);
+						emit(new PDM.OPER(PDM.OPER.Oper.MOD, loc));
 					}
 				}
+				instructionsToSaveTmp(binExpr, loc);
+
+				return null;
+			}
 
-				return instrs;
+			/**
+			 * Whether the value of the expression is read from a compiler-introduced temporary
+			 * instead of being computed (see `Optim`).
+			 */
+			private boolean isReused(AST.Expr expr) {
+				// The hoisted expression itself is computed once, in front of its loop.
+				return expr != hoistedExpr && attrAST.attrReuse.containsKey(expr);
 			}
 
-			private List<PDM.CodeInstr> instructionsToSwitchBinaryOperandOrder(Report.Locatable loc) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			/**
+			 * Loads the value of an expression that was already computed
+			 * and kept in a compiler-introduced temporary (see `Optim`).
+			 */
+			private void instructionsToLoadTmp(AST.Expr expr, Report.Locatable loc) {
+				Mem.RelAccess tmpAccess = attrAST.attrTmpAccess.get(attrAST.attrReuse.get(expr));
+
+				// Temporaries always live in the frame of the current function.
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(tmpAccess.offset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.LOAD(loc));
+			}
+
+			/**
+			 * Keeps a copy of the value on the top of the stack in the expression's temporary,
+			 * if later computations of the same expression reuse it.
+			 */
+			private void instructionsToSaveTmp(AST.Expr expr, Report.Locatable loc) {
+				Mem.RelAccess tmpAccess = attrAST.attrTmpAccess.get(expr);
+				if (tmpAccess == null) {
+					return;
+				}
+
+				// A hoisted expression is computed only to fill its temporary.
+				if (expr != hoistedExpr) {
+					// V V (duplicate the value, SP points to it)
+					emit(new PDM.REGN(PDM.REGN.Reg.SP, loc));
+					emit(new PDM.LOAD(loc));
+				}
+
+				// V (save the copy)
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.PUSH(tmpAccess.offset, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.SAVE(loc));
+			}
 
+			private void instructionsToSwitchBinaryOperandOrder(Report.Locatable loc) {
 				// A B A_address
-				instrs.add(new PDM.REGN(PDM.REGN.Reg.SP, loc));
-				instrs.add(new PDM.PUSH(4, loc));
-				instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.SP, loc));
+				emit(new PDM.PUSH(4, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 
 				// A B A
-				instrs.add(new PDM.LOAD(loc));
+				emit(new PDM.LOAD(loc));
 
 				// A B A B_address
-				instrs.add(new PDM.REGN(PDM.REGN.Reg.SP, loc));
-				instrs.add(new PDM.PUSH(4, loc));
-				instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.SP, loc));
+				emit(new PDM.PUSH(4, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 
 				// A B A B
-				instrs.add(new PDM.LOAD(loc));
+				emit(new PDM.LOAD(loc));
 
 				// A B A B A1_address
-				instrs.add(new PDM.REGN(PDM.REGN.Reg.SP, loc));
-				instrs.add(new PDM.PUSH(12, loc));
-				instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.SP, loc));
+				emit(new PDM.PUSH(12, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 
 				// B B A
-				instrs.add(new PDM.SAVE(loc));
+				emit(new PDM.SAVE(loc));
 
 				// B B A B2_address
-				instrs.add(new PDM.REGN(PDM.REGN.Reg.SP, loc));
-				instrs.add(new PDM.PUSH(4, loc));
-				instrs.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.REGN(PDM.REGN.Reg.SP, loc));
+				emit(new PDM.PUSH(4, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 
 				// B A
-				instrs.add(new PDM.SAVE(loc));
-
-				return instrs;
+				emit(new PDM.SAVE(loc));
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(AST.WhileStmt whileStmt, Mem.Frame frame) {
-				List<PDM.CodeInstr> instrs = new ArrayList<>();
+			public Object visit(AST.WhileStmt whileStmt, Mem.Frame frame) {
 				Report.Locatable loc = attrAST.attrLoc.get(whileStmt);
 
 				String condLabel = "while-cond:" + labelCounter;
@@ -595,34 +1259,100 @@ public class CodeGen {
 				String endLabel = "end:" + labelCounter;
 				labelCounter++;
 
+				// Loop preheader: compute loop-invariant expressions once
+				for (AST.Expr expr : attrAST.attrHoist.getOrDefault(whileStmt, List.of())) {
+					hoistedExpr = expr;
+					value(expr, frame);
+					hoistedExpr = null;
+				}
+
 				// Condition evaluation
-				instrs.add(new PDM.LABEL(condLabel, loc));
-				instrs.addAll(whileStmt.cond.accept(this, frame));
-				instrs.add(new PDM.NAME(doLabel, loc));
-				instrs.add(new PDM.NAME(endLabel, loc));
-				instrs.add(new PDM.CJMP(loc));
-
-				instrs.add(new PDM.LABEL(doLabel, loc));
-				instrs.addAll(whileStmt.stmts.accept(this, frame));
-				// Jump back to condition evaluation for the next loop
-				instrs.add(new PDM.NAME(condLabel, loc));
-				instrs.add(new PDM.UJMP(loc));
+				emit(new PDM.LABEL(condLabel, loc));
+				value(whileStmt.cond, frame);
+				emit(new PDM.NAME(doLabel, loc));
+				emit(new PDM.NAME(endLabel, loc));
+				emit(new PDM.CJMP(loc));
+
+				emit(new PDM.LABEL(doLabel, loc));
+				Optim.BulkLoop bulkLoop = attrAST.attrBulk.get(whileStmt);
+				if (bulkLoop != null) {
+					// All iterations at once, the condition no longer holds afterwards
+					instructionsForBulkLoop(bulkLoop, frame, loc);
+				} else {
+					whileStmt.stmts.accept(this, frame);
+					// Jump back to condition evaluation for the next loop
+					emit(new PDM.NAME(condLabel, loc));
+					emit(new PDM.UJMP(loc));
+				}
 
 				// Loop exit
-				instrs.add(new PDM.LABEL(endLabel, loc));
+				emit(new PDM.LABEL(endLabel, loc));
+
 
+				return null;
+			}
 
-				return instrs;
+			/**
+			 * Replaces the iterations of a loop that copies or fills a sequence of words
+			 * with a single call of `memcpy` or `memset` and sets the loop's variables
+			 * to the values they have after the last iteration (see `Optim`).
+			 */
+			private void instructionsForBulkLoop(Optim.BulkLoop bulkLoop, Mem.Frame frame,
+					Report.Locatable loc) {
+				// Arguments from right to left: size, source (or value), destination, SL
+				instructionsForBulkLoopSize(bulkLoop, frame, loc);
+				value(bulkLoop.src(), frame);
+				value(bulkLoop.dst(), frame);
+				// System calls ignore the static link.
+				emit(new PDM.REGN(PDM.REGN.Reg.FP, loc));
+				emit(new PDM.NAME(bulkLoop.copy() ? "memcpy" : "memset", loc));
+				emit(new PDM.CALL(frame, loc));
+				// The loop leaves nothing on the stack
+				emit(new PDM.PUSH(4, loc));
+				emit(new PDM.POPN(loc));
+
+				if (bulkLoop.bound() != null) {
+					// i = i + (bound - i + 3) / 4 * 4
+					instructionsForBulkLoopSize(bulkLoop, frame, loc);
+					emit(new PDM.PUSH(3, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.PUSH(4, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.DIV, loc));
+					emit(new PDM.PUSH(4, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.MUL, loc));
+					value(bulkLoop.counter(), frame);
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					address(bulkLoop.counter(), frame);
+					emit(new PDM.SAVE(loc));
+				} else {
+					// p = p + n * 4 for every pointer, then n = 0
+					for (AST.VarExpr pointer : bulkLoop.pointers()) {
+						value(pointer, frame);
+						instructionsForBulkLoopSize(bulkLoop, frame, loc);
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						address(pointer, frame);
+						emit(new PDM.SAVE(loc));
+					}
+					emit(new PDM.PUSH(0, loc));
+					address(bulkLoop.counter(), frame);
+					emit(new PDM.SAVE(loc));
+				}
 			}
 
-			private void temporarilyRemoveLastLoad(List<PDM.CodeInstr> instrs) {
-				if (instrs.getLast() instanceof PDM.LOAD) {
-					// TODO: Find a better solution
-					// The last command is LOAD,
-					// but we need the variable address at the top of the stack here.
-					instrs.removeLast();
+			/**
+			 * Computes the number of bytes the loop copies or fills:
+			 * `bound - i` for an indexed loop and `n * 4` for a counted one.
+			 */
+			private void instructionsForBulkLoopSize(Optim.BulkLoop bulkLoop, Mem.Frame frame,
+					Report.Locatable loc) {
+				if (bulkLoop.bound() != null) {
+					value(bulkLoop.bound(), frame);
+					value(bulkLoop.counter(), frame);
+					emit(new PDM.OPER(PDM.OPER.Oper.SUB, loc));
 				} else {
-					throw new Report.InternalError("Expected LOAD as the last instruction");
+					value(bulkLoop.counter(), frame);
+					emit(new PDM.PUSH(4, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.MUL, loc));
 				}
 			}
 
@@ -666,7 +1396,7 @@ public class CodeGen {
 		 * @return Seznam ukazov, ki predstavljajo kodo programa.
 		 */
 		public List<PDM.CodeInstr> codeSegment() {
-			attrAST.ast.accept(new Generator(), null);
+			generate();
 			codeInitSegment.addLast(new PDM.PUSH(0, null));
 			codeInitSegment.addLast(new PDM.NAME("main", null));
 			codeInitSegment.addLast(new PDM.CALL(main, null));
@@ -679,6 +1409,23 @@ public class CodeGen {
 			return Collections.unmodifiableList(codeSegment);
 		}
 
+		/**
+		 * Izracuna ukaze za inicializacijo staticnih spremenljivk in ukaze funkcij.
+		 */
+		private void generate() {
+			generate(attrAST.ast);
+		}
+
+		/**
+		 * Izracuna ukaze za inicializacijo staticnih spremenljivk in ukaze funkcij v
+		 * delu drevesa.
+		 *
+		 * @param node Koren dela drevesa.
+		 */
+		private void generate(final AST.Node node) {
+			node.accept(new Generator(), null);
+		}
+
 		/**
 		 * Obiskovalec, ki izracuna seznam ukazov, ki predstavljajo kodo programa.
 		 */
@@ -690,10 +1437,9 @@ public class CodeGen {
 
 			@Override
 			public Object visit(final AST.FunDef funDef, final Object arg) {
-				if (funDef.stmts.size() == 0)
+				if (!isDefined(attrAST, funDef))
 					return null;
-				List<PDM.CodeInstr> code = attrAST.attrCode.get(funDef);
-				codeFunsSegment.addAll(code);
+				codeFunsSegment.addAll(attrAST.attrCode.get(funDef).instrs());
 				funDef.pars.accept(this, arg);
 				funDef.stmts.accept(this, arg);
 				switch (funDef.name) {
@@ -706,8 +1452,7 @@ public class CodeGen {
 			public Object visit(final AST.VarDef varDef, final Object arg) {
 				switch (attrAST.attrVarAccess.get(varDef)) {
 				case Mem.AbsAccess __: {
-					List<PDM.CodeInstr> code = attrAST.attrCode.get(varDef);
-					codeInitSegment.addAll(code);
+					codeInitSegment.addAll(attrAST.attrCode.get(varDef).instrs());
 					break;
 				}
 				case Mem.RelAccess __: {
@@ -753,7 +1498,17 @@ public class CodeGen {
 		 * @return Seznam ukazov, ki predstavljajo podatke programa.
 		 */
 		public List<PDM.DataInstr> dataSegment() {
-			attrAST.ast.accept(new Generator(), null);
+			return dataSegment(attrAST.ast);
+		}
+
+		/**
+		 * Izracuna seznam ukazov, ki predstavljajo podatke v delu drevesa.
+		 *
+		 * @param node Koren dela drevesa.
+		 * @return Seznam ukazov, ki predstavljajo podatke v delu drevesa.
+		 */
+		public List<PDM.DataInstr> dataSegment(final AST.Node node) {
+			node.accept(new Generator(), null);
 			return Collections.unmodifiableList(dataSegment);
 		}
 
@@ -766,6 +1521,14 @@ public class CodeGen {
 			public Generator() {
 			}
 
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				List<PDM.DataInstr> data = attrAST.attrData.get(funDef);
+				if (data != null)
+					dataSegment.addAll(data);
+				return AST.FullVisitor.super.visit(funDef, arg);
+			}
+
 			@Override
 			public Object visit(final AST.VarDef varDef, final Object arg) {
 				List<PDM.DataInstr> data = attrAST.attrData.get(varDef);
@@ -808,8 +1571,10 @@ public class CodeGen {
 				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
 				// semanticna analiza:
 				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(semanAttrAST);
 				// pomnilniska predstavitev:
-				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				final Memory.AttrAST memoryAttrAST = Memory.organize(optimAttrAST);
 				// generiranje kode:
 				final AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
 
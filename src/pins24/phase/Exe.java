@@ -0,0 +1,471 @@
+package pins24.phase;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Izvedljiva slika programa.
+ *
+ * Slika vsebuje segment kode kot zaporedje bajtov, kakrsno izvaja stroj (glej
+ * {@link Machine.Executor}): vsak ukaz zasede toliko bajtov, kot je njegova
+ * velikost, prvi bajt ukaza je njegova operacijska koda, ukaza {@link PDM.PUSH}
+ * in {@link PDM.NAME} pa ji dodata se 4-bajtni operand. Imena oznak v ukazih
+ * {@link PDM.NAME} so ze nadomescena z naslovi. Slika vsebuje tudi inicializiran
+ * del segmenta s podatki (brez nicel na koncu segmenta) in po zelji se
+ * razhroscevalno tabelo z oznakami in lokacijami ukazov.
+ *
+ * Datoteka z izvedljivo sliko je zapisana tako, da jo stroj lahko preslika v
+ * pomnilnik in izvaja neposredno iz nje, brez branja in razclenjevanja ukazov:
+ * <ol>
+ * <li>glava: {@link #MAGIC}, {@link #VERSION}, velikost segmenta kode,
+ * velikost segmenta s podatki, velikost inicializiranega dela segmenta s
+ * podatki in velikost razhroscevalne tabele (vse 4-bajtna cela stevila);</li>
+ * <li>segment kode;</li>
+ * <li>inicializiran del segmenta s podatki;</li>
+ * <li>razhroscevalna tabela (lahko je prazna).</li>
+ * </ol>
+ * Vsa vecbajtna stevila so zapisana od najmanj do najbolj pomembnega bajta,
+ * tako kot v pomnilniku stroja.
+ */
+public class Exe {
+
+	/** Oznaka na zacetku datoteke z izvedljivo sliko ("PINX"). */
+	private static final int MAGIC = 0x50494e58;
+
+	/** Razlicica zapisa izvedljive slike. */
+	private static final int VERSION = 1;
+
+	/** Velikost glave datoteke z izvedljivo sliko. */
+	private static final int HEADER_SIZE = 24;
+
+	// --- OPERACIJSKE KODE ---
+
+	/** Operacijska koda ukaza {@link PDM.INIT}. */
+	public static final int INIT = 0x01;
+
+	/** Operacijska koda ukaza {@link PDM.LOAD}. */
+	public static final int LOAD = 0x02;
+
+	/** Operacijska koda ukaza {@link PDM.SAVE}. */
+	public static final int SAVE = 0x03;
+
+	/** Operacijska koda ukaza {@link PDM.POPN}. */
+	public static final int POPN = 0x04;
+
+	/** Operacijska koda ukaza {@link PDM.PUSH}. */
+	public static final int PUSH = 0x05;
+
+	/** Operacijska koda ukaza {@link PDM.NAME}. */
+	public static final int NAME = 0x06;
+
+	/** Operacijska koda ukaza {@link PDM.UJMP}. */
+	public static final int UJMP = 0x07;
+
+	/** Operacijska koda ukaza {@link PDM.CJMP}. */
+	public static final int CJMP = 0x08;
+
+	/** Operacijska koda ukaza {@link PDM.CALL}. */
+	public static final int CALL = 0x09;
+
+	/** Operacijska koda ukaza {@link PDM.RETN}. */
+	public static final int RETN = 0x0A;
+
+	/** Operacijska koda ukaza {@link PDM.REGN} za prvi register. */
+	public static final int REGN = 0x10;
+
+	/** Operacijska koda ukaza {@link PDM.OPER} za prvo racunsko operacijo. */
+	public static final int OPER = 0x20;
+
+	/**
+	 * Oznaka v izvedljivi sliki.
+	 *
+	 * @param name Ime oznake.
+	 * @param addr Naslov oznake.
+	 */
+	public record Label(String name, int addr) {
+	}
+
+	/** Velikost segmenta kode. */
+	public final int codeSize;
+
+	/** Velikost segmenta s podatki. */
+	public final int dataSize;
+
+	/** Segment kode. */
+	private final ByteBuffer code;
+
+	/** Inicializiran del segmenta s podatki. */
+	private final ByteBuffer data;
+
+	/** Razhroscevalna tabela, kot je zapisana v datoteki, ali {@code null}. */
+	private final ByteBuffer debug;
+
+	/** Oznake v segmentu kode (ko je razhroscevalna tabela ze prebrana). */
+	private List<Label> codeLabels;
+
+	/** Oznake v segmentu s podatki (ko je razhroscevalna tabela ze prebrana). */
+	private List<Label> dataLabels;
+
+	/** Ukazi po naslovih (ko je razhroscevalna tabela ze prebrana). */
+	private PDM.INSTR[] instrs;
+
+	private Exe(final int codeSize, final int dataSize, final ByteBuffer code, final ByteBuffer data,
+			final ByteBuffer debug) {
+		this.codeSize = codeSize;
+		this.dataSize = dataSize;
+		this.code = code.order(ByteOrder.LITTLE_ENDIAN);
+		this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+		this.debug = debug == null ? null : debug.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Ustvari izvedljivo sliko povezanega programa.
+	 *
+	 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+	 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+	 * @return Izvedljiva slika.
+	 */
+	public static Exe of(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment) {
+		final HashMap<String, Integer> labelToAddr = new HashMap<String, Integer>();
+		for (int syscall = 0; syscall < Machine.SYSCALLS.size(); syscall++)
+			labelToAddr.put(Machine.SYSCALLS.get(syscall), -(syscall + 1));
+
+		// Addresses of all labels are needed before any NAME can be resolved.
+		final List<Label> codeLabels = new ArrayList<Label>();
+		final List<Label> dataLabels = new ArrayList<Label>();
+		int codeSize = 0;
+		for (final PDM.CodeInstr instr : codeSegment) {
+			if (instr instanceof PDM.LABEL label) {
+				labelToAddr.put(label.name, codeSize);
+				codeLabels.add(new Label(label.name, codeSize));
+			}
+			codeSize += instr.size();
+		}
+		int dataSize = 0;
+		int imageSize = 0;
+		for (final PDM.DataInstr instr : dataSegment) {
+			switch (instr) {
+			case PDM.LABEL label -> {
+				labelToAddr.put(label.name, codeSize + dataSize);
+				dataLabels.add(new Label(label.name, codeSize + dataSize));
+			}
+			case PDM.SIZE size -> dataSize += size.size;
+			case PDM.DATA __ -> {
+				dataSize += 4;
+				imageSize = dataSize;
+			}
+			default -> throw new Report.InternalError();
+			}
+		}
+
+		final ByteBuffer code = ByteBuffer.allocate(codeSize).order(ByteOrder.LITTLE_ENDIAN);
+		final PDM.INSTR[] instrs = new PDM.INSTR[codeSize];
+		for (final PDM.CodeInstr instr : codeSegment) {
+			if (instr instanceof PDM.LABEL)
+				continue;
+			instrs[code.position()] = (PDM.INSTR) instr;
+			code.put((byte) opcode(instr));
+			switch (instr) {
+			case PDM.PUSH push -> code.putInt(push.intc);
+			case PDM.NAME name -> {
+				final Integer addr = labelToAddr.get(name.name);
+				if (addr == null)
+					throw name.debugLocation == null ? new Report.Error("Undefined label '" + name.name + "'.")
+							: new Report.Error(name.debugLocation, "Undefined label '" + name.name + "'.");
+				code.putInt(addr);
+			}
+			default -> {
+			}
+			}
+		}
+
+		final ByteBuffer data = ByteBuffer.allocate(imageSize).order(ByteOrder.LITTLE_ENDIAN);
+		int dataPtr = 0;
+		for (final PDM.DataInstr instr : dataSegment) {
+			switch (instr) {
+			case PDM.SIZE size -> dataPtr += size.size;
+			case PDM.DATA value -> {
+				data.putInt(dataPtr, value.intc);
+				dataPtr += 4;
+			}
+			default -> {
+			}
+			}
+		}
+
+		final Exe exe = new Exe(codeSize, dataSize, code.clear(), data, null);
+		exe.codeLabels = Collections.unmodifiableList(codeLabels);
+		exe.dataLabels = Collections.unmodifiableList(dataLabels);
+		exe.instrs = instrs;
+		return exe;
+	}
+
+	/**
+	 * Vrne operacijsko kodo ukaza.
+	 *
+	 * @param instr Ukaz.
+	 * @return Operacijska koda.
+	 */
+	private static int opcode(final PDM.CodeInstr instr) {
+		return switch (instr) {
+		case PDM.INIT __ -> INIT;
+		case PDM.LOAD __ -> LOAD;
+		case PDM.SAVE __ -> SAVE;
+		case PDM.POPN __ -> POPN;
+		case PDM.PUSH __ -> PUSH;
+		case PDM.NAME __ -> NAME;
+		case PDM.UJMP __ -> UJMP;
+		case PDM.CJMP __ -> CJMP;
+		case PDM.CALL __ -> CALL;
+		case PDM.RETN __ -> RETN;
+		case PDM.REGN i -> REGN + i.regn.ordinal();
+		case PDM.OPER i -> OPER + i.oper.ordinal();
+		default -> throw new Report.InternalError();
+		};
+	}
+
+	// --- IZVAJANJE ---
+
+	/**
+	 * Vrne operacijsko kodo ukaza na podanem naslovu.
+	 *
+	 * @param addr Naslov ukaza.
+	 * @return Operacijska koda.
+	 */
+	public int opcode(final int addr) {
+		return code.get(addr) & 0xFF;
+	}
+
+	/**
+	 * Vrne operand ukaza {@link PDM.PUSH} ali {@link PDM.NAME} na podanem naslovu.
+	 *
+	 * @param addr Naslov ukaza.
+	 * @return Operand.
+	 */
+	public int operand(final int addr) {
+		return code.getInt(addr + 1);
+	}
+
+	/**
+	 * Vrne inicializiran del segmenta s podatki.
+	 *
+	 * @return Inicializiran del segmenta s podatki (samo za branje).
+	 */
+	public ByteBuffer data() {
+		return data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// --- RAZHROSCEVANJE ---
+
+	/**
+	 * Vrne oznake v segmentu kode.
+	 *
+	 * @return Oznake v vrstnem redu naslovov ali prazen seznam, ce slika nima
+	 *         razhroscevalne tabele.
+	 */
+	public List<Label> codeLabels() {
+		readDebug();
+		return codeLabels;
+	}
+
+	/**
+	 * Vrne oznake v segmentu s podatki.
+	 *
+	 * @return Oznake v vrstnem redu naslovov ali prazen seznam, ce slika nima
+	 *         razhroscevalne tabele.
+	 */
+	public List<Label> dataLabels() {
+		readDebug();
+		return dataLabels;
+	}
+
+	/**
+	 * Vrne ukaz na podanem naslovu. Ukazi slike, ki je bila prebrana iz datoteke,
+	 * nimajo klicnih zapisov, lokacije pa le, ce ima slika razhroscevalno tabelo.
+	 *
+	 * @param addr Naslov ukaza.
+	 * @return Ukaz.
+	 */
+	public PDM.INSTR instr(final int addr) {
+		readDebug();
+		return instrs[addr];
+	}
+
+	/**
+	 * Prebere razhroscevalno tabelo in iz segmenta kode obnovi ukaze.
+	 */
+	private void readDebug() {
+		if (instrs != null)
+			return;
+		final List<Label> codeLabels = new ArrayList<Label>();
+		final List<Label> dataLabels = new ArrayList<Label>();
+		final TreeMap<Integer, Report.Location> locs = new TreeMap<Integer, Report.Location>();
+		if (debug != null) {
+			final ByteBuffer in = debug.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			readLabels(in, codeLabels);
+			readLabels(in, dataLabels);
+			final int locCount = in.getInt();
+			for (int loc = 0; loc < locCount; loc++) {
+				final int addr = in.getInt();
+				final int begLine = in.getInt();
+				final int begColumn = in.getInt();
+				final int endLine = in.getInt();
+				final int endColumn = in.getInt();
+				locs.put(addr, begLine < 0 ? null : new Report.Location(begLine, begColumn, endLine, endColumn));
+			}
+		}
+		final HashMap<Integer, String> addrToLabel = new HashMap<Integer, String>();
+		for (int syscall = 0; syscall < Machine.SYSCALLS.size(); syscall++)
+			addrToLabel.put(-(syscall + 1), Machine.SYSCALLS.get(syscall));
+		for (final Label label : codeLabels)
+			addrToLabel.put(label.addr(), label.name());
+		for (final Label label : dataLabels)
+			addrToLabel.put(label.addr(), label.name());
+
+		final PDM.INSTR[] instrs = new PDM.INSTR[codeSize];
+		int addr = 0;
+		while (addr < codeSize) {
+			final Map.Entry<Integer, Report.Location> locEntry = locs.floorEntry(addr);
+			final Report.Location loc = locEntry == null ? null : locEntry.getValue();
+			final int opcode = opcode(addr);
+			final PDM.INSTR instr = switch (opcode) {
+			case INIT -> new PDM.INIT(loc);
+			case LOAD -> new PDM.LOAD(loc);
+			case SAVE -> new PDM.SAVE(loc);
+			case POPN -> new PDM.POPN(loc);
+			case PUSH -> new PDM.PUSH(operand(addr), loc);
+			case NAME -> new PDM.NAME(addrToLabel.getOrDefault(operand(addr), Integer.toString(operand(addr))), loc);
+			case UJMP -> new PDM.UJMP(loc);
+			case CJMP -> new PDM.CJMP(loc);
+			case CALL -> new PDM.CALL(null, loc);
+			case RETN -> new PDM.RETN(null, loc);
+			default -> {
+				if (opcode >= OPER && opcode < OPER + PDM.OPER.Oper.values().length)
+					yield new PDM.OPER(PDM.OPER.Oper.values()[opcode - OPER], loc);
+				if (opcode >= REGN && opcode < REGN + PDM.REGN.Reg.values().length)
+					yield new PDM.REGN(PDM.REGN.Reg.values()[opcode - REGN], loc);
+				throw new Report.InternalError();
+			}
+			};
+			instrs[addr] = instr;
+			addr += instr.size();
+		}
+		this.codeLabels = Collections.unmodifiableList(codeLabels);
+		this.dataLabels = Collections.unmodifiableList(dataLabels);
+		this.instrs = instrs;
+	}
+
+	private static void readLabels(final ByteBuffer in, final List<Label> labels) {
+		final int count = in.getInt();
+		for (int label = 0; label < count; label++) {
+			final int addr = in.getInt();
+			final byte[] name = new byte[in.getInt()];
+			in.get(name);
+			labels.add(new Label(new String(name, StandardCharsets.UTF_8), addr));
+		}
+	}
+
+	private void writeDebug(final DataOutput out) throws IOException {
+		readDebug();
+		writeLabels(out, codeLabels);
+		writeLabels(out, dataLabels);
+		// A location is stored only where it differs from the previous instruction's.
+		final List<Integer> locAddrs = new ArrayList<Integer>();
+		Report.Location prevLoc = null;
+		for (int addr = 0; addr < codeSize; addr++) {
+			if (instrs[addr] == null)
+				continue;
+			final Report.Location loc = instrs[addr].debugLocation;
+			if (locAddrs.isEmpty() || !Objects.equals(loc, prevLoc))
+				locAddrs.add(addr);
+			prevLoc = loc;
+		}
+		out.writeInt(Integer.reverseBytes(locAddrs.size()));
+		for (final int addr : locAddrs) {
+			final Report.Location loc = instrs[addr].debugLocation;
+			out.writeInt(Integer.reverseBytes(addr));
+			out.writeInt(Integer.reverseBytes(loc == null ? -1 : loc.begLine()));
+			out.writeInt(Integer.reverseBytes(loc == null ? -1 : loc.begColumn()));
+			out.writeInt(Integer.reverseBytes(loc == null ? -1 : loc.endLine()));
+			out.writeInt(Integer.reverseBytes(loc == null ? -1 : loc.endColumn()));
+		}
+	}
+
+	private static void writeLabels(final DataOutput out, final List<Label> labels) throws IOException {
+		out.writeInt(Integer.reverseBytes(labels.size()));
+		for (final Label label : labels) {
+			final byte[] name = label.name().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(Integer.reverseBytes(label.addr()));
+			out.writeInt(Integer.reverseBytes(name.length));
+			out.write(name);
+		}
+	}
+
+	// --- DATOTEKA ---
+
+	/**
+	 * Preslika datoteko z izvedljivo sliko v pomnilnik. Segment kode in podatki se
+	 * ne preberejo, temvec jih stroj bere neposredno iz preslikane datoteke.
+	 *
+	 * @param exeFile Datoteka z izvedljivo sliko.
+	 * @return Izvedljiva slika.
+	 * @throws IOException Ce datoteke ni mogoce prebrati ali ni pravega zapisa.
+	 */
+	public static Exe map(final Path exeFile) throws IOException {
+		final ByteBuffer file;
+		try (FileChannel channel = FileChannel.open(exeFile, StandardOpenOption.READ)) {
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (file.limit() < HEADER_SIZE || file.getInt(0) != MAGIC || file.getInt(4) != VERSION)
+			throw new IOException("Not an executable file: " + exeFile);
+		final int codeSize = file.getInt(8);
+		final int dataSize = file.getInt(12);
+		final int imageSize = file.getInt(16);
+		final int debugSize = file.getInt(20);
+		if (codeSize < 0 || imageSize < 0 || imageSize > dataSize || debugSize < 0
+				|| (long) HEADER_SIZE + codeSize + imageSize + debugSize != file.limit())
+			throw new IOException("Corrupt executable file: " + exeFile);
+		final ByteBuffer code = file.slice(HEADER_SIZE, codeSize);
+		final ByteBuffer data = file.slice(HEADER_SIZE + codeSize, imageSize);
+		final ByteBuffer debug = debugSize == 0 ? null : file.slice(HEADER_SIZE + codeSize + imageSize, debugSize);
+		return new Exe(codeSize, dataSize, code, data, debug);
+	}
+
+	/**
+	 * Zapise datoteko z izvedljivo sliko. Datoteka se zamenja v celoti, zato
+	 * hkratni stroji nikoli ne preslikajo napol zapisane datoteke.
+	 *
+	 * @param exeFile Datoteka z izvedljivo sliko.
+	 * @param debug   Ali se zapise tudi razhroscevalna tabela.
+	 * @throws IOException Ce datoteke ni mogoce zapisati.
+	 */
+	public void write(final Path exeFile, final boolean debug) throws IOException {
+		final ByteArrayOutputStream debugBytes = new ByteArrayOutputStream();
+		if (debug)
+			writeDebug(new DataOutputStream(debugBytes));
+		final Path tmpFile = exeFile
+				.resolveSibling(exeFile.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt(codeSize).putInt(dataSize).putInt(data.limit())
+						.putInt(debugBytes.size());
+				final ByteBuffer[] parts = { header.flip(), code.duplicate().clear(), data.duplicate().clear(),
+						ByteBuffer.wrap(debugBytes.toByteArray()) };
+				for (final ByteBuffer part : parts)
+					while (part.hasRemaining())
+						channel.write(part);
+			}
+			Files.move(tmpFile, exeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+}
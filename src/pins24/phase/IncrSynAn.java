@@ -0,0 +1,290 @@
+package pins24.phase;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+
+import pins24.common.*;
+
+/**
+ * Inkrementalna sintaksna analiza.
+ *
+ * Hrani zadnjo uspesno analizirano vsebino izvorne datoteke in njeno
+ * abstraktno sintaksno drevo. Ko se vsebina spremeni, se ponovno prebere in
+ * razcleni le definicije na vrhnjem nivoju, ki se prekrivajo s spremenjenim
+ * delom (in definicija tik pred njim, ki jo sprememba morda nadaljuje). Ostale
+ * definicije ostanejo isti objekti z istimi stevilkami vozlisc, definicijam za
+ * spremembo pa se lokacije premaknejo za toliko vrstic, kolikor se jih je
+ * dodalo ali odstranilo.
+ *
+ * Stevilke vozlisc ponovno razclenjenih definicij se stejejo naprej, zato
+ * stevilke niso vec zaporedne. Ko je neuporabljenih stevilk vec kot
+ * uporabljenih, se celotna vsebina ponovno razcleni.
+ */
+public class IncrSynAn {
+
+	/**
+	 * Definicija na vrhnjem nivoju in njen obseg v izvorni datoteki.
+	 *
+	 * @param def       Definicija.
+	 * @param begOffset Indeks prvega znaka definicije.
+	 * @param endOffset Indeks za zadnjim znakom definicije.
+	 * @param nodes     Stevilo stevilk vozlisc, ki jih je porabila definicija.
+	 */
+	private record Span(AST.MainDef def, int begOffset, int endOffset, int nodes) {
+	}
+
+	/**
+	 * Rezultat inkrementalne sintaksne analize.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi abstraktne
+	 *                sintakse; kasnejse analize ga ne spremenijo.
+	 * @param changed Ponovno razclenjene definicije na vrhnjem nivoju. Vse ostale
+	 *                definicije so isti objekti kot v prejsnjem drevesu.
+	 */
+	public record Result(Abstr.AttrAST attrAST, Set<AST.MainDef> changed) {
+	}
+
+	/** Prevedena knjiznica ali {@code null}. */
+	private final Lib lib;
+
+	/** Sintaksni analizator; hrani stevilke imen in stevilo vozlisc. */
+	private SynAn synAn = null;
+
+	/** Zadnja uspesno analizirana vsebina izvorne datoteke. */
+	private byte[] src = null;
+
+	/** Definicije funkcij prevedene knjiznice. */
+	private List<AST.MainDef> declarations;
+
+	/** Stevilo vozlisc definicij funkcij prevedene knjiznice. */
+	private int declarationNodes;
+
+	/** Definicije programa na vrhnjem nivoju, urejene po obsegih. */
+	private List<Span> spans;
+
+	/** Atribut: lokacija kode, ki pripada posameznemu vozliscu. */
+	private AST.NodeMap<AST.Node, Report.Locatable> attrLoc;
+
+	/** Zadnje zgrajeno drevo. */
+	private Abstr.AttrAST attrAST;
+
+	/** Stevilo vozlisc zadnjega drevesa. */
+	private int liveNodes;
+
+	/**
+	 * Ustvari nov inkrementalni sintaksni analizator.
+	 *
+	 * @param lib Prevedena knjiznica ali {@code null}.
+	 */
+	public IncrSynAn(final Lib lib) {
+		this.lib = lib;
+	}
+
+	/**
+	 * Prebere izvorno datoteko in opravi sintaksno analizo.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Rezultat analize.
+	 */
+	public Result update(final String srcFileName) {
+		try {
+			return update(Files.readAllBytes(Paths.get(srcFileName)));
+		} catch (NoSuchFileException __) {
+			throw new Report.Error("File '" + srcFileName + "' not found.");
+		} catch (IOException __) {
+			throw new Report.Error("Cannot read source file '" + srcFileName + "'.");
+		}
+	}
+
+	/**
+	 * Opravi sintaksno analizo nove vsebine izvorne datoteke. Ce analiza ne
+	 * uspe, se naslednja primerja z zadnjo uspesno analizirano vsebino.
+	 *
+	 * @param newSrc Vsebina izvorne datoteke.
+	 * @return Rezultat analize.
+	 */
+	public Result update(final byte[] newSrc) {
+		if (src == null)
+			return update(newSrc, true);
+		final Result result = update(newSrc, false);
+		// Numbers are reclaimed only once the text parses, so that a syntax error
+		// does not cost a full parse on every change.
+		if (synAn.nodeCount() > 2 * liveNodes)
+			return update(newSrc, true);
+		return result;
+	}
+
+	/**
+	 * Opravi sintaksno analizo nove vsebine izvorne datoteke.
+	 *
+	 * @param newSrc Vsebina izvorne datoteke.
+	 * @param full   Ali naj se razcleni celotna vsebina.
+	 * @return Rezultat analize.
+	 */
+	private Result update(final byte[] newSrc, final boolean full) {
+		final byte[] oldSrc = full ? new byte[0] : src;
+		final List<Span> oldSpans = full ? List.of() : spans;
+
+		// The change replaced old bytes [prefix, oldEditEnd) with new bytes [prefix, newEditEnd).
+		int prefix = Arrays.mismatch(oldSrc, newSrc);
+		if (prefix < 0) {
+			if (!full)
+				return new Result(attrAST, Set.of());
+			prefix = 0;
+		}
+		final int suffix = suffix(oldSrc, newSrc, Math.min(oldSrc.length, newSrc.length) - prefix);
+		final int oldEditEnd = oldSrc.length - suffix;
+		final int newEditEnd = newSrc.length - suffix;
+		final int delta = newSrc.length - oldSrc.length;
+
+		final SynAn synAn = full ? new SynAn(ByteBuffer.wrap(newSrc)) : this.synAn;
+		final AST.NodeMap<AST.Node, Report.Locatable> attrLoc = full ? new AST.NodeMap<AST.Node, Report.Locatable>()
+				: new AST.NodeMap<AST.Node, Report.Locatable>(this.attrLoc);
+
+		// The last definition that starts before the change is parsed again,
+		// since the change may continue it.
+		int first = 0;
+		while (first < oldSpans.size() && oldSpans.get(first).begOffset() < prefix)
+			first++;
+		if (first == 0)
+			synAn.restart(ByteBuffer.wrap(newSrc), 0, LexAn.position(1, 1), attrLoc);
+		else {
+			first--;
+			final Report.Location loc = attrLoc.get(oldSpans.get(first).def()).location();
+			synAn.restart(ByteBuffer.wrap(newSrc), oldSpans.get(first).begOffset(),
+					LexAn.position(loc.begLine(), loc.begColumn()), attrLoc);
+		}
+
+		List<AST.MainDef> declarations = this.declarations;
+		int declarationNodes = this.declarationNodes;
+		if (full) {
+			declarations = synAn.declare(lib);
+			for (final AST.MainDef declaration : declarations)
+				synAn.numberAll(declaration);
+			declarationNodes = synAn.nodeCount();
+		}
+
+		final List<Span> newSpans = new ArrayList<Span>(oldSpans.subList(0, first));
+		final Set<AST.MainDef> changed = new LinkedHashSet<AST.MainDef>();
+		int reused = oldSpans.size();
+		int lines = 0;
+		int next = first;
+		while (true) {
+			final int offset = synAn.nextOffset();
+
+			// A definition after the change that starts at the same place (shifted)
+			// and in the same column is followed by the same tokens as before.
+			while (next < oldSpans.size() && (oldSpans.get(next).begOffset() < oldEditEnd
+					|| oldSpans.get(next).begOffset() + delta < offset))
+				next++;
+			if (offset >= newEditEnd && next < oldSpans.size() && oldSpans.get(next).begOffset() + delta == offset) {
+				final Report.Location loc = attrLoc.get(oldSpans.get(next).def()).location();
+				final long position = synAn.nextPosition();
+				if (LexAn.column(position) == loc.begColumn()) {
+					reused = next;
+					lines = LexAn.line(position) - loc.begLine();
+					break;
+				}
+			}
+
+			final int nodeCount = synAn.nodeCount();
+			final AST.MainDef def = synAn.parseDefinition();
+			if (def == null) {
+				synAn.parseEnd();
+				break;
+			}
+			synAn.numberAll(def);
+			final Span span = new Span(def, offset, synAn.endOffset(), synAn.nodeCount() - nodeCount);
+
+			// The definition before the change keeps its node if the change did not continue it.
+			final Span old = newSpans.size() == first && first < oldSpans.size() ? oldSpans.get(first) : null;
+			if (old != null && old.begOffset() == span.begOffset() && old.endOffset() == span.endOffset()
+					&& span.endOffset() <= prefix)
+				newSpans.add(old);
+			else {
+				newSpans.add(span);
+				changed.add(def);
+			}
+		}
+		for (int index = reused; index < oldSpans.size(); index++) {
+			final Span old = oldSpans.get(index);
+			if (lines != 0)
+				shift(old.def(), lines, attrLoc);
+			newSpans.add(delta == 0 ? old : new Span(old.def(), old.begOffset() + delta, old.endOffset() + delta, old.nodes()));
+		}
+
+		// The program starts with the first token and ends with the last one.
+		final List<AST.MainDef> defs = new ArrayList<AST.MainDef>(declarations);
+		for (final Span span : newSpans)
+			defs.add(span.def());
+		final AST.Nodes<AST.MainDef> ast = synAn.number(new AST.Nodes<AST.MainDef>(defs));
+		if (newSpans.isEmpty()) {
+			final long position = synAn.nextPosition();
+			attrLoc.put(ast, new Report.Location(LexAn.line(position), LexAn.column(position)));
+		} else {
+			final Report.Location beg = attrLoc.get(newSpans.getFirst().def()).location();
+			final Report.Location end = attrLoc.get(newSpans.getLast().def()).location();
+			attrLoc.put(ast, new Report.Location(beg.begLine(), beg.begColumn(), end.endLine(), end.endColumn()));
+		}
+
+		this.synAn = synAn;
+		this.src = newSrc;
+		this.declarations = declarations;
+		this.spans = newSpans;
+		this.attrLoc = attrLoc;
+		this.declarationNodes = declarationNodes;
+		this.attrAST = new Abstr.AttrAST(new AST.AttrAST(ast), Collections.unmodifiableMap(attrLoc));
+		liveNodes = declarationNodes + 1;
+		for (final Span span : newSpans)
+			liveNodes += span.nodes();
+		return new Result(attrAST, changed);
+	}
+
+	/**
+	 * Vrne dolzino skupnega konca dveh vsebin.
+	 *
+	 * @param oldSrc    Prva vsebina.
+	 * @param newSrc    Druga vsebina.
+	 * @param maxSuffix Najvecja dolzina skupnega konca.
+	 * @return Dolzina skupnega konca.
+	 */
+	private static int suffix(final byte[] oldSrc, final byte[] newSrc, final int maxSuffix) {
+		// Whole blocks are compared by Arrays.mismatch, which is much faster than a byte at a time.
+		final int block = 4096;
+		int suffix = 0;
+		while (suffix < maxSuffix) {
+			final int length = Math.min(block, maxSuffix - suffix);
+			final int oldEnd = oldSrc.length - suffix;
+			final int newEnd = newSrc.length - suffix;
+			if (Arrays.mismatch(oldSrc, oldEnd - length, oldEnd, newSrc, newEnd - length, newEnd) >= 0) {
+				while (oldSrc[oldSrc.length - 1 - suffix] == newSrc[newSrc.length - 1 - suffix])
+					suffix++;
+				return suffix;
+			}
+			suffix += length;
+		}
+		return suffix;
+	}
+
+	/**
+	 * Premakne lokacije vseh vozlisc definicije za dano stevilo vrstic.
+	 *
+	 * @param def     Definicija.
+	 * @param lines   Stevilo vrstic.
+	 * @param attrLoc Atribut: lokacija kode, ki pripada posameznemu vozliscu.
+	 */
+	private static void shift(final AST.MainDef def, final int lines,
+			final AST.NodeMap<AST.Node, Report.Locatable> attrLoc) {
+		SynAn.forEach(def, node -> {
+			final Report.Locatable locatable = attrLoc.get(node);
+			if (locatable != null) {
+				final Report.Location loc = locatable.location();
+				attrLoc.put(node, new Report.Location(loc.begLine() + lines, loc.begColumn(), loc.endLine() + lines,
+						loc.endColumn()));
+			}
+		});
+	}
+
+}
@@ -1,10 +1,10 @@
 package pins24.phase;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
 
 import pins24.common.*;
 
@@ -13,108 +13,347 @@ import pins24.common.*;
  */
 public class LexAn implements AutoCloseable {
 
-	/** Izvorna datoteka. */
-	private final Reader srcFile;
-	/** Character position within `consumedChars` list. **/
-	private int startOffset;
-	private int endOffset;
-	private final List<Integer> consumedChars;
+	/** Vsebine izvornih datotek, preslikane v pomnilnik, v vrstnem redu branja. */
+	private ByteBuffer[] srcFiles;
+	/** Indeks izvorne datoteke, ki se trenutno bere. */
+	private int srcFileIndex = 0;
+	/** Izvorna datoteka, ki se trenutno bere. */
+	private ByteBuffer srcFile;
+	/** Indeks naslednjega neprebranega bajta izvorne datoteke. */
+	private int srcFilePos = 0;
+
+	/** Trenutni znak. */
+	private int currChar;
+	/** Znak pred trenutnim znakom (za en korak nazaj). */
+	private int prevChar;
+	/** Znak, s katerega je analizator stopil korak nazaj. */
+	private int aheadChar;
+	/** Ali analizator trenutno stoji korak nazaj. */
+	private boolean steppedBack = false;
+
 	/**
-	 * Start/end positions of the currently consuming token.
+	 * Polozaj za trenutnim znakom (vrstica in stolpec); ne spreminjata se na
+	 * zacetku in koncu datoteke.
 	 */
-	private Report.Location startPosition;
+	private int line = 1;
+	private int column = 1;
+	/** Polozaj za znakom pred trenutnim znakom. */
+	private int prevLine = 1;
+	private int prevColumn = 1;
+
+	/** Indeks trenutnega znaka v zaporedju vseh izvornih datotek. */
+	private int offset = -1;
+	/** Indeks znaka pred trenutnim znakom. */
+	private int prevOffset = -1;
+
+	/** Zacetni polozaj simbola, ki se trenutno bere. */
+	private int startLine = 1;
+	private int startColumn = 1;
+	/** Indeks prvega znaka simbola, ki se trenutno bere. */
+	private int startOffset = 0;
+
+	/** Vrste leksikalnih simbolov. */
+	private static final Token.Symbol[] SYMBOLS = Token.Symbol.values();
+
+	/** Stevilo zadnjih prebranih leksikalnih simbolov, ki ostanejo dostopni. */
+	private static final int TOKEN_WINDOW = 1 << 6;
+
+	/**
+	 * Zadnji prebrani leksikalni simboli, shranjeni v vzporednih tabelah (simbol z
+	 * indeksom {@code i} je na mestu {@code i % TOKEN_WINDOW}): vrsta simbola
+	 * ({@link Token.Symbol#ordinal}), indeks prvega znaka in indeks za zadnjim
+	 * znakom ter zacetni in koncni polozaj (glej {@link #position}). Leksemi in
+	 * lokacije se ustvarijo sele, ko jih kdo zahteva.
+	 */
+	private final byte[] tokenSymbols = new byte[TOKEN_WINDOW];
+	private final int[] tokenBegOffsets = new int[TOKEN_WINDOW];
+	private final int[] tokenEndOffsets = new int[TOKEN_WINDOW];
+	private final long[] tokenBegPositions = new long[TOKEN_WINDOW];
+	private final long[] tokenEndPositions = new long[TOKEN_WINDOW];
+	/** Stevilke imen zadnjih prebranih simbolov (veljavne samo za imena). */
+	private final int[] tokenIdentifiers = new int[TOKEN_WINDOW];
+	/** Stevilo prebranih leksikalnih simbolov. */
+	private int tokenCount = 0;
+	/** Indeks naslednjega leksikalnega simbola, ki ga se nihce ni prevzel. */
+	private int nextTokenIndex = 0;
 
 	/** End Of File - no characters left to read  **/
-	private final int EOF = -1;
+	private static final int EOF = -1;
 	/** Start Of File - no character was read  **/
-	private final int SOF = -2;
+	private static final int SOF = -2;
+
+	/** Razred znaka: zacetek imena ({@code _}, crka). */
+	private static final byte LETTER = 1;
+	/** Razred znaka: desetiska stevka. */
+	private static final byte DIGIT = 2;
+	/** Razred znaka: sestnajstiska stevka. */
+	private static final byte HEX = 4;
+	/** Razred znaka: znak, ki se lahko izpise. */
+	private static final byte PRINTABLE = 8;
+
+	/** Razredi znakov ASCII. */
+	private static final byte[] CLASSES = new byte[128];
+
+	/**
+	 * Leksemi simbolov, ki niso imena ali konstante, urejeni po vrsti simbola:
+	 * zadnji znak simbola (simbol konca datoteke ima znak {@code (char) -1}).
+	 */
+	private static final String[] SYMBOL_LEXEMES = new String[SYMBOLS.length];
+
+	/**
+	 * Kljucne besede, urejene po vrednosti zgoscevalne funkcije
+	 * {@link #keywordHash}, ki je na kljucnih besedah injektivna.
+	 */
+	private static final String[] KEYWORDS = new String[32];
+
+	/** Simboli kljucnih besed, urejeni enako kot {@link #KEYWORDS}. */
+	private static final Token.Symbol[] KEYWORD_SYMBOLS = new Token.Symbol[32];
+
+	static {
+		for (int c = 0; c < 128; c++) {
+			if (c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+				CLASSES[c] |= LETTER;
+			if (c >= '0' && c <= '9')
+				CLASSES[c] |= DIGIT | HEX;
+			if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))
+				CLASSES[c] |= HEX;
+			if (c >= 0x20 && c <= 0x7E)
+				CLASSES[c] |= PRINTABLE;
+		}
+		addSymbol(Token.Symbol.EOF, (char) EOF);
+		addSymbol(Token.Symbol.ASSIGN, '=');
+		addSymbol(Token.Symbol.COMMA, ',');
+		addSymbol(Token.Symbol.AND, '&');
+		addSymbol(Token.Symbol.OR, '|');
+		addSymbol(Token.Symbol.NOT, '!');
+		addSymbol(Token.Symbol.EQU, '=');
+		addSymbol(Token.Symbol.NEQ, '=');
+		addSymbol(Token.Symbol.GTH, '>');
+		addSymbol(Token.Symbol.LTH, '<');
+		addSymbol(Token.Symbol.GEQ, '=');
+		addSymbol(Token.Symbol.LEQ, '=');
+		addSymbol(Token.Symbol.ADD, '+');
+		addSymbol(Token.Symbol.SUB, '-');
+		addSymbol(Token.Symbol.MUL, '*');
+		addSymbol(Token.Symbol.DIV, '/');
+		addSymbol(Token.Symbol.MOD, '%');
+		addSymbol(Token.Symbol.PTR, '^');
+		addSymbol(Token.Symbol.LPAREN, '(');
+		addSymbol(Token.Symbol.RPAREN, ')');
+		addKeyword("fun", Token.Symbol.FUN);
+		addKeyword("var", Token.Symbol.VAR);
+		addKeyword("if", Token.Symbol.IF);
+		addKeyword("then", Token.Symbol.THEN);
+		addKeyword("else", Token.Symbol.ELSE);
+		addKeyword("while", Token.Symbol.WHILE);
+		addKeyword("do", Token.Symbol.DO);
+		addKeyword("let", Token.Symbol.LET);
+		addKeyword("in", Token.Symbol.IN);
+		addKeyword("end", Token.Symbol.END);
+	}
+
+	private static void addKeyword(String keyword, Token.Symbol symbol) {
+		int hash = keywordHash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length());
+		if (KEYWORDS[hash] != null)
+			throw new Report.InternalError();
+		KEYWORDS[hash] = keyword;
+		KEYWORD_SYMBOLS[hash] = symbol;
+		SYMBOL_LEXEMES[symbol.ordinal()] = keyword;
+	}
+
+	private static void addSymbol(Token.Symbol symbol, char lastChar) {
+		SYMBOL_LEXEMES[symbol.ordinal()] = String.valueOf(lastChar);
+	}
+
+	/**
+	 * Zgoscevalna funkcija kljucnih besed.
+	 *
+	 * @param first  Prvi znak besede.
+	 * @param last   Zadnji znak besede.
+	 * @param length Dolzina besede.
+	 * @return Indeks v tabeli {@link #KEYWORDS}.
+	 */
+	private static int keywordHash(int first, int last, int length) {
+		return (first + last + length) & 31;
+	}
+
+	/**
+	 * Ali znak pripada razredu znakov.
+	 *
+	 * @param c       Znak ali {@code EOF}.
+	 * @param classes Razredi znakov.
+	 * @return Ali znak pripada vsaj enemu od razredov.
+	 */
+	private static boolean is(int c, int classes) {
+		return c >= 0 && c < 128 && (CLASSES[c] & classes) != 0;
+	}
+
+	/** Znaki imena, ki se trenutno bere (za prepoznavanje kljucnih besed). */
+	private final StringBuilder lexeme = new StringBuilder();
+
+	/** Imena, urejena po stevilkah (glej {@link #identifier}). */
+	private String[] names = new String[64];
+	/** Zgoscevalne vrednosti imen, urejene po stevilkah. */
+	private int[] nameHashes = new int[64];
+	/** Stevilo razlicnih imen. */
+	private int nameCount = 0;
+	/**
+	 * Zgoscevalna tabela imen z odprtim naslavljanjem: na vsakem mestu je
+	 * stevilka imena, povecana za 1, ali 0, ce je mesto prazno.
+	 */
+	private int[] nameTable = new int[128];
 
 	/**
 	 * Ustvari nov leksikalni analizator.
+	 *
+	 * Izvorne datoteke se preberejo, kot da bi bile zapisane ena za drugo.
+	 *
+	 * @param srcFileNames Imena izvornih datotek.
+	 */
+	public LexAn(final String... srcFileNames) {
+		this.srcFiles = new ByteBuffer[srcFileNames.length];
+		for (int i = 0; i < srcFileNames.length; i++)
+			this.srcFiles[i] = map(srcFileNames[i]);
+		this.srcFile = srcFiles.length > 0 ? srcFiles[0] : ByteBuffer.allocate(0);
+		this.currChar = SOF;
+		this.prevChar = SOF;
+	}
+
+	/**
+	 * Ustvari nov leksikalni analizator za izvorno datoteko, ki je ze v pomnilniku.
+	 *
+	 * @param src Vsebina izvorne datoteke.
 	 */
-	public LexAn(final Reader reader) {
-		this.srcFile = new BufferedReader(reader);
-		this.consumedChars = new ArrayList<>();
-		this.consumedChars.add(SOF);
-		this.startPosition = new Report.Location(1, 1);
-		this.endOffset = 0;
-		this.startOffset = 0;
+	LexAn(final ByteBuffer src) {
+		this.srcFiles = new ByteBuffer[] { src };
+		this.srcFile = src;
+		this.currChar = SOF;
+		this.prevChar = SOF;
+	}
+
+	/**
+	 * Nadaljuje branje v (morda spremenjeni) vsebini izvorne datoteke na zacetku
+	 * leksikalnega simbola. Stevilke imen ostanejo enake, indeksi simbolov pa se
+	 * stejejo naprej.
+	 *
+	 * @param src      Vsebina izvorne datoteke.
+	 * @param offset   Indeks prvega znaka simbola.
+	 * @param position Polozaj prvega znaka simbola (glej {@link #position}).
+	 */
+	void restart(final ByteBuffer src, final int offset, final long position) {
+		srcFiles = new ByteBuffer[] { src };
+		srcFileIndex = 0;
+		srcFile = src;
+		srcFilePos = offset;
+		currChar = SOF;
+		prevChar = SOF;
+		steppedBack = false;
+		line = prevLine = startLine = line(position);
+		column = prevColumn = startColumn = column(position);
+		this.offset = prevOffset = offset - 1;
+		startOffset = offset;
+		nextTokenIndex = tokenCount;
+	}
+
+	/**
+	 * Preslika izvorno datoteko v pomnilnik.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Vsebina izvorne datoteke.
+	 */
+	private static ByteBuffer map(final String srcFileName) {
+		try (FileChannel channel = FileChannel.open(Paths.get(srcFileName), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (NoSuchFileException __) {
+			throw new Report.Error("File '" + srcFileName + "' not found.");
+		} catch (IOException | IllegalArgumentException __) {
+			throw new Report.Error("Cannot read source file '" + srcFileName + "'.");
+		}
 	}
 
 	@Override
 	public void close() {
-		try {
-			srcFile.close();
-		} catch (IOException __) {
-			throw new Report.Error("Cannot close source file.");
-		}
+		// Preslikave se sprostijo, ko postanejo nedosegljive.
+		srcFiles = new ByteBuffer[0];
+		srcFile = ByteBuffer.allocate(0);
 	}
 
 	/**
 	 * Prebere naslednji znak izvorne datoteke.
 	 *
-	 * Izvorno datoteko beremo znak po znak. Trenutni znak izvorne datoteke je
-	 * shranjen v spremenljivki {@code buffChar}, vrstica in stolpec trenutnega
-	 * znaka izvorne datoteke sta shranjena v spremenljivkah {@code buffCharLine} in
-	 * {@code buffCharColumn}.
-	 *
-	 * Zacetne vrednosti {@code buffChar}, {@code buffCharLine} in
-	 * {@code buffCharColumn} so {@code '\n'}, {@code 0} in {@code 0}: branje prvega
-	 * znaka izvorne datoteke bo na osnovi vrednosti {@code '\n'} spremenljivke
-	 * {@code buffChar} prvemu znaku izvorne datoteke priredilo vrstico 1 in stolpec
-	 * 1.
+	 * Izvorne datoteke so preslikane v pomnilnik, znake (bajte) pa beremo
+	 * neposredno iz preslikav, enega po enega. Trenutni znak je shranjen v spremenljivki
+	 * {@code currChar}, polozaj za njim pa v spremenljivkah {@code line} in
+	 * {@code column}, ki se posodobita ob vsakem prebranem znaku.
 	 *
-	 * Pri branju izvorne datoteke se predpostavlja, da je v spremenljivki
-	 * {@code buffChar} ves "cas veljaven znak. Zunaj metode {@code nextChar} so vse
-	 * spremenljivke {@code buffChar}, {@code buffCharLine} in
-	 * {@code buffCharColumn} namenjene le branju.
+	 * Analizator lahko stopi najvec en znak nazaj (metoda {@code stepBack}), zato
+	 * si poleg trenutnega znaka zapomni le se prejsnji znak in polozaj za njim.
+	 * Poraba pomnilnika je tako neodvisna od dolzine izvorne datoteke.
 	 *
-	 * Vrednost {@code -1} v spremenljivki {@code buffChar} pomeni konec datoteke
-	 * (vrednosti spremenljivk {@code buffCharLine} in {@code buffCharColumn} pa
-	 * nista ve"c veljavni).
+	 * Vrednost {@code EOF} v spremenljivki {@code currChar} pomeni konec datoteke;
+	 * nadaljnji klici metode ne spremenijo stanja.
 	 */
 	private void nextChar() {
-		if (currentChar() == EOF) {
+		if (currChar == EOF) {
 			return;
 		}
-		if (endOffset < consumedChars.size() - 1) {
-			endOffset++;
-			return;
+		prevChar = currChar;
+		prevLine = line;
+		prevColumn = column;
+		prevOffset = offset;
+		offset++;
+		if (steppedBack) {
+			steppedBack = false;
+			currChar = aheadChar;
+		} else {
+			currChar = readChar();
 		}
-		try {
-			this.consumedChars.add(srcFile.read());
-			this.endOffset++;
-		} catch (IOException __) {
-			throw new Report.Error("Cannot read source file.");
+		switch (currChar) {
+			case '\n' -> {
+				line++;
+				column = 1;
+			}
+			case '\t' -> column = (column + 7) / 8 * 8 + 1;
+			case EOF -> {}
+			default -> column++;
+		}
+	}
+
+	private int readChar() {
+		while (srcFilePos == srcFile.limit()) {
+			if (srcFileIndex + 1 >= srcFiles.length) {
+				return EOF;
+			}
+			srcFile = srcFiles[++srcFileIndex];
+			srcFilePos = 0;
 		}
+		return srcFile.get(srcFilePos++) & 0xFF;
 	}
 
 	private int currentChar() {
-		return this.consumedChars.get(this.endOffset);
+		return this.currChar;
 	}
 
 	private void stepBack() {
-		this.endOffset--;
+		aheadChar = currChar;
+		steppedBack = true;
+		currChar = prevChar;
+		line = prevLine;
+		column = prevColumn;
+		offset = prevOffset;
 	}
 
 	/**
-	 * Trenutni leksikalni simbol.
-	 *
-	 * "Ce vrednost spremenljivke {@code buffToken} ni {@code null}, je simbol "ze
-	 * prebran iz vhodne datoteke, ni pa "se predan naprej sintaksnemu analizatorju.
-	 * Ta simbol je dostopen z metodama {@code peekToken} in {@code takeToken}.
-	 */
-	private Token buffToken = null;
-
-	/**
-	 * Prebere naslednji leksikalni simbol, ki je nato dostopen preko metod
-	 * {@code peekToken} in {@code takeToken}.
+	 * Prebere naslednji leksikalni simbol in ga doda v tabele prebranih
+	 * simbolov, od koder je nato dostopen preko metod {@code peek} in
+	 * {@code take}.
 	 */
 	private void nextToken() {
 		nextChar();
 
-		buffToken = null;
-		while (buffToken == null) {
+		final int count = tokenCount;
+		while (tokenCount == count) {
+			startOffset = offset;
 			switch (currentChar()) {
 				case '#':
 					skipLineComment();
@@ -127,21 +366,20 @@ public class LexAn implements AutoCloseable {
 					break;
 				case '"':
 					nextChar();
-					StringBuilder stringLexeme = new StringBuilder();
 					while (currentChar() != '"') {
-						stringLexeme.append(readCharLexeme('"'));
+						readCharLexeme('"');
 						nextChar();
 					}
-					this.makeToken(Token.Symbol.STRINGCONST, stringLexeme.toString());
+					this.makeToken(Token.Symbol.STRINGCONST);
 					break;
 				case '\'':
 					skipChar();
-					String charLexeme = readCharLexeme('\'');
+					readCharLexeme('\'');
 					skipChar();
 					if (currentChar() != '\'') {
 						throw unexpectedTokenError();
 					}
-					this.makeToken(Token.Symbol.CHARCONST, charLexeme);
+					this.makeToken(Token.Symbol.CHARCONST);
 					break;
 				case ',':
 					makeToken(Token.Symbol.COMMA);
@@ -172,12 +410,12 @@ public class LexAn implements AutoCloseable {
 					break;
 				case '&':
 					nextChar();
-					matchOrThrow("&");
+					matchOrThrow('&');
 					makeToken(Token.Symbol.AND);
 					break;
 				case '|':
 					nextChar();
-					matchOrThrow("|");
+					matchOrThrow('|');
 					makeToken(Token.Symbol.OR);
 					break;
 				case '=':
@@ -232,7 +470,7 @@ public class LexAn implements AutoCloseable {
 					makeToken(Token.Symbol.EOF);
 					break;
 				default: {
-					if (matchesPattern("[_a-z]", currentChar())) {
+					if (is(currentChar(), LETTER)) {
 						consumeKeywordOrIdentifier();
 					} else {
 						throw unexpectedTokenError();
@@ -248,75 +486,95 @@ public class LexAn implements AutoCloseable {
 		}
 	}
 
-	private String readCharLexeme(char caretLexeme) {
-		StringBuilder lexeme = new StringBuilder();
+	/**
+	 * Preveri en (morda ubezni) znak znakovne konstante ali niza.
+	 */
+	private void readCharLexeme(char caretLexeme) {
 		if (currentChar() == '\\') {
 			nextChar();
-			if (currentChar() == 'n') {
-				lexeme.append("\n");
-			} else if (currentChar() == caretLexeme) {
-				lexeme.append("" + caretLexeme);
-			} else if (currentChar() == '\\') {
-				lexeme.append("\\");
-			} else {
-				String asciiCode = "";
-				if (matchesPattern("([0-9]|[A-F])", currentChar())) {
-					asciiCode += (char) currentChar();
-				} else {
+			if (currentChar() != 'n' && currentChar() != caretLexeme && currentChar() != '\\') {
+				if (!is(currentChar(), HEX)) {
 					throw unexpectedTokenError();
 				}
 				nextChar();
-				if (matchesPattern("([0-9]|[A-F])", currentChar())) {
-					asciiCode += (char) currentChar();
-				} else {
+				if (!is(currentChar(), HEX)) {
 					throw unexpectedTokenError();
 				}
-				int decAsciiCode = Integer.parseInt(asciiCode,16);
-				lexeme.append(Character.toString(decAsciiCode));
 			}
-		} else if (matchesPattern("[\\x20-\\x7E]", currentChar())) {
-			lexeme.append((char) currentChar());
-		} else {
+		} else if (!is(currentChar(), PRINTABLE)) {
 			throw unexpectedTokenError();
 		}
-		return lexeme.toString();
 	}
 
 	private void consumeNumber() {
-		StringBuilder lexeme = new StringBuilder();
-		while (matchesPattern("[0-9]", currentChar())) {
-            lexeme.append((char) currentChar());
-            nextChar();
-        }
+		while (is(currentChar(), DIGIT)) {
+			nextChar();
+		}
 		// We stepped forward one character extra above
 		stepBack();
 
-		this.makeToken(Token.Symbol.INTCONST, lexeme.toString());
+		this.makeToken(Token.Symbol.INTCONST);
 	}
 
 	private void consumeKeywordOrIdentifier() {
-		StringBuilder lexeme = new StringBuilder();
-		while (matchesPattern("[_0-9a-z]", currentChar())) {
+		lexeme.setLength(0);
+		int nameHash = 0;
+		while (is(currentChar(), LETTER | DIGIT)) {
+			nameHash = 31 * nameHash + currentChar();
 			lexeme.append((char) currentChar());
 			nextChar();
 		}
 		// We stepped forward one character extra above
 		stepBack();
 
-		Token.Symbol symbol = switch (lexeme.toString()) {
-			case "fun" -> Token.Symbol.FUN;
-			case "var" -> Token.Symbol.VAR;
-			case "if" -> Token.Symbol.IF;
-			case "then" -> Token.Symbol.THEN;
-			case "else" -> Token.Symbol.ELSE;
-			case "while" -> Token.Symbol.WHILE;
-			case "do" -> Token.Symbol.DO;
-			case "let" -> Token.Symbol.LET;
-			case "in" -> Token.Symbol.IN;
-			case "end" -> Token.Symbol.END;
-			default -> Token.Symbol.IDENTIFIER;
-		};
-        this.makeToken(symbol, lexeme.toString());
+		int length = lexeme.length();
+		int hash = keywordHash(lexeme.charAt(0), lexeme.charAt(length - 1), length);
+		String keyword = KEYWORDS[hash];
+		if (keyword != null && keyword.contentEquals(lexeme)) {
+			this.makeToken(KEYWORD_SYMBOLS[hash]);
+		} else {
+			tokenIdentifiers[tokenCount % TOKEN_WINDOW] = intern(nameHash);
+			this.makeToken(Token.Symbol.IDENTIFIER);
+		}
+	}
+
+	/**
+	 * Vrne stevilko imena, ki je trenutno v {@code lexeme}; novo ime dobi prvo
+	 * prosto stevilko.
+	 *
+	 * @param hash Zgoscevalna vrednost imena (enaka {@link String#hashCode}).
+	 * @return Stevilka imena.
+	 */
+	private int intern(final int hash) {
+		int mask = nameTable.length - 1;
+		int index = hash & mask;
+		while (nameTable[index] != 0) {
+			final int identifier = nameTable[index] - 1;
+			if (nameHashes[identifier] == hash && names[identifier].contentEquals(lexeme))
+				return identifier;
+			index = (index + 1) & mask;
+		}
+
+		final int identifier = nameCount++;
+		if (identifier == names.length) {
+			names = Arrays.copyOf(names, 2 * names.length);
+			nameHashes = Arrays.copyOf(nameHashes, 2 * nameHashes.length);
+		}
+		names[identifier] = lexeme.toString();
+		nameHashes[identifier] = hash;
+		nameTable[index] = identifier + 1;
+		// The table is at most half full, so that probe sequences stay short.
+		if (2 * nameCount > nameTable.length) {
+			nameTable = new int[2 * nameTable.length];
+			mask = nameTable.length - 1;
+			for (int other = 0; other < nameCount; other++) {
+				index = nameHashes[other] & mask;
+				while (nameTable[index] != 0)
+					index = (index + 1) & mask;
+				nameTable[index] = other + 1;
+			}
+		}
+		return identifier;
 	}
 
 	private Report.Error unexpectedTokenError() {
@@ -337,90 +595,249 @@ public class LexAn implements AutoCloseable {
     }
 
 	private Report.Location getEndPosition() {
-		int line = startPosition.begLine();
-		int col = startPosition.begColumn();
-		for (int i = startOffset; i <= endOffset; i++) {
-			int ch = consumedChars.get(i);
-			switch (ch) {
-				case '\n' -> {
-					line++;
-					col = 1;
-				}
-				case '\t' -> {
-					while (col % 8 != 0) {
-						col += 1;
-					}
-					col += 1;
-				}
-				case SOF, EOF -> {}
-				default -> col += 1;
-			}
-		}
-		return new Report.Location(line, col);
-	}
-
-	private void makeToken(Token.Symbol symbol) {
-		this.makeToken(symbol, (char) currentChar() + "");
+		return new Report.Location(line, column);
 	}
 
 	private void skipChar() {
 		// Steps forward and prepares the positions for the next token,
 		// without creating a token like `makeToken`
-		this.startPosition = getEndPosition();
-		this.startOffset = this.endOffset + 1;
+		this.startLine = line;
+		this.startColumn = column;
 		nextChar();
 	}
 
-	private void makeToken(Token.Symbol symbol, String lexeme) {
-		Report.Location endPosition = getEndPosition();
-        Report.Location location = new Report.Location(
-                startPosition.begLine(),
-                startPosition.begColumn(),
-                endPosition.begLine(),
-                endPosition.begColumn()
-        );
-        this.buffToken = new Token(location, symbol, lexeme);
-		this.startPosition = endPosition;
-		this.startOffset = this.endOffset + 1;
+	private void makeToken(Token.Symbol symbol) {
+		final int slot = tokenCount % TOKEN_WINDOW;
+		tokenSymbols[slot] = (byte) symbol.ordinal();
+		tokenBegOffsets[slot] = startOffset;
+		tokenEndOffsets[slot] = currentChar() == EOF ? offset : offset + 1;
+		tokenBegPositions[slot] = position(startLine, startColumn);
+		tokenEndPositions[slot] = position(line, column);
+		tokenCount++;
+		this.startLine = line;
+		this.startColumn = column;
 	}
 
-	private void matchOrThrow(String regex) {
-		Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-		Matcher matcher = pattern.matcher((char) currentChar() + "");
-		if (!matcher.find()) {
+	/**
+	 * Zapise polozaj v izvorni datoteki v eno stevilo.
+	 *
+	 * @param line   Vrstica.
+	 * @param column Stolpec.
+	 * @return Polozaj: vrstica v zgornjih, stolpec v spodnjih 32 bitih.
+	 */
+	public static long position(int line, int column) {
+		return ((long) line << 32) | (column & 0xFFFFFFFFL);
+	}
+
+	/** Vrne vrstico polozaja, zapisanega z metodo {@link #position}. */
+	public static int line(long position) {
+		return (int) (position >>> 32);
+	}
+
+	/** Vrne stolpec polozaja, zapisanega z metodo {@link #position}. */
+	public static int column(long position) {
+		return (int) position;
+	}
+
+	private void matchOrThrow(char expected) {
+		if (currentChar() != expected) {
 			throw unexpectedTokenError();
 		}
 	}
 
-	private boolean matchesPattern(String regex, int input) {
-		Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-		Matcher matcher = pattern.matcher((char)input + "");
-		return matcher.find();
+	/**
+	 * Vrne indeks trenutnega leksikalnega simbola, ki ostane v lastnistvu
+	 * leksikalnega analizatorja.
+	 *
+	 * Podatki o simbolu so dostopni, dokler ni prebranih {@code TOKEN_WINDOW}
+	 * novejsih simbolov.
+	 *
+	 * @return Indeks leksikalnega simbola.
+	 */
+	public int peek() {
+		if (nextTokenIndex == tokenCount)
+			nextToken();
+		return nextTokenIndex;
+	}
+
+	/**
+	 * Vrne indeks trenutnega leksikalnega simbola, ki preide v lastnistvo klicoce
+	 * kode.
+	 *
+	 * @return Indeks leksikalnega simbola.
+	 */
+	public int take() {
+		peek();
+		return nextTokenIndex++;
 	}
 
 	/**
-	 * Vrne trenutni leksikalni simbol, ki ostane v lastnistvu leksikalnega
-	 * analizatorja.
+	 * Vrne vrsto prebranega leksikalnega simbola.
 	 *
-	 * @return Leksikalni simbol.
+	 * @param token Indeks leksikalnega simbola.
+	 * @return Vrsta leksikalnega simbola.
 	 */
-	public Token peekToken() {
-		if (buffToken == null)
-			nextToken();
-		return buffToken;
+	public Token.Symbol symbol(final int token) {
+		return SYMBOLS[tokenSymbols[slot(token)]];
+	}
+
+	/** Vrne zacetni polozaj prebranega leksikalnega simbola (glej {@link #position}). */
+	public long begPosition(final int token) {
+		return tokenBegPositions[slot(token)];
+	}
+
+	/** Vrne koncni polozaj prebranega leksikalnega simbola (glej {@link #position}). */
+	public long endPosition(final int token) {
+		return tokenEndPositions[slot(token)];
+	}
+
+	/** Vrne indeks prvega znaka prebranega leksikalnega simbola. */
+	public int begOffset(final int token) {
+		return tokenBegOffsets[slot(token)];
+	}
+
+	/** Vrne indeks za zadnjim znakom prebranega leksikalnega simbola. */
+	public int endOffset(final int token) {
+		return tokenEndOffsets[slot(token)];
+	}
+
+	/**
+	 * Ustvari lokacijo prebranega leksikalnega simbola.
+	 *
+	 * @param token Indeks leksikalnega simbola.
+	 * @return Lokacija leksikalnega simbola.
+	 */
+	public Report.Location location(final int token) {
+		final long beg = begPosition(token);
+		final long end = endPosition(token);
+		return new Report.Location(line(beg), column(beg), line(end), column(end));
+	}
+
+	/**
+	 * Vrne mesto prebranega leksikalnega simbola v tabelah.
+	 *
+	 * @param token Indeks leksikalnega simbola.
+	 * @return Mesto v tabelah.
+	 */
+	private int slot(final int token) {
+		if (token < tokenCount - TOKEN_WINDOW || token >= tokenCount)
+			throw new Report.InternalError();
+		return token % TOKEN_WINDOW;
+	}
+
+	/**
+	 * Vrne stevilko imena prebranega leksikalnega simbola. Enaka imena imajo
+	 * enake stevilke, stevilke pa si sledijo od 0 naprej v vrstnem redu, v
+	 * katerem se imena prvic pojavijo.
+	 *
+	 * @param token Indeks leksikalnega simbola vrste {@code IDENTIFIER}.
+	 * @return Stevilka imena.
+	 */
+	public int identifier(final int token) {
+		if (symbol(token) != Token.Symbol.IDENTIFIER)
+			throw new Report.InternalError();
+		return tokenIdentifiers[slot(token)];
+	}
+
+	/**
+	 * Vrne stevilko imena, ki se ne pojavi v izvorni datoteki (na primer imena
+	 * funkcije iz prevedene knjiznice, glej {@link Lib}).
+	 *
+	 * @param name Ime.
+	 * @return Stevilka imena.
+	 */
+	public int identifier(final String name) {
+		lexeme.setLength(0);
+		lexeme.append(name);
+		return intern(name.hashCode());
+	}
+
+	/**
+	 * Vrne ime z dano stevilko.
+	 *
+	 * @param identifier Stevilka imena (glej {@link #identifier}).
+	 * @return Ime; enaka imena so isti objekt.
+	 */
+	public String name(final int identifier) {
+		return names[identifier];
+	}
+
+	/**
+	 * Ustvari leksem prebranega leksikalnega simbola. Leksem imena je ime z
+	 * njegovo stevilko, leksem stevilske konstante se prepise iz izvorne
+	 * datoteke, ubezni znaki znakovne konstante ali niza se pri tem razresijo.
+	 *
+	 * @param token Indeks leksikalnega simbola.
+	 * @return Leksem leksikalnega simbola.
+	 */
+	public String lexeme(final int token) {
+		final int beg = tokenBegOffsets[slot(token)];
+		final int end = tokenEndOffsets[slot(token)];
+		return switch (symbol(token)) {
+			case IDENTIFIER -> names[tokenIdentifiers[slot(token)]];
+			case INTCONST -> {
+				final char[] chars = new char[end - beg];
+				for (int i = beg; i < end; i++)
+					chars[i - beg] = (char) byteAt(i);
+				yield new String(chars);
+			}
+			case STRINGCONST -> decode(beg + 1, end - 1, '"');
+			case CHARCONST -> decode(beg + 1, end - 1, '\'');
+			default -> SYMBOL_LEXEMES[tokenSymbols[slot(token)]];
+		};
+	}
+
+	/**
+	 * Razresi ubezne znake med znakoma v narekovajih.
+	 *
+	 * @param beg         Indeks prvega znaka.
+	 * @param end         Indeks za zadnjim znakom.
+	 * @param caretLexeme Narekovaj.
+	 * @return Niz znakov.
+	 */
+	private String decode(final int beg, final int end, final char caretLexeme) {
+		final StringBuilder chars = new StringBuilder(end - beg);
+		for (int i = beg; i < end; i++) {
+			final int c = byteAt(i);
+			if (c != '\\') {
+				chars.append((char) c);
+				continue;
+			}
+			final int escaped = byteAt(++i);
+			if (escaped == 'n') {
+				chars.append('\n');
+			} else if (escaped == caretLexeme || escaped == '\\') {
+				chars.append((char) escaped);
+			} else {
+				chars.append((char) (Character.digit(escaped, 16) * 16 + Character.digit(byteAt(++i), 16)));
+			}
+		}
+		return chars.toString();
+	}
+
+	/**
+	 * Vrne znak zaporedja vseh izvornih datotek.
+	 *
+	 * @param offset Indeks znaka.
+	 * @return Znak.
+	 */
+	private int byteAt(int offset) {
+		for (final ByteBuffer srcFile : srcFiles) {
+			if (offset < srcFile.limit())
+				return srcFile.get(offset) & 0xFF;
+			offset -= srcFile.limit();
+		}
+		throw new Report.InternalError();
 	}
 
 	/**
-	 * Vrne trenutni leksikalni simbol, ki preide v lastnistvo klicoce kode.
+	 * Ustvari prebrani leksikalni simbol.
 	 *
+	 * @param token Indeks leksikalnega simbola.
 	 * @return Leksikalni simbol.
 	 */
-	public Token takeToken() {
-		if (buffToken == null)
-			nextToken();
-		final Token thisToken = buffToken;
-		buffToken = null;
-		return thisToken;
+	public Token token(final int token) {
+		return new Token(location(token), symbol(token), lexeme(token));
 	}
 
 	// --- ZAGON ---
@@ -434,18 +851,30 @@ public class LexAn implements AutoCloseable {
 		System.out.println("This is PINS'24 compiler (lexical analysis):");
 
 		try {
-			if (cmdLineArgs.length == 0)
+			String srcFilePath = null;
+			boolean bench = false;
+			for (String cmdLineArg : cmdLineArgs) {
+				if (cmdLineArg.equals("--bench")) {
+					bench = true;
+				} else if (srcFilePath == null) {
+					srcFilePath = cmdLineArg;
+				} else {
+					Report.warning("Unused arguments in the command line.");
+				}
+			}
+			if (srcFilePath == null)
 				throw new Report.Error("No source file specified in the command line.");
-			if (cmdLineArgs.length > 1)
-				Report.warning("Unused arguments in the command line.");
-
-			Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cmdLineArgs[0])));
-			try (LexAn lexAn = new LexAn(reader)) {
-				while (true) {
-					Token token = lexAn.takeToken();
-					System.out.println(token);
-					if (token.symbol() == Token.Symbol.EOF) {
-						break;
+
+			if (bench) {
+				benchmark(srcFilePath);
+			} else {
+				try (LexAn lexAn = new LexAn(srcFilePath)) {
+					while (true) {
+						Token token = lexAn.token(lexAn.take());
+						System.out.println(token);
+						if (token.symbol() == Token.Symbol.EOF) {
+							break;
+						}
 					}
 				}
 			}
@@ -460,9 +889,55 @@ public class LexAn implements AutoCloseable {
 			System.err.println(error.getMessage());
 			error.printStackTrace();
 			System.exit(1);
-		} catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-    }
+		}
+	}
+
+	/** Trajanje meritve hitrosti leksikalne analize v nanosekundah. */
+	private static final long BENCH_NANOS = 3_000_000_000L;
+
+	/**
+	 * Meri hitrost leksikalne analize: izvorno datoteko veckrat prebere do konca
+	 * (prvi prehodi so za ogrevanje) in izpise prebrane megabajte na sekundo.
+	 *
+	 * @param srcFilePath Izvorna datoteka.
+	 */
+	private static void benchmark(String srcFilePath) {
+		final long size;
+		try {
+			size = Files.size(Paths.get(srcFilePath));
+		} catch (IOException __) {
+			throw new Report.Error("Cannot read source file.");
+		}
+		int tokens = 0;
+		for (int pass = 0; pass < 3; pass++)
+			tokens = lexAll(srcFilePath);
+		int passes = 0;
+		final long start = System.nanoTime();
+		long elapsed;
+		do {
+			lexAll(srcFilePath);
+			passes++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < BENCH_NANOS);
+		final double megabytes = (double) size * passes / (1 << 20);
+		final double seconds = elapsed / 1e9;
+		System.out.printf("%d bytes, %d tokens, %d passes in %.2f s: %.1f MB/s%n", size, tokens, passes, seconds,
+				megabytes / seconds);
+	}
+
+	/**
+	 * Prebere vse leksikalne simbole izvorne datoteke.
+	 *
+	 * @param srcFilePath Izvorna datoteka.
+	 * @return Stevilo leksikalnih simbolov.
+	 */
+	private static int lexAll(String srcFilePath) {
+		int tokens = 0;
+		try (LexAn lexAn = new LexAn(srcFilePath)) {
+			while (lexAn.symbol(lexAn.take()) != Token.Symbol.EOF)
+				tokens++;
+		}
+		return tokens;
+	}
 
 }
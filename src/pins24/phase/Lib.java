@@ -0,0 +1,221 @@
+package pins24.phase;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Prevedena standardna knjiznica.
+ *
+ * Vse funkcije standardne knjiznice so sistemski klici stroja (glej
+ * {@link Machine}), zato prevedena knjiznica nima ne kode ne podatkov, temvec
+ * le glave izvoznih funkcij: ime, imena parametrov in njihove lokacije.
+ * Prevedena knjiznica se ob prvem prevajanju shrani v datoteko poleg izvorne
+ * datoteke knjiznice in se pri naslednjih prevajanjih le prebere; sintaksni
+ * analizator njene funkcije doda pred definicije programa (glej
+ * {@link SynAn#parse(Map, Lib)}).
+ */
+public class Lib {
+
+	/** Oznaka na zacetku datoteke s prevedeno knjiznico ("PINL"). */
+	private static final int MAGIC = 0x50494e4c;
+
+	/** Razlicica zapisa prevedene knjiznice. */
+	private static final int VERSION = 1;
+
+	/**
+	 * Glava funkcije.
+	 *
+	 * @param name         Ime funkcije.
+	 * @param location     Lokacija definicije funkcije v izvorni datoteki
+	 *                     knjiznice.
+	 * @param pars         Imena parametrov.
+	 * @param parLocations Lokacije definicij parametrov.
+	 */
+	public record FunSig(String name, Report.Location location, List<String> pars,
+			List<Report.Location> parLocations) {
+	}
+
+	/** Glave izvoznih funkcij v vrstnem redu definicij. */
+	public final List<FunSig> funs;
+
+	/**
+	 * Ustvari novo prevedeno knjiznico.
+	 *
+	 * @param funs Glave izvoznih funkcij.
+	 */
+	public Lib(final List<FunSig> funs) {
+		this.funs = Collections.unmodifiableList(funs);
+	}
+
+	/**
+	 * Vrne ime datoteke s prevedeno knjiznico.
+	 *
+	 * @param srcFileName Ime izvorne datoteke knjiznice.
+	 * @return Ime datoteke s prevedeno knjiznico.
+	 */
+	public static String libFileName(final String srcFileName) {
+		return srcFileName + "lib";
+	}
+
+	/**
+	 * Vrne prevedeno knjiznico. Ce datoteka s prevedeno knjiznico ne obstaja, je
+	 * starejsa od izvorne datoteke ali je ni mogoce prebrati, se knjiznica prevede
+	 * in shrani.
+	 *
+	 * @param srcFileName Ime izvorne datoteke knjiznice.
+	 * @return Prevedena knjiznica.
+	 */
+	public static Lib load(final String srcFileName) {
+		final Path srcFile = Path.of(srcFileName);
+		final Path libFile = Path.of(libFileName(srcFileName));
+		try {
+			if (Files.exists(libFile) && (!Files.exists(srcFile)
+					|| Files.getLastModifiedTime(libFile).compareTo(Files.getLastModifiedTime(srcFile)) >= 0))
+				return read(libFile);
+		} catch (final IOException __) {
+			// Zastarel ali poskodovan zapis: knjiznica se prevede znova.
+		}
+		final Lib lib = compile(srcFileName);
+		try {
+			lib.write(libFile);
+		} catch (final IOException __) {
+			Report.warning("Cannot write the compiled library '" + libFile + "'.");
+		}
+		return lib;
+	}
+
+	/**
+	 * Prevede knjiznico.
+	 *
+	 * @param srcFileName Ime izvorne datoteke knjiznice.
+	 * @return Prevedena knjiznica.
+	 */
+	public static Lib compile(final String srcFileName) {
+		try (final SynAn synAn = new SynAn(srcFileName)) {
+			final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+			final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+			final List<FunSig> funs = new ArrayList<FunSig>();
+			for (final AST.Node node : (AST.Nodes<?>) semanAttrAST.ast) {
+				if (!(node instanceof AST.FunDef funDef) || funDef.stmts.size() != 0)
+					throw new Report.Error(semanAttrAST.attrLoc.get(node),
+							"Only functions implemented by the machine can be defined in a library.");
+				final List<String> pars = new ArrayList<String>();
+				final List<Report.Location> parLocations = new ArrayList<Report.Location>();
+				for (final AST.ParDef parDef : funDef.pars) {
+					pars.add(parDef.name);
+					parLocations.add(semanAttrAST.attrLoc.get(parDef).location());
+				}
+				funs.add(new FunSig(funDef.name, semanAttrAST.attrLoc.get(funDef).location(), pars, parLocations));
+			}
+			return new Lib(funs);
+		}
+	}
+
+	/**
+	 * Prebere prevedeno knjiznico.
+	 *
+	 * @param libFile Datoteka s prevedeno knjiznico.
+	 * @return Prevedena knjiznica.
+	 * @throws IOException Ce datoteke ni mogoce prebrati ali ni pravega zapisa.
+	 */
+	public static Lib read(final Path libFile) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(libFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a compiled library: " + libFile);
+			final int funCount = in.readInt();
+			final List<FunSig> funs = new ArrayList<FunSig>(funCount);
+			for (int fun = 0; fun < funCount; fun++) {
+				final String name = in.readUTF();
+				final Report.Location location = readLocation(in);
+				final int parCount = in.readInt();
+				final List<String> pars = new ArrayList<String>(parCount);
+				final List<Report.Location> parLocations = new ArrayList<Report.Location>(parCount);
+				for (int par = 0; par < parCount; par++) {
+					pars.add(in.readUTF());
+					parLocations.add(readLocation(in));
+				}
+				funs.add(new FunSig(name, location, pars, parLocations));
+			}
+			return new Lib(funs);
+		}
+	}
+
+	/**
+	 * Shrani prevedeno knjiznico. Datoteka se zamenja v celoti, zato hkratni
+	 * prevajalniki nikoli ne preberejo napol zapisane knjiznice.
+	 *
+	 * @param libFile Datoteka s prevedeno knjiznico.
+	 * @throws IOException Ce datoteke ni mogoce zapisati.
+	 */
+	public void write(final Path libFile) throws IOException {
+		final Path tmpFile = libFile.resolveSibling(libFile.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+		try {
+			try (final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(funs.size());
+				for (final FunSig fun : funs) {
+					out.writeUTF(fun.name());
+					writeLocation(out, fun.location());
+					out.writeInt(fun.pars().size());
+					for (int par = 0; par < fun.pars().size(); par++) {
+						out.writeUTF(fun.pars().get(par));
+						writeLocation(out, fun.parLocations().get(par));
+					}
+				}
+			}
+			Files.move(tmpFile, libFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	private static Report.Location readLocation(final DataInputStream in) throws IOException {
+		return new Report.Location(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+	}
+
+	private static void writeLocation(final DataOutputStream out, final Report.Location location)
+			throws IOException {
+		out.writeInt(location.begLine());
+		out.writeInt(location.begColumn());
+		out.writeInt(location.endLine());
+		out.writeInt(location.endColumn());
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon prevajanja knjiznice kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (library):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			final Lib lib = compile(cmdLineArgs[0]);
+			try {
+				lib.write(Path.of(libFileName(cmdLineArgs[0])));
+			} catch (final IOException __) {
+				throw new Report.Error("Cannot write the compiled library '" + libFileName(cmdLineArgs[0]) + "'.");
+			}
+			for (final FunSig fun : lib.funs)
+				System.out.println("fun " + fun.name() + "(" + String.join(", ", fun.pars()) + ")");
+
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package pins24.phase;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Povezovalnik enot.
+ *
+ * Povezovalnik zdruzi objektne datoteke (glej {@link Obj}) v program. Segment
+ * kode vsebuje najprej ukaze za inicializacijo staticnih spremenljivk vseh enot,
+ * nato klic funkcije {@code main} in sistemske funkcije {@code exit}, nato pa
+ * ukaze funkcij vseh enot; podatki enot si sledijo v vrstnem redu enot.
+ *
+ * Izvozne in uvozne oznake enote se preimenujejo v imena funkcij. Lokalne
+ * oznake obdrzijo svoja imena, razen ce so ta ze zasedena; tedaj se jim doda
+ * stevilka, tako kot {@link CodeGen} preimenuje gnezdene funkcije z enakimi
+ * imeni.
+ */
+public class Linker {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Linker() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Povezan program.
+	 *
+	 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+	 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+	 */
+	public record Program(List<PDM.CodeInstr> codeSegment, List<PDM.DataInstr> dataSegment) {
+	}
+
+	/**
+	 * Poveze enote v program.
+	 *
+	 * @param objs Objektne datoteke enot.
+	 * @return Povezan program.
+	 */
+	public static Program link(final List<Obj> objs) {
+		// Each function is defined in one unit only.
+		final Map<String, Obj> exporters = new HashMap<String, Obj>();
+		for (final Obj obj : objs)
+			for (final String fun : obj.exports.keySet()) {
+				final Obj other = exporters.putIfAbsent(fun, obj);
+				if (other != null)
+					throw new Report.Error(
+							"Function '" + fun + "' is defined in units '" + other.name + "' and '" + obj.name + "'.");
+			}
+		if (!exporters.containsKey("main"))
+			throw new Report.Error("Undefined function 'main'.");
+
+		final Set<String> funs = new HashSet<String>(exporters.keySet());
+		funs.addAll(Machine.SYSCALLS);
+		final Set<String> labels = new HashSet<String>(funs);
+		for (final Obj obj : objs)
+			labels.addAll(obj.imports.keySet());
+		final List<Map<String, String>> renames = new ArrayList<Map<String, String>>();
+		for (final Obj obj : objs)
+			renames.add(renames(obj, labels));
+
+		final List<PDM.CodeInstr> codeSegment = new ArrayList<PDM.CodeInstr>();
+		final List<PDM.DataInstr> dataSegment = new ArrayList<PDM.DataInstr>();
+		for (int unit = 0; unit < objs.size(); unit++)
+			relocate(objs.get(unit), objs.get(unit).initCode, renames.get(unit), funs, codeSegment);
+		codeSegment.add(new PDM.PUSH(0, null));
+		codeSegment.add(new PDM.NAME("main", null));
+		codeSegment.add(new PDM.CALL(null, null));
+		codeSegment.add(new PDM.PUSH(0, null));
+		codeSegment.add(new PDM.NAME("exit", null));
+		codeSegment.add(new PDM.CALL(null, null));
+		for (int unit = 0; unit < objs.size(); unit++)
+			relocate(objs.get(unit), objs.get(unit).funsCode, renames.get(unit), funs, codeSegment);
+		for (int unit = 0; unit < objs.size(); unit++)
+			relocate(objs.get(unit), objs.get(unit).data, renames.get(unit), funs, dataSegment);
+		return new Program(Collections.unmodifiableList(codeSegment), Collections.unmodifiableList(dataSegment));
+	}
+
+	/**
+	 * Doloci imena oznak enote v programu.
+	 *
+	 * @param obj    Objektna datoteka enote.
+	 * @param labels Ze zasedena imena oznak; dopolnijo se z imeni lokalnih oznak
+	 *               enote.
+	 * @return Preslikava imen oznak v enoti v imena oznak v programu.
+	 */
+	private static Map<String, String> renames(final Obj obj, final Set<String> labels) {
+		final Map<String, String> renames = new HashMap<String, String>();
+		obj.exports.forEach((fun, label) -> renames.put(label, fun));
+		obj.imports.forEach((fun, label) -> renames.put(label, fun));
+		for (final List<? extends PDM.Instruction> instrs : List.of(obj.initCode, obj.funsCode, obj.data))
+			for (final PDM.Instruction instr : instrs) {
+				if (!(instr instanceof PDM.LABEL label) || renames.containsKey(label.name))
+					continue;
+				String name = label.name;
+				int count = 1;
+				while (labels.contains(name)) {
+					name = label.name + count;
+					count++;
+				}
+				labels.add(name);
+				renames.put(label.name, name);
+			}
+		return renames;
+	}
+
+	/**
+	 * Prepise ukaze enote v program in pri tem preimenuje oznake.
+	 *
+	 * @param obj     Objektna datoteka enote.
+	 * @param instrs  Ukazi enote.
+	 * @param renames Imena oznak enote v programu.
+	 * @param funs    Imena funkcij, ki jih definirajo enote ali stroj.
+	 * @param segment Segment programa.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <Instr extends PDM.Instruction> void relocate(final Obj obj, final List<Instr> instrs,
+			final Map<String, String> renames, final Set<String> funs, final List<Instr> segment) {
+		for (final Instr instr : instrs) {
+			switch (instr) {
+			case final PDM.LABEL label: {
+				final String name = renames.get(label.name);
+				segment.add(name.equals(label.name) ? instr : (Instr) new PDM.LABEL(name, label.debugLocation));
+				break;
+			}
+			case final PDM.NAME ref: {
+				final String name = renames.get(ref.name);
+				if (name == null) {
+					// Generated code calls some system functions directly.
+					if (!Machine.SYSCALLS.contains(ref.name))
+						throw undefined(obj, ref, ref.name);
+					segment.add(instr);
+					break;
+				}
+				if (ref.name.equals(obj.imports.get(name)) && !funs.contains(name))
+					throw undefined(obj, ref, name);
+				segment.add(name.equals(ref.name) ? instr : (Instr) new PDM.NAME(name, ref.debugLocation));
+				break;
+			}
+			default:
+				segment.add(instr);
+				break;
+			}
+		}
+	}
+
+	private static Report.Error undefined(final Obj obj, final PDM.NAME ref, final String name) {
+		final String message = "Undefined function '" + name + "' in unit '" + obj.name + "'.";
+		return ref.debugLocation == null ? new Report.Error(message) : new Report.Error(ref.debugLocation, message);
+	}
+
+}
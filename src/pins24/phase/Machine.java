@@ -1,5 +1,7 @@
 package pins24.phase;
 
+import java.io.*;
+import java.nio.*;
 import java.util.*;
 import pins24.common.*;
 
@@ -15,7 +17,39 @@ import pins24.common.*;
  * <li>{@code -5}: {@code fun putstr(straddr)}</li>
  * <li>{@code -6}: {@code fun new(size)}</li>
  * <li>{@code -7}: {@code fun del(addr)}</li>
+ * <li>{@code -8}: {@code memo:get(funaddr, paraddr, numpars, resaddr)}</li>
+ * <li>{@code -9}: {@code memo:put(funaddr, paraddr, numpars, result)}</li>
+ * <li>{@code -10}: {@code fun strlen(src_ptr)}</li>
+ * <li>{@code -11}: {@code fun strcpy(dst_ptr, src_ptr)}</li>
+ * <li>{@code -12}: {@code fun strcat(dst_ptr, src_ptr)}</li>
+ * <li>{@code -13}: {@code fun append(dst_ptr, src_str)}</li>
+ * <li>{@code -14}: {@code fun repeat(dst_ptr, char, count)}</li>
+ * <li>{@code -15}: {@code fun memcpy(dst_ptr, src_ptr, size)}</li>
+ * <li>{@code -16}: {@code fun memset(dst_ptr, value, size)}</li>
+ * <li>{@code -17}: {@code fun memcmp(fst_ptr, snd_ptr, size)}</li>
  * </ol>
+ * 
+ * Funkciji {@code memo:get} in {@code memo:put} nista dostopni iz programa, ampak
+ * ju klice koda, ki jo generira {@link CodeGen} za funkcije, katerih rezultati
+ * klicev se hranijo v tabeli (glej {@link Optim#optimize(SemAn.AttrAST, boolean, boolean)}).
+ * 
+ * Funkcije za delo z nizi ({@code -10} do {@code -14}) natanko ponovijo
+ * nekdanje izvedbe v jeziku PINS'24: vsak znak niza zaseda 4 bajte, niz se
+ * konca z znakom {@code '\00'}, {@code strcat}, {@code append} in
+ * {@code repeat} ciljnega niza ne zakljucijo, vse razen {@code strlen} pa vrnejo
+ * {@code 0}.
+ * 
+ * Funkcije za delo s pomnilnikom ({@code -15} do {@code -17}) obdelajo cele
+ * besede, ki pokrivajo {@code size} bajtov. Funkcija {@code memcpy} prepisuje
+ * besedo za besedo od prve proti zadnji (tako kot zanka v jeziku PINS'24),
+ * {@code memset} v vsako besedo zapise {@code value}, {@code memcmp} pa vrne
+ * {@code -1}, {@code 0} ali {@code 1} glede na prvo razlicno besedo. Funkciji
+ * {@code memcpy} in {@code memset} vrneta {@code 0}.
+ * 
+ * Kopica raste od konca podatkov proti skladu, ki se zacne na naslovu
+ * {@code 0x10000} in raste navzdol. Obmocje, ki bi ga klic {@code new} rezerviral
+ * do sklada, se rezervira nad naslovom {@code 0x10000}, kjer je prostora do
+ * {@code 64 MB}.
  */
 public class Machine {
 
@@ -24,31 +58,103 @@ public class Machine {
 		throw new Report.InternalError();
 	}
 
-	/** Ali se opravi testni izpis ukazov. */
-	public static boolean debugInstrsList = false;
+	/**
+	 * Nastavitve izvajanja programa. Vsak stroj ima svoje, zato lahko hkrati
+	 * tece vec strojev z razlicnimi nastavitvami.
+	 *
+	 * @param debugInstrsList Ali se opravi testni izpis ukazov.
+	 * @param debugLabelsList Ali se opravi testni izpis vrednost oznak.
+	 * @param debugStack      Ali se opravi testni izpis dogajanja na skladu.
+	 * @param memoCapacity    Najvecje stevilo rezultatov klicev funkcij v tabeli.
+	 */
+	public record Settings(boolean debugInstrsList, boolean debugLabelsList, boolean debugStack, int memoCapacity) {
+
+		/** Privzete nastavitve: brez testnih izpisov. */
+		public static final Settings DEFAULT = new Settings(false, false, false, 1 << 16);
 
-	/** Ali se opravi testni izpis vrednost oznak. */
-	public static boolean debugLabelsList = false;
+	}
 
-	/** Ali se opravi testni izpis dogajanja na skladu. */
-	public static boolean debugStack = false;
+	/**
+	 * Imena sistemskih funkcij; funkcija na mestu {@code i} ima naslov
+	 * {@code -(i + 1)}.
+	 */
+	public static final List<String> SYSCALLS = List.of("exit", "getint", "putint", "getstr", "putstr", "new", "del",
+			"memo:get", "memo:put", "strlen", "strcpy", "strcat", "append", "repeat", "memcpy", "memset", "memcmp");
+
+	/**
+	 * Izracuna rezultat unarnega operatorja ukaza {@link PDM.OPER}.
+	 * 
+	 * @param oper Operator.
+	 * @param expr Vrednost operanda.
+	 * @return Rezultat operatorja.
+	 */
+	public static int oper(final PDM.OPER.Oper oper, final int expr) {
+		return switch (oper) {
+		case NOT -> (expr == 0) ? 1 : 0;
+		case NEG -> -expr;
+		default -> throw new Report.InternalError();
+		};
+	}
+
+	/**
+	 * Izracuna rezultat binarnega operatorja ukaza {@link PDM.OPER}.
+	 * 
+	 * @param oper Operator.
+	 * @param fst  Vrednost prvega operanda (globlje na skladu).
+	 * @param snd  Vrednost drugega operanda (na vrhu sklada).
+	 * @return Rezultat operatorja.
+	 * @throws ArithmeticException Ce je pri deljenju drugi operand enak nic.
+	 */
+	public static int oper(final PDM.OPER.Oper oper, final int fst, final int snd) {
+		return switch (oper) {
+		case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+		case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+		case EQU -> fst == snd ? 1 : 0;
+		case NEQ -> fst != snd ? 1 : 0;
+		case GTH -> fst > snd ? 1 : 0;
+		case LTH -> fst < snd ? 1 : 0;
+		case GEQ -> fst >= snd ? 1 : 0;
+		case LEQ -> fst <= snd ? 1 : 0;
+		case ADD -> fst + snd;
+		case SUB -> fst - snd;
+		case MUL -> fst * snd;
+		case DIV -> fst / snd;
+		case MOD -> fst % snd;
+		default -> throw new Report.InternalError();
+		};
+	}
 
 	/**
 	 * Izvajanje skladovnega stroja.
 	 */
 	public static class Executor {
 
-		/** Seznam ukazov kode programa. */
-		private final HashMap<Integer, PDM.CodeInstr> program = new HashMap<Integer, PDM.CodeInstr>();
+		/** Registri po vrstnem redu operacijskih kod (glej {@link Exe#REGN}). */
+		private static final PDM.REGN.Reg[] REGS = PDM.REGN.Reg.values();
+
+		/** Racunske operacije po vrstnem redu operacijskih kod (glej {@link Exe#OPER}). */
+		private static final PDM.OPER.Oper[] OPERS = PDM.OPER.Oper.values();
+
+		/** Najvecja velikost zveznega dela pomnilnika. */
+		private static final int MAX_MEMORY_SIZE = 1 << 26;
+
+		/** Ali se opravi testni izpis vrednost oznak. */
+		private final boolean debugLabelsList;
 
-		/** Pomnilnik (brez predstavitve ukazov. */
-		private final HashMap<Integer, Byte> memory = new HashMap<Integer, Byte>();
+		/** Ali se opravi testni izpis dogajanja na skladu. */
+		private final boolean debugStack;
 
-		/** Preslikava imen oznak v fizicne naslove. */
-		private final HashMap<String, Integer> labelToAddr = new HashMap<String, Integer>();
+		/** Najvecje stevilo rezultatov klicev funkcij v tabeli. */
+		private final int memoCapacity;
 
-		/** Preslikava fizicnih naslovov v imena oznak. */
-		private final HashMap<Integer, String> addrToLabel = new HashMap<Integer, String>();
+		/**
+		 * Pomnilnik (brez predstavitve ukazov) na naslovih od {@code 0} do velikosti
+		 * tabele; tabela se po potrebi poveca do {@link #MAX_MEMORY_SIZE}.
+		 */
+		private byte[] memory = new byte[0x10000];
+
+		/** Pomnilnik na naslovih izven tabele {@link #memory}. */
+		private final HashMap<Integer, Byte> farMemory = new HashMap<Integer, Byte>();
 
 		/** Velikost segmenta z ukazi kode programa. */
 		private final int codeSegmentSize;
@@ -62,22 +168,19 @@ public class Machine {
 		/** Preslikava naslova v pomen podatka, ki je shranjen na naslovu. */
 		final HashMap<Integer, String> debugDscs = new HashMap<Integer, String>();
 
-		{
-			labelToAddr.put("exit", -1);
-			addrToLabel.put(-1, "exit");
-			labelToAddr.put("getint", -2);
-			addrToLabel.put(-2, "getint");
-			labelToAddr.put("putint", -3);
-			addrToLabel.put(-3, "putint");
-			labelToAddr.put("getstr", -4);
-			addrToLabel.put(-4, "getstr");
-			labelToAddr.put("putstr", -5);
-			addrToLabel.put(-5, "putstr");
-			labelToAddr.put("new", -6);
-			addrToLabel.put(-6, "new");
-			labelToAddr.put("del", -7);
-			addrToLabel.put(-7, "del");
-		}
+		/**
+		 * Tabela rezultatov klicev funkcij: kljuc je naslov funkcije, ki mu sledijo
+		 * argumenti klica. Ko je tabela polna, se izloci najdlje neuporabljen
+		 * rezultat.
+		 */
+		@SuppressWarnings("serial")
+		private final LinkedHashMap<List<Integer>, Integer> memo = new LinkedHashMap<List<Integer>, Integer>(16, 0.75f,
+				true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<List<Integer>, Integer> eldest) {
+				return size() > memoCapacity;
+			}
+		};
 
 		/** Programski stevec. */
 		private int PC;
@@ -103,9 +206,16 @@ public class Machine {
 				throw new Report.InternalError();
 			if (debugStack && (debugInstr != null) && (debugInstr.debugLocation != null))
 				debugLocs.put(addr, debugInstr.debugLocation.toString());
+			if (addr <= MAX_MEMORY_SIZE - 4 && reserve(addr + 4)) {
+				memory[addr] = (byte) value;
+				memory[addr + 1] = (byte) (value >> 8);
+				memory[addr + 2] = (byte) (value >> 16);
+				memory[addr + 3] = (byte) (value >> 24);
+				return;
+			}
 			for (int b = 0; b < 4; b++) {
 				int val = ((value >> (b * 8)) & 0xFF);
-				memory.put(addr, (byte) val);
+				memPUT(addr, (byte) val);
 				addr += 1;
 			}
 		}
@@ -119,17 +229,153 @@ public class Machine {
 		private int memLOAD(int addr) {
 			if (addr < codeSegmentSize)
 				throw new Report.InternalError();
+			if (addr >= 0 && addr <= memory.length - 4)
+				return (memory[addr] & 0xFF) | ((memory[addr + 1] & 0xFF) << 8) | ((memory[addr + 2] & 0xFF) << 16)
+						| ((memory[addr + 3] & 0xFF) << 24);
 			int value = 0;
 			for (int b = 0; b < 4; b++) {
-				Byte val = memory.get(addr);
+				Byte val = memGET(addr);
 				addr += 1;
-				if (val == null)
-					val = 0;
 				value = value | (((val < 0) ? ((int) val) + 256 : ((int) val)) << (b * 8));
 			}
 			return value;
 		}
 
+		/**
+		 * Poveca zvezni del pomnilnika, da vsebuje vse naslove pod podano mejo.
+		 * 
+		 * @param limit Meja naslovov.
+		 * @return Ali so vsi naslovi pod mejo v zveznem delu pomnilnika.
+		 */
+		private boolean reserve(final int limit) {
+			if (limit <= memory.length)
+				return true;
+			if (limit < 0 || limit > MAX_MEMORY_SIZE)
+				return false;
+			memory = Arrays.copyOf(memory, (int) Math.min(MAX_MEMORY_SIZE, Math.max(limit, 2L * memory.length)));
+			return true;
+		}
+
+		/**
+		 * Shrani bajt v pomnilnik.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @param val  Bajt.
+		 */
+		private void memPUT(final int addr, final byte val) {
+			if (addr >= 0 && addr < MAX_MEMORY_SIZE && reserve(addr + 1))
+				memory[addr] = val;
+			else
+				farMemory.put(addr, val);
+		}
+
+		/**
+		 * Prebere bajt iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Bajt.
+		 */
+		private byte memGET(final int addr) {
+			if (addr >= 0 && addr < memory.length)
+				return memory[addr];
+			final Byte val = farMemory.get(addr);
+			return val == null ? 0 : val;
+		}
+
+		/**
+		 * Ali je obmocje pomnilnika v celoti v zveznem delu pomnilnika izven segmenta
+		 * z ukazi.
+		 * 
+		 * @param addr Zacetni naslov obmocja.
+		 * @param size Velikost obmocja.
+		 * @return Ali je obmocje v zveznem delu pomnilnika.
+		 */
+		private boolean isDense(final int addr, final int size) {
+			return addr >= codeSegmentSize && (long) addr + size <= MAX_MEMORY_SIZE && reserve(addr + size);
+		}
+
+		/**
+		 * Prepise zaporedje besed v pomnilniku, besedo za besedo od prve proti zadnji
+		 * (tudi kadar se obmocji prekrivata).
+		 * 
+		 * @param dstAddr  Naslov prve ciljne besede.
+		 * @param srcAddr  Naslov prve izvorne besede.
+		 * @param numWords Stevilo besed.
+		 */
+		private void memCOPY(final int dstAddr, final int srcAddr, final int numWords) {
+			final long size = 4L * numWords;
+			// Ce je cilj za izvorom in se obmocji prekrivata, se izvor med prepisovanjem spreminja.
+			final boolean forward = dstAddr > srcAddr && dstAddr < srcAddr + size;
+			if (!forward && size <= MAX_MEMORY_SIZE && isDense(dstAddr, (int) size) && isDense(srcAddr, (int) size)) {
+				System.arraycopy(memory, srcAddr, memory, dstAddr, (int) size);
+				return;
+			}
+			for (int word = 0; word < numWords; word++)
+				memSAVE(dstAddr + 4 * word, memLOAD(srcAddr + 4 * word), null);
+		}
+
+		/**
+		 * Napolni zaporedje besed v pomnilniku z isto vrednostjo.
+		 * 
+		 * @param dstAddr  Naslov prve besede.
+		 * @param value    Vrednost.
+		 * @param numWords Stevilo besed.
+		 */
+		private void memFILL(final int dstAddr, final int value, final int numWords) {
+			final long size = 4L * numWords;
+			if (numWords > 0 && size <= MAX_MEMORY_SIZE && isDense(dstAddr, (int) size)) {
+				if (value == 0) {
+					Arrays.fill(memory, dstAddr, dstAddr + (int) size, (byte) 0);
+					return;
+				}
+				// Prva beseda se zapise, nato se zapisano podvaja.
+				memSAVE(dstAddr, value, null);
+				for (int done = 4; done < size; done *= 2)
+					System.arraycopy(memory, dstAddr, memory, dstAddr + done, (int) Math.min(done, size - done));
+				return;
+			}
+			for (int word = 0; word < numWords; word++)
+				memSAVE(dstAddr + 4 * word, value, null);
+		}
+
+		/**
+		 * Primerja zaporedji besed v pomnilniku.
+		 * 
+		 * @param fstAddr  Naslov prve besede prvega zaporedja.
+		 * @param sndAddr  Naslov prve besede drugega zaporedja.
+		 * @param numWords Stevilo besed.
+		 * @return {@code -1}, {@code 0} ali {@code 1}, ce je prva razlicna beseda prvega
+		 *         zaporedja manjsa, nobena ali vecja od istolezne besede drugega.
+		 */
+		private int memCOMPARE(final int fstAddr, final int sndAddr, final int numWords) {
+			final long size = 4L * numWords;
+			int word = 0;
+			if (size <= MAX_MEMORY_SIZE && isDense(fstAddr, (int) size) && isDense(sndAddr, (int) size)) {
+				final int mismatch = Arrays.mismatch(memory, fstAddr, fstAddr + (int) size, memory, sndAddr,
+						sndAddr + (int) size);
+				if (mismatch < 0)
+					return 0;
+				word = mismatch / 4;
+			}
+			for (; word < numWords; word++) {
+				final int fst = memLOAD(fstAddr + 4 * word);
+				final int snd = memLOAD(sndAddr + 4 * word);
+				if (fst != snd)
+					return fst < snd ? -1 : 1;
+			}
+			return 0;
+		}
+
+		/**
+		 * Izracuna stevilo besed, ki jih zaseda obmocje podane velikosti.
+		 * 
+		 * @param size Velikost obmocja.
+		 * @return Stevilo besed.
+		 */
+		private static int words(final int size) {
+			return size <= 0 ? 0 : (size - 1) / 4 + 1;
+		}
+
 		/**
 		 * Prenos nove vrednosti na sklad.
 		 * 
@@ -155,6 +401,56 @@ public class Machine {
 			return value;
 		}
 
+		/**
+		 * Prebere kljuc tabele rezultatov klicev funkcij: naslov funkcije, naslov
+		 * prvega parametra in stevilo parametrov.
+		 * 
+		 * @return Kljuc tabele rezultatov klicev funkcij.
+		 */
+		private List<Integer> memoKey() {
+			final int funAddr = pop();
+			final int parAddr = pop();
+			final int numPars = pop();
+			final Integer[] key = new Integer[1 + numPars];
+			key[0] = funAddr;
+			for (int par = 0; par < numPars; par++)
+				key[1 + par] = memLOAD(parAddr + 4 * par);
+			return Arrays.asList(key);
+		}
+
+		/**
+		 * Izracuna dolzino niza.
+		 * 
+		 * @param strAddr Naslov niza.
+		 * @return Stevilo znakov pred znakom {@code '\00'}.
+		 */
+		private int strlen(int strAddr) {
+			int len = 0;
+			while (memLOAD(strAddr) != 0) {
+				len++;
+				strAddr += 4;
+			}
+			return len;
+		}
+
+		/**
+		 * Prepise niz za konec ciljnega niza (brez zakljucnega znaka).
+		 * 
+		 * @param dstAddr Naslov ciljnega niza.
+		 * @param srcAddr Naslov niza, ki se prepise.
+		 */
+		private void strcat(final int dstAddr, final int srcAddr) {
+			final int dstLen = strlen(dstAddr);
+			int offset = 0;
+			while (true) {
+				final int c = memLOAD(srcAddr + offset);
+				if (c == 0)
+					break;
+				memSAVE(dstAddr + dstLen * 4 + offset, c, null);
+				offset += 4;
+			}
+		}
+
 		/**
 		 * Ustvari nov skladovni stroj za podan program in ta program izvede.
 		 * 
@@ -162,67 +458,65 @@ public class Machine {
 		 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
 		 */
 		public Executor(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment) {
+			this(Exe.of(codeSegment, dataSegment));
+		}
 
-			Scanner scanner = new Scanner(System.in);
+		/**
+		 * Ustvari nov skladovni stroj za podano izvedljivo sliko in program izvede.
+		 * 
+		 * @param exe Izvedljiva slika programa.
+		 */
+		public Executor(final Exe exe) {
+			this(exe, System.in, System.out);
+		}
 
-			int memPtr = 0;
+		/**
+		 * Ustvari nov skladovni stroj za podano izvedljivo sliko in program izvede s
+		 * podanim standardnim vhodom in izhodom.
+		 * 
+		 * @param exe Izvedljiva slika programa.
+		 * @param in  Standardni vhod programa.
+		 * @param out Standardni izhod programa.
+		 */
+		public Executor(final Exe exe, final InputStream in, final PrintStream out) {
+			this(exe, in, out, Settings.DEFAULT);
+		}
 
-			if (debugLabelsList)
-				System.out.println("\n\033[1mCODE LABELS:\033[0m");
-			for (final PDM.CodeInstr instr : codeSegment) {
-				switch (instr) {
-				case PDM.LABEL i -> {
-					labelToAddr.put(i.name, memPtr);
-					addrToLabel.put(memPtr, i.name);
-					if (debugLabelsList)
-						System.out.printf("LABEL %s = %d\n", i.name, memPtr);
-					memPtr -= 1;
-				}
-				case PDM.INIT i -> program.put(memPtr, i);
-				case PDM.LOAD i -> program.put(memPtr, i);
-				case PDM.SAVE i -> program.put(memPtr, i);
-				case PDM.POPN i -> program.put(memPtr, i);
-				case PDM.PUSH i -> {
-					program.put(memPtr, i);
-					memPtr += 4;
-				}
-				case PDM.NAME i -> {
-					program.put(memPtr, i);
-					memPtr += 4;
-				}
-				case PDM.REGN i -> program.put(memPtr, i);
-				case PDM.OPER i -> program.put(memPtr, i);
-				case PDM.UJMP i -> program.put(memPtr, i);
-				case PDM.CJMP i -> program.put(memPtr, i);
-				case PDM.CALL i -> program.put(memPtr, i);
-				case PDM.RETN i -> program.put(memPtr, i);
-				default -> throw new Report.InternalError();
-				}
-				memPtr += 1;
-			}
-			codeSegmentSize = memPtr;
-
-			if (debugLabelsList)
-				System.out.println("\n\033[1mDATA LABELS:\033[0m");
-			for (final PDM.DataInstr instr : dataSegment) {
-				switch (instr) {
-				case PDM.LABEL i -> {
-					labelToAddr.put(i.name, memPtr);
-					addrToLabel.put(memPtr, i.name);
-					if (debugLabelsList)
-						System.out.printf("LABEL %s = %d\n", i.name, memPtr);
-				}
-				case PDM.SIZE i -> {
-					memPtr += i.size;
-				}
-				case PDM.DATA i -> {
-					memSAVE(memPtr, i.intc, i);
-					memPtr += 4;
-				}
-				default -> throw new Report.InternalError();
-				}
+		/**
+		 * Ustvari nov skladovni stroj za podano izvedljivo sliko in program izvede s
+		 * podanim standardnim vhodom in izhodom ter s podanimi nastavitvami.
+		 * 
+		 * @param exe      Izvedljiva slika programa.
+		 * @param in       Standardni vhod programa.
+		 * @param out      Standardni izhod programa.
+		 * @param settings Nastavitve izvajanja.
+		 */
+		public Executor(final Exe exe, final InputStream in, final PrintStream out, final Settings settings) {
+			debugLabelsList = settings.debugLabelsList();
+			debugStack = settings.debugStack();
+			memoCapacity = settings.memoCapacity();
+
+			// Scanner is created only when the program reads, since it is costly to set up.
+			Scanner scanner = null;
+
+			if (debugLabelsList) {
+				out.println("\n\033[1mCODE LABELS:\033[0m");
+				for (final Exe.Label label : exe.codeLabels())
+					out.printf("LABEL %s = %d\n", label.name(), label.addr());
+				out.println("\n\033[1mDATA LABELS:\033[0m");
+				for (final Exe.Label label : exe.dataLabels())
+					out.printf("LABEL %s = %d\n", label.name(), label.addr());
 			}
-			dataSegmentSize = memPtr - codeSegmentSize;
+
+			codeSegmentSize = exe.codeSize;
+			dataSegmentSize = exe.dataSize;
+
+			final ByteBuffer data = exe.data();
+			if (isDense(codeSegmentSize, data.limit()))
+				data.get(0, memory, codeSegmentSize, data.limit());
+			else
+				for (int addr = 0; addr < data.limit(); addr++)
+					memPUT(codeSegmentSize + addr, data.get(addr));
 
 			PC = 0;
 			FP = 0x10000;
@@ -234,36 +528,36 @@ public class Machine {
 			push(-1, null);
 			SP = SP + 0;
 
-			System.out.printf("\n");
+			out.print("\n");
 			loop: while (true) {
 
 				if (debugStack) {
 					for (int stackAddr = 0x10000 - 4; stackAddr >= SP; stackAddr -= 4) {
 						final String debugLoc = debugLocs.get(stackAddr);
-						System.out.printf("%15s ", debugLoc == null ? "" : debugLoc);
+						out.printf("%15s ", debugLoc == null ? "" : debugLoc);
 						if (stackAddr == FP)
-							System.out.printf("FP => ");
+							out.printf("FP => ");
 						else if (stackAddr == SP)
-							System.out.printf("SP => ");
+							out.printf("SP => ");
 						else
-							System.out.printf("      ");
-						System.out.printf("%6d: %12d", stackAddr, memLOAD(stackAddr));
+							out.printf("      ");
+						out.printf("%6d: %12d", stackAddr, memLOAD(stackAddr));
 						final String debugDsc = debugDscs.get(stackAddr);
-						System.out.printf(" %s", debugDsc == null ? "" : debugDsc);
-						System.out.printf("\n");
+						out.printf(" %s", debugDsc == null ? "" : debugDsc);
+						out.printf("\n");
 					}
-					System.out.printf("\n");
+					out.printf("\n");
 				}
 
-				final PDM.CodeInstr instr = program.get(PC);
+				final int opcode = exe.opcode(PC);
+				final PDM.INSTR i = debugStack ? exe.instr(PC) : null;
 				if (debugStack) {
-					System.out.printf("\033[1m%15s %5d: %s\033[0m\n\n",
-							((PDM.INSTR) instr).debugLocation == null ? "" : ((PDM.INSTR) instr).debugLocation, PC,
-							instr.toString());
+					out.printf("\033[1m%15s %5d: %s\033[0m\n\n",
+							i.debugLocation == null ? "" : i.debugLocation, PC, i.toString());
 				}
 
-				switch (instr) {
-				case PDM.INIT i: {
+				switch (opcode) {
+				case Exe.INIT: {
 					int initAddr = pop();
 					int dstAddr = pop();
 					final int numInits = memLOAD(initAddr);
@@ -281,24 +575,24 @@ public class Machine {
 						}
 						initAddr += 4 * len;
 					}
-					PC += i.size();
+					PC += 1;
 					break;
 				}
-				case PDM.LOAD i: {
+				case Exe.LOAD: {
 					int addr = pop();
 					int value = memLOAD(addr);
 					push(value, i);
-					PC += i.size();
+					PC += 1;
 					break;
 				}
-				case PDM.SAVE i: {
+				case Exe.SAVE: {
 					final int addr = pop();
 					final int value = pop();
 					memSAVE(addr, value, i);
-					PC += i.size();
+					PC += 1;
 					break;
 				}
-				case PDM.POPN i: {
+				case Exe.POPN: {
 					int n = pop();
 					if (n < 0) {
 						while (n < 0) {
@@ -311,95 +605,27 @@ public class Machine {
 							n -= 4;
 						}
 					}
-					PC += i.size();
-					break;
-				}
-				case PDM.PUSH i: {
-					push(i.intc, i);
-					PC += i.size();
+					PC += 1;
 					break;
 				}
-				case PDM.NAME i: {
-					push(labelToAddr.get(i.name), i);
-					PC += i.size();
+				case Exe.PUSH:
+				case Exe.NAME: {
+					push(exe.operand(PC), i);
+					PC += 5;
 					break;
 				}
-				case PDM.REGN i: {
-					final int value = switch (i.regn) {
-					case PC -> PC;
-					case FP -> FP;
-					case SP -> SP;
-					default -> throw new Report.InternalError();
-					};
-					push(value, i);
-					PC += i.size();
-					break;
-				}
-				case PDM.OPER i: {
-					switch (i.oper) {
-					case NOT:
-					case NEG: {
-						final int expr = pop();
-						final int result = switch (i.oper) {
-						case NOT -> (expr == 0) ? 1 : 0;
-						case NEG -> -expr;
-						default -> throw new Report.InternalError();
-						};
-						push(result, i);
-						break;
-					}
-					case OR:
-					case AND:
-					case EQU:
-					case NEQ:
-					case GTH:
-					case LTH:
-					case GEQ:
-					case LEQ:
-					case ADD:
-					case SUB:
-					case MUL:
-					case DIV:
-					case MOD: {
-						final int snd = pop();
-						final int fst = pop();
-						int result = switch (i.oper) {
-						case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
-						case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
-						case EQU -> fst == snd ? 1 : 0;
-						case NEQ -> fst != snd ? 1 : 0;
-						case GTH -> fst > snd ? 1 : 0;
-						case LTH -> fst < snd ? 1 : 0;
-						case GEQ -> fst >= snd ? 1 : 0;
-						case LEQ -> fst <= snd ? 1 : 0;
-						case ADD -> fst + snd;
-						case SUB -> fst - snd;
-						case MUL -> fst * snd;
-						case DIV -> fst / snd;
-						case MOD -> fst % snd;
-						default -> throw new Report.InternalError();
-						};
-						push(result, i);
-						break;
-					}
-					default:
-						throw new Report.InternalError();
-					}
-					PC += i.size();
-					break;
-				}
-				case PDM.UJMP i: {
+				case Exe.UJMP: {
 					PC = pop();
 					break;
 				}
-				case PDM.CJMP i: {
+				case Exe.CJMP: {
 					final int elsePC = pop();
 					final int thenPC = pop();
 					final int cond = pop();
 					PC = (cond != 0) ? thenPC : elsePC;
 					break;
 				}
-				case PDM.CALL i: {
+				case Exe.CALL: {
 					final int newPC = pop();
 					if (newPC < 0) {
 						switch (newPC) {
@@ -408,27 +634,33 @@ public class Machine {
 							final int exitCode = pop();
 							pop();
 							pop();
-							System.out.printf("EXIT CODE (SP=%d): %d\n", SP, exitCode);
+							out.print("EXIT CODE (SP=" + SP + "): " + exitCode + "\n");
 							break loop;
 						}
 						case -2: { // getint()
 							pop(); // SL
+							out.flush();
+							if (scanner == null)
+								scanner = new Scanner(in);
 							final int intValue = scanner.nextInt();
 							push(intValue, null); // result
-							PC += i.size();
+							PC += 1;
 							break;
 						}
 						case -3: { // putint(intvalue)
 							pop(); // SL
 							final int intValue = pop();
-							System.out.printf("%d", intValue);
+							out.print(intValue);
 							push(1, null); // result
-							PC += i.size();
+							PC += 1;
 							break;
 						}
 						case -4: { // getstr(straddr)
 							pop(); // SL
 							int strAddr = pop();
+							out.flush();
+							if (scanner == null)
+								scanner = new Scanner(in);
 							final String strValue = scanner.nextLine();
 							for (int c = 0; c < strValue.length(); c++) {
 								memSAVE(strAddr, strValue.charAt(c), null);
@@ -436,7 +668,7 @@ public class Machine {
 							}
 							memSAVE(strAddr, 0, null);
 							push(1, null); // result
-							PC += i.size();
+							PC += 1;
 							break;
 						}
 						case -5: { // putstr(straddr)
@@ -446,29 +678,139 @@ public class Machine {
 								int c = memLOAD(strAddr);
 								if (c == 0)
 									break;
-								System.out.printf("%c", c);
+								if (Character.isBmpCodePoint(c))
+									out.print((char) c);
+								else
+									out.print(Character.toChars(c));
 								strAddr += 4;
 							}
 							push(1, null); // result
-							PC += i.size();
+							PC += 1;
 							break;
 						}
 						case -6: { // new(size)
 							pop(); // SL
 							final int size = pop();
+							// The heap grows towards the stack; a block that would reach it goes above the stack.
+							if (HP < 0x10000 && HP + size > SP)
+								HP = 0x10000;
 							final int addr = HP;
-							for (int a = addr; a < addr + size; a++)
-								memory.put(a, (byte) 0);
+							if (size > 0 && isDense(addr, size))
+								Arrays.fill(memory, addr, addr + size, (byte) 0);
+							else
+								for (int a = addr; a < addr + size; a++)
+									memPUT(a, (byte) 0);
 							HP += size;
 							push(addr, null); // result
-							PC += i.size();
+							PC += 1;
 							break;
 						}
 						case -7: { // del(addr)
 							pop(); // SL
 							pop(); // addr
 							push(1, null); // result
-							PC += i.size();
+							PC += 1;
+							break;
+						}
+						case -8: { // memo:get(funaddr, paraddr, numpars, resaddr)
+							pop(); // SL
+							final List<Integer> key = memoKey();
+							final int resAddr = pop();
+							final Integer result = memo.get(key);
+							if (result != null)
+								memSAVE(resAddr, result, null);
+							push(result != null ? 1 : 0, null); // result
+							PC += 1;
+							break;
+						}
+						case -9: { // memo:put(funaddr, paraddr, numpars, result)
+							pop(); // SL
+							final List<Integer> key = memoKey();
+							memo.put(key, pop());
+							push(1, null); // result
+							PC += 1;
+							break;
+						}
+						case -10: { // strlen(src_ptr)
+							pop(); // SL
+							final int srcAddr = pop();
+							push(strlen(srcAddr), null); // result
+							PC += 1;
+							break;
+						}
+						case -11: { // strcpy(dst_ptr, src_ptr)
+							pop(); // SL
+							final int dstAddr = pop();
+							final int srcAddr = pop();
+							int offset = 0;
+							while (true) {
+								final int c = memLOAD(srcAddr + offset);
+								if (c == 0)
+									break;
+								memSAVE(dstAddr + offset, c, null);
+								offset += 4;
+							}
+							memSAVE(dstAddr + offset, 0, null);
+							push(0, null); // result
+							PC += 1;
+							break;
+						}
+						case -12: { // strcat(dst_ptr, src_ptr)
+							pop(); // SL
+							final int dstAddr = pop();
+							final int srcAddr = pop();
+							strcat(dstAddr, srcAddr);
+							push(0, null); // result
+							PC += 1;
+							break;
+						}
+						case -13: { // append(dst_ptr, src_str)
+							pop(); // SL
+							final int dstAddr = pop();
+							final int srcAddr = pop();
+							strcat(dstAddr + strlen(dstAddr) * 4, srcAddr);
+							push(0, null); // result
+							PC += 1;
+							break;
+						}
+						case -14: { // repeat(dst_ptr, char, count)
+							pop(); // SL
+							int dstAddr = pop();
+							final int c = pop();
+							int count = pop();
+							while (count > 0) {
+								memSAVE(dstAddr, c, null);
+								dstAddr += 4;
+								count--;
+							}
+							push(0, null); // result
+							PC += 1;
+							break;
+						}
+						case -15: { // memcpy(dst_ptr, src_ptr, size)
+							pop(); // SL
+							final int dstAddr = pop();
+							final int srcAddr = pop();
+							memCOPY(dstAddr, srcAddr, words(pop()));
+							push(0, null); // result
+							PC += 1;
+							break;
+						}
+						case -16: { // memset(dst_ptr, value, size)
+							pop(); // SL
+							final int dstAddr = pop();
+							final int value = pop();
+							memFILL(dstAddr, value, words(pop()));
+							push(0, null); // result
+							PC += 1;
+							break;
+						}
+						case -17: { // memcmp(fst_ptr, snd_ptr, size)
+							pop(); // SL
+							final int fstAddr = pop();
+							final int sndAddr = pop();
+							push(memCOMPARE(fstAddr, sndAddr, words(pop())), null); // result
+							PC += 1;
 							break;
 						}
 						default:
@@ -476,17 +818,18 @@ public class Machine {
 						}
 					} else {
 						if (debugStack) {
+							final Mem.Frame debugFrame = ((PDM.CALL) i).debugFrame;
 							debugDscs.put(SP, "... SL");
 							debugDscs.put(SP - 4,
-									"... FP *** " + (i.debugFrame == null ? "" : i.debugFrame.name) + " ***");
+									"... FP *** " + (debugFrame == null ? "" : debugFrame.name) + " ***");
 							debugDscs.put(SP - 8, "... RA ");
-							if (i.debugFrame != null) {
-								if (i.debugFrame.debugPars != null)
-									for (final Mem.RelAccess relAccess : i.debugFrame.debugPars)
+							if (debugFrame != null) {
+								if (debugFrame.debugPars != null)
+									for (final Mem.RelAccess relAccess : debugFrame.debugPars)
 										if (relAccess.debugName != null)
 											debugDscs.put(SP + relAccess.offset, "... par: " + relAccess.debugName);
-								if (i.debugFrame.debugVars != null)
-									for (final Mem.RelAccess relAccess : i.debugFrame.debugVars)
+								if (debugFrame.debugVars != null)
+									for (final Mem.RelAccess relAccess : debugFrame.debugVars)
 										if (relAccess.debugName != null) {
 											if (relAccess.size == 4)
 												debugDscs.put(SP + relAccess.offset, "... var: " + relAccess.debugName);
@@ -499,24 +842,25 @@ public class Machine {
 							}
 						}
 						push(FP, i);
-						push(PC + i.size(), i);
+						push(PC + 1, i);
 						FP = SP + 8;
 						PC = newPC;
 					}
 					break;
 				}
-				case PDM.RETN i: {
+				case Exe.RETN: {
 					if (debugStack) {
 						debugDscs.put(FP, null);
 						debugDscs.put(FP - 4, null);
 						debugDscs.put(FP - 8, null);
-						if (i.debugFrame != null) {
-							if (i.debugFrame.debugPars != null)
-								for (final Mem.RelAccess relAccess : i.debugFrame.debugPars)
+						final Mem.Frame debugFrame = ((PDM.RETN) i).debugFrame;
+						if (debugFrame != null) {
+							if (debugFrame.debugPars != null)
+								for (final Mem.RelAccess relAccess : debugFrame.debugPars)
 									if (relAccess.debugName != null)
 										debugDscs.put(FP + relAccess.offset, null);
-							if (i.debugFrame.debugVars != null)
-								for (final Mem.RelAccess relAccess : i.debugFrame.debugVars)
+							if (debugFrame.debugVars != null)
+								for (final Mem.RelAccess relAccess : debugFrame.debugVars)
 									if (relAccess.debugName != null) {
 										if (relAccess.size == 4)
 											debugDscs.put(FP + relAccess.offset, null);
@@ -543,12 +887,56 @@ public class Machine {
 					push(result, i);
 					break;
 				}
-				default:
-					throw new Report.InternalError();
+				default: {
+					if (opcode >= Exe.REGN && opcode < Exe.REGN + REGS.length) {
+						final int value = switch (REGS[opcode - Exe.REGN]) {
+						case PC -> PC;
+						case FP -> FP;
+						case SP -> SP;
+						default -> throw new Report.InternalError();
+						};
+						push(value, i);
+					} else if (opcode >= Exe.OPER && opcode < Exe.OPER + OPERS.length) {
+						final PDM.OPER.Oper oper = OPERS[opcode - Exe.OPER];
+						switch (oper) {
+						case NOT:
+						case NEG: {
+							final int expr = pop();
+							push(oper(oper, expr), i);
+							break;
+						}
+						case OR:
+						case AND:
+						case EQU:
+						case NEQ:
+						case GTH:
+						case LTH:
+						case GEQ:
+						case LEQ:
+						case ADD:
+						case SUB:
+						case MUL:
+						case DIV:
+						case MOD: {
+							final int snd = pop();
+							final int fst = pop();
+							push(oper(oper, fst, snd), i);
+							break;
+						}
+						default:
+							throw new Report.InternalError();
+						}
+					} else
+						throw new Report.InternalError();
+					PC += 1;
+					break;
+				}
 				}
 			}
 
-			scanner.close();
+			out.flush();
+			if (scanner != null)
+				scanner.close();
 		}
 
 	}
@@ -574,8 +962,10 @@ public class Machine {
 				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
 				// semanticna analiza:
 				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(semanAttrAST);
 				// pomnilniska predstavitev:
-				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				final Memory.AttrAST memoryAttrAST = Memory.organize(optimAttrAST);
 				// generiranje kode:
 				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
 
@@ -584,7 +974,7 @@ public class Machine {
 				final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST))
 						.dataSegment();
 
-				if (debugInstrsList) {
+				if (Settings.DEFAULT.debugInstrsList()) {
 					int addr = 0;
 					{
 						System.out.println("\n\033[1mCODE SEGMENT:\033[0m");
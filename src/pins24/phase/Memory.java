@@ -22,12 +22,27 @@ public class Memory {
 	 * <li>({@link Abstr}) lokacija kode, ki pripada posameznemu vozliscu;</li>
 	 * <li>({@link SemAn}) definicija uporabljenega imena;</li>
 	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
+	 * <li>({@link Optim}) vrednost izraza, izracunana med prevajanjem;</li>
+	 * <li>({@link Optim}) velikost zacasne spremenljivke, ki hrani vrednost
+	 * izraza;</li>
+	 * <li>({@link Optim}) izraz, katerega zacasna spremenljivka ze hrani vrednost
+	 * danega izraza;</li>
+	 * <li>({@link Optim}) izrazi, ki se izracunajo pred zanko;</li>
+	 * <li>({@link Optim}) stevilka tabele, v kateri se hranijo rezultati klicev
+	 * funkcije;</li>
+	 * <li>({@link Optim}) velikost obmocja v klicnem zapisu, ki nadomesti klic
+	 * funkcije {@code new};</li>
+	 * <li>({@link Optim}) zanka, ki jo nadomesti klic funkcije {@code memcpy} ali
+	 * {@code memset};</li>
 	 * <li>({@link Memory}) klicni zapis funkcije;</li>
 	 * <li>({@link Memory}) dostop do parametra;</li>
-	 * <li>({@link Memory}) dostop do spremenljivke.</li>
+	 * <li>({@link Memory}) dostop do spremenljivke;</li>
+	 * <li>({@link Memory}) dostop do zacasne spremenljivke;</li>
+	 * <li>({@link Memory}) dostop do obmocja v klicnem zapisu, ki nadomesti klic
+	 * funkcije {@code new}.</li>
 	 * </ol>
 	 */
-	public static class AttrAST extends SemAn.AttrAST {
+	public static class AttrAST extends Optim.AttrAST {
 
 		/** Atribut: klicni zapis funkcije. */
 		public final Map<AST.FunDef, Mem.Frame> attrFrame;
@@ -38,22 +53,38 @@ public class Memory {
 		/** Atribut: dostop do spremenljivke. */
 		public final Map<AST.VarDef, Mem.Access> attrVarAccess;
 
+		/** Atribut: dostop do zacasne spremenljivke. */
+		public final Map<AST.Expr, Mem.RelAccess> attrTmpAccess;
+
+		/**
+		 * Atribut: dostop do obmocja v klicnem zapisu, ki nadomesti klic funkcije
+		 * {@code new}.
+		 */
+		public final Map<AST.CallExpr, Mem.RelAccess> attrStackAccess;
+
 		/**
 		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi izracuna
 		 * pomnilniske predstavitve.
 		 *
 		 * @param attrAST       Abstraktno sintaksno drevo z dodanimi atributi
-		 *                      semanticne analize.
+		 *                      optimizacije.
 		 * @param attrFrame     Attribut: klicni zapis funkcije.
 		 * @param attrParAccess Attribut: dostop do parametra.
 		 * @param attrVarAccess Attribut: dostop do spremenljivke.
+		 * @param attrTmpAccess Attribut: dostop do zacasne spremenljivke.
+		 * @param attrStackAccess Attribut: dostop do obmocja v klicnem zapisu, ki
+		 *                      nadomesti klic funkcije {@code new}.
 		 */
-		public AttrAST(final SemAn.AttrAST attrAST, final Map<AST.FunDef, Mem.Frame> attrFrame,
-				final Map<AST.ParDef, Mem.RelAccess> attrParAccess, final Map<AST.VarDef, Mem.Access> attrVarAccess) {
+		public AttrAST(final Optim.AttrAST attrAST, final Map<AST.FunDef, Mem.Frame> attrFrame,
+				final Map<AST.ParDef, Mem.RelAccess> attrParAccess, final Map<AST.VarDef, Mem.Access> attrVarAccess,
+				final Map<AST.Expr, Mem.RelAccess> attrTmpAccess,
+				final Map<AST.CallExpr, Mem.RelAccess> attrStackAccess) {
 			super(attrAST);
 			this.attrFrame = attrFrame;
 			this.attrParAccess = attrParAccess;
 			this.attrVarAccess = attrVarAccess;
+			this.attrTmpAccess = attrTmpAccess;
+			this.attrStackAccess = attrStackAccess;
 		}
 
 		/**
@@ -68,6 +99,8 @@ public class Memory {
 			this.attrFrame = attrAST.attrFrame;
 			this.attrParAccess = attrAST.attrParAccess;
 			this.attrVarAccess = attrAST.attrVarAccess;
+			this.attrTmpAccess = attrAST.attrTmpAccess;
+			this.attrStackAccess = attrAST.attrStackAccess;
 		}
 
 		@Override
@@ -112,6 +145,19 @@ public class Memory {
 					}
 				break;
 			}
+			case final AST.Expr expr: {
+				Mem.RelAccess relAccess = attrTmpAccess.get(expr);
+				if (relAccess != null) {
+					head.append(" tmpOffset=" + relAccess.offset);
+					head.append(" tmpSize=" + relAccess.size);
+				}
+				Mem.RelAccess stackAccess = attrStackAccess.get(expr);
+				if (stackAccess != null) {
+					head.append(" stackOffset=" + stackAccess.offset);
+					head.append(" stackSize=" + stackAccess.size);
+				}
+				break;
+			}
 			default:
 				break;
 			}
@@ -152,14 +198,15 @@ public class Memory {
 	/**
 	 * Opravi izracun pomnilniske predstavitve.
 	 *
-	 * @param semanAttrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
-	 *                     pomnilniske predstavitve.
+	 * @param optimAttrAST Abstraktno sintaksno drevo z dodanimi atributi
+	 *                     optimizacije.
 	 * @return Abstraktno sintaksno drevo z atributi po fazi pomnilniske
 	 *         predstavitve.
 	 */
-	public static AttrAST organize(SemAn.AttrAST semanAttrAST) {
-		AttrAST attrAST = new AttrAST(semanAttrAST, new HashMap<AST.FunDef, Mem.Frame>(),
-				new HashMap<AST.ParDef, Mem.RelAccess>(), new HashMap<AST.VarDef, Mem.Access>());
+	public static AttrAST organize(Optim.AttrAST optimAttrAST) {
+		AttrAST attrAST = new AttrAST(optimAttrAST, new AST.NodeMap<AST.FunDef, Mem.Frame>(),
+				new AST.NodeMap<AST.ParDef, Mem.RelAccess>(), new AST.NodeMap<AST.VarDef, Mem.Access>(),
+				new AST.NodeMap<AST.Expr, Mem.RelAccess>(), new AST.NodeMap<AST.CallExpr, Mem.RelAccess>());
 		(new MemoryOrganizer(attrAST)).organize();
 		return attrAST;
 	}
@@ -237,10 +284,45 @@ public class Memory {
          * predstavitve.
          */
         public AttrAST organize() {
-            attrAST.ast.accept(new MemoryVisitor(), null);
+            // Frames of top-level functions do not depend on one another.
+            // A single chunk is organized straight into the attributes.
+            final List<List<AST.Node>> chunks = Parallel
+                    .chunks(new ArrayList<AST.Node>(((AST.Nodes<?>) attrAST.ast).getAll()));
+            final List<AttrAST> chunkAttrASTs = Parallel.map(chunks, chunk -> {
+                final MemoryOrganizer organizer = chunks.size() == 1 ? this
+                        : new MemoryOrganizer(new AttrAST(attrAST, new AST.NodeMap<AST.FunDef, Mem.Frame>(),
+                                new AST.NodeMap<AST.ParDef, Mem.RelAccess>(), new AST.NodeMap<AST.VarDef, Mem.Access>(),
+                                new AST.NodeMap<AST.Expr, Mem.RelAccess>(),
+                                new AST.NodeMap<AST.CallExpr, Mem.RelAccess>()));
+                return organizer.organize(chunk);
+            });
+            for (final AttrAST chunkAttrAST : chunkAttrASTs) {
+                if (chunkAttrAST != attrAST) {
+                    attrAST.attrFrame.putAll(chunkAttrAST.attrFrame);
+                    attrAST.attrParAccess.putAll(chunkAttrAST.attrParAccess);
+                    attrAST.attrVarAccess.putAll(chunkAttrAST.attrVarAccess);
+                    attrAST.attrTmpAccess.putAll(chunkAttrAST.attrTmpAccess);
+                    attrAST.attrStackAccess.putAll(chunkAttrAST.attrStackAccess);
+                }
+            }
             return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrFrame),
                     Collections.unmodifiableMap(attrAST.attrParAccess),
-                    Collections.unmodifiableMap(attrAST.attrVarAccess));
+                    Collections.unmodifiableMap(attrAST.attrVarAccess),
+                    Collections.unmodifiableMap(attrAST.attrTmpAccess),
+                    Collections.unmodifiableMap(attrAST.attrStackAccess));
+        }
+
+        /**
+         * Izracuna pomnilnisko predstavitev definicij na vrhnjem nivoju.
+         *
+         * @param nodes Definicije na vrhnjem nivoju.
+         * @return Abstraktno sintaksno drevo, ki hrani izracunane atribute.
+         */
+        private AttrAST organize(final List<AST.Node> nodes) {
+            final MemoryVisitor visitor = new MemoryVisitor();
+            for (final AST.Node node : nodes)
+                node.accept(visitor, null);
+            return attrAST;
         }
 
         /**
@@ -348,6 +430,69 @@ public class Memory {
 			public Object visit(AST.LetStmt letStmt, Object arg) {
 				return AST.FullVisitor.super.visit(letStmt, arg);
 			}
+
+			@Override
+			public Object visit(AST.UnExpr unExpr, Object arg) {
+				organizeTmp(unExpr);
+				return AST.FullVisitor.super.visit(unExpr, arg);
+			}
+
+			@Override
+			public Object visit(AST.BinExpr binExpr, Object arg) {
+				organizeTmp(binExpr);
+				return AST.FullVisitor.super.visit(binExpr, arg);
+			}
+
+			@Override
+			public Object visit(AST.CallExpr callExpr, Object arg) {
+				organizeTmp(callExpr);
+				organizeStack(callExpr);
+				return AST.FullVisitor.super.visit(callExpr, arg);
+			}
+
+			/**
+			 * Reserves a compiler-introduced temporary in the current frame,
+			 * if the optimizer keeps the value of the expression in one.
+			 */
+			private void organizeTmp(AST.Expr expr) {
+				Integer tmpSize = attrAST.attrTmp.get(expr);
+				if (tmpSize == null) {
+					return;
+				}
+				FrameComputedFields frameComputedFields = frameComputedFieldsStack.getLast();
+				Mem.RelAccess relAccess = new Mem.RelAccess(
+						VAR_START_BYTE_OFFSET - frameComputedFields.varsSize - tmpSize,
+						frameComputedFieldsStack.size(),
+						tmpSize,
+						null,
+						null
+				);
+				attrAST.attrTmpAccess.put(expr, relAccess);
+				frameComputedFields.varsSize += tmpSize;
+				frameComputedFields.debugVars.add(relAccess);
+			}
+
+			/**
+			 * Reserves the region of the current frame that replaces
+			 * a call of `new`, if the optimizer proved the pointer does not escape.
+			 */
+			private void organizeStack(AST.CallExpr callExpr) {
+				Integer stackSize = attrAST.attrStack.get(callExpr);
+				if (stackSize == null) {
+					return;
+				}
+				FrameComputedFields frameComputedFields = frameComputedFieldsStack.getLast();
+				Mem.RelAccess relAccess = new Mem.RelAccess(
+						VAR_START_BYTE_OFFSET - frameComputedFields.varsSize - stackSize,
+						frameComputedFieldsStack.size(),
+						stackSize,
+						null,
+						null
+				);
+				attrAST.attrStackAccess.put(callExpr, relAccess);
+				frameComputedFields.varsSize += stackSize;
+				frameComputedFields.debugVars.add(relAccess);
+			}
 		}
 
 		/**
@@ -388,8 +533,10 @@ public class Memory {
                     final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
                     // semanticna analiza:
                     final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+                    // optimizacija:
+                    final Optim.AttrAST optimAttrAST = Optim.optimize(semanAttrAST);
                     // pomnilniska predstavitev:
-                    final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+                    final Memory.AttrAST memoryAttrAST = Memory.organize(optimAttrAST);
 
                     (new AST.Logger(memoryAttrAST)).log();
                 }
@@ -0,0 +1,2179 @@
+package pins24.phase;
+
+import java.util.*;
+import pins24.common.*;
+
+/**
+ * Optimizacija.
+ */
+public class Optim {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Optim() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+	 *
+	 * Dodani atributi:
+	 * <ol>
+	 * <li>({@link Abstr}) lokacija kode, ki pripada posameznemu vozliscu;</li>
+	 * <li>({@link SemAn}) definicija uporabljenega imena;</li>
+	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
+	 * <li>({@link Optim}) vrednost izraza, izracunana med prevajanjem;</li>
+	 * <li>({@link Optim}) velikost zacasne spremenljivke, ki hrani vrednost
+	 * izraza;</li>
+	 * <li>({@link Optim}) izraz, katerega zacasna spremenljivka ze hrani vrednost
+	 * danega izraza;</li>
+	 * <li>({@link Optim}) izrazi, ki se izracunajo pred zanko;</li>
+	 * <li>({@link Optim}) stevilka tabele, v kateri se hranijo rezultati klicev
+	 * funkcije;</li>
+	 * <li>({@link Optim}) velikost obmocja v klicnem zapisu, ki nadomesti klic
+	 * funkcije {@code new};</li>
+	 * <li>({@link Optim}) zanka, ki jo nadomesti klic funkcije {@code memcpy} ali
+	 * {@code memset}.</li>
+	 * </ol>
+	 */
+	public static class AttrAST extends SemAn.AttrAST {
+
+		/** Atribut: vrednost izraza, izracunana med prevajanjem. */
+		public final Map<AST.Expr, Integer> attrConst;
+
+		/** Atribut: velikost zacasne spremenljivke, ki hrani vrednost izraza. */
+		public final Map<AST.Expr, Integer> attrTmp;
+
+		/** Atribut: izraz, katerega zacasna spremenljivka ze hrani vrednost izraza. */
+		public final Map<AST.Expr, AST.Expr> attrReuse;
+
+		/** Atribut: izrazi, ki se izracunajo pred zanko. */
+		public final Map<AST.WhileStmt, List<AST.Expr>> attrHoist;
+
+		/**
+		 * Atribut: stevilka tabele, v kateri se hranijo rezultati klicev funkcije.
+		 */
+		public final Map<AST.FunDef, Integer> attrMemo;
+
+		/**
+		 * Atribut: velikost obmocja v klicnem zapisu, ki nadomesti klic funkcije
+		 * {@code new}.
+		 */
+		public final Map<AST.CallExpr, Integer> attrStack;
+
+		/** Atribut: zanka, ki jo nadomesti klic funkcije memcpy ali memset. */
+		public final Map<AST.WhileStmt, BulkLoop> attrBulk;
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 *
+		 * @param attrAST   Abstraktno sintaksno drevo z dodanimi atributi semanticne
+		 *                  analize.
+		 * @param attrConst Atribut: vrednost izraza, izracunana med prevajanjem.
+		 * @param attrTmp   Atribut: velikost zacasne spremenljivke, ki hrani vrednost
+		 *                  izraza.
+		 * @param attrReuse Atribut: izraz, katerega zacasna spremenljivka ze hrani
+		 *                  vrednost izraza.
+		 * @param attrHoist Atribut: izrazi, ki se izracunajo pred zanko.
+		 * @param attrMemo  Atribut: stevilka tabele, v kateri se hranijo rezultati
+		 *                  klicev funkcije.
+		 * @param attrStack Atribut: velikost obmocja v klicnem zapisu, ki nadomesti
+		 *                  klic funkcije {@code new}.
+		 * @param attrBulk  Atribut: zanka, ki jo nadomesti klic funkcije
+		 *                  {@code memcpy} ali {@code memset}.
+		 */
+		public AttrAST(final SemAn.AttrAST attrAST, final Map<AST.Expr, Integer> attrConst,
+				final Map<AST.Expr, Integer> attrTmp, final Map<AST.Expr, AST.Expr> attrReuse,
+				final Map<AST.WhileStmt, List<AST.Expr>> attrHoist, final Map<AST.FunDef, Integer> attrMemo,
+				final Map<AST.CallExpr, Integer> attrStack, final Map<AST.WhileStmt, BulkLoop> attrBulk) {
+			super(attrAST);
+			this.attrConst = attrConst;
+			this.attrTmp = attrTmp;
+			this.attrReuse = attrReuse;
+			this.attrHoist = attrHoist;
+			this.attrMemo = attrMemo;
+			this.attrStack = attrStack;
+			this.attrBulk = attrBulk;
+		}
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 */
+		public AttrAST(final AttrAST attrAST) {
+			super(attrAST);
+			this.attrConst = attrAST.attrConst;
+			this.attrTmp = attrAST.attrTmp;
+			this.attrReuse = attrAST.attrReuse;
+			this.attrHoist = attrAST.attrHoist;
+			this.attrMemo = attrAST.attrMemo;
+			this.attrStack = attrAST.attrStack;
+			this.attrBulk = attrAST.attrBulk;
+		}
+
+		@Override
+		public String head(final AST.Node node, final boolean highlighted) {
+			final StringBuffer head = new StringBuffer();
+			head.append(super.head(node, false));
+			switch (node) {
+			case final AST.FunDef funDef:
+				head.append(highlighted ? "\033[31m" : "");
+				if (attrMemo.get(funDef) != null)
+					head.append(" memo=" + attrMemo.get(funDef));
+				head.append(highlighted ? "\033[30m" : "");
+				break;
+			case final AST.Expr expr:
+				head.append(highlighted ? "\033[31m" : "");
+				if (attrConst.get(expr) != null)
+					head.append(" const=" + attrConst.get(expr));
+				if (attrTmp.get(expr) != null)
+					head.append(" tmp");
+				final AST.Expr reused = attrReuse.get(expr);
+				if (reused != null)
+					head.append(" reuse@" + attrLoc.get(reused).location());
+				if (attrStack.get(expr) != null)
+					head.append(" stack=" + attrStack.get(expr));
+				head.append(highlighted ? "\033[30m" : "");
+				break;
+			case final AST.WhileStmt whileStmt:
+				head.append(highlighted ? "\033[31m" : "");
+				final List<AST.Expr> hoisted = attrHoist.get(whileStmt);
+				if (hoisted != null)
+					for (final AST.Expr expr : hoisted)
+						head.append(" hoist@" + attrLoc.get(expr).location());
+				final BulkLoop bulkLoop = attrBulk.get(whileStmt);
+				if (bulkLoop != null)
+					head.append(bulkLoop.copy() ? " memcpy" : " memset");
+				head.append(highlighted ? "\033[30m" : "");
+				break;
+			default:
+				break;
+			}
+			return head.toString();
+		}
+
+	}
+
+	/**
+	 * Opravi optimizacijo.
+	 *
+	 * @param semanAttrAST Abstraktno sintaksno drevo z dodanimi atributi
+	 *                     semanticne analize.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+	 */
+	public static AttrAST optimize(final SemAn.AttrAST semanAttrAST) {
+		return optimize(semanAttrAST, false, false);
+	}
+
+	/**
+	 * Opravi optimizacijo.
+	 *
+	 * @param semanAttrAST Abstraktno sintaksno drevo z dodanimi atributi
+	 *                     semanticne analize.
+	 * @param memoize      Ali se rezultati klicev rekurzivnih funkcij brez ucinkov
+	 *                     hranijo v tabeli med izvajanjem programa.
+	 * @param stackNew     Ali se obmocja, ki jih rezervira klic funkcije
+	 *                     {@code new}, lahko rezervirajo v klicnem zapisu. Pisanje
+	 *                     cez konec takega obmocja pokvari klicni zapis, zato je
+	 *                     izbira privzeto izklopljena.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+	 */
+	public static AttrAST optimize(final SemAn.AttrAST semanAttrAST, final boolean memoize,
+			final boolean stackNew) {
+		AttrAST attrAST = new AttrAST(semanAttrAST, new AST.NodeMap<AST.Expr, Integer>(),
+				new AST.NodeMap<AST.Expr, Integer>(), new AST.NodeMap<AST.Expr, AST.Expr>(),
+				new AST.NodeMap<AST.WhileStmt, List<AST.Expr>>(), new AST.NodeMap<AST.FunDef, Integer>(),
+				new AST.NodeMap<AST.CallExpr, Integer>(), new AST.NodeMap<AST.WhileStmt, BulkLoop>());
+		final Scopes scopes = new Scopes(attrAST);
+		final Effects effects = new Effects(attrAST, scopes);
+		final CallEvaluator callEvaluator = new CallEvaluator(attrAST, effects);
+		attrAST = callEvaluator.evaluate();
+		if (memoize)
+			attrAST = new MemoSelector(attrAST, effects).select();
+		if (stackNew)
+			attrAST = new StackAllocator(attrAST, scopes, callEvaluator).allocate();
+		attrAST = new BulkLoopRecognizer(attrAST, scopes).recognize();
+		final ExprInfos exprInfos = new ExprInfos(attrAST, scopes, effects);
+		attrAST = new LoopHoister(attrAST, scopes, effects, exprInfos).hoist();
+		attrAST = new CommonSubexprEliminator(attrAST, scopes, exprInfos).eliminate();
+		return attrAST;
+	}
+
+	/**
+	 * Lastnistvo imen: katera funkcija definira posamezno spremenljivko ali
+	 * parameter in ali je do nje mozno dostopati mimo njenega imena.
+	 */
+	private static class Scopes {
+
+		/** Funkcija, ki definira spremenljivko ali parameter (globalne nimajo lastnika). */
+		private final Map<AST.Def, AST.FunDef> owners = new AST.NodeMap<AST.Def, AST.FunDef>();
+
+		/** Funkcije, katerih klicnim zapisom je nekje v programu vzet naslov. */
+		private final HashSet<AST.FunDef> exposedFrames = new HashSet<AST.FunDef>();
+
+		/** Spremenljivke in parametri, ki jih uporabljajo gnezdene funkcije. */
+		private final HashSet<AST.Def> capturedDefs = new HashSet<AST.Def>();
+
+		/**
+		 * Izracuna lastnistvo imen.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi semanticne
+		 *                analize.
+		 */
+		public Scopes(final SemAn.AttrAST attrAST) {
+			attrAST.ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final AST.FunDef owner) {
+					owners.put(funDef, owner);
+					for (final AST.ParDef parDef : funDef.pars)
+						owners.put(parDef, funDef);
+					funDef.stmts.accept(this, funDef);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.VarDef varDef, final AST.FunDef owner) {
+					owners.put(varDef, owner);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.UnExpr unExpr, final AST.FunDef owner) {
+					if (unExpr.oper == AST.UnExpr.Oper.MEMADDR && unExpr.expr instanceof AST.VarExpr varExpr) {
+						final AST.FunDef varOwner = owners.get(attrAST.attrDef.get(varExpr));
+						if (varOwner != null)
+							exposedFrames.add(varOwner);
+					}
+					return AST.FullVisitor.super.visit(unExpr, owner);
+				}
+
+				@Override
+				public Object visit(final AST.VarExpr varExpr, final AST.FunDef owner) {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					if (owners.get(def) != owner)
+						capturedDefs.add(def);
+					return null;
+				}
+
+			}, null);
+		}
+
+		/**
+		 * Ali je spremenljivka ali parameter dosegljiv samo preko svojega imena v
+		 * podani funkciji.
+		 *
+		 * Takih spremenljivk ne more spremeniti niti shranjevanje preko kazalca niti
+		 * klic funkcije.
+		 *
+		 * @param def    Definicija spremenljivke ali parametra.
+		 * @param funDef Funkcija, v kateri se ime uporablja.
+		 * @return Ali je spremenljivka ali parameter zaseben.
+		 */
+		public boolean isPrivate(final AST.Def def, final AST.FunDef funDef) {
+			return owners.get(def) == funDef && !exposedFrames.contains(funDef) && !capturedDefs.contains(def);
+		}
+
+	}
+
+	/** Stevilo ukazov, ki jih porabi branje zacasne spremenljivke. */
+	private static final int LOAD_COST = 4;
+
+	/**
+	 * Ucinek izvajanja funkcije, ki je viden izven njenega klicnega zapisa.
+	 */
+	private enum Effect {
+		/** Branje pomnilnika preko kazalca ali branje tujih spremenljivk. */
+		READ,
+		/** Pisanje v pomnilnik preko kazalca ali v tuje spremenljivke. */
+		WRITE,
+		/** Vhod, izhod, zaustavitev ali upravljanje s kopico. */
+		IO
+	}
+
+	/**
+	 * Ucinki funkcij.
+	 *
+	 * Ucinki so izracunani medproceduralno: ucinki funkcije so unija njenih
+	 * neposrednih ucinkov in ucinkov vseh funkcij, ki jih klice (najmanjsa fiksna
+	 * tocka). Funkcije brez telesa so sistemski klici z znanimi ucinki.
+	 */
+	private static class Effects {
+
+		/** Ucinki sistemskih klicev (glej {@link Machine}). */
+		private static final Map<String, EnumSet<Effect>> SYSCALLS = Map.ofEntries( //
+				Map.entry("exit", EnumSet.of(Effect.IO)), //
+				Map.entry("getint", EnumSet.of(Effect.IO)), //
+				Map.entry("putint", EnumSet.of(Effect.IO)), //
+				Map.entry("getstr", EnumSet.of(Effect.IO, Effect.WRITE)), //
+				Map.entry("putstr", EnumSet.of(Effect.IO, Effect.READ)), //
+				Map.entry("new", EnumSet.of(Effect.IO, Effect.WRITE)), //
+				Map.entry("del", EnumSet.of(Effect.IO)), //
+				Map.entry("strlen", EnumSet.of(Effect.READ)), //
+				Map.entry("strcpy", EnumSet.of(Effect.READ, Effect.WRITE)), //
+				Map.entry("strcat", EnumSet.of(Effect.READ, Effect.WRITE)), //
+				Map.entry("append", EnumSet.of(Effect.READ, Effect.WRITE)), //
+				Map.entry("repeat", EnumSet.of(Effect.WRITE)), //
+				Map.entry("memcpy", EnumSet.of(Effect.READ, Effect.WRITE)), //
+				Map.entry("memset", EnumSet.of(Effect.WRITE)), //
+				Map.entry("memcmp", EnumSet.of(Effect.READ)));
+
+		/** Ucinki posameznih funkcij. */
+		private final Map<AST.FunDef, EnumSet<Effect>> effects = new AST.NodeMap<AST.FunDef, EnumSet<Effect>>();
+
+		/** Funkcije, ki jih posamezna funkcija neposredno klice. */
+		private final Map<AST.FunDef, Set<AST.FunDef>> callees = new AST.NodeMap<AST.FunDef, Set<AST.FunDef>>();
+
+		/**
+		 * Izracuna ucinke funkcij.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi semanticne
+		 *                analize.
+		 * @param scopes  Lastnistvo imen.
+		 */
+		public Effects(final SemAn.AttrAST attrAST, final Scopes scopes) {
+			attrAST.ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final AST.FunDef owner) {
+					effects.put(funDef, funDef.stmts.size() == 0
+							? EnumSet.copyOf(SYSCALLS.getOrDefault(funDef.name, EnumSet.allOf(Effect.class)))
+							: EnumSet.noneOf(Effect.class));
+					callees.put(funDef, new HashSet<AST.FunDef>());
+					funDef.stmts.accept(this, funDef);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.AssignStmt assignStmt, final AST.FunDef funDef) {
+					assignStmt.srcExpr.accept(this, funDef);
+					switch (assignStmt.dstExpr) {
+					case final AST.VarExpr varExpr:
+						if (scopes.owners.get(attrAST.attrDef.get(varExpr)) != funDef)
+							effects.get(funDef).add(Effect.WRITE);
+						break;
+					case final AST.UnExpr unExpr:
+						unExpr.expr.accept(this, funDef);
+						effects.get(funDef).add(Effect.WRITE);
+						break;
+					default:
+						throw new Report.InternalError();
+					}
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.UnExpr unExpr, final AST.FunDef funDef) {
+					if (unExpr.oper == AST.UnExpr.Oper.MEMADDR) {
+						// Racuna se naslov, ne vrednost operanda.
+						if (unExpr.expr instanceof AST.UnExpr valueAt)
+							valueAt.expr.accept(this, funDef);
+						return null;
+					}
+					if (unExpr.oper == AST.UnExpr.Oper.VALUEAT)
+						effects.get(funDef).add(Effect.READ);
+					return unExpr.expr.accept(this, funDef);
+				}
+
+				@Override
+				public Object visit(final AST.VarExpr varExpr, final AST.FunDef funDef) {
+					if (scopes.owners.get(attrAST.attrDef.get(varExpr)) != funDef)
+						effects.get(funDef).add(Effect.READ);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.CallExpr callExpr, final AST.FunDef funDef) {
+					callees.get(funDef).add((AST.FunDef) attrAST.attrDef.get(callExpr));
+					return callExpr.args.accept(this, funDef);
+				}
+
+			}, null);
+
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final Map.Entry<AST.FunDef, Set<AST.FunDef>> entry : callees.entrySet()) {
+					final EnumSet<Effect> funEffects = effects.get(entry.getKey());
+					for (final AST.FunDef callee : entry.getValue())
+						changed |= funEffects.addAll(effects.get(callee));
+				}
+			}
+		}
+
+		/**
+		 * Vrne ucinke klica funkcije (brez ucinkov izracuna argumentov).
+		 *
+		 * @param attrAST  Abstraktno sintaksno drevo z dodanimi atributi semanticne
+		 *                 analize.
+		 * @param callExpr Klic funkcije.
+		 * @return Ucinki klica funkcije.
+		 */
+		public EnumSet<Effect> of(final SemAn.AttrAST attrAST, final AST.CallExpr callExpr) {
+			return effects.get((AST.FunDef) attrAST.attrDef.get(callExpr));
+		}
+
+		/**
+		 * Ali je klic funkcije brez vidnih posledic, tj. ali je njegova vrednost
+		 * odvisna samo od argumentov in (ce funkcija bere pomnilnik) od vsebine
+		 * pomnilnika.
+		 *
+		 * @param attrAST  Abstraktno sintaksno drevo z dodanimi atributi semanticne
+		 *                 analize.
+		 * @param callExpr Klic funkcije.
+		 * @return Ali je klic funkcije brez vidnih posledic.
+		 */
+		public boolean isReadOnly(final SemAn.AttrAST attrAST, final AST.CallExpr callExpr) {
+			final EnumSet<Effect> callEffects = of(attrAST, callExpr);
+			return !callEffects.contains(Effect.WRITE) && !callEffects.contains(Effect.IO);
+		}
+
+	}
+
+	/**
+	 * Izracun klicev funkcij med prevajanjem.
+	 *
+	 * Klic funkcije brez ucinkov (glej {@link Effects}), katere vrednost je
+	 * odvisna samo od argumentov, se izracuna ze med prevajanjem, ce so argumenti
+	 * konstantni in se izracun konca v omejenem stevilu korakov. Izracun sledi
+	 * prevedeni kodi: operatorji imajo natanko pomen ukaza {@link PDM.OPER} (glej
+	 * {@link Machine#oper}), vrednost funkcije pa je vrednost zadnjega izvedenega
+	 * izraznega stavka v njenem telesu. Ce izracuna ni mogoce izvesti natanko
+	 * (deljenje z nic, naslovi, nizi, prekoracena omejitev), se klic izvede sele
+	 * med izvajanjem programa.
+	 */
+	private static class CallEvaluator {
+
+		/** Najvecje stevilo korakov izracuna enega klica. */
+		private static final int CALL_FUEL = 1000000;
+
+		/** Najvecje stevilo korakov vseh izracunov v programu. */
+		private static final long TOTAL_FUEL = 20000000;
+
+		/** Najvecja globina gnezdenja klicev med izracunom. */
+		private static final int MAX_DEPTH = 200;
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Ucinki funkcij. */
+		private final Effects effects;
+
+		/** Ze izracunane vrednosti klicev posameznih funkcij. */
+		private final HashMap<AST.FunDef, HashMap<List<Integer>, Integer>> results = new HashMap<AST.FunDef, HashMap<List<Integer>, Integer>>();
+
+		/** Preostalo stevilo korakov vseh izracunov. */
+		private long totalFuel = TOTAL_FUEL;
+
+		/** Preostalo stevilo korakov trenutnega izracuna. */
+		private int fuel;
+
+		/** Trenutna globina gnezdenja klicev. */
+		private int depth;
+
+		/**
+		 * Ustvari nov izracun klicev funkcij med prevajanjem.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 * @param effects Ucinki funkcij.
+		 */
+		public CallEvaluator(final AttrAST attrAST, final Effects effects) {
+			this.attrAST = attrAST;
+			this.effects = effects;
+		}
+
+		/**
+		 * Sprozi izracun klicev funkcij med prevajanjem.
+		 *
+		 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *         ({@link AttrAST#attrConst} izracunan in nespremenljiv).
+		 */
+		public AttrAST evaluate() {
+			attrAST.ast.accept(new AST.FullVisitor<Object, Object>() {
+				@Override
+				public Object visit(final AST.CallExpr callExpr, final Object arg) {
+					if (evaluate(callExpr))
+						return null;
+					return callExpr.args.accept(this, arg);
+				}
+			}, null);
+			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrConst), attrAST.attrTmp,
+					attrAST.attrReuse, attrAST.attrHoist, attrAST.attrMemo, attrAST.attrStack,
+					attrAST.attrBulk);
+		}
+
+		/**
+		 * Poskusi izracunati klic funkcije s konstantnimi argumenti.
+		 *
+		 * @param callExpr Klic funkcije.
+		 * @return Ali je klic izracunan.
+		 */
+		private boolean evaluate(final AST.CallExpr callExpr) {
+			if (!effects.of(attrAST, callExpr).isEmpty())
+				return false;
+			final Integer value = constant(callExpr);
+			if (value == null)
+				return false;
+			attrAST.attrConst.put(callExpr, value);
+			return true;
+		}
+
+		/**
+		 * Poskusi izracunati vrednost izraza, ki ne bere spremenljivk.
+		 *
+		 * @param expr Izraz.
+		 * @return Vrednost izraza ali {@code null}, ce je ni mogoce izracunati med
+		 *         prevajanjem.
+		 */
+		public Integer constant(final AST.Expr expr) {
+			if (totalFuel <= 0)
+				return null;
+			fuel = (int) Math.min(CALL_FUEL, totalFuel);
+			final int startFuel = fuel;
+			depth = 0;
+			try {
+				return eval(expr, null);
+			} catch (final Abort __) {
+				return null;
+			} finally {
+				totalFuel -= startFuel - fuel;
+			}
+		}
+
+		/**
+		 * Prekinitev izracuna, ki ga ni mogoce izvesti med prevajanjem.
+		 */
+		@SuppressWarnings("serial")
+		private static class Abort extends RuntimeException {
+
+			/** Ustvari novo prekinitev izracuna. */
+			public Abort() {
+				super(null, null, false, false);
+			}
+
+		}
+
+		/**
+		 * Klicni zapis funkcije med izracunom.
+		 */
+		private static class Frame {
+
+			/** Vrednosti parametrov in spremenljivk funkcije. */
+			private final HashMap<AST.Def, Integer> values = new HashMap<AST.Def, Integer>();
+
+			/** Vrednost zadnjega izvedenega izraznega stavka. */
+			private Integer result = null;
+
+		}
+
+		/** Porabi en korak izracuna. */
+		private void step() {
+			if (--fuel < 0)
+				throw new Abort();
+		}
+
+		/**
+		 * Izracuna vrednost izraza.
+		 *
+		 * @param expr  Izraz.
+		 * @param frame Klicni zapis funkcije ali {@code null}, ce izraz ne sme brati
+		 *              spremenljivk.
+		 * @return Vrednost izraza.
+		 */
+		private int eval(final AST.Expr expr, final Frame frame) {
+			step();
+			return switch (expr) {
+			case final AST.AtomExpr atomExpr -> switch (atomExpr.type) {
+			case INTCONST -> {
+				try {
+					yield Integer.decode(atomExpr.value);
+				} catch (final NumberFormatException __) {
+					throw new Abort();
+				}
+			}
+			case CHRCONST -> (int) atomExpr.value.charAt(0);
+			default -> throw new Abort();
+			};
+			case final AST.VarExpr varExpr -> {
+				final Integer value = frame == null ? null : frame.values.get(attrAST.attrDef.get(varExpr));
+				if (value == null)
+					throw new Abort();
+				yield value;
+			}
+			case final AST.UnExpr unExpr -> switch (unExpr.oper) {
+			case ADD -> eval(unExpr.expr, frame);
+			case SUB -> Machine.oper(PDM.OPER.Oper.NEG, eval(unExpr.expr, frame));
+			case NOT -> Machine.oper(PDM.OPER.Oper.NOT, eval(unExpr.expr, frame));
+			default -> throw new Abort();
+			};
+			case final AST.BinExpr binExpr -> {
+				// Enak vrstni red in enaki ukazi kot v CodeGen.
+				final int snd = eval(binExpr.sndExpr, frame);
+				final int fst = eval(binExpr.fstExpr, frame);
+				// Deljenje z nic se zgodi sele med izvajanjem.
+				if (snd == 0 && (binExpr.oper == AST.BinExpr.Oper.DIV || binExpr.oper == AST.BinExpr.Oper.MOD))
+					throw new Abort();
+				yield switch (binExpr.oper) {
+				case OR -> Machine.oper(PDM.OPER.Oper.OR, snd, fst);
+				case AND -> Machine.oper(PDM.OPER.Oper.AND, snd, fst);
+				case EQU -> Machine.oper(PDM.OPER.Oper.EQU, snd, fst);
+				case NEQ -> Machine.oper(PDM.OPER.Oper.NEQ, snd, fst);
+				case GEQ -> Machine.oper(PDM.OPER.Oper.LEQ, snd, fst);
+				case LEQ -> Machine.oper(PDM.OPER.Oper.GEQ, snd, fst);
+				case GTH -> Machine.oper(PDM.OPER.Oper.LTH, snd, fst);
+				case LTH -> Machine.oper(PDM.OPER.Oper.GTH, snd, fst);
+				case ADD -> Machine.oper(PDM.OPER.Oper.ADD, snd, fst);
+				case MUL -> Machine.oper(PDM.OPER.Oper.MUL, snd, fst);
+				// Operanda sta pred ukazom zamenjana.
+				case SUB -> Machine.oper(PDM.OPER.Oper.SUB, fst, snd);
+				case DIV -> Machine.oper(PDM.OPER.Oper.DIV, fst, snd);
+				case MOD -> Machine.oper(PDM.OPER.Oper.MOD, fst, snd);
+				};
+			}
+			case final AST.CallExpr callExpr -> call(callExpr, frame);
+			default -> throw new Report.InternalError();
+			};
+		}
+
+		/**
+		 * Izracuna vrednost klica funkcije.
+		 *
+		 * @param callExpr Klic funkcije.
+		 * @param frame    Klicni zapis klicoce funkcije ali {@code null}, ce argumenti
+		 *                 ne smejo brati spremenljivk.
+		 * @return Vrednost klica funkcije.
+		 */
+		private int call(final AST.CallExpr callExpr, final Frame frame) {
+			final AST.FunDef funDef = (AST.FunDef) attrAST.attrDef.get(callExpr);
+			if (!effects.of(attrAST, callExpr).isEmpty() || funDef.stmts.size() == 0)
+				throw new Abort();
+			final Integer[] args = new Integer[callExpr.args.size()];
+			for (int arg = args.length - 1; arg >= 0; arg--)
+				args[arg] = eval(callExpr.args.get(arg), frame);
+
+			final HashMap<List<Integer>, Integer> funResults = results.computeIfAbsent(funDef,
+					__ -> new HashMap<List<Integer>, Integer>());
+			final Integer known = funResults.get(Arrays.asList(args));
+			if (known != null)
+				return known;
+
+			if (++depth > MAX_DEPTH)
+				throw new Abort();
+			final Frame calleeFrame = new Frame();
+			for (int par = 0; par < args.length; par++)
+				calleeFrame.values.put(funDef.pars.get(par), args[par]);
+			exec(funDef.stmts, calleeFrame);
+			depth--;
+			// Funkcija brez izraznega stavka vrne vrednost z vrha sklada.
+			if (calleeFrame.result == null)
+				throw new Abort();
+			funResults.put(Arrays.asList(args), calleeFrame.result);
+			return calleeFrame.result;
+		}
+
+		/**
+		 * Izvede zaporedje stavkov.
+		 *
+		 * @param stmts Zaporedje stavkov.
+		 * @param frame Klicni zapis funkcije.
+		 */
+		private void exec(final AST.Nodes<AST.Stmt> stmts, final Frame frame) {
+			for (final AST.Stmt stmt : stmts) {
+				step();
+				switch (stmt) {
+				case final AST.ExprStmt exprStmt:
+					frame.result = eval(exprStmt.expr, frame);
+					break;
+				case final AST.AssignStmt assignStmt: {
+					final int value = eval(assignStmt.srcExpr, frame);
+					if (!(assignStmt.dstExpr instanceof AST.VarExpr varExpr))
+						throw new Abort();
+					frame.values.put(attrAST.attrDef.get(varExpr), value);
+					break;
+				}
+				case final AST.IfStmt ifStmt:
+					exec(eval(ifStmt.cond, frame) != 0 ? ifStmt.thenStmts : ifStmt.elseStmts, frame);
+					break;
+				case final AST.WhileStmt whileStmt:
+					while (eval(whileStmt.cond, frame) != 0)
+						exec(whileStmt.stmts, frame);
+					break;
+				case final AST.LetStmt letStmt:
+					for (final AST.MainDef def : letStmt.defs)
+						if (def instanceof AST.VarDef varDef)
+							init(varDef, frame);
+					exec(letStmt.stmts, frame);
+					break;
+				default:
+					throw new Report.InternalError();
+				}
+			}
+		}
+
+		/**
+		 * Inicializira spremenljivko; vrednost spremenljivke je prva beseda njene
+		 * zacetne vrednosti.
+		 *
+		 * @param varDef Spremenljivka.
+		 * @param frame  Klicni zapis funkcije.
+		 */
+		private void init(final AST.VarDef varDef, final Frame frame) {
+			for (final AST.Init init : varDef.inits) {
+				final int num = eval(init.num, null);
+				if (num < 0)
+					throw new Abort();
+				if (num == 0)
+					continue;
+				if (init.value.type == AST.AtomExpr.Type.STRCONST) {
+					if (init.value.value.isEmpty())
+						continue;
+					frame.values.put(varDef, (int) init.value.value.charAt(0));
+				} else
+					frame.values.put(varDef, eval(init.value, null));
+				return;
+			}
+			// Spremenljivka velikosti 0 si deli naslov s sosednjo spremenljivko.
+			throw new Abort();
+		}
+
+	}
+
+	/**
+	 * Izbira funkcij, katerih rezultati klicev se hranijo v tabeli.
+	 *
+	 * Izbrane so rekurzivne funkcije brez ucinkov (glej {@link Effects}): njihova
+	 * vrednost je odvisna samo od argumentov, zato lahko vsak klic z ze videnimi
+	 * argumenti vrne shranjen rezultat. Tabela je del skladovnega stroja (glej
+	 * {@link Machine}).
+	 */
+	private static class MemoSelector {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Ucinki funkcij. */
+		private final Effects effects;
+
+		/**
+		 * Ustvari novo izbiro funkcij.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 * @param effects Ucinki funkcij.
+		 */
+		public MemoSelector(final AttrAST attrAST, final Effects effects) {
+			this.attrAST = attrAST;
+			this.effects = effects;
+		}
+
+		/**
+		 * Sprozi izbiro funkcij.
+		 *
+		 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *         ({@link AttrAST#attrMemo} izracunan in nespremenljiv).
+		 */
+		public AttrAST select() {
+			attrAST.ast.accept(new AST.FullVisitor<Object, Object>() {
+				@Override
+				public Object visit(final AST.FunDef funDef, final Object arg) {
+					if (funDef.stmts.size() != 0 && effects.effects.get(funDef).isEmpty() && isRecursive(funDef))
+						attrAST.attrMemo.put(funDef, attrAST.attrMemo.size());
+					return funDef.stmts.accept(this, arg);
+				}
+			}, null);
+			return new AttrAST(attrAST, attrAST.attrConst, attrAST.attrTmp, attrAST.attrReuse, attrAST.attrHoist,
+					Collections.unmodifiableMap(attrAST.attrMemo), attrAST.attrStack, attrAST.attrBulk);
+		}
+
+		/**
+		 * Ali funkcija posredno ali neposredno klice samo sebe.
+		 *
+		 * @param funDef Funkcija.
+		 * @return Ali je funkcija rekurzivna.
+		 */
+		private boolean isRecursive(final AST.FunDef funDef) {
+			final HashSet<AST.FunDef> visited = new HashSet<AST.FunDef>();
+			final ArrayDeque<AST.FunDef> pending = new ArrayDeque<AST.FunDef>(effects.callees.get(funDef));
+			while (!pending.isEmpty()) {
+				final AST.FunDef callee = pending.pop();
+				if (callee == funDef)
+					return true;
+				if (visited.add(callee))
+					pending.addAll(effects.callees.get(callee));
+			}
+			return false;
+		}
+
+	}
+
+	/**
+	 * Analiza pobega kazalcev in izbira klicev funkcije {@code new}, ki se
+	 * nadomestijo z obmocjem v klicnem zapisu.
+	 *
+	 * Kazalec, ki ga vrne klic {@code new}, ne pobegne iz funkcije, ce se
+	 * (neposredno ali kot kazalec, izracunan s pristevanjem odmika) uporablja samo
+	 * za dostop do pomnilnika, ce se shranjuje samo v zasebne spremenljivke in
+	 * parametre funkcije (glej {@link Scopes#isPrivate}) in ce se kot argument
+	 * podaja samo parametrom, iz katerih prav tako ne pobegne. Pomnilnik takega
+	 * klica po vrnitvi iz funkcije ni vec dosegljiv, zato ga lahko namesto kopice
+	 * hrani klicni zapis funkcije. Klic se nadomesti, ce je velikost pomnilnika
+	 * znana med prevajanjem in se klic izvede najvec enkrat na klic funkcije (ni v
+	 * zanki), saj je le tedaj obmocje v klicnem zapisu ob klicu enako kot nov
+	 * pomnilnik na kopici, tj. napolnjeno z niclami.
+	 *
+	 * Program, ki pise cez konec takega obmocja, pokvari klicni zapis (tudi
+	 * shranjena FP in RA), na kopici pa le pomnilnik, ki ga nihce ne uporablja,
+	 * zato se izbira opravi le na zahtevo (glej
+	 * {@link Optim#optimize(SemAn.AttrAST, boolean, boolean)}).
+	 */
+	private static class StackAllocator {
+
+		/** Najvecja velikost obmocja v klicnem zapisu. */
+		private static final int MAX_SIZE = 4096;
+
+		/**
+		 * Parametri sistemskih klicev, iz katerih kazalec, podan kot argument, ne
+		 * pobegne.
+		 */
+		private static final Map<String, Set<Integer>> SYSCALLS = Map.ofEntries( //
+				Map.entry("getstr", Set.of(0)), //
+				Map.entry("putstr", Set.of(0)), //
+				Map.entry("del", Set.of(0)), //
+				Map.entry("strlen", Set.of(0)), //
+				Map.entry("strcpy", Set.of(0, 1)), //
+				Map.entry("strcat", Set.of(0, 1)), //
+				Map.entry("append", Set.of(0, 1)), //
+				Map.entry("repeat", Set.of(0)), //
+				Map.entry("memcpy", Set.of(0, 1)), //
+				Map.entry("memset", Set.of(0)), //
+				Map.entry("memcmp", Set.of(0, 1)));
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Lastnistvo imen. */
+		private final Scopes scopes;
+
+		/** Izracun vrednosti izrazov med prevajanjem. */
+		private final CallEvaluator callEvaluator;
+
+		/** Parametri, iz katerih kazalec, podan kot argument, lahko pobegne. */
+		private final HashSet<AST.ParDef> escapingPars = new HashSet<AST.ParDef>();
+
+		/**
+		 * Ustvari novo izbiro klicev funkcije {@code new}.
+		 *
+		 * @param attrAST       Abstraktno sintaksno drevo z dodanimi atributi
+		 *                      optimizacije.
+		 * @param scopes        Lastnistvo imen.
+		 * @param callEvaluator Izracun vrednosti izrazov med prevajanjem.
+		 */
+		public StackAllocator(final AttrAST attrAST, final Scopes scopes, final CallEvaluator callEvaluator) {
+			this.attrAST = attrAST;
+			this.scopes = scopes;
+			this.callEvaluator = callEvaluator;
+		}
+
+		/**
+		 * Sprozi izbiro klicev funkcije {@code new}.
+		 *
+		 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *         ({@link AttrAST#attrStack} izracunan in nespremenljiv).
+		 */
+		public AttrAST allocate() {
+			final List<AST.FunDef> funDefs = new ArrayList<AST.FunDef>();
+			attrAST.ast.accept(new AST.FullVisitor<Object, Object>() {
+				@Override
+				public Object visit(final AST.FunDef funDef, final Object arg) {
+					if (funDef.stmts.size() != 0)
+						funDefs.add(funDef);
+					return funDef.stmts.accept(this, arg);
+				}
+			}, null);
+
+			// Najvecja fiksna tocka: sprva iz nobenega parametra kazalec ne pobegne.
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final AST.FunDef funDef : funDefs)
+					for (final AST.ParDef parDef : funDef.pars)
+						if (!escapingPars.contains(parDef) && escapes(funDef, parDef))
+							changed |= escapingPars.add(parDef);
+			}
+
+			attrAST.ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+
+				/** Globina gnezdenja zank v trenutni funkciji. */
+				private int loops = 0;
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final AST.FunDef owner) {
+					final int outerLoops = loops;
+					loops = 0;
+					funDef.stmts.accept(this, funDef);
+					loops = outerLoops;
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+					loops++;
+					AST.FullVisitor.super.visit(whileStmt, funDef);
+					loops--;
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.AssignStmt assignStmt, final AST.FunDef funDef) {
+					if (loops == 0)
+						allocate(assignStmt, funDef);
+					return null;
+				}
+
+			}, null);
+			return new AttrAST(attrAST, attrAST.attrConst, attrAST.attrTmp, attrAST.attrReuse, attrAST.attrHoist,
+					attrAST.attrMemo, Collections.unmodifiableMap(attrAST.attrStack), attrAST.attrBulk);
+		}
+
+		/**
+		 * Nadomesti klic funkcije {@code new} v prireditvi spremenljivki z obmocjem v
+		 * klicnem zapisu, ce kazalec ne pobegne iz funkcije.
+		 *
+		 * @param assignStmt Prireditev.
+		 * @param funDef     Funkcija, v kateri je prireditev.
+		 */
+		private void allocate(final AST.AssignStmt assignStmt, final AST.FunDef funDef) {
+			if (!(assignStmt.dstExpr instanceof AST.VarExpr varExpr)
+					|| !(assignStmt.srcExpr instanceof AST.CallExpr callExpr))
+				return;
+			final AST.FunDef callee = (AST.FunDef) attrAST.attrDef.get(callExpr);
+			if (callee.stmts.size() != 0 || !callee.name.equals("new") || callExpr.args.size() != 1)
+				return;
+			final Integer size = callEvaluator.constant(callExpr.args.get(0));
+			if (size == null || size <= 0 || size > MAX_SIZE)
+				return;
+			if (escapes(funDef, attrAST.attrDef.get(varExpr)))
+				return;
+			// Velikost se zaokrozi na cele besede.
+			attrAST.attrStack.put(callExpr, (size + 3) / 4 * 4);
+		}
+
+		/**
+		 * Ali kazalec, shranjen v spremenljivki ali parametru, pobegne iz funkcije.
+		 *
+		 * @param funDef Funkcija.
+		 * @param def    Spremenljivka ali parameter funkcije.
+		 * @return Ali kazalec pobegne iz funkcije.
+		 */
+		private boolean escapes(final AST.FunDef funDef, final AST.Def def) {
+			if (!scopes.isPrivate(def, funDef))
+				return true;
+			// Spremenljivke in parametri, ki lahko hranijo kazalec.
+			final HashSet<AST.Def> holders = new HashSet<AST.Def>();
+			holders.add(def);
+			int numHolders;
+			do {
+				numHolders = holders.size();
+				if (!flows(funDef.stmts, funDef, holders))
+					return true;
+			} while (holders.size() != numHolders);
+			return false;
+		}
+
+		/**
+		 * Preveri, da kazalec v zaporedju stavkov ne pobegne iz funkcije, in doda
+		 * spremenljivke, v katere se kazalec shrani.
+		 *
+		 * @param stmts   Zaporedje stavkov.
+		 * @param funDef  Funkcija.
+		 * @param holders Spremenljivke in parametri, ki lahko hranijo kazalec.
+		 * @return Ali kazalec ostane v funkciji.
+		 */
+		private boolean flows(final AST.Nodes<AST.Stmt> stmts, final AST.FunDef funDef,
+				final Set<AST.Def> holders) {
+			for (final AST.Stmt stmt : stmts) {
+				final boolean stays = switch (stmt) {
+				// Vrednost izraznega stavka je lahko rezultat funkcije.
+				case final AST.ExprStmt exprStmt ->
+					flows(exprStmt.expr, holders) && !isPointer(exprStmt.expr, holders);
+				case final AST.AssignStmt assignStmt -> {
+					if (!flows(assignStmt.dstExpr, holders) || !flows(assignStmt.srcExpr, holders))
+						yield false;
+					if (!isPointer(assignStmt.srcExpr, holders))
+						yield true;
+					if (!(assignStmt.dstExpr instanceof AST.VarExpr varExpr))
+						yield false;
+					final AST.Def dstDef = attrAST.attrDef.get(varExpr);
+					if (!scopes.isPrivate(dstDef, funDef))
+						yield false;
+					holders.add(dstDef);
+					yield true;
+				}
+				case final AST.IfStmt ifStmt -> flows(ifStmt.cond, holders) && !isPointer(ifStmt.cond, holders)
+						&& flows(ifStmt.thenStmts, funDef, holders) && flows(ifStmt.elseStmts, funDef, holders);
+				case final AST.WhileStmt whileStmt -> flows(whileStmt.cond, holders)
+						&& !isPointer(whileStmt.cond, holders) && flows(whileStmt.stmts, funDef, holders);
+				// Gnezdene funkcije zasebnih spremenljivk ne uporabljajo.
+				case final AST.LetStmt letStmt -> flows(letStmt.stmts, funDef, holders);
+				default -> throw new Report.InternalError();
+				};
+				if (!stays)
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Preveri, da kazalec v izrazu ne pobegne iz funkcije.
+		 *
+		 * @param expr    Izraz.
+		 * @param holders Spremenljivke in parametri, ki lahko hranijo kazalec.
+		 * @return Ali kazalec ostane v funkciji.
+		 */
+		private boolean flows(final AST.Expr expr, final Set<AST.Def> holders) {
+			return switch (expr) {
+			case final AST.AtomExpr atomExpr -> true;
+			case final AST.VarExpr varExpr -> true;
+			case final AST.UnExpr unExpr -> switch (unExpr.oper) {
+			case VALUEAT -> flows(unExpr.expr, holders);
+			case MEMADDR -> flows(unExpr.expr, holders);
+			default -> flows(unExpr.expr, holders) && !isPointer(unExpr.expr, holders);
+			};
+			case final AST.BinExpr binExpr -> {
+				if (!flows(binExpr.fstExpr, holders) || !flows(binExpr.sndExpr, holders))
+					yield false;
+				yield switch (binExpr.oper) {
+				case ADD -> true;
+				case SUB -> !isPointer(binExpr.sndExpr, holders);
+				default -> !isPointer(binExpr.fstExpr, holders) && !isPointer(binExpr.sndExpr, holders);
+				};
+			}
+			case final AST.CallExpr callExpr -> {
+				final AST.FunDef callee = (AST.FunDef) attrAST.attrDef.get(callExpr);
+				for (int arg = 0; arg < callExpr.args.size(); arg++) {
+					final AST.Expr argExpr = callExpr.args.get(arg);
+					if (!flows(argExpr, holders))
+						yield false;
+					if (!isPointer(argExpr, holders))
+						continue;
+					if (callee.stmts.size() == 0 ? !SYSCALLS.getOrDefault(callee.name, Set.of()).contains(arg)
+							: escapingPars.contains(callee.pars.get(arg)))
+						yield false;
+				}
+				yield true;
+			}
+			default -> throw new Report.InternalError();
+			};
+		}
+
+		/**
+		 * Ali je vrednost izraza lahko kazalec.
+		 *
+		 * @param expr    Izraz.
+		 * @param holders Spremenljivke in parametri, ki lahko hranijo kazalec.
+		 * @return Ali je vrednost izraza lahko kazalec.
+		 */
+		private boolean isPointer(final AST.Expr expr, final Set<AST.Def> holders) {
+			return switch (expr) {
+			case final AST.VarExpr varExpr -> holders.contains(attrAST.attrDef.get(varExpr));
+			// Naslov vrednosti na naslovu je naslov sam.
+			case final AST.UnExpr unExpr -> unExpr.oper == AST.UnExpr.Oper.MEMADDR
+					&& unExpr.expr instanceof AST.UnExpr valueAt && isPointer(valueAt.expr, holders);
+			case final AST.BinExpr binExpr -> switch (binExpr.oper) {
+			case ADD -> isPointer(binExpr.fstExpr, holders) || isPointer(binExpr.sndExpr, holders);
+			case SUB -> isPointer(binExpr.fstExpr, holders);
+			default -> false;
+			};
+			default -> false;
+			};
+		}
+
+	}
+
+	/**
+	 * Zanka, ki prepise ali napolni zaporedje besed v pomnilniku.
+	 *
+	 * Zanko z indeksom {@code i} oblike
+	 * {@code while i < bound do (d + i)^ = (s + i)^, i = i + 4 end} oziroma
+	 * {@code while i < bound do (d + i)^ = v, i = i + 4 end} ali zanko s stevcem
+	 * {@code n} oblike
+	 * {@code while n > 0 do p^ = q^, p = p + 4, q = q + 4, n = n - 1 end} oziroma
+	 * {@code while n > 0 do p^ = v, p = p + 4, n = n - 1 end} nadomesti en klic
+	 * funkcije {@code memcpy} oziroma {@code memset}, ki mu sledi izracun koncnih
+	 * vrednosti indeksa, stevca in kazalcev.
+	 *
+	 * @param copy     Ali zanka prepisuje besede ({@code memcpy}) ali jih polni z
+	 *                 isto vrednostjo ({@code memset}).
+	 * @param counter  Indeks ali stevec, ki vodi zanko.
+	 * @param bound    Meja indeksa ali {@code null}, ce zanko vodi stevec.
+	 * @param dst      Naslov ciljne besede v prvem obhodu.
+	 * @param src      Naslov izvorne besede v prvem obhodu ali vrednost, s katero
+	 *                 se zaporedje polni.
+	 * @param pointers Kazalci, ki se v vsakem obhodu zanke s stevcem povecajo za
+	 *                 eno besedo.
+	 */
+	public record BulkLoop(boolean copy, AST.VarExpr counter, AST.Expr bound, AST.Expr dst, AST.Expr src,
+			List<AST.VarExpr> pointers) {
+	}
+
+	/**
+	 * Prepoznavanje zank, ki prepisejo ali napolnijo zaporedje besed v pomnilniku
+	 * (glej {@link BulkLoop}).
+	 *
+	 * Indeks, stevec in kazalci morajo biti zasebni (glej {@link Scopes#isPrivate}),
+	 * saj jih sicer lahko spremeni ze pisanje v pomnilnik. Meja, naslova in
+	 * vrednost so izrazi brez klicev, branja pomnilnika in deljenja nad zasebnimi
+	 * spremenljivkami, ki se v zanki ne spreminjajo, zato je vseeno, kolikokrat in v
+	 * kaksnem vrstnem redu se izracunajo.
+	 */
+	private static class BulkLoopRecognizer {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Lastnistvo imen. */
+		private final Scopes scopes;
+
+		/**
+		 * Ustvari novo prepoznavanje zank.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 * @param scopes  Lastnistvo imen.
+		 */
+		public BulkLoopRecognizer(final AttrAST attrAST, final Scopes scopes) {
+			this.attrAST = attrAST;
+			this.scopes = scopes;
+		}
+
+		/**
+		 * Sprozi prepoznavanje zank.
+		 *
+		 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *         ({@link AttrAST#attrBulk} izracunan in nespremenljiv).
+		 */
+		public AttrAST recognize() {
+			attrAST.ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final AST.FunDef owner) {
+					return funDef.stmts.accept(this, funDef);
+				}
+
+				@Override
+				public Object visit(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+					BulkLoop bulkLoop = indexed(whileStmt, funDef);
+					if (bulkLoop == null)
+						bulkLoop = counted(whileStmt, funDef);
+					if (bulkLoop != null) {
+						attrAST.attrBulk.put(whileStmt, bulkLoop);
+						return null;
+					}
+					return AST.FullVisitor.super.visit(whileStmt, funDef);
+				}
+
+			}, null);
+			return new AttrAST(attrAST, attrAST.attrConst, attrAST.attrTmp, attrAST.attrReuse, attrAST.attrHoist,
+					attrAST.attrMemo, attrAST.attrStack, Collections.unmodifiableMap(attrAST.attrBulk));
+		}
+
+		/**
+		 * Prepozna zanko z indeksom.
+		 *
+		 * @param whileStmt Zanka.
+		 * @param funDef    Funkcija, v kateri je zanka.
+		 * @return Opis zanke ali {@code null}, ce zanka ni ustrezne oblike.
+		 */
+		private BulkLoop indexed(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+			if (!(whileStmt.cond instanceof AST.BinExpr cond) || cond.oper != AST.BinExpr.Oper.LTH
+					|| !(cond.fstExpr instanceof AST.VarExpr counter) || whileStmt.stmts.size() != 2
+					|| !(whileStmt.stmts.get(0) instanceof AST.AssignStmt store)
+					|| !(whileStmt.stmts.get(1) instanceof AST.AssignStmt step))
+				return null;
+			final AST.Def counterDef = attrAST.attrDef.get(counter);
+			if (!scopes.isPrivate(counterDef, funDef) || !isStep(step, counterDef, AST.BinExpr.Oper.ADD, 4))
+				return null;
+			final Set<AST.Def> changed = Set.of(counterDef);
+			if (!isInvariant(cond.sndExpr, funDef, changed))
+				return null;
+
+			if (!(store.dstExpr instanceof AST.UnExpr dstValueAt) || dstValueAt.oper != AST.UnExpr.Oper.VALUEAT)
+				return null;
+			final AST.Expr dst = dstValueAt.expr;
+			final AST.Expr dstBase = indexedBase(dst, counterDef);
+			if (dstBase == null || !isInvariant(dstBase, funDef, changed))
+				return null;
+			if (store.srcExpr instanceof AST.UnExpr srcValueAt && srcValueAt.oper == AST.UnExpr.Oper.VALUEAT) {
+				final AST.Expr srcBase = indexedBase(srcValueAt.expr, counterDef);
+				if (srcBase == null || !isInvariant(srcBase, funDef, changed))
+					return null;
+				return new BulkLoop(true, counter, cond.sndExpr, dst, srcValueAt.expr, List.of());
+			}
+			if (!isInvariant(store.srcExpr, funDef, changed))
+				return null;
+			return new BulkLoop(false, counter, cond.sndExpr, dst, store.srcExpr, List.of());
+		}
+
+		/**
+		 * Prepozna zanko s stevcem.
+		 *
+		 * @param whileStmt Zanka.
+		 * @param funDef    Funkcija, v kateri je zanka.
+		 * @return Opis zanke ali {@code null}, ce zanka ni ustrezne oblike.
+		 */
+		private BulkLoop counted(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+			if (!(whileStmt.cond instanceof AST.BinExpr cond) || cond.oper != AST.BinExpr.Oper.GTH
+					|| !(cond.fstExpr instanceof AST.VarExpr counter) || !isIntConst(cond.sndExpr, 0)
+					|| whileStmt.stmts.size() < 3 || !(whileStmt.stmts.get(0) instanceof AST.AssignStmt store)
+					|| !(store.dstExpr instanceof AST.UnExpr dstValueAt) || dstValueAt.oper != AST.UnExpr.Oper.VALUEAT
+					|| !(dstValueAt.expr instanceof AST.VarExpr dst))
+				return null;
+			final boolean copy = store.srcExpr instanceof AST.UnExpr srcValueAt
+					&& srcValueAt.oper == AST.UnExpr.Oper.VALUEAT;
+			final AST.Expr src = copy ? ((AST.UnExpr) store.srcExpr).expr : store.srcExpr;
+			if (copy && !(src instanceof AST.VarExpr))
+				return null;
+
+			// Kazalci in stevec so razlicne zasebne spremenljivke.
+			final AST.Def counterDef = attrAST.attrDef.get(counter);
+			final List<AST.Def> pointerDefs = new ArrayList<AST.Def>();
+			pointerDefs.add(attrAST.attrDef.get(dst));
+			if (copy)
+				pointerDefs.add(attrAST.attrDef.get((AST.VarExpr) src));
+			final Set<AST.Def> changed = new HashSet<AST.Def>(pointerDefs);
+			changed.add(counterDef);
+			if (changed.size() != pointerDefs.size() + 1 || whileStmt.stmts.size() != changed.size() + 1)
+				return null;
+			for (final AST.Def def : changed)
+				if (!scopes.isPrivate(def, funDef))
+					return null;
+			if (!copy && !isInvariant(src, funDef, changed))
+				return null;
+
+			// Vsak kazalec se poveca za besedo, stevec pa zmanjsa za ena (v poljubnem vrstnem redu).
+			final AST.VarExpr[] pointers = new AST.VarExpr[pointerDefs.size()];
+			boolean counterStep = false;
+			for (int stmt = 1; stmt < whileStmt.stmts.size(); stmt++) {
+				if (!(whileStmt.stmts.get(stmt) instanceof AST.AssignStmt step)
+						|| !(step.dstExpr instanceof AST.VarExpr stepDst))
+					return null;
+				final AST.Def stepDef = attrAST.attrDef.get(stepDst);
+				final int pointer = pointerDefs.indexOf(stepDef);
+				if (pointer >= 0 && pointers[pointer] == null && isStep(step, stepDef, AST.BinExpr.Oper.ADD, 4))
+					pointers[pointer] = stepDst;
+				else if (stepDef == counterDef && !counterStep && isStep(step, stepDef, AST.BinExpr.Oper.SUB, 1))
+					counterStep = true;
+				else
+					return null;
+			}
+			return new BulkLoop(copy, counter, null, dst, src, List.of(pointers));
+		}
+
+		/**
+		 * Ali prireditev poveca ali zmanjsa spremenljivko za konstanto, tj. ali je
+		 * oblike {@code x = x + c} oziroma {@code x = x - c}.
+		 *
+		 * @param step  Prireditev.
+		 * @param def   Spremenljivka.
+		 * @param oper  Operator.
+		 * @param value Konstanta.
+		 * @return Ali je prireditev podane oblike.
+		 */
+		private boolean isStep(final AST.AssignStmt step, final AST.Def def, final AST.BinExpr.Oper oper,
+				final int value) {
+			return step.dstExpr instanceof AST.VarExpr dstVar && attrAST.attrDef.get(dstVar) == def
+					&& step.srcExpr instanceof AST.BinExpr binExpr && binExpr.oper == oper
+					&& binExpr.fstExpr instanceof AST.VarExpr srcVar && attrAST.attrDef.get(srcVar) == def
+					&& isIntConst(binExpr.sndExpr, value);
+		}
+
+		/**
+		 * Vrne osnovo naslova oblike {@code base + i} ali {@code i + base}.
+		 *
+		 * @param addr       Naslov.
+		 * @param counterDef Indeks.
+		 * @return Osnova naslova ali {@code null}, ce naslov ni podane oblike.
+		 */
+		private AST.Expr indexedBase(final AST.Expr addr, final AST.Def counterDef) {
+			if (!(addr instanceof AST.BinExpr binExpr) || binExpr.oper != AST.BinExpr.Oper.ADD)
+				return null;
+			if (binExpr.sndExpr instanceof AST.VarExpr varExpr && attrAST.attrDef.get(varExpr) == counterDef)
+				return binExpr.fstExpr;
+			if (binExpr.fstExpr instanceof AST.VarExpr varExpr && attrAST.attrDef.get(varExpr) == counterDef)
+				return binExpr.sndExpr;
+			return null;
+		}
+
+		/**
+		 * Ali je izraz celostevilska konstanta s podano vrednostjo.
+		 *
+		 * @param expr  Izraz.
+		 * @param value Vrednost.
+		 * @return Ali je izraz konstanta s podano vrednostjo.
+		 */
+		private boolean isIntConst(final AST.Expr expr, final int value) {
+			if (!(expr instanceof AST.AtomExpr atomExpr) || atomExpr.type != AST.AtomExpr.Type.INTCONST)
+				return false;
+			try {
+				return Integer.decode(atomExpr.value) == value;
+			} catch (final NumberFormatException __) {
+				return false;
+			}
+		}
+
+		/**
+		 * Ali ima izraz v vseh obhodih zanke enako vrednost in ga je mogoce izracunati
+		 * poljubnokrat brez posledic.
+		 *
+		 * @param expr    Izraz.
+		 * @param funDef  Funkcija, v kateri je zanka.
+		 * @param changed Spremenljivke, ki jih zanka spreminja.
+		 * @return Ali je izraz nespremenljiv.
+		 */
+		private boolean isInvariant(final AST.Expr expr, final AST.FunDef funDef, final Set<AST.Def> changed) {
+			if (attrAST.attrConst.get(expr) != null)
+				return true;
+			return switch (expr) {
+			case final AST.AtomExpr atomExpr -> true;
+			case final AST.VarExpr varExpr -> {
+				final AST.Def def = attrAST.attrDef.get(varExpr);
+				yield !changed.contains(def) && scopes.isPrivate(def, funDef);
+			}
+			case final AST.UnExpr unExpr -> switch (unExpr.oper) {
+			case VALUEAT -> false;
+			// Naslov spremenljivke se ne spreminja.
+			case MEMADDR -> unExpr.expr instanceof AST.VarExpr;
+			default -> isInvariant(unExpr.expr, funDef, changed);
+			};
+			case final AST.BinExpr binExpr -> binExpr.oper != AST.BinExpr.Oper.DIV
+					&& binExpr.oper != AST.BinExpr.Oper.MOD && isInvariant(binExpr.fstExpr, funDef, changed)
+					&& isInvariant(binExpr.sndExpr, funDef, changed);
+			default -> false;
+			};
+		}
+
+	}
+
+	/**
+	 * Opis izraza.
+	 *
+	 * @param key      Kljuc, ki je enak za vse izraze z enako vrednostjo, ali
+	 *                 {@code null}, ce izraza ni mogoce ponovno uporabiti.
+	 * @param reads    Spremenljivke in parametri, ki jih izraz bere.
+	 * @param readsMem Ali izraz bere pomnilnik preko kazalca.
+	 * @param cost     Ocena stevila ukazov, ki izracunajo izraz.
+	 */
+	private record ExprInfo(String key, Set<AST.Def> reads, boolean readsMem, int cost) {
+	}
+
+	/**
+	 * Opisi izrazov.
+	 */
+	private static class ExprInfos {
+
+		/**
+		 * Ocena stevila ukazov klica funkcije brez izvajanja njenega telesa (argumenti
+		 * niso vsteti).
+		 */
+		private static final int CALL_COST = 20;
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Lastnistvo imen. */
+		private final Scopes scopes;
+
+		/** Ucinki funkcij. */
+		private final Effects effects;
+
+		/** Opisi izrazov. */
+		private final Map<AST.Expr, ExprInfo> exprInfos = new AST.NodeMap<AST.Expr, ExprInfo>();
+
+		/** Stevilke definicij, ki se uporabijo v kljucih izrazov. */
+		private final Map<AST.Def, Integer> defIds = new AST.NodeMap<AST.Def, Integer>();
+
+		/**
+		 * Ustvari prazne opise izrazov.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 * @param scopes  Lastnistvo imen.
+		 * @param effects Ucinki funkcij.
+		 */
+		public ExprInfos(final AttrAST attrAST, final Scopes scopes, final Effects effects) {
+			this.attrAST = attrAST;
+			this.scopes = scopes;
+			this.effects = effects;
+		}
+
+		/**
+		 * Vrne opis izraza.
+		 *
+		 * @param expr Izraz.
+		 * @return Opis izraza.
+		 */
+		public ExprInfo info(final AST.Expr expr) {
+			ExprInfo info = exprInfos.get(expr);
+			if (info != null)
+				return info;
+			final Integer value = attrAST.attrConst.get(expr);
+			if (value != null) {
+				info = new ExprInfo(AST.AtomExpr.Type.INTCONST + ":" + value, Set.of(), false, 1);
+				exprInfos.put(expr, info);
+				return info;
+			}
+			info = switch (expr) {
+			case final AST.AtomExpr atomExpr -> {
+				final String key = atomExpr.type == AST.AtomExpr.Type.STRCONST ? null
+						: atomExpr.type + ":" + atomExpr.value;
+				yield new ExprInfo(key, Set.of(), false, 1);
+			}
+			case final AST.VarExpr varExpr -> {
+				final AST.Def def = attrAST.attrDef.get(varExpr);
+				yield new ExprInfo("$" + defId(def), Set.of(def), false, scopes.owners.get(def) == null ? 2 : 4);
+			}
+			case final AST.UnExpr unExpr -> {
+				final ExprInfo sub = info(unExpr.expr);
+				yield switch (unExpr.oper) {
+				case ADD -> sub;
+				case MEMADDR -> new ExprInfo(null, sub.reads, sub.readsMem, sub.cost - 1);
+				default -> new ExprInfo(sub.key == null ? null : "(" + unExpr.oper + " " + sub.key + ")", sub.reads,
+						sub.readsMem || unExpr.oper == AST.UnExpr.Oper.VALUEAT, sub.cost + 1);
+				};
+			}
+			case final AST.BinExpr binExpr -> {
+				final ExprInfo fst = info(binExpr.fstExpr);
+				final ExprInfo snd = info(binExpr.sndExpr);
+				final HashSet<AST.Def> reads = new HashSet<AST.Def>(fst.reads);
+				reads.addAll(snd.reads);
+				final String key = (fst.key == null || snd.key == null) ? null
+						: "(" + binExpr.oper + " " + fst.key + " " + snd.key + ")";
+				final int cost = fst.cost + snd.cost + switch (binExpr.oper) {
+				// Glej CodeGen: zamenjava vrstnega reda operandov.
+				case SUB, DIV, MOD -> 15;
+				default -> 1;
+				};
+				yield new ExprInfo(key, reads, fst.readsMem || snd.readsMem, cost);
+			}
+			case final AST.CallExpr callExpr -> {
+				if (!effects.isReadOnly(attrAST, callExpr)) {
+					yield new ExprInfo(null, Set.of(), true, 0);
+				}
+				// Klic funkcije brez vidnih posledic je enak vsakemu drugemu klicu iste
+				// funkcije z enakimi argumenti, dokler se pomnilnik ne spremeni.
+				final StringBuffer key = new StringBuffer("(@" + defId(attrAST.attrDef.get(callExpr)));
+				final HashSet<AST.Def> reads = new HashSet<AST.Def>();
+				boolean readsMem = effects.of(attrAST, callExpr).contains(Effect.READ);
+				int cost = CALL_COST;
+				for (final AST.Expr arg : callExpr.args) {
+					final ExprInfo argInfo = info(arg);
+					if (argInfo.key == null)
+						key.setLength(0);
+					if (key.length() != 0)
+						key.append(" " + argInfo.key);
+					reads.addAll(argInfo.reads);
+					readsMem |= argInfo.readsMem;
+					cost += argInfo.cost;
+				}
+				yield new ExprInfo(key.length() == 0 ? null : key.append(")").toString(), reads, readsMem, cost);
+			}
+			default -> throw new Report.InternalError();
+			};
+			exprInfos.put(expr, info);
+			return info;
+		}
+
+		/**
+		 * Vrne stevilko definicije.
+		 *
+		 * @param def Definicija.
+		 * @return Stevilka definicije.
+		 */
+		private int defId(final AST.Def def) {
+			return defIds.computeIfAbsent(def, __ -> defIds.size());
+		}
+
+	}
+
+	/**
+	 * Premikanje nespremenljivih izrazov iz zank.
+	 *
+	 * Izraz v pogoju ali telesu zanke, katerega vrednost se med izvajanjem zanke ne
+	 * spremeni, se izracuna le enkrat, tik pred zanko (v predglavi zanke), in
+	 * shrani v zacasno spremenljivko; vsak izracun v zanki se nadomesti z branjem
+	 * te zacasne spremenljivke. Izraz je nespremenljiv, ce zanka ne spreminja
+	 * nobene spremenljivke, ki jo izraz bere, in (ce izraz bere pomnilnik) ne
+	 * pise v pomnilnik. Klici funkcij brez vidnih posledic (glej {@link Effects})
+	 * so nespremenljivi, ce so nespremenljivi njihovi argumenti.
+	 *
+	 * Pogoj zanke se izracuna vsaj enkrat, zato se iz njega lahko premakne vsak
+	 * nespremenljiv izraz, razen ce bi se s tem spremenil vrstni red izraza in
+	 * vidnih posledic ostalih delov pogoja. Telo zanke se morda ne izvede nikoli,
+	 * zato se iz njega premaknejo le izrazi, katerih izracun se vedno konca brez
+	 * napake (brez branja preko kazalca, deljenja s spremenljivko in klicev).
+	 */
+	private static class LoopHoister {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Lastnistvo imen. */
+		private final Scopes scopes;
+
+		/** Ucinki funkcij. */
+		private final Effects effects;
+
+		/** Opisi izrazov. */
+		private final ExprInfos exprInfos;
+
+		/**
+		 * Ustvari nov premikalnik nespremenljivih izrazov.
+		 *
+		 * @param attrAST   Abstraktno sintaksno drevo z dodanimi atributi
+		 *                  optimizacije.
+		 * @param scopes    Lastnistvo imen.
+		 * @param effects   Ucinki funkcij.
+		 * @param exprInfos Opisi izrazov.
+		 */
+		public LoopHoister(final AttrAST attrAST, final Scopes scopes, final Effects effects,
+				final ExprInfos exprInfos) {
+			this.attrAST = attrAST;
+			this.scopes = scopes;
+			this.effects = effects;
+			this.exprInfos = exprInfos;
+		}
+
+		/**
+		 * Sprozi premikanje nespremenljivih izrazov iz zank.
+		 *
+		 * Zunanje zanke se obdelajo pred notranjimi, zato se izraz premakne cim bolj
+		 * navzven.
+		 *
+		 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *         ({@link AttrAST#attrHoist} izracunan in nespremenljiv).
+		 */
+		public AttrAST hoist() {
+			attrAST.ast.accept(new AST.FullVisitor<Object, AST.FunDef>() {
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final AST.FunDef owner) {
+					return funDef.stmts.accept(this, funDef);
+				}
+
+				@Override
+				public Object visit(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+					hoist(whileStmt, funDef);
+					return AST.FullVisitor.super.visit(whileStmt, funDef);
+				}
+
+			}, null);
+			return new AttrAST(attrAST, attrAST.attrConst, attrAST.attrTmp, attrAST.attrReuse,
+					Collections.unmodifiableMap(attrAST.attrHoist), attrAST.attrMemo, attrAST.attrStack,
+					attrAST.attrBulk);
+		}
+
+		/**
+		 * Premakne nespremenljive izraze iz ene zanke.
+		 *
+		 * @param whileStmt Zanka.
+		 * @param funDef    Funkcija, v kateri je zanka.
+		 */
+		private void hoist(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+			final Loop loop = new Loop(whileStmt, funDef);
+			final LinkedHashMap<String, List<AST.Expr>> hoisted = new LinkedHashMap<String, List<AST.Expr>>();
+			final AST.FullVisitor<Object, Boolean> collector = new AST.FullVisitor<Object, Boolean>() {
+
+				@Override
+				public Object visit(final AST.FunDef funDef, final Boolean inCond) {
+					// Gnezdene funkcije se ne izvajajo v zanki.
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.WhileStmt whileStmt, final Boolean inCond) {
+					// Pogoj notranje zanke se morda ne izvede nikoli.
+					whileStmt.cond.accept(this, false);
+					return whileStmt.stmts.accept(this, false);
+				}
+
+				@Override
+				public Object visit(final AST.AssignStmt assignStmt, final Boolean inCond) {
+					assignStmt.srcExpr.accept(this, inCond);
+					if (assignStmt.dstExpr instanceof AST.UnExpr unExpr)
+						unExpr.expr.accept(this, inCond);
+					return null;
+				}
+
+				@Override
+				public Object visit(final AST.UnExpr unExpr, final Boolean inCond) {
+					if (unExpr.oper == AST.UnExpr.Oper.MEMADDR) {
+						// Racuna se naslov, ne vrednost operanda.
+						if (unExpr.expr instanceof AST.UnExpr valueAt)
+							valueAt.expr.accept(this, inCond);
+						return null;
+					}
+					if (collect(unExpr, inCond))
+						return null;
+					return unExpr.expr.accept(this, inCond);
+				}
+
+				@Override
+				public Object visit(final AST.BinExpr binExpr, final Boolean inCond) {
+					if (collect(binExpr, inCond))
+						return null;
+					binExpr.fstExpr.accept(this, inCond);
+					return binExpr.sndExpr.accept(this, inCond);
+				}
+
+				@Override
+				public Object visit(final AST.CallExpr callExpr, final Boolean inCond) {
+					if (attrAST.attrConst.containsKey(callExpr))
+						return null;
+					if (collect(callExpr, inCond))
+						return null;
+					return callExpr.args.accept(this, inCond);
+				}
+
+				/**
+				 * Ce je izraz nespremenljiv in ga je smiselno premakniti, ga doda med
+				 * premaknjene izraze.
+				 *
+				 * @param expr   Izraz.
+				 * @param inCond Ali je izraz v pogoju zanke.
+				 * @return Ali je izraz premaknjen ali ze izracunan pred zanko.
+				 */
+				private boolean collect(final AST.Expr expr, final boolean inCond) {
+					if (attrAST.attrReuse.containsKey(expr))
+						return true;
+					final ExprInfo info = exprInfos.info(expr);
+					if (info.key == null || info.cost <= LOAD_COST || !loop.isInvariant(expr))
+						return false;
+					if (loop.mayFail(expr) && !(inCond && !loop.condHasEffects))
+						return false;
+					hoisted.computeIfAbsent(info.key, __ -> new ArrayList<AST.Expr>()).add(expr);
+					return true;
+				}
+
+			};
+			whileStmt.cond.accept(collector, true);
+			whileStmt.stmts.accept(collector, false);
+
+			if (hoisted.isEmpty())
+				return;
+			final List<AST.Expr> preheader = new ArrayList<AST.Expr>();
+			for (final List<AST.Expr> exprs : hoisted.values()) {
+				final AST.Expr first = exprs.getFirst();
+				attrAST.attrTmp.put(first, 4);
+				for (final AST.Expr expr : exprs)
+					attrAST.attrReuse.put(expr, first);
+				preheader.add(first);
+			}
+			attrAST.attrHoist.put(whileStmt, Collections.unmodifiableList(preheader));
+		}
+
+		/**
+		 * Posledice izvajanja ene zanke.
+		 */
+		private class Loop {
+
+			/** Funkcija, v kateri je zanka. */
+			private final AST.FunDef funDef;
+
+			/** Spremenljivke in parametri, ki se jim v zanki priredi vrednost. */
+			private final HashSet<AST.Def> assigned = new HashSet<AST.Def>();
+
+			/** Ali zanka pise v pomnilnik mimo zasebnih spremenljivk. */
+			private boolean writesMem = false;
+
+			/** Ali ima izracun pogoja zanke vidne posledice. */
+			private boolean condHasEffects = false;
+
+			/**
+			 * Izracuna posledice izvajanja zanke.
+			 *
+			 * @param whileStmt Zanka.
+			 * @param funDef    Funkcija, v kateri je zanka.
+			 */
+			public Loop(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+				this.funDef = funDef;
+				final AST.FullVisitor<Object, Object> visitor = new AST.FullVisitor<Object, Object>() {
+
+					@Override
+					public Object visit(final AST.FunDef funDef, final Object arg) {
+						// Gnezdene funkcije se ne izvajajo v zanki.
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.VarDef varDef, final Object arg) {
+						// Lokalna spremenljivka se inicializira ob vsakem vstopu v stavek let.
+						assign(varDef);
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.AssignStmt assignStmt, final Object arg) {
+						assignStmt.srcExpr.accept(this, arg);
+						switch (assignStmt.dstExpr) {
+						case final AST.VarExpr varExpr:
+							assign(attrAST.attrDef.get(varExpr));
+							break;
+						case final AST.UnExpr unExpr:
+							unExpr.expr.accept(this, arg);
+							writesMem = true;
+							break;
+						default:
+							throw new Report.InternalError();
+						}
+						return null;
+					}
+
+					@Override
+					public Object visit(final AST.CallExpr callExpr, final Object arg) {
+						final EnumSet<Effect> callEffects = effects.of(attrAST, callExpr);
+						if (callEffects.contains(Effect.WRITE) || callEffects.contains(Effect.IO))
+							writesMem = true;
+						return callExpr.args.accept(this, arg);
+					}
+
+				};
+				whileStmt.cond.accept(visitor, null);
+				condHasEffects = writesMem;
+				whileStmt.stmts.accept(visitor, null);
+			}
+
+			/**
+			 * Zabelezi prirejanje vrednosti spremenljivki ali parametru.
+			 *
+			 * @param def Spremenljivka ali parameter.
+			 */
+			private void assign(final AST.Def def) {
+				assigned.add(def);
+				if (!scopes.isPrivate(def, funDef))
+					writesMem = true;
+			}
+
+			/**
+			 * Ali se vrednost izraza med izvajanjem zanke ne spremeni.
+			 *
+			 * @param expr Izraz.
+			 * @return Ali je izraz nespremenljiv.
+			 */
+			public boolean isInvariant(final AST.Expr expr) {
+				return switch (expr) {
+				case final AST.AtomExpr atomExpr -> true;
+				case final AST.VarExpr varExpr -> {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					yield !assigned.contains(def) && (scopes.isPrivate(def, funDef) || !writesMem);
+				}
+				case final AST.UnExpr unExpr -> unExpr.oper != AST.UnExpr.Oper.MEMADDR
+						&& (unExpr.oper != AST.UnExpr.Oper.VALUEAT || !writesMem) && isInvariant(unExpr.expr);
+				case final AST.BinExpr binExpr -> isInvariant(binExpr.fstExpr) && isInvariant(binExpr.sndExpr);
+				case final AST.CallExpr callExpr -> {
+					if (!effects.isReadOnly(attrAST, callExpr))
+						yield false;
+					if (effects.of(attrAST, callExpr).contains(Effect.READ) && writesMem)
+						yield false;
+					for (final AST.Expr arg : callExpr.args)
+						if (!isInvariant(arg))
+							yield false;
+					yield true;
+				}
+				default -> throw new Report.InternalError();
+				};
+			}
+
+			/**
+			 * Ali se izracun izraza lahko konca z napako ali se sploh ne konca.
+			 *
+			 * @param expr Izraz.
+			 * @return Ali se izracun izraza lahko konca z napako.
+			 */
+			public boolean mayFail(final AST.Expr expr) {
+				return switch (expr) {
+				case final AST.AtomExpr atomExpr -> false;
+				case final AST.VarExpr varExpr -> false;
+				case final AST.UnExpr unExpr -> unExpr.oper == AST.UnExpr.Oper.VALUEAT || mayFail(unExpr.expr);
+				case final AST.BinExpr binExpr -> {
+					if (binExpr.oper == AST.BinExpr.Oper.DIV || binExpr.oper == AST.BinExpr.Oper.MOD) {
+						if (!(binExpr.sndExpr instanceof AST.AtomExpr divisor) || !isNonZero(divisor))
+							yield true;
+					}
+					yield mayFail(binExpr.fstExpr) || mayFail(binExpr.sndExpr);
+				}
+				case final AST.CallExpr callExpr -> true;
+				default -> throw new Report.InternalError();
+				};
+			}
+
+			/**
+			 * Ali je konstanta celo stevilo, razlicno od nic.
+			 *
+			 * @param atomExpr Konstanta.
+			 * @return Ali je konstanta celo stevilo, razlicno od nic.
+			 */
+			private boolean isNonZero(final AST.AtomExpr atomExpr) {
+				if (atomExpr.type != AST.AtomExpr.Type.INTCONST)
+					return false;
+				try {
+					return Integer.decode(atomExpr.value) != 0;
+				} catch (NumberFormatException __) {
+					return false;
+				}
+			}
+
+		}
+
+	}
+
+	/**
+	 * Odstranjevanje skupnih podizrazov.
+	 *
+	 * Izraz, ki je znotraj razsirjenega osnovnega bloka izracunan vec kot enkrat,
+	 * se izracuna le prvic: ob prvem izracunu se njegova vrednost shrani v zacasno
+	 * spremenljivko v klicnem zapisu, vsak naslednji izracun pa se nadomesti z
+	 * branjem te zacasne spremenljivke. Vrednost ostane na voljo, dokler je ne
+	 * razveljavi prirejanje spremenljivki, ki jo izraz bere, shranjevanje preko
+	 * kazalca ali klic funkcije z vidnimi posledicami. Klic funkcije brez vidnih
+	 * posledic (glej {@link Effects}) je tudi sam lahko ponovni izracun.
+	 *
+	 * Model prekrivanja je preprost: spremenljivke in parametri, ki so dosegljivi
+	 * samo preko svojega imena (glej {@link Scopes#isPrivate}), se spremenijo
+	 * izkljucno s prirejanjem; vse ostalo (globalne spremenljivke, spremenljivke
+	 * zunanjih funkcij, vrednosti, prebrane preko kazalca) lahko spremeni vsako
+	 * shranjevanje preko kazalca in vsak klic funkcije z vidnimi posledicami.
+	 */
+	private static class CommonSubexprEliminator {
+
+		/**
+		 * Stevilo ukazov, ki jih porabi prvi izracun izraza za shranjevanje vrednosti
+		 * v zacasno spremenljivko (podvojitev vrha sklada in shranjevanje).
+		 */
+		private static final int SAVE_COST = 6;
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Lastnistvo imen. */
+		private final Scopes scopes;
+
+		/** Opisi izrazov. */
+		private final ExprInfos exprInfos;
+
+		/** Ponovni izracuni posameznih prvih izracunov izraza v trenutni funkciji. */
+		private final LinkedHashMap<AST.Expr, List<AST.Expr>> reuses = new LinkedHashMap<AST.Expr, List<AST.Expr>>();
+
+		/**
+		 * Ustvari nov odstranjevalnik skupnih podizrazov.
+		 *
+		 * @param attrAST   Abstraktno sintaksno drevo z dodanimi atributi
+		 *                  optimizacije.
+		 * @param scopes    Lastnistvo imen.
+		 * @param exprInfos Opisi izrazov.
+		 */
+		public CommonSubexprEliminator(final AttrAST attrAST, final Scopes scopes, final ExprInfos exprInfos) {
+			this.attrAST = attrAST;
+			this.scopes = scopes;
+			this.exprInfos = exprInfos;
+		}
+
+		/**
+		 * Sprozi odstranjevanje skupnih podizrazov.
+		 *
+		 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *         ({@link AttrAST#attrTmp} in {@link AttrAST#attrReuse} izracunana in
+		 *         nespremenljiva).
+		 */
+		public AttrAST eliminate() {
+			attrAST.ast.accept(new AST.FullVisitor<Object, Object>() {
+				@Override
+				public Object visit(final AST.FunDef funDef, final Object arg) {
+					eliminate(funDef);
+					funDef.stmts.accept(this, arg);
+					return null;
+				}
+			}, null);
+			return new AttrAST(attrAST, attrAST.attrConst, Collections.unmodifiableMap(attrAST.attrTmp),
+					Collections.unmodifiableMap(attrAST.attrReuse), attrAST.attrHoist, attrAST.attrMemo,
+					attrAST.attrStack, attrAST.attrBulk);
+		}
+
+		/**
+		 * Odstrani skupne podizraze v telesu ene funkcije (brez gnezdenih funkcij).
+		 *
+		 * @param funDef Funkcija.
+		 */
+		private void eliminate(final AST.FunDef funDef) {
+			reuses.clear();
+			funDef.stmts.accept(new AvailVisitor(funDef), new Avail());
+			for (final Map.Entry<AST.Expr, List<AST.Expr>> entry : reuses.entrySet()) {
+				final AST.Expr first = entry.getKey();
+				final List<AST.Expr> others = entry.getValue();
+				if (others.size() * (exprInfos.info(first).cost - LOAD_COST) <= SAVE_COST)
+					continue;
+				attrAST.attrTmp.put(first, 4);
+				for (final AST.Expr other : others)
+					attrAST.attrReuse.put(other, first);
+			}
+		}
+
+		/**
+		 * Mnozica izrazov, katerih vrednost je v danem trenutku na voljo.
+		 */
+		private class Avail {
+
+			/** Preslikava kljuca izraza v prvi izracun tega izraza. */
+			private final HashMap<String, AST.Expr> firsts;
+
+			/** Ustvari prazno mnozico izrazov. */
+			public Avail() {
+				this.firsts = new HashMap<String, AST.Expr>();
+			}
+
+			/**
+			 * Ustvari kopijo mnozice izrazov.
+			 *
+			 * @param avail Mnozica izrazov.
+			 */
+			public Avail(final Avail avail) {
+				this.firsts = new HashMap<String, AST.Expr>(avail.firsts);
+			}
+
+			/**
+			 * Obdrzi samo izraze, ki so na voljo tudi v drugi mnozici.
+			 *
+			 * @param avail Druga mnozica izrazov.
+			 */
+			public void retain(final Avail avail) {
+				firsts.entrySet().removeIf(entry -> avail.firsts.get(entry.getKey()) != entry.getValue());
+			}
+
+			/** Razveljavi vse izraze. */
+			public void clear() {
+				firsts.clear();
+			}
+
+			/**
+			 * Razveljavi izraze po prirejanju spremenljivki ali parametru.
+			 *
+			 * @param def       Spremenljivka ali parameter.
+			 * @param isPrivate Ali je spremenljivka ali parameter zaseben.
+			 */
+			public void killDef(final AST.Def def, final boolean isPrivate) {
+				firsts.values().removeIf(first -> {
+					final ExprInfo info = exprInfos.info(first);
+					return info.reads.contains(def) || (!isPrivate && info.readsMem);
+				});
+			}
+
+			/**
+			 * Razveljavi izraze po shranjevanju preko kazalca ali klicu funkcije.
+			 *
+			 * @param funDef Funkcija, v kateri je shranjevanje ali klic.
+			 */
+			public void killMem(final AST.FunDef funDef) {
+				firsts.values().removeIf(first -> {
+					final ExprInfo info = exprInfos.info(first);
+					if (info.readsMem)
+						return true;
+					for (final AST.Def def : info.reads)
+						if (!scopes.isPrivate(def, funDef))
+							return true;
+					return false;
+				});
+			}
+
+		}
+
+		/**
+		 * Obiskovalec, ki v vrstnem redu izvajanja spremlja, kateri izrazi so na voljo.
+		 */
+		private class AvailVisitor implements AST.FullVisitor<Object, Avail> {
+
+			/** Funkcija, katere telo se obdeluje. */
+			private final AST.FunDef funDef;
+
+			/**
+			 * Ustvari nov obiskovalec.
+			 *
+			 * @param funDef Funkcija, katere telo se obdeluje.
+			 */
+			public AvailVisitor(final AST.FunDef funDef) {
+				this.funDef = funDef;
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Avail avail) {
+				// Gnezdene funkcije se obdelajo posebej.
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarDef varDef, final Avail avail) {
+				// Lokalna spremenljivka se inicializira ob vstopu v stavek let.
+				avail.killDef(varDef, scopes.isPrivate(varDef, funDef));
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.AssignStmt assignStmt, final Avail avail) {
+				// Enak vrstni red kot v CodeGen: najprej vrednost, nato naslov.
+				assignStmt.srcExpr.accept(this, avail);
+				switch (assignStmt.dstExpr) {
+				case final AST.VarExpr varExpr: {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					avail.killDef(def, scopes.isPrivate(def, funDef));
+					break;
+				}
+				case final AST.UnExpr unExpr: {
+					unExpr.expr.accept(this, avail);
+					avail.killMem(funDef);
+					break;
+				}
+				default:
+					throw new Report.InternalError();
+				}
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.IfStmt ifStmt, final Avail avail) {
+				ifStmt.cond.accept(this, avail);
+				final Avail elseAvail = new Avail(avail);
+				ifStmt.thenStmts.accept(this, avail);
+				ifStmt.elseStmts.accept(this, elseAvail);
+				avail.retain(elseAvail);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.WhileStmt whileStmt, final Avail avail) {
+				// Pogoj je tarca skoka s konca telesa zanke.
+				avail.clear();
+				whileStmt.cond.accept(this, avail);
+				final Avail exitAvail = new Avail(avail);
+				whileStmt.stmts.accept(this, avail);
+				avail.clear();
+				avail.firsts.putAll(exitAvail.firsts);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Avail avail) {
+				if (unExpr.oper == AST.UnExpr.Oper.MEMADDR) {
+					// Racuna se naslov, ne vrednost operanda.
+					if (unExpr.expr instanceof AST.UnExpr valueAt)
+						valueAt.expr.accept(this, avail);
+					return null;
+				}
+				if (reuse(unExpr, avail))
+					return null;
+				unExpr.expr.accept(this, avail);
+				if (unExpr.oper != AST.UnExpr.Oper.ADD)
+					first(unExpr, avail);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final Avail avail) {
+				if (reuse(binExpr, avail))
+					return null;
+				// Enak vrstni red kot v CodeGen: najprej desni, nato levi operand.
+				binExpr.sndExpr.accept(this, avail);
+				binExpr.fstExpr.accept(this, avail);
+				first(binExpr, avail);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Avail avail) {
+				// Klic, izracunan med prevajanjem, je konstanta.
+				if (attrAST.attrConst.containsKey(callExpr))
+					return null;
+				if (reuse(callExpr, avail))
+					return null;
+				for (int arg = callExpr.args.size() - 1; arg >= 0; arg--)
+					callExpr.args.get(arg).accept(this, avail);
+				if (exprInfos.info(callExpr).key == null)
+					avail.killMem(funDef);
+				else
+					first(callExpr, avail);
+				return null;
+			}
+
+			/**
+			 * Ce je vrednost izraza ze na voljo, ga oznaci kot ponovni izracun.
+			 *
+			 * @param expr  Izraz.
+			 * @param avail Izrazi, ki so na voljo.
+			 * @return Ali je izraz ponovni izracun.
+			 */
+			private boolean reuse(final AST.Expr expr, final Avail avail) {
+				// Vrednost izraza je izracunana ze pred zanko (glej LoopHoister).
+				if (attrAST.attrReuse.containsKey(expr))
+					return true;
+				final ExprInfo info = exprInfos.info(expr);
+				if (info.key == null)
+					return false;
+				final AST.Expr first = avail.firsts.get(info.key);
+				if (first == null)
+					return false;
+				reuses.get(first).add(expr);
+				return true;
+			}
+
+			/**
+			 * Oznaci izraz kot prvi izracun, ki je na voljo naslednjim izracunom.
+			 *
+			 * @param expr  Izraz.
+			 * @param avail Izrazi, ki so na voljo.
+			 */
+			private void first(final AST.Expr expr, final Avail avail) {
+				final ExprInfo info = exprInfos.info(expr);
+				if (info.key == null)
+					return;
+				avail.firsts.put(info.key, expr);
+				reuses.put(expr, new ArrayList<AST.Expr>());
+			}
+
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon optimizacije kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'24 compiler (optimization):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(semanAttrAST);
+
+				(new AST.Logger(optimAttrAST)).log();
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package pins24.phase;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import pins24.common.*;
+
+/**
+ * Vzporedna obdelava definicij na vrhnjem nivoju.
+ *
+ * Definicije na vrhnjem nivoju se razdelijo na zaporedne kose, ki se obdelajo
+ * v skupnem bazenu niti (glej {@link ForkJoinPool#commonPool()}). Rezultati se
+ * vrnejo v vrstnem redu kosov, zato jih klicatelj lahko zdruzi tako, kot da bi
+ * kose obdelal enega za drugim. Ce bazen nima vec kot ene niti, je kos en sam
+ * in se obdela kar v trenutni niti.
+ */
+final class Parallel {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Parallel() {
+		throw new Report.InternalError();
+	}
+
+	/** Stevilo kosov na nit bazena; vec manjsih kosov bolje porazdeli delo. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Razdeli definicije na zaporedne kose.
+	 *
+	 * @param <Item> Tip definicij.
+	 * @param items  Definicije.
+	 * @return Kosi definicij v vrstnem redu definicij.
+	 */
+	static <Item> List<List<Item>> chunks(final List<Item> items) {
+		final int threads = ForkJoinPool.getCommonPoolParallelism();
+		final int count = threads > 1 ? Math.min(items.size(), CHUNKS_PER_THREAD * threads) : 1;
+		if (count <= 1)
+			return List.of(items);
+		final List<List<Item>> chunks = new ArrayList<List<Item>>(count);
+		for (int chunk = 0; chunk < count; chunk++)
+			chunks.add(items.subList(chunk * items.size() / count, (chunk + 1) * items.size() / count));
+		return chunks;
+	}
+
+	/**
+	 * Obdela kose definicij (ali cesarkoli drugega).
+	 *
+	 * Ce obdelava kosa ne uspe, se sprozi izjema prvega takega kosa, tako kot
+	 * bi se ob obdelavi kosov enega za drugim.
+	 *
+	 * @param <Item>   Tip definicij.
+	 * @param <Result> Tip rezultata obdelave kosa.
+	 * @param chunks   Kosi definicij (glej {@link #chunks(List)}).
+	 * @param task     Obdelava kosa.
+	 * @return Rezultati obdelave kosov v vrstnem redu kosov.
+	 */
+	static <Item, Result> List<Result> map(final List<List<Item>> chunks,
+			final Function<List<Item>, Result> task) {
+		if (chunks.size() == 1)
+			return List.of(task.apply(chunks.getFirst()));
+
+		final Object[] results = new Object[chunks.size()];
+		final Throwable[] errors = new Throwable[chunks.size()];
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks.size());
+		for (int chunk = 0; chunk < chunks.size(); chunk++) {
+			final int index = chunk;
+			// Errors are kept as they are: the pool would wrap them in its own exceptions.
+			tasks.add(Executors.callable(() -> {
+				try {
+					results[index] = task.apply(chunks.get(index));
+				} catch (RuntimeException | Error error) {
+					errors[index] = error;
+				}
+			}));
+		}
+		ForkJoinPool.commonPool().invokeAll(tasks);
+
+		final List<Result> list = new ArrayList<Result>(chunks.size());
+		for (int chunk = 0; chunk < chunks.size(); chunk++) {
+			if (errors[chunk] instanceof RuntimeException error)
+				throw error;
+			if (errors[chunk] instanceof Error error)
+				throw error;
+			list.add(unmask(results[chunk]));
+		}
+		return list;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <Result> Result unmask(final Object result) {
+		return (Result) result;
+	}
+
+}
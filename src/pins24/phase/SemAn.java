@@ -102,66 +102,114 @@ public class SemAn {
 	 * @return Abstraktno sintaksno drevo z dodanimi atributi semanticne analize.
 	 */
 	public static AttrAST analyze(Abstr.AttrAST abstrAttrAST) {
-		AttrAST attrAST = new AttrAST(abstrAttrAST, new HashMap<AST.NameExpr, AST.Def>(),
-				new HashMap<AST.Expr, Boolean>());
-		attrAST = new NameResolver(attrAST).resolve();
-		attrAST = new TypeResolver(attrAST).resolve();
-		attrAST = new LValResolver(attrAST).resolve();
-		return attrAST;
+		AttrAST attrAST = new AttrAST(abstrAttrAST, new AST.NodeMap<AST.NameExpr, AST.Def>(),
+				new AST.NodeMap<AST.Expr, Boolean>());
+		return new Resolver(attrAST).resolve();
 	}
 
 	/**
-	 * Razresevanje imen.
+	 * Razresevanje imen, preverjanje tipov in preverjanje levih vrednosti v enem
+	 * obhodu.
+	 * 
+	 * Napake se javijo enako, kot ce bi se vsako preverjanje opravilo v svojem
+	 * obhodu: napaka pri razresevanju imen se javi takoj, prva napaka pri
+	 * preverjanju tipov in prva napaka pri preverjanju levih vrednosti pa sele na
+	 * koncu obhoda (v tem vrstnem redu).
+	 * 
+	 * Ko so definicije na vrhnjem nivoju vstavljene v simbolno tabelo, se
+	 * definicije na vrhnjem nivoju obdelajo vzporedno po kosih (glej
+	 * {@link Parallel}), vsak kos s svojo kopijo simbolne tabele. Javljene napake
+	 * so enake kot pri obdelavi kosov enega za drugim.
 	 */
-	private static class NameResolver {
+	private static class Resolver {
 
 		/** Abstraktno sintaksno drevo z dodanimi atributi semanticne analize. */
 		private final AttrAST attrAST;
 
 		/**
-		 * Ustvari nov razresevalnik imen.
+		 * Ustvari nov razresevalnik.
 		 * 
 		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi semanticne
 		 *                analize.
 		 */
-		public NameResolver(final AttrAST attrAST) {
+		public Resolver(final AttrAST attrAST) {
 			this.attrAST = attrAST;
 		}
 
 		/**
-		 * Sprozi razresevanje imen.
+		 * Sprozi razresevanje imen, preverjanje tipov in preverjanje levih vrednosti.
 		 * 
 		 * @return Abstraktno sintaksno drevo z dodanimi atributi semanticne analize
-		 *         ({@link AttrAST#attrDef} izracunan in nespremenljiv).
+		 *         ({@link AttrAST#attrDef} in {@link AttrAST#attrLVal} izracunana in
+		 *         nespremenljiva).
 		 */
 		public AttrAST resolve() {
-			attrAST.ast.accept(new ResolverVisitor(), null);
-			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrDef), attrAST.attrLVal);
+			final ResolverVisitor visitor = new ResolverVisitor(new SymbolTable(), attrAST.attrDef,
+					attrAST.attrLVal);
+			final List<AST.Node> nodes = new ArrayList<AST.Node>(((AST.Nodes<?>) attrAST.ast).getAll());
+			visitor.defs(nodes);
+
+			// A single chunk is resolved by the same visitor straight into the attributes.
+			final List<List<AST.Node>> chunks = Parallel.chunks(nodes);
+			final List<ResolverVisitor> visitors = Parallel.map(chunks, chunk -> {
+				final ResolverVisitor chunkVisitor = chunks.size() == 1 ? visitor
+						: new ResolverVisitor(new SymbolTable(visitor.symbolTable),
+								new AST.NodeMap<AST.NameExpr, AST.Def>(), new AST.NodeMap<AST.Expr, Boolean>());
+				chunkVisitor.rest(chunk);
+				return chunkVisitor;
+			});
+
+			Report.Error typeError = visitor.typeError;
+			Report.Error lvalError = visitor.lvalError;
+			for (final ResolverVisitor chunkVisitor : visitors) {
+				if (typeError == null)
+					typeError = chunkVisitor.typeError;
+				if (lvalError == null)
+					lvalError = chunkVisitor.lvalError;
+				if (chunkVisitor != visitor) {
+					attrAST.attrDef.putAll(chunkVisitor.attrDef);
+					attrAST.attrLVal.putAll(chunkVisitor.attrLVal);
+				}
+			}
+			if (typeError != null)
+				throw typeError;
+			if (lvalError != null)
+				throw lvalError;
+			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrDef),
+					Collections.unmodifiableMap(attrAST.attrLVal));
 		}
 
-		/** Simbolna tabela, ki se uporablja med razresevanjem imen. */
-		private final SymbolTable symbolTable = new SymbolTable();
-
-		/** Simbolna tabela. */
+		/**
+		 * Simbolna tabela.
+		 * 
+		 * Imena so predstavljena s stevilkami (glej {@link AST.Def#symbol}), zato je
+		 * najbolj notranja definicija vsakega imena shranjena kar na mestu s
+		 * stevilko imena. Definicije, ki jih nova definicija v notranjem dosegu
+		 * prekrije, se shranijo v dnevnik, iz katerega se ob izstopu iz dosega
+		 * obnovijo. Tabele le rastejo, zato vstop v doseg, izstop iz njega in
+		 * iskanje ne zasedajo novega pomnilnika.
+		 */
 		private class SymbolTable {
 
-			/**
-			 * Definicija v trenutnem dosega na dani staticni globini.
-			 * 
-			 * @param depth Staticna globina definicije.
-			 * @param def   Definicija.
-			 */
-			private record ScopedDef(int depth, AST.Def def) {
-			}
+			/** Najbolj notranje definicije imen, urejene po stevilkah imen. */
+			private AST.Def[] defs = new AST.Def[64];
+
+			/** Staticne globine najbolj notranjih definicij imen. */
+			private int[] depths = new int[64];
 
 			/**
-			 * Preslikava imena v seznam definicij tega imena na razlicnih staticnih
-			 * globinah.
+			 * Dnevnik prekritih definicij: stevilka imena, prejsnja definicija imena
+			 * ({@code null}, ce je ni bilo) in njena staticna globina.
 			 */
-			private final HashMap<String, LinkedList<ScopedDef>> namesToDefs;
+			private int[] undoSymbols = new int[64];
+			private AST.Def[] undoDefs = new AST.Def[64];
+			private int[] undoDepths = new int[64];
 
-			/** Seznami imen definiranih na posameznih staticnih globinah. */
-			private final LinkedList<LinkedList<String>> namesToDefsByDepth;
+			/** Stevilo vpisov v dnevniku. */
+			private int undoCount = 0;
+
+			/** Stevila vpisov v dnevniku ob vstopu v posamezne dosege. */
+			private int[] scopeMarks = new int[16];
 
 			/** Trenutna staticna globina. */
 			private int depth;
@@ -170,28 +218,45 @@ public class SemAn {
 			 * Ustvari novo simbolno tabelo.
 			 */
 			public SymbolTable() {
-				namesToDefs = new HashMap<String, LinkedList<ScopedDef>>();
-				namesToDefsByDepth = new LinkedList<LinkedList<String>>();
 				depth = -1;
 				newScope();
 			}
 
+			/**
+			 * Ustvari kopijo simbolne tabele; kasnejse spremembe kopije ne vplivajo na
+			 * izvirnik in obratno.
+			 * 
+			 * @param symbolTable Simbolna tabela.
+			 */
+			public SymbolTable(final SymbolTable symbolTable) {
+				defs = symbolTable.defs.clone();
+				depths = symbolTable.depths.clone();
+				undoSymbols = symbolTable.undoSymbols.clone();
+				undoDefs = symbolTable.undoDefs.clone();
+				undoDepths = symbolTable.undoDepths.clone();
+				undoCount = symbolTable.undoCount;
+				scopeMarks = symbolTable.scopeMarks.clone();
+				depth = symbolTable.depth;
+			}
+
 			/** Pripravi simbolno tabelo za vstavljanje definicij imen v novem dosegu. */
 			public void newScope() {
 				depth++;
-				namesToDefsByDepth.addFirst(new LinkedList<String>());
+				if (depth == scopeMarks.length)
+					scopeMarks = Arrays.copyOf(scopeMarks, 2 * scopeMarks.length);
+				scopeMarks[depth] = undoCount;
 			}
 
 			/** Razveljavi trenutni doseg. */
 			public void oldScope() {
-				for (final String name : namesToDefsByDepth.getFirst()) {
-					final LinkedList<ScopedDef> defsOfName = namesToDefs.get(name);
-					if (defsOfName.size() == 1)
-						namesToDefs.remove(name);
-					else
-						defsOfName.removeFirst();
+				final int mark = scopeMarks[depth];
+				while (undoCount > mark) {
+					undoCount--;
+					final int symbol = undoSymbols[undoCount];
+					defs[symbol] = undoDefs[undoCount];
+					depths[symbol] = undoDepths[undoCount];
+					undoDefs[undoCount] = null;
 				}
-				namesToDefsByDepth.removeFirst();
 				depth--;
 			}
 
@@ -204,43 +269,97 @@ public class SemAn {
 			 *         mozna (pred to vstavitvijo je v tem dosegu ze definicija tega imena).
 			 */
 			public boolean ins(final AST.Def def) {
-				final LinkedList<ScopedDef> defsOfOldName = namesToDefs.get(def.name);
-				if (defsOfOldName == null) {
-					final LinkedList<ScopedDef> defsOfNewName = new LinkedList<ScopedDef>();
-					defsOfNewName.addFirst(new ScopedDef(depth, def));
-					namesToDefs.put(def.name, defsOfNewName);
-					namesToDefsByDepth.getFirst().add(def.name);
-					return true;
-				} else {
-					if (defsOfOldName.getFirst().depth == depth)
-						return false;
-					defsOfOldName.addFirst(new ScopedDef(depth, def));
-					namesToDefsByDepth.getFirst().add(def.name);
-					return true;
+				final int symbol = symbol(def.symbol());
+				if (symbol >= defs.length) {
+					final int length = Math.max(symbol + 1, 2 * defs.length);
+					defs = Arrays.copyOf(defs, length);
+					depths = Arrays.copyOf(depths, length);
+				}
+				if (defs[symbol] != null && depths[symbol] == depth)
+					return false;
+				if (undoCount == undoSymbols.length) {
+					undoSymbols = Arrays.copyOf(undoSymbols, 2 * undoCount);
+					undoDefs = Arrays.copyOf(undoDefs, 2 * undoCount);
+					undoDepths = Arrays.copyOf(undoDepths, 2 * undoCount);
 				}
+				undoSymbols[undoCount] = symbol;
+				undoDefs[undoCount] = defs[symbol];
+				undoDepths[undoCount] = depths[symbol];
+				undoCount++;
+				defs[symbol] = def;
+				depths[symbol] = depth;
+				return true;
 			}
 
 			/**
 			 * Vrne definicijo imena.
 			 * 
-			 * @param name Ime.
+			 * @param nameExpr Ime.
 			 * @return Definicija imena ali {@code null}, ce ime ni definirano v tem in
 			 *         obsegajocih dosegih.
 			 */
-			public AST.Def fnd(final String name) {
-				final LinkedList<ScopedDef> defsOfName = namesToDefs.get(name);
-				return (defsOfName == null) ? null : defsOfName.getFirst().def();
+			public AST.Def fnd(final AST.NameExpr nameExpr) {
+				final int symbol = symbol(nameExpr.symbol());
+				return symbol < defs.length ? defs[symbol] : null;
+			}
+
+			/**
+			 * Preveri, ali je stevilka imena dolocena.
+			 * 
+			 * @param symbol Stevilka imena.
+			 * @return Stevilka imena.
+			 */
+			private int symbol(final int symbol) {
+				if (symbol < 0)
+					throw new Report.InternalError();
+				return symbol;
 			}
 
 		}
 
 		/**
-		 * Obiskovalec za razresevanje imen.
+		 * Obiskovalec za razresevanje imen, preverjanje tipov in preverjanje levih
+		 * vrednosti.
 		 */
 		private class ResolverVisitor implements AST.FullVisitor<Object, ResolverVisitor.Pass> {
 
-			@SuppressWarnings({ "doclint:missing" })
-			public ResolverVisitor() {
+			/** Simbolna tabela, ki se uporablja med razresevanjem imen. */
+			private final SymbolTable symbolTable;
+
+			/** Atribut: definicija uporabljenega imena. */
+			private final Map<AST.NameExpr, AST.Def> attrDef;
+
+			/** Atribut: ali je dani izraz levi izraz. */
+			private final Map<AST.Expr, Boolean> attrLVal;
+
+			/** Prva napaka pri preverjanju tipov ali {@code null}, ce je ni. */
+			private Report.Error typeError = null;
+
+			/** Prva napaka pri preverjanju levih vrednosti ali {@code null}, ce je ni. */
+			private Report.Error lvalError = null;
+
+			/**
+			 * Ustvari nov obiskovalec.
+			 * 
+			 * @param symbolTable Simbolna tabela.
+			 * @param attrDef     Atribut: definicija uporabljenega imena.
+			 * @param attrLVal    Atribut: ali je dani izraz levi izraz.
+			 */
+			public ResolverVisitor(final SymbolTable symbolTable, final Map<AST.NameExpr, AST.Def> attrDef,
+					final Map<AST.Expr, Boolean> attrLVal) {
+				this.symbolTable = symbolTable;
+				this.attrDef = attrDef;
+				this.attrLVal = attrLVal;
+			}
+
+			/**
+			 * Zapomni si napako pri preverjanju tipov, ce je prva.
+			 * 
+			 * @param error Napaka.
+			 */
+			private void typeError(final Report.Error error) {
+				if (typeError == null)
+					typeError = error;
 			}
 
 			/**
@@ -260,6 +379,17 @@ public class SemAn {
 
 			@Override
 			public Object visit(final AST.Nodes<? extends AST.Node> nodes, final Pass pass) {
+				defs(nodes);
+				rest(nodes);
+				return null;
+			}
+
+			/**
+			 * Prvi prelet zaporedja vozlisc: obdela definicije funkcij in spremenljivk.
+			 * 
+			 * @param nodes Zaporedje vozlisc.
+			 */
+			private void defs(final Iterable<? extends AST.Node> nodes) {
 				for (final AST.Node node : nodes) {
 					switch (node) {
 					case final AST.FunDef funDef:
@@ -272,6 +402,14 @@ public class SemAn {
 						break;
 					}
 				}
+			}
+
+			/**
+			 * Drugi prelet zaporedja vozlisc: obdela vse ostalo.
+			 * 
+			 * @param nodes Zaporedje vozlisc.
+			 */
+			private void rest(final Iterable<? extends AST.Node> nodes) {
 				for (final AST.Node node : nodes) {
 					switch (node) {
 					case final AST.FunDef funDef:
@@ -285,7 +423,6 @@ public class SemAn {
 						break;
 					}
 				}
-				return null;
 			}
 
 			@Override
@@ -302,6 +439,7 @@ public class SemAn {
 					funDef.pars.accept(this, null);
 					funDef.stmts.accept(this, null);
 					symbolTable.oldScope();
+					checkReturnValue(funDef);
 					break;
 				}
 				default:
@@ -346,198 +484,82 @@ public class SemAn {
 				return null;
 			}
 
-			@Override
-			public Object visit(final AST.VarExpr varExpr, final Pass pass) {
-				final AST.Def def = symbolTable.fnd(varExpr.name);
-				if (def == null)
-					throw new Report.Error(attrAST.attrLoc.get(varExpr), "Undefined name '" + varExpr.name + "'.");
-				attrAST.attrDef.put(varExpr, def);
-				return null;
-			}
-
-			@Override
-			public Object visit(final AST.CallExpr callExpr, final Pass pass) {
-				final AST.Def def = symbolTable.fnd(callExpr.name);
-				if (def == null)
-					throw new Report.Error(attrAST.attrLoc.get(callExpr), "Undefined name '" + callExpr.name + "'.");
-				attrAST.attrDef.put(callExpr, def);
-				callExpr.args.accept(this, null);
-				return null;
-			}
-
-		}
-
-	}
-
-	/**
-	 * Preverjanje tipov.
-	 */
-	private static class TypeResolver {
-
-		/** Abstraktno sintaksno drevo z dodanimi atributi semanticne analize. */
-		private final AttrAST attrAST;
-
-		/**
-		 * Ustvari nov razresevalnik imen.
-		 * 
-		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi semanticne
-		 *                analize
-		 */
-		public TypeResolver(final AttrAST attrAST) {
-			this.attrAST = attrAST;
-		}
-
-		/**
-		 * Sprozi razresevanje imen.
-		 * 
-		 * @return Abstraktno sintaksno drevo z dodanimi atributi semanticne analize.
-		 */
-		public AttrAST resolve() {
-			attrAST.ast.accept(new ResolverVisitor(), null);
-			return new AttrAST(attrAST, attrAST.attrDef, attrAST.attrLVal);
-		}
-
-		/**
-		 * Obiskovalec za preverjanje tipov.
-		 */
-		private class ResolverVisitor implements AST.FullVisitor<Object, ResolverVisitor.Pass> {
-
-			@SuppressWarnings({ "doclint:missing" })
-			public ResolverVisitor() {
-			}
-
 			/**
-			 * Dva preleta abstraktnega sintaksnega drevesa med razresevanjem imen.
+			 * Preveri, ali funkcija vrne vrednost (zadnji stavek njenega jedra je izrazni
+			 * stavek).
 			 * 
-			 * Med prvim preletom se obdelajo definicije funkcij in spremenljivk (ne pa tudi
-			 * telesa funkcij), med drugim preletom se obdela vse ostalo (tudi telesa
-			 * funkcij). Oba preleta se prepletata in se razcepita le pri obdelavi zaporedja
-			 * vozlisc.
+			 * @param funDef Definicija funkcije.
 			 */
-			private enum Pass {
-				/** Prelet definicij funkcij in spremenljivk. */
-				Defs,
-				/** Prelet vsega razen definicij funkcij in spremenljivk. */
-				Rest,
-			}
-
-			@Override
-			public Object visit(final AST.FunDef funDef, final Pass pass) {
-				funDef.pars.accept(this, pass);
-				funDef.stmts.accept(this, pass);
-				if (funDef.stmts.size() != 0) {
-					AST.Stmt lastStmt = funDef.stmts.getAll().getLast();
-					loop: while (true) {
-						switch (lastStmt) {
-						case AST.ExprStmt exprStmt:
-							break loop;
-						case AST.LetStmt letStmt:
-							if (letStmt.stmts.size() != 0) {
-								lastStmt = letStmt.stmts.getAll().getLast();
-							} else
-								throw new Report.Error(attrAST.attrLoc.get(funDef),
-										"Function '" + funDef.name + "' does not return any value.");
+			private void checkReturnValue(final AST.FunDef funDef) {
+				if (funDef.stmts.size() == 0)
+					return;
+				AST.Stmt lastStmt = funDef.stmts.getAll().getLast();
+				while (true) {
+					switch (lastStmt) {
+					case AST.ExprStmt exprStmt:
+						return;
+					case AST.LetStmt letStmt:
+						if (letStmt.stmts.size() != 0) {
+							lastStmt = letStmt.stmts.getAll().getLast();
 							break;
-						default:
-							throw new Report.Error(attrAST.attrLoc.get(funDef),
-									"Function '" + funDef.name + "' does not return any value.");
 						}
+						typeError(new Report.Error(attrAST.attrLoc.get(funDef),
+								"Function '" + funDef.name + "' does not return any value."));
+						return;
+					default:
+						typeError(new Report.Error(attrAST.attrLoc.get(funDef),
+								"Function '" + funDef.name + "' does not return any value."));
+						return;
 					}
 				}
-				return null;
 			}
 
 			@Override
 			public Object visit(final AST.VarExpr varExpr, final Pass pass) {
-				switch (attrAST.attrDef.get(varExpr)) {
-				case final AST.VarDef varDef:
-					break;
-				case final AST.ParDef parDef:
-					break;
-				default:
-					throw new Report.Error(attrAST.attrLoc.get(varExpr),
-							"'" + varExpr.name + "' is not a variable or a parameter.");
-				}
+				final AST.Def def = symbolTable.fnd(varExpr);
+				if (def == null)
+					throw new Report.Error(attrAST.attrLoc.get(varExpr), "Undefined name '" + varExpr.name + "'.");
+				attrDef.put(varExpr, def);
+				if (!(def instanceof AST.VarDef) && !(def instanceof AST.ParDef))
+					typeError(new Report.Error(attrAST.attrLoc.get(varExpr),
+							"'" + varExpr.name + "' is not a variable or a parameter."));
+				attrLVal.put(varExpr, true);
 				return null;
 			}
 
 			@Override
 			public Object visit(final AST.CallExpr callExpr, final Pass pass) {
-				switch (attrAST.attrDef.get(callExpr)) {
-				case final AST.FunDef funDef: {
-					if (funDef.pars.size() != callExpr.args.size())
-						throw new Report.Error(attrAST.attrLoc.get(callExpr),
-								"Illegal number of arguments in a call of function '" + callExpr.name + "'.");
-					break;
-				}
-				default:
-					throw new Report.Error(attrAST.attrLoc.get(callExpr), "'" + callExpr.name + "' is not a function.");
-				}
+				final AST.Def def = symbolTable.fnd(callExpr);
+				if (def == null)
+					throw new Report.Error(attrAST.attrLoc.get(callExpr), "Undefined name '" + callExpr.name + "'.");
+				attrDef.put(callExpr, def);
+				if (!(def instanceof AST.FunDef funDef))
+					typeError(new Report.Error(attrAST.attrLoc.get(callExpr),
+							"'" + callExpr.name + "' is not a function."));
+				else if (funDef.pars.size() != callExpr.args.size())
+					typeError(new Report.Error(attrAST.attrLoc.get(callExpr),
+							"Illegal number of arguments in a call of function '" + callExpr.name + "'."));
 				callExpr.args.accept(this, null);
 				return null;
 			}
 
-		}
-
-	}
-
-	/**
-	 * Preverjanje levih vrednosti.
-	 */
-	private static class LValResolver {
-
-		/** Abstraktno sintaksno drevo z dodanimi atributi semanticne analize. */
-		private final AttrAST attrAST;
-
-		/**
-		 * Ustvari nov razresevalnik levih vrednosti.
-		 * 
-		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi semanticne
-		 *                analize.
-		 */
-		public LValResolver(final AttrAST attrAST) {
-			this.attrAST = attrAST;
-		}
-
-		/**
-		 * Sprozi preverjanje levih vrednosti.
-		 *
-		 * @return Abstraktno sintaksno drevo z dodanimi atributi semanticne analize
-		 *         ({@link AttrAST#attrLVal} izracunan in nespremenljiv).
-		 */
-		public AttrAST resolve() {
-			attrAST.ast.accept(new ResolverVisitor(), null);
-			return new AttrAST(attrAST, attrAST.attrDef, Collections.unmodifiableMap(attrAST.attrLVal));
-		}
-
-		/**
-		 * Obiskovalec za preverjanje levih vrednosti.
-		 */
-		private class ResolverVisitor implements AST.FullVisitor<Object, Object> {
-
 			@Override
-			public Object visit(AST.VarExpr varExpr, Object arg) {
-				attrAST.attrLVal.put(varExpr, true);
-				return AST.FullVisitor.super.visit(varExpr, arg);
-			}
-
-			@Override
-			public Object visit(AST.UnExpr unExpr, Object arg) {
-				attrAST.attrLVal.put(unExpr, unExpr.oper == AST.UnExpr.Oper.VALUEAT);
-				return AST.FullVisitor.super.visit(unExpr, arg);
+			public Object visit(final AST.UnExpr unExpr, final Pass pass) {
+				attrLVal.put(unExpr, unExpr.oper == AST.UnExpr.Oper.VALUEAT);
+				unExpr.expr.accept(this, null);
+				return null;
 			}
 
 			@Override
-			public Object visit(AST.AssignStmt assignStmt, Object arg) {
-				AST.FullVisitor.super.visit(assignStmt, arg);
-				if (!attrAST.attrLVal.getOrDefault(assignStmt.dstExpr, false)) {
-					throw new Report.Error(
-							attrAST.attrLoc.get(assignStmt),
-							"Left hand side must ba a variable reference or a pointer expression"
-					);
-				}
+			public Object visit(final AST.AssignStmt assignStmt, final Pass pass) {
+				assignStmt.dstExpr.accept(this, null);
+				assignStmt.srcExpr.accept(this, null);
+				if (lvalError == null && !attrLVal.getOrDefault(assignStmt.dstExpr, false))
+					lvalError = new Report.Error(attrAST.attrLoc.get(assignStmt),
+							"Left hand side must ba a variable reference or a pointer expression");
 				return null;
 			}
+
 		}
 
 	}
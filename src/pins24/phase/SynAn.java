@@ -2,8 +2,9 @@ package pins24.phase;
 
 import pins24.common.*;
 
-import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Sintaksni analizator.
@@ -12,24 +13,28 @@ public class SynAn implements AutoCloseable {
 
 	/** Leksikalni analizator. */
 	private final LexAn lexAn;
-	private HashMap<AST.Node, Report.Locatable> attrLoc;
-	private Token current = null;
+	private Map<AST.Node, Report.Locatable> attrLoc;
+	/** Stevilo ze ostevilcenih vozlisc (glej {@link AST.Node#id}). */
+	private int nodeCount = 0;
+	/** Indeks zadnjega prevzetega leksikalnega simbola ({@code -1}, ce ga ni). */
+	private int current = -1;
 
 	/**
 	 * Ustvari nov sintaksni analizator.
 	 *
-	 * @param srcFileName ime izvorne datoteke.
+	 * @param srcFileNames imena izvornih datotek, ki se preberejo ena za drugo.
 	 */
-	public SynAn(final String srcFileName) {
-        try {
-            this.lexAn = new LexAn(new BufferedReader(new InputStreamReader(new FileInputStream(srcFileName))));
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-    }
+	public SynAn(final String... srcFileNames) {
+		this.lexAn = new LexAn(srcFileNames);
+	}
 
-	public SynAn(final Reader reader) {
-		this.lexAn = new LexAn(reader);
+	/**
+	 * Ustvari nov sintaksni analizator za izvorno datoteko, ki je ze v pomnilniku.
+	 *
+	 * @param src Vsebina izvorne datoteke.
+	 */
+	SynAn(final ByteBuffer src) {
+		this.lexAn = new LexAn(src);
 	}
 
 	@Override
@@ -42,12 +47,12 @@ public class SynAn implements AutoCloseable {
 	 * je prave vrste.
 	 *
 	 * @param expectedSymbol Pricakovana vrsta leksikalnega simbola.
-	 * @return Prevzeti leksikalni simbol.
+	 * @return Indeks prevzetega leksikalnega simbola.
 	 */
-	private Token consume(Token.Symbol expectedSymbol) {
-		current = lexAn.takeToken();
-		if (current.symbol() != expectedSymbol) {
-			throw new Report.Error(current, "Expected " + expectedSymbol + " got " + current.symbol() + " '" + current.lexeme() + "'");
+	private int consume(Token.Symbol expectedSymbol) {
+		current = lexAn.take();
+		if (lexAn.symbol(current) != expectedSymbol) {
+			throw new Report.Error(lexAn.location(current), "Expected " + expectedSymbol + " got " + lexAn.symbol(current) + " '" + lexAn.lexeme(current) + "'");
 		}
 		return current;
 	}
@@ -63,79 +68,301 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private boolean check(Token.Symbol expectedSymbol) {
-		return lexAn.peekToken().symbol() == expectedSymbol;
+		return lexAn.symbol(lexAn.peek()) == expectedSymbol;
+	}
+
+	/**
+	 * Consumes a name and returns its interned number (see `LexAn.identifier`).
+	 */
+	private int consumeIdentifier() {
+		return lexAn.identifier(consume(Token.Symbol.IDENTIFIER));
+	}
+
+	/**
+	 * Sets the number of the defined name and returns the definition.
+	 */
+	private <T extends AST.Def> T withSymbol(int identifier, T def) {
+		def.setSymbol(identifier);
+		return def;
+	}
+
+	/**
+	 * Sets the number of the used name and returns the name expression.
+	 */
+	private <T extends AST.NameExpr> T withSymbol(int identifier, T nameExpr) {
+		nameExpr.setSymbol(identifier);
+		return nameExpr;
 	}
 
 	/**
 	 * Uses the position of the next token as the start position for the current AST node.
 	 */
-	private Report.Locatable nextPosition() {
-		return lexAn.peekToken().location();
+	long nextPosition() {
+		return lexAn.begPosition(lexAn.peek());
 	}
 
-	private Report.Locatable currentPosition() {
-		return current.location();
+	/**
+	 * Returns the offset of the first character of the next token.
+	 */
+	int nextOffset() {
+		return lexAn.begOffset(lexAn.peek());
+	}
+
+	/**
+	 * Returns the offset after the last character of the previous token.
+	 */
+	int endOffset() {
+		return lexAn.endOffset(current);
+	}
+
+	/**
+	 * Returns the number of nodes numbered so far (see `number`).
+	 */
+	int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Continues parsing in the (possibly changed) source at the first character of a token,
+	 * see `LexAn.restart`. Names keep their numbers and node numbers are counted on.
+	 */
+	void restart(final ByteBuffer src, final int offset, final long position,
+				 final Map<AST.Node, Report.Locatable> attrLoc) {
+		lexAn.restart(src, offset, position);
+		this.attrLoc = attrLoc;
+		this.current = -1;
 	}
 
 	/**
 	 * Uses the position of the previous token as the end position for the current AST node
 	 * and returns the provided AST node for convenience (so that we don't have to use temporary variables).
 	 */
-	private <T extends AST.Node> T saveNodeRangeAndReturn(Report.Locatable startPosition, T node) {
-		this.attrLoc.put(node, rangeFromBoundaryPositions(startPosition, currentPosition()));
+	private <T extends AST.Node> T saveNodeRangeAndReturn(long startPosition, T node) {
+		// Optional rules that matched nothing have no node.
+		if (node == null) {
+			return null;
+		}
+		number(node);
+		// Before the first token is consumed the node is empty.
+		final long endPosition = current < 0 ? startPosition : lexAn.endPosition(current);
+		this.attrLoc.put(node, new Report.Location(
+				LexAn.line(startPosition),
+				LexAn.column(startPosition),
+				LexAn.line(endPosition),
+				LexAn.column(endPosition)
+		));
 		return node;
 	}
 
-	private Report.Locatable rangeFromBoundaryPositions(Report.Locatable startPosition, Report.Locatable endPosition) {
-		return new Report.Location(
-				startPosition.location().begLine(),
-				startPosition.location().begColumn(),
-				endPosition.location().endLine(),
-				endPosition.location().endColumn()
-		);
+	/**
+	 * Opravi sintaksno analizo.
+	 */
+	public AST.Node parse(Map<AST.Node, Report.Locatable> attrLoc) {
+		return parse(attrLoc, null);
 	}
 
 	/**
-	 * Opravi sintaksno analizo.
+	 * Opravi sintaksno analizo; pred definicije programa doda funkcije prevedene
+	 * knjiznice (ali nobene, ce je knjiznica {@code null}).
 	 */
-	public AST.Node parse(HashMap<AST.Node, Report.Locatable> attrLoc) {
+	public AST.Node parse(Map<AST.Node, Report.Locatable> attrLoc, Lib lib) {
 		this.attrLoc = attrLoc;
-		final AST.Nodes<AST.MainDef> definitions = parseProgram();
-		if (lexAn.peekToken().symbol() != Token.Symbol.EOF)
-			throw new Report.Error(lexAn.peekToken(),
-					"Unexpected text '" + lexAn.peekToken().lexeme() + "...' at the end of the program.");
+		final AST.Nodes<AST.MainDef> definitions = parseProgram(declare(lib));
+		parseEnd();
+		numberAll(definitions);
 		return definitions;
 	}
 
+	/**
+	 * Builds the definitions of all library functions (none if the library is `null`).
+	 */
+	List<AST.MainDef> declare(Lib lib) {
+		final List<AST.MainDef> declarations = new ArrayList<>();
+		if (lib != null) {
+			for (Lib.FunSig fun : lib.funs) {
+				declarations.add(declare(fun));
+			}
+		}
+		return declarations;
+	}
+
+	/**
+	 * Checks that nothing but the end of the source follows the definitions.
+	 */
+	void parseEnd() {
+		if (lexAn.symbol(lexAn.peek()) != Token.Symbol.EOF)
+			throw new Report.Error(lexAn.location(lexAn.peek()),
+					"Unexpected text '" + lexAn.lexeme(lexAn.peek()) + "...' at the end of the program.");
+	}
+
+	/**
+	 * Builds the definition of a library function, with its location in the library source.
+	 */
+	private AST.FunDef declare(Lib.FunSig fun) {
+		List<AST.ParDef> parameters = new ArrayList<>();
+		for (int i = 0; i < fun.pars().size(); i++) {
+			String name = fun.pars().get(i);
+			parameters.add(declared(fun.parLocations().get(i), withSymbol(lexAn.identifier(name), new AST.ParDef(name))));
+		}
+		return declared(fun.location(), withSymbol(lexAn.identifier(fun.name()), new AST.FunDef(fun.name(), parameters, List.of())));
+	}
+
+	private <T extends AST.Node> T declared(Report.Location location, T node) {
+		number(node);
+		this.attrLoc.put(node, location);
+		return node;
+	}
+
+	/**
+	 * Doloci stevilko vozlisca, ce je se nima.
+	 */
+	<T extends AST.Node> T number(T node) {
+		if (node.id() < 0)
+			node.setId(nodeCount++);
+		return node;
+	}
+
+	/**
+	 * Ostevilci vsa vozlisca drevesa, ki se nimajo stevilke: zaporedja vozlisc, ki
+	 * jih ustvarijo konstruktorji vozlisc, in privzete zacetne vrednosti.
+	 */
+	void numberAll(AST.Node ast) {
+		forEach(ast, this::number);
+	}
+
+	/**
+	 * Obisce vsa vozlisca drevesa.
+	 */
+	static void forEach(AST.Node ast, Consumer<AST.Node> action) {
+		ast.accept(new AST.FullVisitor<Object, Object>() {
+
+			@Override
+			public Object visit(final AST.Nodes<? extends AST.Node> nodes, final Object arg) {
+				action.accept(nodes);
+				return AST.FullVisitor.super.visit(nodes, arg);
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				action.accept(funDef);
+				return AST.FullVisitor.super.visit(funDef, arg);
+			}
+
+			@Override
+			public Object visit(final AST.ParDef parDef, final Object arg) {
+				action.accept(parDef);
+				return AST.FullVisitor.super.visit(parDef, arg);
+			}
+
+			@Override
+			public Object visit(final AST.VarDef varDef, final Object arg) {
+				action.accept(varDef);
+				return AST.FullVisitor.super.visit(varDef, arg);
+			}
+
+			@Override
+			public Object visit(final AST.Init init, final Object arg) {
+				action.accept(init);
+				return AST.FullVisitor.super.visit(init, arg);
+			}
+
+			@Override
+			public Object visit(final AST.ExprStmt exprStmt, final Object arg) {
+				action.accept(exprStmt);
+				return AST.FullVisitor.super.visit(exprStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.AssignStmt assignStmt, final Object arg) {
+				action.accept(assignStmt);
+				return AST.FullVisitor.super.visit(assignStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.IfStmt ifStmt, final Object arg) {
+				action.accept(ifStmt);
+				return AST.FullVisitor.super.visit(ifStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.WhileStmt whileStmt, final Object arg) {
+				action.accept(whileStmt);
+				return AST.FullVisitor.super.visit(whileStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.LetStmt letStmt, final Object arg) {
+				action.accept(letStmt);
+				return AST.FullVisitor.super.visit(letStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.AtomExpr atomExpr, final Object arg) {
+				action.accept(atomExpr);
+				return AST.FullVisitor.super.visit(atomExpr, arg);
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Object arg) {
+				action.accept(unExpr);
+				return AST.FullVisitor.super.visit(unExpr, arg);
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final Object arg) {
+				action.accept(binExpr);
+				return AST.FullVisitor.super.visit(binExpr, arg);
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final Object arg) {
+				action.accept(varExpr);
+				return AST.FullVisitor.super.visit(varExpr, arg);
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Object arg) {
+				action.accept(callExpr);
+				return AST.FullVisitor.super.visit(callExpr, arg);
+			}
+
+		}, null);
+	}
+
 	/**
 	 * Opravi sintaksno analizo celega programa.
 	 */
-	private AST.Nodes<AST.MainDef> parseProgram() {
-		Report.Locatable startPosition = nextPosition();
-		return saveNodeRangeAndReturn(startPosition, new AST.Nodes<>(parseDefinitions()));
+	private AST.Nodes<AST.MainDef> parseProgram(List<AST.MainDef> declarations) {
+		long startPosition = nextPosition();
+		List<AST.MainDef> definitions = new ArrayList<>(declarations);
+		definitions.addAll(parseDefinitions());
+		return saveNodeRangeAndReturn(startPosition, new AST.Nodes<>(definitions));
 	}
 
 	private List<AST.MainDef> parseDefinitions() {
 		List<AST.MainDef> definitions = new ArrayList<>();
-		while (true) {
-			switch (lexAn.peekToken().symbol()) {
-				case FUN -> {
-					definitions.add(parseFunctionDefinition());
-				}
-				case VAR -> {
-					definitions.add(parseVarDefinition());
-				}
-				default -> {
-					return definitions;
-				}
-			}
+		AST.MainDef definition;
+		while ((definition = parseDefinition()) != null) {
+			definitions.add(definition);
 		}
+		return definitions;
+	}
+
+	/**
+	 * Parses the next definition, or returns `null` if no definition follows.
+	 */
+	AST.MainDef parseDefinition() {
+		return switch (lexAn.symbol(lexAn.peek())) {
+			case FUN -> parseFunctionDefinition();
+			case VAR -> parseVarDefinition();
+			default -> null;
+		};
 	}
 
 	private AST.FunDef parseFunctionDefinition() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		consume(Token.Symbol.FUN);
-		Token identifier = consume(Token.Symbol.IDENTIFIER);
+		int identifier = consumeIdentifier();
 		consume(Token.Symbol.LPAREN);
 		List<AST.ParDef> parameters = parseParameters();
 		consume(Token.Symbol.RPAREN);
@@ -144,24 +371,27 @@ public class SynAn implements AutoCloseable {
 			consume(Token.Symbol.ASSIGN);
 			statements = parseStatements();
 		}
-		return saveNodeRangeAndReturn(startPosition, new AST.FunDef(identifier.lexeme(), parameters, statements));
+		return saveNodeRangeAndReturn(startPosition,
+				withSymbol(identifier, new AST.FunDef(lexAn.name(identifier), parameters, statements)));
 	}
 
 	// TODO: Can we simplify this logic using the new previous() helper?
 	private List<AST.ParDef> parseParameters() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		List<AST.ParDef> parameters = new ArrayList<>();
 		if (!check(Token.Symbol.IDENTIFIER)) {
 			return parameters;
 		}
-		Token firstParameter = consume(Token.Symbol.IDENTIFIER);
-		parameters.add(saveNodeRangeAndReturn(startPosition, new AST.ParDef(firstParameter.lexeme())));
+		int firstParameter = consumeIdentifier();
+		parameters.add(saveNodeRangeAndReturn(startPosition,
+				withSymbol(firstParameter, new AST.ParDef(lexAn.name(firstParameter)))));
 		do {
 			if (check(Token.Symbol.COMMA)) {
 				consume(Token.Symbol.COMMA);
 				startPosition = nextPosition();
-				Token otherParameter = consume(Token.Symbol.IDENTIFIER);
-				parameters.add(saveNodeRangeAndReturn(startPosition, new AST.ParDef(otherParameter.lexeme())));
+				int otherParameter = consumeIdentifier();
+				parameters.add(saveNodeRangeAndReturn(startPosition,
+						withSymbol(otherParameter, new AST.ParDef(lexAn.name(otherParameter)))));
 			}
 		} while (check(Token.Symbol.COMMA));
 		return parameters;
@@ -179,7 +409,7 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.Stmt parseStatement() {
-		switch (lexAn.peekToken().symbol()) {
+		switch (lexAn.symbol(lexAn.peek())) {
 			case IF -> {
 				return parseIfStatement();
 			}
@@ -196,7 +426,7 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.IfStmt parseIfStatement() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		consume(Token.Symbol.IF);
 		AST.Expr condition = parseExpression(false);
 		consume(Token.Symbol.THEN);
@@ -214,7 +444,7 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.WhileStmt parseWhileStatement() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		consume(Token.Symbol.WHILE);
 		AST.Expr condition = parseExpression(false);
 		consume(Token.Symbol.DO);
@@ -224,7 +454,7 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.LetStmt parseLetStatement() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		consume(Token.Symbol.LET);
 		List<AST.MainDef> definitions = parseDefinitions();
 		consume(Token.Symbol.IN);
@@ -234,7 +464,7 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.Stmt parseExpressionOrAssignmentStatement() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		AST.Expr destinationExpression = parseExpression(false);
 		if (check(Token.Symbol.ASSIGN)) {
 			consume(Token.Symbol.ASSIGN);
@@ -246,120 +476,112 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.Expr parseExpression(boolean isOptional) {
-		return parseDisjunctionExpression(isOptional);
+		return parseBinaryExpression(DISJUNCTION_PRECEDENCE, isOptional);
 	}
 
-	private AST.Expr parseDisjunctionExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
-		AST.Expr expr = parseConjunctionExpression(isOptional);
-		while (match(Token.Symbol.OR)) {
-			Token operator = current;
-			AST.Expr right = parseConjunctionExpression(isOptional);
-			expr = saveNodeRangeAndReturn(startPosition, new AST.BinExpr(tokenToBinExprOperator(operator), expr, right));
-		}
-		return saveNodeRangeAndReturn(startPosition, expr);
-	}
-
-	private AST.Expr parseConjunctionExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
-		AST.Expr expr = parseComparisonExpression(isOptional);
-		while (match(Token.Symbol.AND)) {
-			Token operator = current;
-			AST.Expr right = parseComparisonExpression(isOptional);
-			expr = saveNodeRangeAndReturn(startPosition, new AST.BinExpr(tokenToBinExprOperator(operator), expr, right));
-		}
-		return saveNodeRangeAndReturn(startPosition, expr);
-	}
-
-	private AST.Expr parseComparisonExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
-		AST.Expr left = parseAdditionExpression(isOptional);
-        if (match(
-				Token.Symbol.EQU,
-				Token.Symbol.NEQ,
-				Token.Symbol.GTH,
-				Token.Symbol.LTH,
-				Token.Symbol.GEQ,
-				Token.Symbol.LEQ
-		)) {
-			Token operator = current;
-            AST.Expr right = parseAdditionExpression(isOptional);
-			return saveNodeRangeAndReturn(startPosition, new AST.BinExpr(tokenToBinExprOperator(operator), left, right));
-        } else {
-			return saveNodeRangeAndReturn(startPosition, left);
-		}
-	}
+	/** Precedence of `||`; operators with a higher precedence bind more tightly. */
+	private static final int DISJUNCTION_PRECEDENCE = 1;
+	/** Precedence of `&&`. */
+	private static final int CONJUNCTION_PRECEDENCE = 2;
+	/** Precedence of comparisons. */
+	private static final int COMPARISON_PRECEDENCE = 3;
+	/** Precedence of `+` and `-`. */
+	private static final int ADDITION_PRECEDENCE = 4;
+	/** Precedence of `*`, `/` and `%`. */
+	private static final int MULTIPLICATION_PRECEDENCE = 5;
 
-	private AST.Expr parseAdditionExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
-		AST.Expr expr = saveNodeRangeAndReturn(startPosition, parseMultiplicationExpression(isOptional));
-		while (match(Token.Symbol.ADD, Token.Symbol.SUB)) {
-			Token operator = current;
-			AST.Expr right = parseMultiplicationExpression(isOptional);
-			expr = saveNodeRangeAndReturn(startPosition, new AST.BinExpr(tokenToBinExprOperator(operator), expr, right));
-		}
-		return saveNodeRangeAndReturn(startPosition, expr);
+	/**
+	 * Returns the precedence of a binary operator or 0 if the symbol is not a binary operator.
+	 */
+	private static int binaryPrecedence(Token.Symbol symbol) {
+		return switch (symbol) {
+			case OR -> DISJUNCTION_PRECEDENCE;
+			case AND -> CONJUNCTION_PRECEDENCE;
+			case EQU, NEQ, GTH, LTH, GEQ, LEQ -> COMPARISON_PRECEDENCE;
+			case ADD, SUB -> ADDITION_PRECEDENCE;
+			case MUL, DIV, MOD -> MULTIPLICATION_PRECEDENCE;
+			default -> 0;
+		};
 	}
 
-	private AST.Expr parseMultiplicationExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
+	/**
+	 * Parses a sequence of operands joined by binary operators of at least the given precedence
+	 * (precedence climbing). A chain of left-associative operators is built in a loop,
+	 * so the parser recurses only when an operator of a higher precedence follows.
+	 */
+	private AST.Expr parseBinaryExpression(int minPrecedence, boolean isOptional) {
+		long startPosition = nextPosition();
 		AST.Expr expr = parsePrefixExpression(isOptional);
-		while (match(Token.Symbol.MUL, Token.Symbol.DIV, Token.Symbol.MOD)) {
-			Token operator = current;
-			AST.Expr right = parsePrefixExpression(isOptional);
+		if (expr == null) {
+			return null;
+		}
+		int maxPrecedence = MULTIPLICATION_PRECEDENCE;
+		while (true) {
+			Token.Symbol operator = lexAn.symbol(lexAn.peek());
+			int precedence = binaryPrecedence(operator);
+			// An operator of a higher precedence than the previous one in the chain
+			// (only possible after a comparison) ends the expression as well.
+			if (precedence < minPrecedence || precedence > maxPrecedence) {
+				return expr;
+			}
+			consume(operator);
+			AST.Expr right = parseBinaryExpression(precedence + 1, false);
 			expr = saveNodeRangeAndReturn(startPosition, new AST.BinExpr(tokenToBinExprOperator(operator), expr, right));
+			// Comparisons are not associative: `a < b < c` is not an expression.
+			maxPrecedence = precedence == COMPARISON_PRECEDENCE ? precedence - 1 : precedence;
 		}
-		return saveNodeRangeAndReturn(startPosition, expr);
 	}
 
 	private AST.Expr parsePrefixExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		if (match(
 				Token.Symbol.NOT,
 				Token.Symbol.ADD,
 				Token.Symbol.SUB,
 				Token.Symbol.PTR
 		)) {
-			Token operator = current;
-			return saveNodeRangeAndReturn(startPosition, new AST.UnExpr(tokenToPrefixUnExprOperator(operator), parsePrefixExpression(isOptional)));
+			Token.Symbol operator = lexAn.symbol(current);
+			return saveNodeRangeAndReturn(startPosition, new AST.UnExpr(tokenToPrefixUnExprOperator(operator), parsePrefixExpression(false)));
 		} else {
-			return saveNodeRangeAndReturn(startPosition, parsePostfixExpression(isOptional));
+			return parsePostfixExpression(isOptional);
 		}
 	}
 
 	private AST.Expr parsePostfixExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		AST.Expr expr = parseConstOrGroupExpression(isOptional);
-		while (match(Token.Symbol.PTR)) {
+		while (expr != null && match(Token.Symbol.PTR)) {
 			expr = saveNodeRangeAndReturn(startPosition, new AST.UnExpr(AST.UnExpr.Oper.VALUEAT, expr));
 		}
 		return expr;
 	}
 
     private AST.Expr parseConstOrGroupExpression(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		if (check(Token.Symbol.LPAREN)) {
             consume(Token.Symbol.LPAREN);
             AST.Expr expr = parseExpression(false);
             consume(Token.Symbol.RPAREN);
+			// The parentheses are a part of the expression's range.
 			return saveNodeRangeAndReturn(startPosition, expr);
         } else if (check(Token.Symbol.IDENTIFIER)) {
-			return saveNodeRangeAndReturn(startPosition, parseFunctionCallOrVariableAccessExpression());
+			return parseFunctionCallOrVariableAccessExpression();
 		} else {
-            return saveNodeRangeAndReturn(startPosition, parseConst(isOptional));
+            return parseConst(isOptional);
         }
     }
 
 	private AST.NameExpr parseFunctionCallOrVariableAccessExpression() {
-		Report.Locatable startPosition = nextPosition();
-		Token identifier = consume(Token.Symbol.IDENTIFIER);
+		long startPosition = nextPosition();
+		int identifier = consumeIdentifier();
 		if (check(Token.Symbol.LPAREN)) {
 			consume(Token.Symbol.LPAREN);
 			List<AST.Expr> arguments = parseArguments();
 			consume(Token.Symbol.RPAREN);
-			return saveNodeRangeAndReturn(startPosition, new AST.CallExpr(identifier.lexeme(), arguments));
+			return saveNodeRangeAndReturn(startPosition,
+					withSymbol(identifier, new AST.CallExpr(lexAn.name(identifier), arguments)));
 		} else {
-			return saveNodeRangeAndReturn(startPosition, new AST.VarExpr(identifier.lexeme()));
+			return saveNodeRangeAndReturn(startPosition, withSymbol(identifier, new AST.VarExpr(lexAn.name(identifier))));
 		}
 	}
 
@@ -369,22 +591,21 @@ public class SynAn implements AutoCloseable {
 		if (firstArgument != null) {
 			arguments.add(firstArgument);
 		}
-		do {
-			if (check(Token.Symbol.COMMA)) {
-				consume(Token.Symbol.COMMA);
-				arguments.add(parseExpression(false));
-			}
-		} while (!check(Token.Symbol.RPAREN));
+		// Anything but a comma ends the arguments; the caller expects ')'.
+		while (check(Token.Symbol.COMMA)) {
+			consume(Token.Symbol.COMMA);
+			arguments.add(parseExpression(false));
+		}
 		return arguments;
 	}
 
 	private AST.VarDef parseVarDefinition() {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		consume(Token.Symbol.VAR);
-		Token name = consume(Token.Symbol.IDENTIFIER);
+		int name = consumeIdentifier();
 		consume(Token.Symbol.ASSIGN);
 		List<AST.Init> initializers = parseInitializers();
-		return saveNodeRangeAndReturn(startPosition, new AST.VarDef(name.lexeme(), initializers));
+		return saveNodeRangeAndReturn(startPosition, withSymbol(name, new AST.VarDef(lexAn.name(name), initializers)));
 	}
 
 	private List<AST.Init> parseInitializers() {
@@ -410,20 +631,20 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.Init parseInitializer(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		if (check(Token.Symbol.INTCONST)) {
-			Token num = consume(Token.Symbol.INTCONST);
+			String num = lexAn.lexeme(consume(Token.Symbol.INTCONST));
 			if (check(Token.Symbol.MUL)) {
 				consume(Token.Symbol.MUL);
 				AST.AtomExpr value = parseConst(false);
 				return saveNodeRangeAndReturn(startPosition, new AST.Init(
-						saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(AST.AtomExpr.Type.INTCONST, num.lexeme())),
+						saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(AST.AtomExpr.Type.INTCONST, num)),
 						value
 				));
 			} else {
 				return saveNodeRangeAndReturn(startPosition, new AST.Init(
                         saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(AST.AtomExpr.Type.INTCONST, "1")),
-                        saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(AST.AtomExpr.Type.INTCONST, num.lexeme()))
+                        saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(AST.AtomExpr.Type.INTCONST, num))
                 ));
 			}
 		} else {
@@ -436,14 +657,14 @@ public class SynAn implements AutoCloseable {
 	}
 
 	private AST.AtomExpr parseConst(boolean isOptional) {
-		Report.Locatable startPosition = nextPosition();
+		long startPosition = nextPosition();
 		if (match(
 				Token.Symbol.INTCONST,
 				Token.Symbol.CHARCONST,
 				Token.Symbol.STRINGCONST
 		)) {
-			Token constant = current;
-			return saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(tokenToAtomExprType(constant), constant.lexeme()));
+			int constant = current;
+			return saveNodeRangeAndReturn(startPosition, new AST.AtomExpr(tokenToAtomExprType(lexAn.symbol(constant)), lexAn.lexeme(constant)));
 		}
 
 		if (isOptional) {
@@ -451,62 +672,64 @@ public class SynAn implements AutoCloseable {
 			return null;
 		} else {
 			// TODO: Reuse the standard error message
-			throw new Report.Error(lexAn.peekToken(), "Expected a constant got " + lexAn.peekToken());
+			throw new Report.Error(lexAn.location(lexAn.peek()), "Expected a constant got " + lexAn.token(lexAn.peek()));
 		}
 	}
 
-	private AST.AtomExpr.Type tokenToAtomExprType(Token token) {
-		Map<Token.Symbol, AST.AtomExpr.Type> symbolToType = Map.ofEntries(
-				new AbstractMap.SimpleEntry<>(Token.Symbol.INTCONST, AST.AtomExpr.Type.INTCONST),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.CHARCONST, AST.AtomExpr.Type.CHRCONST),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.STRINGCONST, AST.AtomExpr.Type.STRCONST)
-		);
+	private static final Map<Token.Symbol, AST.AtomExpr.Type> ATOM_TYPES = Map.ofEntries(
+			new AbstractMap.SimpleEntry<>(Token.Symbol.INTCONST, AST.AtomExpr.Type.INTCONST),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.CHARCONST, AST.AtomExpr.Type.CHRCONST),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.STRINGCONST, AST.AtomExpr.Type.STRCONST)
+	);
 
-		AST.AtomExpr.Type type = symbolToType.get(token.symbol());;
+	private AST.AtomExpr.Type tokenToAtomExprType(Token.Symbol symbol) {
+		AST.AtomExpr.Type type = ATOM_TYPES.get(symbol);
 
 		if (type == null) {
-			throw new Report.InternalError("No atom expression type mapping defined for token: " + token);
+			throw new Report.InternalError("No atom expression type mapping defined for token: " + symbol);
 		} else {
 			return type;
 		}
 	}
 
-	private AST.BinExpr.Oper tokenToBinExprOperator(Token token) {
-		Map<Token.Symbol, AST.BinExpr.Oper> symbolToOper = Map.ofEntries(
-				new AbstractMap.SimpleEntry<>(Token.Symbol.OR, AST.BinExpr.Oper.OR),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.AND, AST.BinExpr.Oper.AND),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.ADD, AST.BinExpr.Oper.ADD),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.SUB, AST.BinExpr.Oper.SUB),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.DIV, AST.BinExpr.Oper.DIV),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.MUL, AST.BinExpr.Oper.MUL),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.MOD, AST.BinExpr.Oper.MOD),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.EQU, AST.BinExpr.Oper.EQU),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.GEQ, AST.BinExpr.Oper.GEQ),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.GTH, AST.BinExpr.Oper.GTH),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.LEQ, AST.BinExpr.Oper.LEQ),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.LTH, AST.BinExpr.Oper.LTH),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.NEQ, AST.BinExpr.Oper.NEQ)
-		);
-		AST.BinExpr.Oper operator = symbolToOper.get(token.symbol());
+	private static final Map<Token.Symbol, AST.BinExpr.Oper> BIN_OPERATORS = Map.ofEntries(
+			new AbstractMap.SimpleEntry<>(Token.Symbol.OR, AST.BinExpr.Oper.OR),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.AND, AST.BinExpr.Oper.AND),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.ADD, AST.BinExpr.Oper.ADD),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.SUB, AST.BinExpr.Oper.SUB),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.DIV, AST.BinExpr.Oper.DIV),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.MUL, AST.BinExpr.Oper.MUL),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.MOD, AST.BinExpr.Oper.MOD),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.EQU, AST.BinExpr.Oper.EQU),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.GEQ, AST.BinExpr.Oper.GEQ),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.GTH, AST.BinExpr.Oper.GTH),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.LEQ, AST.BinExpr.Oper.LEQ),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.LTH, AST.BinExpr.Oper.LTH),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.NEQ, AST.BinExpr.Oper.NEQ)
+	);
+
+	private AST.BinExpr.Oper tokenToBinExprOperator(Token.Symbol symbol) {
+		AST.BinExpr.Oper operator = BIN_OPERATORS.get(symbol);
 
 		if (operator == null) {
-			throw new Report.InternalError("No biary operator mapping defined for token: " + token);
+			throw new Report.InternalError("No biary operator mapping defined for token: " + symbol);
 		} else {
 			return operator;
 		}
 	}
 
-	private AST.UnExpr.Oper tokenToPrefixUnExprOperator(Token token) {
-		Map<Token.Symbol, AST.UnExpr.Oper> symbolToOper = Map.ofEntries(
-				new AbstractMap.SimpleEntry<>(Token.Symbol.ADD, AST.UnExpr.Oper.ADD),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.PTR, AST.UnExpr.Oper.MEMADDR),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.SUB, AST.UnExpr.Oper.SUB),
-				new AbstractMap.SimpleEntry<>(Token.Symbol.NOT, AST.UnExpr.Oper.NOT)
-		);
-		AST.UnExpr.Oper operator = symbolToOper.get(token.symbol());
+	private static final Map<Token.Symbol, AST.UnExpr.Oper> PREFIX_OPERATORS = Map.ofEntries(
+			new AbstractMap.SimpleEntry<>(Token.Symbol.ADD, AST.UnExpr.Oper.ADD),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.PTR, AST.UnExpr.Oper.MEMADDR),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.SUB, AST.UnExpr.Oper.SUB),
+			new AbstractMap.SimpleEntry<>(Token.Symbol.NOT, AST.UnExpr.Oper.NOT)
+	);
+
+	private AST.UnExpr.Oper tokenToPrefixUnExprOperator(Token.Symbol symbol) {
+		AST.UnExpr.Oper operator = PREFIX_OPERATORS.get(symbol);
 
 		if (operator == null) {
-			throw new Report.InternalError("No unary operator mapping defined for token: " + token);
+			throw new Report.InternalError("No unary operator mapping defined for token: " + symbol);
 		} else {
 			return operator;
 		}
@@ -526,7 +749,7 @@ public class SynAn implements AutoCloseable {
 			if (cmdLineArgs.length > 1)
 				Report.warning("Unused arguments in the command line.");
 
-			final HashMap<AST.Node, Report.Locatable> attrLoc = new HashMap<AST.Node, Report.Locatable>();
+			final Map<AST.Node, Report.Locatable> attrLoc = new AST.NodeMap<AST.Node, Report.Locatable>();
 			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
 				synAn.parse(attrLoc);
 			}